@@ -24,9 +24,11 @@
 package com.izforge.izpack.api.data;
 
 import com.izforge.izpack.api.regex.RegularExpressionFilter;
+import com.izforge.izpack.api.rules.RulesEngine;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 
 import java.io.Serializable;
+import java.util.Set;
 
 /**
  * @author Dennis Reil, <Dennis.Reil@reddot.de>
@@ -68,6 +70,22 @@ public interface DynamicVariable extends Serializable
 
     String evaluate(VariableSubstitutor... substitutors) throws Exception;
 
+    /**
+     * Evaluates the value, knowing the rules its condition is defined by. The value is only
+     * resolved again when its inputs or the variables its condition depends on change.
+     *
+     * @param rules         the rules engine, may be <tt>null</tt>
+     * @param substitutors  the substitutors to resolve the value with
+     * @return the value
+     * @throws Exception if the value cannot be resolved
+     */
+    String evaluate(RulesEngine rules, VariableSubstitutor... substitutors) throws Exception;
+
+    /**
+     * @return the names of the variables the value depends on, or <tt>null</tt> if they are unknown
+     */
+    Set<String> getVariableReferences();
+
     void setCheckonce(boolean checkonce);
 
     void setIgnoreFailure(boolean ignore);
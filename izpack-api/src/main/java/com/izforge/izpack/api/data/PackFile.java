@@ -112,6 +112,17 @@ public class PackFile implements Serializable
      */
     private boolean pack200Jar = false;
 
+    /**
+     * True if the content of the file is stored in a separate entry shared with other packs.
+     */
+    private boolean sharedData = false;
+
+    /**
+     * True if the source file is executable on a Unix system; the file is then made executable
+     * when it is installed on a Unix system.
+     */
+    private boolean executable = false;
+
     /**
      * condition for this packfile
      */
@@ -175,6 +186,8 @@ public class PackFile implements Serializable
         this.mtime = src.lastModified();
         this.isDirectory = src.isDirectory();
         this.additionals = additionals;
+        // every file can be executed on Windows
+        this.executable = ('/' == File.separatorChar) && !isDirectory && src.canExecute();
 
         // File.length is undefined for directories - we don't add any data, so don't skip
         // any please!
@@ -201,6 +214,35 @@ public class PackFile implements Serializable
         this(src, computeRelativePathFrom(baseDir, src), target, osList, override, overrideRenameTo, blockable, additionals);
     }
 
+    /**
+     * Constructs and initializes from the description stored in a pack, without a source file.
+     *
+     * @param target           the path to install the file to
+     * @param relativePath     the path relative to the compiletime's basedirectory
+     * @param osList           OS constraints
+     * @param override         what to do when the file already exists
+     * @param overrideRenameTo the globmapper expression used to rename an existing file
+     * @param blockable        whether the file might be blocked by the operating system
+     * @param additionals      additional attributes
+     * @param length           the length of the file in bytes
+     * @param mtime            the last-modification time of the file
+     * @param isDirectory      whether the file is a directory
+     */
+    public PackFile(String target, String relativePath, List<OsModel> osList, OverrideType override, String overrideRenameTo, Blockable blockable, Map<?, ?> additionals, long length, long mtime, boolean isDirectory)
+    {
+        this.targetPath = target;
+        this.relativePath = relativePath;
+        this.osConstraints = osList;
+        this.override = override;
+        this.overrideRenameTo = overrideRenameTo;
+        this.blockable = blockable;
+        this.additionals = additionals;
+        this.length = length;
+        this.size = length;
+        this.mtime = mtime;
+        this.isDirectory = isDirectory;
+    }
+
     /**
      * Builds the relative path of file to the baseDir.
      *
@@ -368,6 +410,26 @@ public class PackFile implements Serializable
         this.pack200Jar = pack200Jar;
     }
 
+    public boolean isExecutable()
+    {
+        return executable;
+    }
+
+    public void setExecutable(boolean executable)
+    {
+        this.executable = executable;
+    }
+
+    public boolean isSharedData()
+    {
+        return sharedData;
+    }
+
+    public void setSharedData(boolean sharedData)
+    {
+        this.sharedData = sharedData;
+    }
+
     public void setLoosePackInfo(boolean loose)
     {
         if (loose)
@@ -25,6 +25,7 @@ import com.izforge.izpack.api.adaptator.IXMLElement;
 import com.izforge.izpack.api.data.AutomatedInstallData;
 
 import java.io.Serializable;
+import java.util.Set;
 
 /**
  * Abstract base class for all conditions. Implementations of custom conditions
@@ -94,6 +95,18 @@ public abstract class Condition implements Serializable
         return "No dependencies for this condition.";
     }
 
+    /**
+     * Returns the names of the variables the result of this condition depends on. The rules engine
+     * reuses the last result of the condition as long as none of these variables changes.
+     *
+     * @return the names of the variables, or <tt>null</tt> if the result may also depend on other
+     *         state (files, selected packs, ...) and has to be evaluated every time
+     */
+    public Set<String> getVariableDependencies()
+    {
+        return null;
+    }
+
     /**
      * This element will be called by the RulesEngine to serialize the configuration
      * of a condition into XML.
@@ -1,6 +1,8 @@
 package com.izforge.izpack.api.substitutor;
 
 import java.io.*;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 
 /**
@@ -62,6 +64,21 @@ public interface VariableSubstitutor extends Serializable
     int substitute(InputStream in, OutputStream out, SubstitutionType type, String encoding)
             throws Exception;
 
+    /**
+     * Substitutes the variables found in the data read from a channel, typically the channel of a
+     * large file. Escapes special characters using file type specific escaping if necessary.
+     *
+     * @param in       the channel to read
+     * @param out      the channel to write
+     * @param type     the file type or null for plain
+     * @param encoding the character encoding or null for default
+     * @return the number of substitutions made
+     * @throws IllegalArgumentException if unknown file type specified
+     * @throws IOException              if an I/O error occurs
+     */
+    int substitute(ReadableByteChannel in, WritableByteChannel out, SubstitutionType type, String encoding)
+            throws Exception;
+
     /**
      * Substitute method Variant that gets An Input Stream and returns A String
      *
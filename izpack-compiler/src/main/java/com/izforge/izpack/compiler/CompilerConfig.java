@@ -1115,6 +1115,7 @@ public class CompilerConfig extends Thread
         }
         directoryScanner.setBasedir(dir);
         directoryScanner.setCaseSensitive(casesensitive);
+        directoryScanner.setThreads(compilerData.getScanThreads());
         try
         {
             directoryScanner.scan();
@@ -20,6 +20,10 @@ public class CliAnalyzer {
     private static final String ARG_OUTPUT = "o";
     private static final String ARG_COMPRESSION_FORMAT = "c";
     private static final String ARG_COMPRESSION_LEVEL = "l";
+    private static final String ARG_COMPRESSION_WINDOW = "w";
+    private static final String ARG_PACK_THREADS = "t";
+    private static final String ARG_SCAN_THREADS = "scanthreads";
+    private static final String ARG_PACK_CACHE = "cache";
 
 
     /**
@@ -41,6 +45,16 @@ public class CliAnalyzer {
                 "default is the internal deflate compression\n");
         options.addOption(ARG_COMPRESSION_LEVEL, true, "compression-level : indicates the level for the used compression format"
                 + " if supported. Only integer are valid\n");
+        options.addOption(ARG_COMPRESSION_WINDOW, true, "compression-window : indicates the window (dictionary) size"
+                + " in kilobytes for the used compression format if supported (xz)\n");
+        options.addOption(ARG_PACK_THREADS, true, "threads : indicates the number of threads used to compress the packs,"
+                + " default is 1 (packs are written sequentially)\n");
+        options.addOption(ARG_SCAN_THREADS, true, "scanthreads : indicates the number of threads used to scan the"
+                + " directories of the filesets, default is 1 (directories are scanned sequentially)\n");
+        options.addOption(ARG_PACK_CACHE, true, "cache : indicates the directory of the cache of compressed packs."
+                + " Packs which did not change since the last compilation are reused from the cache."
+                + " Not used for web installers (packs in separate jars), nor with compression formats"
+                + " compressing each pack as a whole (bzip2)\n");
         return options;
     }
 
@@ -84,6 +98,12 @@ public class CliAnalyzer {
         System.out.println("-> Kind        : " + result.getKind());
         System.out.println("-> Compression : " + result.getComprFormat());
         System.out.println("-> Compr. level: " + result.getComprLevel());
+        System.out.println("-> Compr. wind.: " + result.getComprWindow());
+        System.out.println("-> Threads     : " + result.getPackThreads());
+        System.out.println("-> Scan threads: " + result.getScanThreads());
+        if (result.getPackCacheDir() != null) {
+            System.out.println("-> Pack cache  : " + result.getPackCacheDir());
+        }
         System.out.println("-> IzPack home : " + CompilerData.IZPACK_HOME);
         System.out.println("");
     }
@@ -139,6 +159,18 @@ public class CliAnalyzer {
         if (commandLine.hasOption(ARG_COMPRESSION_LEVEL)) {
             compilerData.setComprLevel(Integer.parseInt(commandLine.getOptionValue(ARG_COMPRESSION_LEVEL).trim()));
         }
+        if (commandLine.hasOption(ARG_COMPRESSION_WINDOW)) {
+            compilerData.setComprWindow(Integer.parseInt(commandLine.getOptionValue(ARG_COMPRESSION_WINDOW).trim()));
+        }
+        if (commandLine.hasOption(ARG_PACK_THREADS)) {
+            compilerData.setPackThreads(Integer.parseInt(commandLine.getOptionValue(ARG_PACK_THREADS).trim()));
+        }
+        if (commandLine.hasOption(ARG_SCAN_THREADS)) {
+            compilerData.setScanThreads(Integer.parseInt(commandLine.getOptionValue(ARG_SCAN_THREADS).trim()));
+        }
+        if (commandLine.hasOption(ARG_PACK_CACHE)) {
+            compilerData.setPackCacheDir(commandLine.getOptionValue(ARG_PACK_CACHE).trim());
+        }
         if (commandLine.hasOption(ARG_IZPACK_HOME)) {
             CompilerData.setIzpackHome(commandLine.getOptionValue(ARG_IZPACK_HOME).trim());
         }
@@ -22,6 +22,8 @@
 
 package com.izforge.izpack.compiler.compressor;
 
+import java.io.OutputStream;
+
 /**
  * IzPack will be able to support different compression methods for the
  * packs included in the installation jar file.
@@ -47,7 +49,17 @@ public interface PackCompressor
      * @return a newly created encoding output stream
      * @throws Exception
      */
-//    OutputStream getOutputStream(OutputStream os) throws Exception;
+    OutputStream getOutputStream(OutputStream os) throws Exception;
+
+    /**
+     * Returns the size of the blocks a pack is split into when it is encoded by
+     * getOutputStream. Every block is encoded independently, possibly by another thread,
+     * and the decoder reads the concatenated blocks as one stream.
+     * Returns 0 if the packs are not encoded by getOutputStream.
+     *
+     * @return the size of the blocks in bytes, or 0
+     */
+    long getBlockSize();
 
     /**
      * Returns all symbolic names which are used for this compressor.
@@ -100,5 +112,14 @@ public interface PackCompressor
      */
     int getCompressionLevel();
 
+    /**
+     * Returns the encoder parameters which change the encoded data, such as the compression
+     * level or the dictionary size, so that packs encoded with other parameters are not
+     * taken for the same.
+     *
+     * @return the encoder parameters
+     */
+    String getEncoderSettings();
+
 
 }
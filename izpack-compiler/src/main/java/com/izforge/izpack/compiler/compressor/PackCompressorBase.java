@@ -24,6 +24,9 @@ package com.izforge.izpack.compiler.compressor;
 
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+
 
 /**
  * IzPack will be able to support different compression methods for the
@@ -65,6 +68,31 @@ public abstract class PackCompressorBase implements PackCompressor
         return (encoderClassName);
     }
 
+    /* (non-Javadoc)
+     * @see com.izforge.izpack.compressor.PackCompressor#getOutputStream(java.io.OutputStream)
+     */
+
+    public OutputStream getOutputStream(OutputStream os) throws Exception
+    {
+        if (encoderClassName == null)
+        {
+            return (null);
+        }
+        // The encoder is loaded via reflection because it is not needed in the installer.
+        Class<?> encoder = Class.forName(encoderClassName);
+        Constructor<?> constructor = encoder.getDeclaredConstructor(OutputStream.class);
+        return ((OutputStream) constructor.newInstance(os));
+    }
+
+    /* (non-Javadoc)
+     * @see com.izforge.izpack.compressor.PackCompressor#getBlockSize()
+     */
+
+    public long getBlockSize()
+    {
+        return (0);
+    }
+
     /* (non-Javadoc)
      * @see com.izforge.izpack.compressor.PackCompressor#useStandardCompression()
      */
@@ -110,6 +138,15 @@ public abstract class PackCompressorBase implements PackCompressor
         return (level);
     }
 
+    /* (non-Javadoc)
+     * @see com.izforge.izpack.compressor.PackCompressor#getEncoderSettings()
+     */
+
+    public String getEncoderSettings()
+    {
+        return (encoderClassName + ":" + level);
+    }
+
     /* (non-Javadoc)
      * @see com.izforge.izpack.compressor.PackCompressor#needsBufferedOutputStream()
      */
@@ -0,0 +1,135 @@
+/*
+ * IzPack - Copyright 2001-2010 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.compressor;
+
+import com.izforge.izpack.api.substitutor.VariableSubstitutor;
+import com.izforge.izpack.merge.MergeManager;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.UnsupportedOptionsException;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.OutputStream;
+
+
+/**
+ * IzPack will be able to support different compression methods for the
+ * packs included in the installation jar file.
+ * This class implements the PackCompressor for the compression format "xz" (LZMA2),
+ * using the pure Java implementation of XZ for Java.
+ * The packs are split into blocks which are encoded as independent xz streams, so that
+ * several threads can encode a pack; the installer decodes the concatenated streams
+ * with a single XZInputStream.
+ */
+public class XZPackCompressor extends PackCompressorBase
+{
+    private static final String[] THIS_FORMAT_NAMES = {"xz", "lzma2", "lzma"};
+    private static final String THIS_DECODER_MAPPER = "org.tukaani.xz.XZInputStream";
+    private static final String THIS_ENCODER_CLASS_NAME = "org.tukaani.xz.XZOutputStream";
+
+    /**
+     * Smallest size of the blocks a pack is split into.
+     */
+    private static final long MIN_BLOCK_SIZE = 1024 * 1024;
+
+    /**
+     * The dictionary size in bytes, or -1 for the default size of the level.
+     */
+    private int dictionarySize = -1;
+
+    /**
+     *
+     */
+    public XZPackCompressor(VariableSubstitutor variableSubstitutor, MergeManager mergeManager)
+    {
+        super(variableSubstitutor);
+        mergeManager.addResourceToMerge("org/tukaani/xz");
+        formatNames = THIS_FORMAT_NAMES;
+        decoderMapper = THIS_DECODER_MAPPER;
+        encoderClassName = THIS_ENCODER_CLASS_NAME;
+    }
+
+    /**
+     * Sets the dictionary (window) size. Larger dictionaries compress better but need more
+     * memory when installing.
+     *
+     * @param dictionarySize the dictionary size in bytes, or -1 for the default size of the level
+     */
+    public void setDictionarySize(int dictionarySize)
+    {
+        this.dictionarySize = dictionarySize;
+    }
+
+    /* (non-Javadoc)
+     * @see com.izforge.izpack.compressor.PackCompressor#getOutputStream(java.io.OutputStream)
+     */
+
+    public OutputStream getOutputStream(OutputStream os) throws Exception
+    {
+        return (new XZOutputStream(os, getOptions()));
+    }
+
+    /**
+     * Returns three times the dictionary size, as the xz tool does when compressing with
+     * several threads: smaller blocks would lose compression.
+     *
+     * @see com.izforge.izpack.compressor.PackCompressor#getBlockSize()
+     */
+
+    public long getBlockSize()
+    {
+        try
+        {
+            return (Math.max(3L * getOptions().getDictSize(), MIN_BLOCK_SIZE));
+        }
+        catch (UnsupportedOptionsException exception)
+        {
+            throw new IllegalArgumentException(exception.getMessage());
+        }
+    }
+
+    /**
+     * Adds the dictionary size used to the encoder settings.
+     *
+     * @see com.izforge.izpack.compressor.PackCompressor#getEncoderSettings()
+     */
+
+    public String getEncoderSettings()
+    {
+        try
+        {
+            return (super.getEncoderSettings() + ":" + getOptions().getDictSize());
+        }
+        catch (UnsupportedOptionsException exception)
+        {
+            throw new IllegalArgumentException(exception.getMessage());
+        }
+    }
+
+    private LZMA2Options getOptions() throws UnsupportedOptionsException
+    {
+        int level = getCompressionLevel();
+        LZMA2Options options = new LZMA2Options((level >= 0 && level <= 9) ? level : LZMA2Options.PRESET_DEFAULT);
+        if (dictionarySize > 0)
+        {
+            options.setDictSize(dictionarySize);
+        }
+        return (options);
+    }
+}
@@ -21,6 +21,7 @@ import com.izforge.izpack.core.substitutor.VariableSubstitutorImpl;
 import com.izforge.izpack.merge.MergeManager;
 import com.izforge.izpack.merge.MergeManagerImpl;
 import com.izforge.izpack.merge.resolve.ClassPathCrawler;
+import com.izforge.izpack.merge.resolve.ClassPathIndex;
 import org.picocontainer.Characteristics;
 import org.picocontainer.MutablePicoContainer;
 import org.picocontainer.injectors.ProviderAdapter;
@@ -56,6 +57,7 @@ public class CompilerContainer extends AbstractContainer
                 .addComponent(CompilerHelper.class)
                 .addComponent(RulesEngine.class, RulesEngineImpl.class, new ComponentParameter(ClassPathCrawler.class), new ComponentParameter(ConditionContainer.class))
                 .addComponent(MergeManager.class, MergeManagerImpl.class)
+                .addComponent(ClassPathIndex.class, new ClassPathIndex(ClassPathIndex.getDefaultDirectory()))
                 ;
         new ResolverContainerFiller().fillContainer(pico);
         pico.addAdapter(new ProviderAdapter(new IzpackProjectProvider()))
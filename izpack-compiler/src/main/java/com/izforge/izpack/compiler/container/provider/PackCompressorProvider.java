@@ -5,6 +5,7 @@ import com.izforge.izpack.compiler.compressor.BZip2PackCompressor;
 import com.izforge.izpack.compiler.compressor.DefaultPackCompressor;
 import com.izforge.izpack.compiler.compressor.PackCompressor;
 import com.izforge.izpack.compiler.compressor.RawPackCompressor;
+import com.izforge.izpack.compiler.compressor.XZPackCompressor;
 import com.izforge.izpack.compiler.data.CompilerData;
 import com.izforge.izpack.merge.MergeManager;
 import org.picocontainer.injectors.Provider;
@@ -27,6 +28,16 @@ public class PackCompressorProvider implements Provider
         {
             return new RawPackCompressor(variableSubstitutor);
         }
+        else if (format.equals("xz") || format.equals("lzma2") || format.equals("lzma"))
+        {
+            XZPackCompressor compressor = new XZPackCompressor(variableSubstitutor, mergeManager);
+            compressor.setCompressionLevel(compilerData.getComprLevel());
+            if (compilerData.getComprWindow() > 0)
+            {
+                compressor.setDictionarySize(compilerData.getComprWindow() * 1024);
+            }
+            return compressor;
+        }
         return new DefaultPackCompressor(variableSubstitutor);
     }
 }
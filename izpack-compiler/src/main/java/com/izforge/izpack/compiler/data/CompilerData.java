@@ -65,6 +65,30 @@ public class CompilerData
      */
     private int comprLevel = -1;
 
+    /**
+     * Compression window (dictionary) size in kilobytes, if supported by the compression format.
+     * -1 uses the default size of the compression level.
+     */
+    private int comprWindow = -1;
+
+    /**
+     * Number of threads used to compress packs. A value lower than 2 writes the packs
+     * sequentially into the installer jar.
+     */
+    private int packThreads = 1;
+
+    /**
+     * Number of threads used to scan the directories of the filesets. A value lower than 2
+     * scans them sequentially.
+     */
+    private int scanThreads = 1;
+
+    /**
+     * Directory of the cache of compressed packs reused by successive compilations, or
+     * <tt>null</tt> if packs are always compressed.
+     */
+    private String packCacheDir;
+
     /**
      * External Information
      */
@@ -190,6 +214,46 @@ public class CompilerData
         this.comprLevel = comprLevel;
     }
 
+    public int getComprWindow()
+    {
+        return comprWindow;
+    }
+
+    public void setComprWindow(int comprWindow)
+    {
+        this.comprWindow = comprWindow;
+    }
+
+    public int getPackThreads()
+    {
+        return packThreads;
+    }
+
+    public void setPackThreads(int packThreads)
+    {
+        this.packThreads = packThreads;
+    }
+
+    public int getScanThreads()
+    {
+        return scanThreads;
+    }
+
+    public void setScanThreads(int scanThreads)
+    {
+        this.scanThreads = scanThreads;
+    }
+
+    public String getPackCacheDir()
+    {
+        return packCacheDir;
+    }
+
+    public void setPackCacheDir(String packCacheDir)
+    {
+        this.packCacheDir = packCacheDir;
+    }
+
     public Info getExternalInfo()
     {
         return this.externalInfo;
@@ -0,0 +1,191 @@
+/*
+ * IzPack - Copyright 2001-2010 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A persistent cache of compressed packs, shared by successive compilations of an installer.
+ * A compressed pack is stored under the fingerprint of the pack: the compression settings, the
+ * file headers and metadata of the pack, and the path, length, modification time and digest of
+ * every file whose content is stored in the pack. A pack whose fingerprint did not change is copied
+ * from the cache instead of being read and compressed again. Contents shared by several packs are
+ * cached the same way, under their digest and the compression settings.
+ * <p/>
+ * A cache directory is meant to be used by one installer: the packs not used by the last
+ * compilation are removed by {@link #prune()}.
+ */
+public class PackCache
+{
+    private static final String SUFFIX = ".pack";
+
+    private final File directory;
+
+    private final Set<File> used = new HashSet<File>();
+
+    /**
+     * Creates a cache.
+     *
+     * @param directory the cache directory, created if needed
+     * @throws IOException if the directory cannot be created
+     */
+    public PackCache(File directory) throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Could not create pack cache directory " + directory);
+        }
+        this.directory = directory;
+    }
+
+    /**
+     * Returns a cached compressed pack.
+     *
+     * @param fingerprint the fingerprint of the pack
+     * @return the compressed pack, or <tt>null</tt> if it is not cached
+     */
+    public File get(String fingerprint)
+    {
+        File file = getFile(fingerprint);
+        if (!file.isFile())
+        {
+            return null;
+        }
+        used.add(file);
+        return file;
+    }
+
+    /**
+     * Stores a compressed pack. The temporary files of the segment are deleted.
+     *
+     * @param fingerprint the fingerprint of the pack
+     * @param segment     the compressed segment of the pack
+     * @return the cached compressed pack
+     * @throws IOException if the pack cannot be stored
+     */
+    public File store(String fingerprint, PackSegment segment) throws IOException
+    {
+        File file = getFile(fingerprint);
+        File tmpFile = new File(directory, fingerprint + ".tmp");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(tmpFile));
+        try
+        {
+            segment.writeTo(out);
+        }
+        finally
+        {
+            out.close();
+        }
+        file.delete();
+        if (!tmpFile.renameTo(file))
+        {
+            tmpFile.delete();
+            throw new IOException("Could not store pack in cache " + file);
+        }
+        used.add(file);
+        return file;
+    }
+
+    /**
+     * Removes the cached packs which have not been used since this cache has been created.
+     */
+    public void prune()
+    {
+        File[] files = directory.listFiles();
+        if (files == null)
+        {
+            return;
+        }
+        for (File file : files)
+        {
+            if (file.getName().endsWith(SUFFIX) && !used.contains(file))
+            {
+                file.delete();
+            }
+        }
+    }
+
+    private File getFile(String fingerprint)
+    {
+        return new File(directory, fingerprint + SUFFIX);
+    }
+
+    /**
+     * Computes the fingerprint of the data written to it.
+     */
+    public static class Fingerprint extends OutputStream
+    {
+        private final MessageDigest digest;
+
+        /**
+         * Creates a fingerprint.
+         *
+         * @param settings the compression settings, part of the fingerprint
+         */
+        public Fingerprint(String settings)
+        {
+            try
+            {
+                digest = MessageDigest.getInstance("SHA-1");
+            }
+            catch (NoSuchAlgorithmException exception)
+            {
+                throw new IllegalStateException(exception);
+            }
+            try
+            {
+                digest.update(settings.getBytes("UTF-8"));
+            }
+            catch (IOException exception)
+            {
+                throw new IllegalStateException(exception);
+            }
+        }
+
+        public void write(int b)
+        {
+            digest.update((byte) b);
+        }
+
+        public void write(byte[] b, int off, int len)
+        {
+            digest.update(b, off, len);
+        }
+
+        /**
+         * Returns the fingerprint. No data must be written afterwards.
+         *
+         * @return the hexadecimal SHA-1 digest of the settings and the data
+         */
+        public String getValue()
+        {
+            return String.format("%040x", new BigInteger(1, digest.digest()));
+        }
+    }
+}
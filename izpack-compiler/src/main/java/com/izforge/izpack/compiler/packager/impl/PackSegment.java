@@ -0,0 +1,327 @@
+/*
+ * IzPack - Copyright 2001-2010 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import com.izforge.izpack.compiler.compressor.PackCompressor;
+import com.izforge.izpack.util.IoHelper;
+import com.izforge.izpack.util.file.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * The content of one pack, written to a temporary file so that it can be compressed
+ * independently of the other packs. Once compressed, the segment is copied as a stored entry
+ * into the installer jar.
+ * <p/>
+ * With the standard compression, a segment is deflated as a whole and the installer reads it back
+ * through an {@link java.util.zip.InflaterInputStream}. Other compressors may split the segment
+ * into blocks (see {@link PackCompressor#getBlockSize()}) encoded independently, possibly by
+ * several threads; the installer reads the concatenated blocks with the decoder of the compressor.
+ */
+public class PackSegment
+{
+    /**
+     * The class used by the installer to decode segments compressed with the standard compression.
+     */
+    public static final String DECODER_CLASS_NAME = "java.util.zip.InflaterInputStream";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String packId;
+
+    private final File rawFile;
+
+    private final boolean temporaryRawFile;
+
+    private final PackCompressor compressor;
+
+    private final int level;
+
+    private final List<Block> blocks = new ArrayList<Block>();
+
+    private long compressedSize;
+
+    private long crc;
+
+    /**
+     * Creates a segment for the given pack.
+     *
+     * @param packId     the pack identifier
+     * @param compressor the pack compressor
+     * @param level      the deflate level used with the standard compression, or -1 for the best
+     *                   compression
+     * @throws IOException if the temporary file cannot be created
+     */
+    public PackSegment(String packId, PackCompressor compressor, int level) throws IOException
+    {
+        this(packId, FileUtils.createTempFile("izpack-pack", ".raw"), true, compressor, level);
+        this.rawFile.deleteOnExit();
+    }
+
+    /**
+     * Creates a segment compressing an existing file, which is kept.
+     *
+     * @param packId     the pack identifier
+     * @param rawFile    the uncompressed content
+     * @param compressor the pack compressor
+     * @param level      the deflate level used with the standard compression, or -1 for the best
+     *                   compression
+     */
+    public PackSegment(String packId, File rawFile, PackCompressor compressor, int level)
+    {
+        this(packId, rawFile, false, compressor, level);
+    }
+
+    private PackSegment(String packId, File rawFile, boolean temporaryRawFile, PackCompressor compressor,
+                        int level)
+    {
+        this.packId = packId;
+        this.compressor = compressor;
+        this.level = (level >= 0 && level < 10) ? level : Deflater.BEST_COMPRESSION;
+        this.rawFile = rawFile;
+        this.temporaryRawFile = temporaryRawFile;
+    }
+
+    /**
+     * Returns the stream the uncompressed pack content has to be written to.
+     *
+     * @return a buffered stream to the raw segment file
+     * @throws IOException if the file cannot be opened
+     */
+    public OutputStream openRawStream() throws IOException
+    {
+        return new BufferedOutputStream(new FileOutputStream(rawFile));
+    }
+
+    /**
+     * Splits the raw segment into the blocks to compress. Must be called once the raw content has
+     * been written.
+     *
+     * @return the compression tasks of the blocks, in segment order
+     */
+    public List<Callable<Object>> createBlocks()
+    {
+        long length = rawFile.length();
+        long blockSize = compressor.useStandardCompression() ? 0 : compressor.getBlockSize();
+        if (blockSize <= 0)
+        {
+            blockSize = Math.max(length, 1);
+        }
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        long offset = 0;
+        do
+        {
+            Block block = new Block(offset, Math.min(blockSize, length - offset));
+            blocks.add(block);
+            tasks.add(block);
+            offset += blockSize;
+        }
+        while (offset < length);
+        return tasks;
+    }
+
+    /**
+     * Computes the size and checksum of the compressed segment once all blocks are compressed.
+     * The temporary raw file, if any, is deleted.
+     *
+     * @throws IOException if the compressed blocks cannot be read
+     */
+    public void finish() throws IOException
+    {
+        CRC32 checksum = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        compressedSize = 0;
+        for (Block block : blocks)
+        {
+            InputStream in = new FileInputStream(block.file);
+            try
+            {
+                int read;
+                while ((read = in.read(buffer)) != -1)
+                {
+                    checksum.update(buffer, 0, read);
+                    compressedSize += read;
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        crc = checksum.getValue();
+        deleteRawFile();
+    }
+
+    /**
+     * Copies the compressed segment to the given stream and deletes the temporary files.
+     *
+     * @param os the stream to write to
+     * @throws IOException if the segment cannot be copied
+     */
+    public void writeTo(OutputStream os) throws IOException
+    {
+        for (Block block : blocks)
+        {
+            InputStream in = new FileInputStream(block.file);
+            try
+            {
+                IoHelper.copyStream(in, os);
+            }
+            finally
+            {
+                in.close();
+                block.file.delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes the temporary files of this segment.
+     */
+    public void delete()
+    {
+        deleteRawFile();
+        for (Block block : blocks)
+        {
+            if (block.file != null)
+            {
+                block.file.delete();
+            }
+        }
+    }
+
+    private void deleteRawFile()
+    {
+        if (temporaryRawFile)
+        {
+            rawFile.delete();
+        }
+    }
+
+    public String getPackId()
+    {
+        return packId;
+    }
+
+    public long getCompressedSize()
+    {
+        return compressedSize;
+    }
+
+    public long getCrc()
+    {
+        return crc;
+    }
+
+    /**
+     * A range of the raw segment, compressed into its own temporary file.
+     */
+    private class Block implements Callable<Object>
+    {
+        private final long offset;
+
+        private final long length;
+
+        private File file;
+
+        Block(long offset, long length)
+        {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public Object call() throws Exception
+        {
+            file = FileUtils.createTempFile("izpack-pack", ".z");
+            file.deleteOnExit();
+            InputStream in = new BufferedInputStream(new FileInputStream(rawFile), BUFFER_SIZE);
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+            Deflater deflater = null;
+            try
+            {
+                skipFully(in, offset);
+                OutputStream encoder;
+                if (compressor.useStandardCompression())
+                {
+                    deflater = new Deflater(level);
+                    encoder = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+                }
+                else
+                {
+                    encoder = compressor.getOutputStream(out);
+                }
+                copy(in, encoder, length);
+                encoder.close();
+            }
+            finally
+            {
+                if (deflater != null)
+                {
+                    deflater.end();
+                }
+                in.close();
+                out.close();
+            }
+            return null;
+        }
+
+        private void skipFully(InputStream in, long count) throws IOException
+        {
+            while (count > 0)
+            {
+                long skipped = in.skip(count);
+                if (skipped <= 0)
+                {
+                    throw new EOFException("Unexpected end of pack segment " + packId);
+                }
+                count -= skipped;
+            }
+        }
+
+        private void copy(InputStream in, OutputStream out, long count) throws IOException
+        {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (count > 0)
+            {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, count));
+                if (read == -1)
+                {
+                    throw new EOFException("Unexpected end of pack segment " + packId);
+                }
+                out.write(buffer, 0, read);
+                count -= read;
+            }
+        }
+    }
+}
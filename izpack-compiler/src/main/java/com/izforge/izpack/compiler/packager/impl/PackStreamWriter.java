@@ -0,0 +1,272 @@
+/*
+ * IzPack - Copyright 2001-2010 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.compiler.stream.ByteCountingOutputStream;
+import com.izforge.izpack.data.PackStreamFormat;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a pack in the binary pack stream format described by {@link PackStreamFormat}.
+ */
+public class PackStreamWriter
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ByteCountingOutputStream counter;
+
+    private final DataOutputStream out;
+
+    private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * Creates a writer on the given stream.
+     *
+     * @param os the stream to write to; it is flushed but never closed by this writer
+     */
+    public PackStreamWriter(OutputStream os)
+    {
+        counter = new ByteCountingOutputStream(os);
+        out = new DataOutputStream(new BufferedOutputStream(counter, BUFFER_SIZE));
+    }
+
+    /**
+     * Writes the stream header.
+     *
+     * @param fileCount the number of files of the pack
+     * @throws IOException for any I/O error
+     */
+    public void writeHeader(int fileCount) throws IOException
+    {
+        out.writeInt(PackStreamFormat.MAGIC);
+        out.writeInt(PackStreamFormat.VERSION);
+        out.writeInt(fileCount);
+    }
+
+    /**
+     * Writes the header of a file.
+     *
+     * @param packFile the file to describe
+     * @param withData whether the content of the file will follow the header
+     * @throws IOException for any I/O error
+     */
+    public void writeFile(PackFile packFile, boolean withData) throws IOException
+    {
+        int flags = 0;
+        if (packFile.isDirectory())
+        {
+            flags |= PackStreamFormat.FLAG_DIRECTORY;
+        }
+        if (packFile.isBackReference())
+        {
+            flags |= PackStreamFormat.FLAG_BACK_REFERENCE;
+        }
+        if (packFile.isPack200Jar())
+        {
+            flags |= PackStreamFormat.FLAG_PACK200;
+        }
+        if (packFile.isSharedData())
+        {
+            flags |= PackStreamFormat.FLAG_SHARED;
+        }
+        if (packFile.isExecutable())
+        {
+            flags |= PackStreamFormat.FLAG_EXECUTABLE;
+        }
+        if (withData)
+        {
+            flags |= PackStreamFormat.FLAG_DATA;
+        }
+        byte[] extra = null;
+        if (packFile.osConstraints() != null || packFile.getAdditionals() != null)
+        {
+            flags |= PackStreamFormat.FLAG_EXTRA;
+            extra = serialize(new Object[]{packFile.osConstraints(), packFile.getAdditionals()});
+        }
+
+        out.writeInt(flags);
+        String target = packFile.getTargetPath();
+        int separator = target.lastIndexOf('/');
+        writeSharedString(separator < 0 ? null : target.substring(0, separator));
+        out.writeUTF(target.substring(separator + 1));
+        writeString(packFile.getRelativeSourcePath());
+        out.writeLong(packFile.length());
+        out.writeLong(packFile.lastModified());
+        out.writeByte(packFile.override() == null ? 0 : packFile.override().ordinal() + 1);
+        out.writeByte(packFile.blockable() == null ? 0 : packFile.blockable().ordinal() + 1);
+        writeString(packFile.overrideRenameTo());
+        writeSharedString(packFile.getCondition());
+        if (packFile.isBackReference())
+        {
+            writeSharedString(packFile.previousPackId);
+            out.writeLong(packFile.offsetInPreviousPack);
+        }
+        if (extra != null)
+        {
+            out.writeInt(extra.length);
+            out.write(extra);
+        }
+    }
+
+    /**
+     * Copies the content of a file, followed by its checksum.
+     *
+     * @param in     the stream to read the content from
+     * @param length the expected length of the content
+     * @return the number of bytes copied
+     * @throws IOException if the content cannot be copied or has not the expected length
+     */
+    public long writeData(InputStream in, long length) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        long bytesWritten = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1)
+        {
+            out.write(buffer, 0, read);
+            crc.update(buffer, 0, read);
+            bytesWritten += read;
+        }
+        if (bytesWritten == length)
+        {
+            out.writeInt((int) crc.getValue());
+        }
+        return bytesWritten;
+    }
+
+    /**
+     * Writes the key of the entry holding the actual content (a pack200 archive or a shared file)
+     * as content of the current file.
+     *
+     * @param key the entry key
+     * @throws IOException for any I/O error
+     */
+    public void writeDataKey(int key) throws IOException
+    {
+        byte[] bytes = new byte[]{(byte) (key >>> 24), (byte) (key >>> 16), (byte) (key >>> 8), (byte) key};
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        out.write(bytes);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Describes the content of a file by its path, length, modification time and digest instead
+     * of copying it. This is used to fingerprint a pack without compressing its files; such a
+     * stream cannot be read back.
+     *
+     * @param file   the file
+     * @param digest the digest of the content of the file
+     * @throws IOException for any I/O error
+     */
+    public void writeContentStamp(File file, String digest) throws IOException
+    {
+        out.writeUTF(file.getAbsolutePath());
+        out.writeLong(file.length());
+        out.writeLong(file.lastModified());
+        out.writeUTF(digest);
+    }
+
+    /**
+     * Returns the number of bytes written so far.
+     *
+     * @return the position in the pack stream
+     * @throws IOException if buffered data cannot be flushed
+     */
+    public long getPosition() throws IOException
+    {
+        out.flush();
+        return counter.getByteCount();
+    }
+
+    /**
+     * Returns the stream the parsable, executable and update check descriptions are written to.
+     *
+     * @return an object stream following the file headers
+     * @throws IOException for any I/O error
+     */
+    public ObjectOutputStream getMetadataStream() throws IOException
+    {
+        return new ObjectOutputStream(out);
+    }
+
+    /**
+     * Flushes the buffered data to the underlying stream.
+     *
+     * @throws IOException for any I/O error
+     */
+    public void flush() throws IOException
+    {
+        out.flush();
+    }
+
+    private void writeString(String value) throws IOException
+    {
+        out.writeBoolean(value != null);
+        if (value != null)
+        {
+            out.writeUTF(value);
+        }
+    }
+
+    private void writeSharedString(String value) throws IOException
+    {
+        if (value == null)
+        {
+            out.writeInt(PackStreamFormat.NULL_STRING);
+            return;
+        }
+        Integer index = strings.get(value);
+        if (index != null)
+        {
+            out.writeInt(index);
+        }
+        else
+        {
+            index = strings.size();
+            strings.put(value, index);
+            out.writeInt(index);
+            out.writeUTF(value);
+        }
+    }
+
+    private static byte[] serialize(Object object) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream objOut = new ObjectOutputStream(bytes);
+        objOut.writeObject(object);
+        objOut.close();
+        return bytes.toByteArray();
+    }
+}
@@ -31,13 +31,14 @@ import com.izforge.izpack.compiler.container.CompilerContainer;
 import com.izforge.izpack.compiler.data.CompilerData;
 import com.izforge.izpack.compiler.listener.PackagerListener;
 import com.izforge.izpack.compiler.resource.ResourceFinder;
-import com.izforge.izpack.compiler.stream.ByteCountingOutputStream;
 import com.izforge.izpack.compiler.stream.JarOutputStream;
 import com.izforge.izpack.data.ExecutableFile;
 import com.izforge.izpack.data.PackInfo;
+import com.izforge.izpack.data.PackStreamFormat;
 import com.izforge.izpack.data.ParsableFile;
 import com.izforge.izpack.data.UpdateCheck;
 import com.izforge.izpack.merge.MergeManager;
+import com.izforge.izpack.merge.jar.RawZipFile;
 import com.izforge.izpack.merge.resolve.MergeableResolver;
 import com.izforge.izpack.merge.resolve.PathResolver;
 import com.izforge.izpack.util.FileUtil;
@@ -52,14 +53,24 @@ import java.io.InputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.Pack200;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
 
 /**
@@ -116,6 +127,12 @@ public class Packager extends PackagerBase
 
         packJarsSeparate = (info.getWebDirURL() != null);
 
+        if (isSegmentPackWriting() && compressor.useStandardCompression())
+        {
+            // packs are stored as separately deflated segments
+            info.setPackDecoderClassName(PackSegment.DECODER_CLASS_NAME);
+        }
+
         // primary (possibly only) jar. -1 indicates primary
 
         sendStart();
@@ -207,9 +224,86 @@ public class Packager extends PackagerBase
 
         for (Object[] includedJarURL : includedJarURLs)
         {
-            InputStream is = ((URL) includedJarURL[0]).openStream();
-            ZipInputStream inJarStream = new ZipInputStream(is);
-            IoHelper.copyZip(inJarStream, primaryJarStream, (List<String>) includedJarURL[1], alreadyWrittenFiles);
+            URL url = (URL) includedJarURL[0];
+            List<String> files = (List<String>) includedJarURL[1];
+            if ("file".equals(url.getProtocol()))
+            {
+                copyZip(FileUtil.convertUrlToFile(url), files);
+            }
+            else
+            {
+                InputStream is = url.openStream();
+                ZipInputStream inJarStream = new ZipInputStream(is);
+                IoHelper.copyZip(inJarStream, primaryJarStream, files, alreadyWrittenFiles);
+            }
+        }
+    }
+
+    /**
+     * Copies the entries of a local jar to the primary jar, as {@link IoHelper#copyZip} does.
+     * Deflated entries are copied without being inflated and deflated again.
+     *
+     * @param file  the jar file
+     * @param files regular expressions of the entries to copy, with '.' as separator, or <tt>null</tt>
+     *              to copy all entries
+     */
+    private void copyZip(File file, List<String> files) throws IOException
+    {
+        List<Pattern> includes = null;
+        if (files != null)
+        {
+            includes = new ArrayList<Pattern>(files.size());
+            for (String include : files)
+            {
+                includes.add(Pattern.compile(include));
+            }
+        }
+        if (!alreadyWrittenFiles.containsKey(primaryJarStream))
+        {
+            alreadyWrittenFiles.put(primaryJarStream, new HashSet<String>());
+        }
+        HashSet<String> currentSet = alreadyWrittenFiles.get(primaryJarStream);
+        RawZipFile zipFile = new RawZipFile(file);
+        try
+        {
+            for (RawZipFile.Entry entry : zipFile.getEntries())
+            {
+                String currentName = entry.getName();
+                if (includes != null)
+                {
+                    String testName = currentName.replace('/', '.').replace('\\', '.');
+                    boolean found = false;
+                    for (Pattern include : includes)
+                    {
+                        if (include.matcher(testName).matches())
+                        {
+                            found = true;
+                            break;
+                        }
+                    }
+                    if (!found)
+                    {
+                        continue;
+                    }
+                }
+                if (currentSet.contains(currentName))
+                {
+                    continue;
+                }
+                try
+                {
+                    zipFile.copyEntry(entry, primaryJarStream, currentName);
+                    currentSet.add(currentName);
+                }
+                catch (ZipException x)
+                {
+                    // duplicate directories, see IoHelper.copyZip
+                }
+            }
+        }
+        finally
+        {
+            zipFile.close();
         }
     }
 
@@ -246,186 +340,609 @@ public class Packager extends PackagerBase
         final int num = packsList.size();
         sendMsg("Writing " + num + " Pack" + (num > 1 ? "s" : "") + " into installer");
 
-        // Map to remember pack number and bytes offsets of back references
-        Map<File, Object[]> storedFiles = new HashMap<File, Object[]>();
+        // Contents included several times, stored once in their own entry
+        SharedContentIndex sharedFiles = findSharedFiles();
 
         // Pack200 files map
-        Map<Integer, File> pack200Map = new HashMap<Integer, File>();
-        int pack200Counter = 0;
+        Map<File, Integer> pack200Map = new LinkedHashMap<File, Integer>();
 
         // Force UTF-8 encoding in order to have proper ZipEntry names.
         primaryJarStream.setEncoding("utf-8");
 
         // First write the serialized files and file metadata data for each pack
         // while counting bytes.
+        PackCache packCache = null;
+        if (isSegmentPackWriting())
+        {
+            packCache = createPackCache();
+            writePackSegments(sharedFiles, pack200Map, packCache);
+        }
+        else
+        {
+            if (compilerData.getPackCacheDir() != null)
+            {
+                sendMsg("The pack cache " + compilerData.getPackCacheDir() + " is not used: packs are only cached"
+                        + " when they are all written to the installer jar, with the default compression or a"
+                        + " compression format splitting packs into blocks", PackagerListener.MSG_WARN);
+            }
+            int packNumber = 0;
+            for (PackInfo packInfo : packsList)
+            {
+                Pack pack = packInfo.getPack();
+                sendMsg("Writing Pack " + packNumber + ": " + pack.name, PackagerListener.MSG_VERBOSE);
+
+                // create a pack specific jar if required
+                // REFACTOR : Repare web installer
+                // REFACTOR : Use a mergeManager for each packages that will be added to the main merger
+
+//                if (packJarsSeparate) {
+                // See installer.Unpacker#getPackAsStream for the counterpart
+//                    String name = baseFile.getName() + ".pack-" + pack.id + ".jar";
+//                    packStream = IoHelper.getJarOutputStream(name, baseFile.getParentFile());
+//                }
+
+                // Retrieve the correct output stream
+                org.apache.tools.zip.ZipEntry entry = new org.apache.tools.zip.ZipEntry(RESOURCES_PATH + "packs/pack-" + getPackId(pack));
+                primaryJarStream.putNextEntry(entry);
+                primaryJarStream.flush(); // flush before we start counting
+
+                OutputStream packStream = outputStream;
+                if (compressor.getBlockSize() > 0)
+                {
+                    // the compressor encodes every pack itself
+                    packStream = compressor.getOutputStream(primaryJarStream);
+                }
 
-        int packNumber = 0;
-        IXMLElement root = new XMLElementImpl("packs");
+                writePackContent(packInfo, packStream, sharedFiles, pack200Map, true);
+
+                if (!compressor.useStandardCompression())
+                {
+                    packStream.close();
+                }
 
+                primaryJarStream.closeEntry();
+
+                // close pack specific jar if required
+                if (packJarsSeparate)
+                {
+                    primaryJarStream.closeAlways();
+                }
+                packNumber++;
+            }
+        }
+
+        IXMLElement root = new XMLElementImpl("packs");
         for (PackInfo packInfo : packsList)
         {
             Pack pack = packInfo.getPack();
-            pack.nbytes = 0;
-            if ((pack.id == null) || (pack.id.length() == 0))
+            IXMLElement child = new XMLElementImpl("pack", root);
+            child.setAttribute("nbytes", Long.toString(pack.nbytes));
+            child.setAttribute("name", pack.name);
+            if (pack.id != null)
             {
-                pack.id = pack.name;
+                child.setAttribute("id", pack.id);
             }
+            root.addChild(child);
+        }
 
-            // create a pack specific jar if required
-            // REFACTOR : Repare web installer
-            // REFACTOR : Use a mergeManager for each packages that will be added to the main merger
-
-//            if (packJarsSeparate) {
-            // See installer.Unpacker#getPackAsStream for the counterpart
-//                String name = baseFile.getName() + ".pack-" + pack.id + ".jar";
-//                packStream = IoHelper.getJarOutputStream(name, baseFile.getParentFile());
-//            }
-
-            sendMsg("Writing Pack " + packNumber + ": " + pack.name, PackagerListener.MSG_VERBOSE);
+        // Now that we know sizes, write pack metadata to primary jar.
+        primaryJarStream.putNextEntry(new org.apache.tools.zip.ZipEntry(RESOURCES_PATH + "packs.info"));
+        ObjectOutputStream out = new ObjectOutputStream(primaryJarStream);
+        out.writeInt(packsList.size());
 
-            // Retrieve the correct output stream
-            org.apache.tools.zip.ZipEntry entry = new org.apache.tools.zip.ZipEntry(RESOURCES_PATH + "packs/pack-" + pack.id);
-            primaryJarStream.putNextEntry(entry);
-            primaryJarStream.flush(); // flush before we start counting
+        for (PackInfo packInfo : packsList)
+        {
+            out.writeObject(packInfo.getPack());
+        }
+        out.flush();
+        primaryJarStream.closeEntry();
 
+        // Pack200 files
+        Pack200.Packer packer = createAgressivePack200Packer();
+        for (Map.Entry<File, Integer> pack200File : pack200Map.entrySet())
+        {
+            primaryJarStream.putNextEntry(new org.apache.tools.zip.ZipEntry(RESOURCES_PATH + "packs/pack200-" + pack200File.getValue()));
+            JarFile jar = new JarFile(pack200File.getKey());
+            packer.pack(jar, primaryJarStream);
+            jar.close();
+            primaryJarStream.closeEntry();
+        }
 
-            ByteCountingOutputStream dos = new ByteCountingOutputStream(outputStream);
-            ObjectOutputStream objOut = new ObjectOutputStream(dos);
+        // Shared files
+        writeSharedContents(sharedFiles, packCache);
+        if (packCache != null)
+        {
+            packCache.prune();
+        }
+    }
 
-            // We write the actual pack files
-            objOut.writeInt(packInfo.getPackFiles().size());
+    /**
+     * Stores each shared content in its own entry. The contents are encoded like the packs, so that
+     * the installer decodes them with the pack decoder, if any. If a pack cache is configured, an
+     * encoded content is cached under its digest and the compression settings.
+     *
+     * @param sharedFiles the shared contents
+     * @param packCache   the pack cache, or <tt>null</tt> if packs are not cached
+     * @throws Exception if a content cannot be compressed or written
+     */
+    private void writeSharedContents(SharedContentIndex sharedFiles, PackCache packCache) throws Exception
+    {
+        List<File> sharedContents = sharedFiles.getContents();
+        if (!sharedContents.isEmpty())
+        {
+            sendMsg("Storing " + sharedContents.size() + " shared contents, saving "
+                    + sharedFiles.getSavedBytes() + " bytes", PackagerListener.MSG_VERBOSE);
+        }
+        for (int key = 0; key < sharedContents.size(); key++)
+        {
+            String entryName = RESOURCES_PATH + "packs/shared-" + key;
+            File content = sharedContents.get(key);
+            if (info.getPackDecoderClassName() == null)
+            {
+                // packs are deflated as jar entries, and so is the content
+                primaryJarStream.putNextEntry(new org.apache.tools.zip.ZipEntry(entryName));
+                FileInputStream inStream = new FileInputStream(content);
+                try
+                {
+                    IOUtils.copy(inStream, primaryJarStream);
+                }
+                finally
+                {
+                    inStream.close();
+                }
+                primaryJarStream.closeEntry();
+                continue;
+            }
+            String fingerprint = null;
+            if (packCache != null)
+            {
+                PackCache.Fingerprint contentFingerprint = new PackCache.Fingerprint(getCompressionSettings());
+                contentFingerprint.write(("shared:" + sharedFiles.getDigest(content)).getBytes("UTF-8"));
+                fingerprint = contentFingerprint.getValue();
+                File cachedContent = packCache.get(fingerprint);
+                if (cachedContent != null)
+                {
+                    writeStoredEntry(entryName, cachedContent);
+                    continue;
+                }
+            }
+            PackSegment segment = new PackSegment("shared-" + key, content, compressor, compilerData.getComprLevel());
+            try
+            {
+                for (Callable<Object> block : segment.createBlocks())
+                {
+                    block.call();
+                }
+                segment.finish();
+                if (packCache != null)
+                {
+                    writeStoredEntry(entryName, packCache.store(fingerprint, segment));
+                    continue;
+                }
+                org.apache.tools.zip.ZipEntry entry = new org.apache.tools.zip.ZipEntry(entryName);
+                entry.setMethod(org.apache.tools.zip.ZipEntry.STORED);
+                entry.setSize(segment.getCompressedSize());
+                entry.setCrc(segment.getCrc());
+                primaryJarStream.putNextEntry(entry);
+                segment.writeTo(primaryJarStream);
+                primaryJarStream.closeEntry();
+            }
+            finally
+            {
+                segment.delete();
+            }
+        }
+    }
 
+    /**
+     * Finds the files which may have a content included more than once in the packs, whatever
+     * their source path. Such a content is stored once in a separate entry of the installer jar,
+     * which the installer opens directly instead of reading through a previous pack up to the file.
+     * Only files having the same length as another file are read to be compared. Files of loose
+     * packs, pack200 jars (already stored in their own entry) and files of packs written to
+     * separate jars are never shared.
+     *
+     * @return the index of the shared contents
+     * @throws IOException if a jar cannot be read
+     */
+    private SharedContentIndex findSharedFiles() throws IOException
+    {
+        SharedContentIndex sharedFiles = new SharedContentIndex();
+        if (packJarsSeparate)
+        {
+            return sharedFiles;
+        }
+        for (PackInfo packInfo : packsList)
+        {
+            if (packInfo.getPack().loose)
+            {
+                continue;
+            }
             for (PackFile packFile : packInfo.getPackFiles())
             {
-                boolean addFile = !pack.loose;
-                boolean pack200 = false;
+                if (packFile.isDirectory())
+                {
+                    continue;
+                }
                 File file = packInfo.getFile(packFile);
-
-                if (file.getName().toLowerCase().endsWith(".jar") && info.isPack200Compression() && isNotSignedJar(file))
+                if (!isPack200Jar(file))
                 {
-                    packFile.setPack200Jar(true);
-                    pack200 = true;
+                    sharedFiles.add(file);
                 }
+            }
+        }
+        sharedFiles.build();
+        return sharedFiles;
+    }
+
+    /**
+     * Determines if a file is stored as a pack200 archive.
+     *
+     * @param file the file
+     * @return <tt>true</tt> if the file is an unsigned jar and pack200 compression is enabled
+     * @throws IOException if the jar cannot be read
+     */
+    private boolean isPack200Jar(File file) throws IOException
+    {
+        return file.getName().toLowerCase().endsWith(".jar") && info.isPack200Compression() && isNotSignedJar(file);
+    }
 
-                // use a back reference if file was in previous pack, and in
-                // same jar
-                Object[] info = storedFiles.get(file);
-                if (info != null && !packJarsSeparate)
+    /**
+     * Returns whether the packs are written as segments compressed by a pool of worker threads.
+     * This is only possible when all packs go to the primary jar, with the standard compression
+     * and more than one thread or a pack cache, or with a compressor splitting the packs into
+     * blocks.
+     *
+     * @return <tt>true</tt> if the packs are written as separately compressed segments
+     */
+    private boolean isSegmentPackWriting()
+    {
+        if (packJarsSeparate)
+        {
+            return false;
+        }
+        return compressor.getBlockSize() > 0 || (compressor.useStandardCompression()
+                && (compilerData.getPackThreads() > 1 || compilerData.getPackCacheDir() != null));
+    }
+
+    /**
+     * Writes each pack into its own temporary segment and compresses the segments, or the blocks
+     * of the segments, on a pool of worker threads. The uncompressed segments are written in pack
+     * order, so that pack200 keys are the same as with the sequential path. The compressed
+     * segments are finally stored in the installer jar in pack order.
+     * <p/>
+     * If a pack cache is configured, packs whose fingerprint did not change since a former
+     * compilation are copied from the cache instead of being compressed again.
+     *
+     * @param sharedFiles the files stored in shared entries
+     * @param pack200Map  the pack200 files map
+     * @param packCache   the pack cache, or <tt>null</tt> if packs are not cached
+     * @throws Exception if a pack cannot be written
+     */
+    private void writePackSegments(SharedContentIndex sharedFiles, Map<File, Integer> pack200Map,
+                                   PackCache packCache) throws Exception
+    {
+        int threads = Math.max(compilerData.getPackThreads(), 1);
+        sendMsg("Compressing packs using " + threads + " threads", PackagerListener.MSG_VERBOSE);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<PackSegment> segments = new ArrayList<PackSegment>();
+        List<String> fingerprints = new ArrayList<String>();
+        List<File> cachedPacks = new ArrayList<File>();
+        List<List<Future<Object>>> compressed = new ArrayList<List<Future<Object>>>();
+        try
+        {
+            int packNumber = 0;
+            for (PackInfo packInfo : packsList)
+            {
+                Pack pack = packInfo.getPack();
+                String fingerprint = null;
+                File cachedPack = null;
+                if (packCache != null)
                 {
-                    packFile.setPreviousPackFileRef((String) info[0], (Long) info[1]);
-                    addFile = false;
+                    fingerprint = getFingerprint(packInfo, sharedFiles, pack200Map);
+                    cachedPack = packCache.get(fingerprint);
+                }
+                fingerprints.add(fingerprint);
+                cachedPacks.add(cachedPack);
+                PackSegment segment = new PackSegment(getPackId(pack), compressor, compilerData.getComprLevel());
+                segments.add(segment);
+                List<Future<Object>> blocks = new ArrayList<Future<Object>>();
+                compressed.add(blocks);
+                if (cachedPack != null)
+                {
+                    sendMsg("Reusing Pack " + packNumber + ": " + pack.name, PackagerListener.MSG_VERBOSE);
+                    packNumber++;
+                    continue;
                 }
 
-                objOut.writeObject(packFile); // base info
-
-                if (addFile && !packFile.isDirectory())
+                sendMsg("Writing Pack " + packNumber + ": " + pack.name, PackagerListener.MSG_VERBOSE);
+                OutputStream segmentStream = segment.openRawStream();
+                try
                 {
-                    long pos = dos.getByteCount(); // get the position
+                    writePackContent(packInfo, segmentStream, sharedFiles, pack200Map, true);
+                }
+                finally
+                {
+                    segmentStream.close();
+                }
+                for (Callable<Object> block : segment.createBlocks())
+                {
+                    blocks.add(executor.submit(block));
+                }
+                packNumber++;
+            }
 
-                    if (pack200)
+            for (int i = 0; i < segments.size(); i++)
+            {
+                PackSegment segment = segments.get(i);
+                String entryName = RESOURCES_PATH + "packs/pack-" + segment.getPackId();
+                File cachedPack = cachedPacks.get(i);
+                if (cachedPack != null)
+                {
+                    writeStoredEntry(entryName, cachedPack);
+                    continue;
+                }
+                for (Future<Object> block : compressed.get(i))
+                {
+                    try
                     {
-                        /*
-                         * Warning!
-                         * 
-                         * Pack200 archives must be stored in separated streams, as the Pack200 unpacker
-                         * reads the entire stream...
-                         *
-                         * See http://java.sun.com/javase/6/docs/api/java/util/jar/Pack200.Unpacker.html
-                         */
-                        pack200Map.put(pack200Counter, file);
-                        objOut.writeInt(pack200Counter);
-                        pack200Counter = pack200Counter + 1;
+                        block.get();
                     }
-                    else
+                    catch (ExecutionException exception)
                     {
-                        FileInputStream inStream = new FileInputStream(file);
-                        long bytesWritten = IoHelper.copyStream(inStream, objOut);
-                        inStream.close();
-                        if (bytesWritten != packFile.length())
-                        {
-                            throw new IOException("File size mismatch when reading " + file);
-                        }
+                        throw new CompilerException("Failed to compress pack " + segment.getPackId(),
+                                exception.getCause());
                     }
-
-                    storedFiles.put(file, new Object[]{pack.id, pos});
                 }
-
-                // even if not written, it counts towards pack size
-                pack.nbytes += packFile.size();
+                segment.finish();
+                if (packCache != null)
+                {
+                    writeStoredEntry(entryName, packCache.store(fingerprints.get(i), segment));
+                    continue;
+                }
+                org.apache.tools.zip.ZipEntry entry = new org.apache.tools.zip.ZipEntry(entryName);
+                entry.setMethod(org.apache.tools.zip.ZipEntry.STORED);
+                entry.setSize(segment.getCompressedSize());
+                entry.setCrc(segment.getCrc());
+                primaryJarStream.putNextEntry(entry);
+                segment.writeTo(primaryJarStream);
+                primaryJarStream.closeEntry();
             }
-
-            // Write out information about parsable files
-            objOut.writeInt(packInfo.getParsables().size());
-
-            for (ParsableFile parsableFile : packInfo.getParsables())
+        }
+        finally
+        {
+            executor.shutdownNow();
+            for (PackSegment segment : segments)
             {
-                objOut.writeObject(parsableFile);
+                segment.delete();
             }
+        }
+    }
 
-            // Write out information about executable files
-            objOut.writeInt(packInfo.getExecutables().size());
-            for (ExecutableFile executableFile : packInfo.getExecutables())
-            {
-                objOut.writeObject(executableFile);
-            }
+    /**
+     * Creates the pack cache, if a cache directory is configured. A relative directory is
+     * resolved against the base directory.
+     *
+     * @return the pack cache, or <tt>null</tt> if packs are not cached
+     * @throws IOException if the cache directory cannot be created
+     */
+    private PackCache createPackCache() throws IOException
+    {
+        String cacheDir = compilerData.getPackCacheDir();
+        if (cacheDir == null)
+        {
+            return null;
+        }
+        File directory = new File(cacheDir);
+        if (!directory.isAbsolute())
+        {
+            directory = new File(compilerData.getBasedir(), cacheDir);
+        }
+        return new PackCache(directory);
+    }
 
-            // Write out information about updatecheck files
-            objOut.writeInt(packInfo.getUpdateChecks().size());
-            for (UpdateCheck updateCheck : packInfo.getUpdateChecks())
-            {
-                objOut.writeObject(updateCheck);
-            }
+    /**
+     * Computes the fingerprint of a pack, describing the files stored in the pack by their
+     * path, length, modification time and digest instead of compressing them. A file keeping its
+     * length and modification time, as with <tt>touch -r</tt> or a checkout preserving times, is
+     * still detected as changed. Files with a shared content are described by their key only: the
+     * shared entries are cached under their own digest. Nothing is copied or compressed.
+     *
+     * @param packInfo    the pack
+     * @param sharedFiles the files stored in shared entries
+     * @param pack200Map  the pack200 files map
+     * @return the fingerprint of the pack
+     * @throws IOException if the pack cannot be described
+     */
+    private String getFingerprint(PackInfo packInfo, SharedContentIndex sharedFiles,
+                                  Map<File, Integer> pack200Map) throws IOException
+    {
+        PackCache.Fingerprint fingerprint = new PackCache.Fingerprint(getCompressionSettings());
+        writePackContent(packInfo, fingerprint, sharedFiles, pack200Map, false);
+        return fingerprint.getValue();
+    }
 
-            // Cleanup
-            objOut.flush();
-            if (!compressor.useStandardCompression())
+    /**
+     * Returns the settings the compressed packs depend on, part of their fingerprints.
+     *
+     * @return the pack format version and the compression settings
+     */
+    private String getCompressionSettings()
+    {
+        return PackStreamFormat.VERSION + ":" + compressor.getCompressionFormatSymbols()[0] + ":"
+                + compilerData.getComprLevel() + ":" + compilerData.getComprWindow() + ":"
+                + compressor.getBlockSize() + ":" + compressor.getEncoderSettings();
+    }
+
+    /**
+     * Stores a file as an uncompressed entry of the installer jar.
+     *
+     * @param name the entry name
+     * @param file the file to store
+     * @throws IOException if the file cannot be read or written
+     */
+    private void writeStoredEntry(String name, File file) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            int read;
+            while ((read = in.read(buffer)) != -1)
             {
-                outputStream.close();
+                crc.update(buffer, 0, read);
             }
+        }
+        finally
+        {
+            in.close();
+        }
+        org.apache.tools.zip.ZipEntry entry = new org.apache.tools.zip.ZipEntry(name);
+        entry.setMethod(org.apache.tools.zip.ZipEntry.STORED);
+        entry.setSize(file.length());
+        entry.setCrc(crc.getValue());
+        primaryJarStream.putNextEntry(entry);
+        in = new FileInputStream(file);
+        try
+        {
+            IOUtils.copy(in, primaryJarStream);
+        }
+        finally
+        {
+            in.close();
+        }
+        primaryJarStream.closeEntry();
+    }
 
-            primaryJarStream.closeEntry();
+    /**
+     * Returns the identifier of a pack, defaulting it to the pack name.
+     *
+     * @param pack the pack
+     * @return the pack identifier
+     */
+    private String getPackId(Pack pack)
+    {
+        if ((pack.id == null) || (pack.id.length() == 0))
+        {
+            pack.id = pack.name;
+        }
+        return pack.id;
+    }
+
+    /**
+     * Writes the files and file metadata of a pack, updating the pack size.
+     *
+     * @param packInfo    the pack to write
+     * @param os          the stream to write to; it is flushed but not closed
+     * @param sharedFiles the files stored in shared entries
+     * @param pack200Map  the pack200 files map
+     * @param withContent whether the content of the files is copied, or only described to
+     *                    fingerprint the pack
+     * @throws IOException if the pack cannot be written
+     */
+    private void writePackContent(PackInfo packInfo, OutputStream os, SharedContentIndex sharedFiles,
+                                  Map<File, Integer> pack200Map, boolean withContent) throws IOException
+    {
+        Pack pack = packInfo.getPack();
+        pack.nbytes = 0;
+
+        PackStreamWriter packWriter = new PackStreamWriter(os);
+
+        // We write the actual pack files
+        packWriter.writeHeader(packInfo.getPackFiles().size());
 
-            // close pack specific jar if required
-            if (packJarsSeparate)
+        for (PackFile packFile : packInfo.getPackFiles())
+        {
+            boolean addFile = !pack.loose;
+            boolean pack200 = false;
+            File file = packInfo.getFile(packFile);
+
+            if (isPack200Jar(file))
             {
-                primaryJarStream.closeAlways();
+                packFile.setPack200Jar(true);
+                pack200 = true;
             }
 
-            IXMLElement child = new XMLElementImpl("pack", root);
-            child.setAttribute("nbytes", Long.toString(pack.nbytes));
-            child.setAttribute("name", pack.name);
-            if (pack.id != null)
+            boolean withData = addFile && !packFile.isDirectory();
+
+            // contents which may be included several times are stored in a shared entry
+            Integer sharedKey = withData ? sharedFiles.getKey(file) : null;
+            packFile.setSharedData(sharedKey != null);
+
+            packWriter.writeFile(packFile, withData); // base info
+
+            if (withData)
             {
-                child.setAttribute("id", pack.id);
+                if (pack200)
+                {
+                    /*
+                     * Warning!
+                     *
+                     * Pack200 archives must be stored in separated streams, as the Pack200 unpacker
+                     * reads the entire stream...
+                     *
+                     * See http://java.sun.com/javase/6/docs/api/java/util/jar/Pack200.Unpacker.html
+                     */
+                    Integer pack200Key = pack200Map.get(file);
+                    if (pack200Key == null)
+                    {
+                        pack200Key = pack200Map.size();
+                        pack200Map.put(file, pack200Key);
+                    }
+                    packWriter.writeDataKey(pack200Key);
+                }
+                else if (sharedKey != null)
+                {
+                    packWriter.writeDataKey(sharedKey);
+                }
+                else if (!withContent)
+                {
+                    packWriter.writeContentStamp(file, sharedFiles.getDigest(file));
+                }
+                else
+                {
+                    FileInputStream inStream = new FileInputStream(file);
+                    long bytesWritten = packWriter.writeData(inStream, packFile.length());
+                    inStream.close();
+                    if (bytesWritten != packFile.length())
+                    {
+                        throw new IOException("File size mismatch when reading " + file);
+                    }
+                }
             }
-            root.addChild(child);
 
-            packNumber++;
+            // even if not written, it counts towards pack size
+            pack.nbytes += packFile.size();
         }
 
-        // Now that we know sizes, write pack metadata to primary jar.
-        primaryJarStream.putNextEntry(new org.apache.tools.zip.ZipEntry(RESOURCES_PATH + "packs.info"));
-        ObjectOutputStream out = new ObjectOutputStream(primaryJarStream);
-        out.writeInt(packsList.size());
+        ObjectOutputStream objOut = packWriter.getMetadataStream();
 
-        for (PackInfo packInfo : packsList)
+        // Write out information about parsable files
+        objOut.writeInt(packInfo.getParsables().size());
+
+        for (ParsableFile parsableFile : packInfo.getParsables())
         {
-            out.writeObject(packInfo.getPack());
+            objOut.writeObject(parsableFile);
         }
-        out.flush();
-        primaryJarStream.closeEntry();
 
-        // Pack200 files
-        Pack200.Packer packer = createAgressivePack200Packer();
-        for (Integer key : pack200Map.keySet())
+        // Write out information about executable files
+        objOut.writeInt(packInfo.getExecutables().size());
+        for (ExecutableFile executableFile : packInfo.getExecutables())
         {
-            File file = pack200Map.get(key);
-            primaryJarStream.putNextEntry(new org.apache.tools.zip.ZipEntry(RESOURCES_PATH + "packs/pack200-" + key));
-            JarFile jar = new JarFile(file);
-            packer.pack(jar, primaryJarStream);
-            jar.close();
-            primaryJarStream.closeEntry();
+            objOut.writeObject(executableFile);
         }
+
+        // Write out information about updatecheck files
+        objOut.writeInt(packInfo.getUpdateChecks().size());
+        for (UpdateCheck updateCheck : packInfo.getUpdateChecks())
+        {
+            objOut.writeObject(updateCheck);
+        }
+
+        // Cleanup
+        objOut.flush();
+        packWriter.flush();
     }
 
     private Pack200.Packer createAgressivePack200Packer()
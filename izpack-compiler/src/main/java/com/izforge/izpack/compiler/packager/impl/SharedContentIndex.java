@@ -0,0 +1,225 @@
+/*
+ * IzPack - Copyright 2001-2010 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the files whose content is included more than once in the packs, whatever their source
+ * path. Files are first grouped by length; only files having the same length as another file are
+ * hashed, so files of other lengths are never read. Every distinct content included more than once
+ * gets a key, the index of the entry the content is stored in; a content included once stays in
+ * its pack.
+ */
+public class SharedContentIndex
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Number of times each file is included, in inclusion order.
+     */
+    private final Map<File, Integer> occurrences = new LinkedHashMap<File, Integer>();
+
+    /**
+     * The key of the content of each shared file.
+     */
+    private final Map<File, Integer> keys = new HashMap<File, Integer>();
+
+    /**
+     * The digest of the content of each file hashed so far.
+     */
+    private final Map<File, String> digests = new HashMap<File, String>();
+
+    /**
+     * A file holding each shared content, by key.
+     */
+    private final List<File> contents = new ArrayList<File>();
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * Records the inclusion of a file in a pack.
+     *
+     * @param file the file
+     */
+    public void add(File file)
+    {
+        Integer count = occurrences.get(file);
+        occurrences.put(file, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Assigns a key to every content included more than once. Must be called once all files are
+     * added.
+     *
+     * @throws IOException if a file cannot be read
+     */
+    public void build() throws IOException
+    {
+        Map<Long, List<File>> filesByLength = new LinkedHashMap<Long, List<File>>();
+        for (File file : occurrences.keySet())
+        {
+            Long length = file.length();
+            List<File> files = filesByLength.get(length);
+            if (files == null)
+            {
+                files = new ArrayList<File>();
+                filesByLength.put(length, files);
+            }
+            files.add(file);
+        }
+
+        for (List<File> files : filesByLength.values())
+        {
+            if (files.size() == 1)
+            {
+                if (occurrences.get(files.get(0)) > 1)
+                {
+                    share(files);
+                }
+                continue;
+            }
+            Map<String, List<File>> filesByDigest = new LinkedHashMap<String, List<File>>();
+            for (File file : files)
+            {
+                String digest = getDigest(file);
+                List<File> identical = filesByDigest.get(digest);
+                if (identical == null)
+                {
+                    identical = new ArrayList<File>();
+                    filesByDigest.put(digest, identical);
+                }
+                identical.add(file);
+            }
+            for (List<File> identical : filesByDigest.values())
+            {
+                if (identical.size() > 1 || occurrences.get(identical.get(0)) > 1)
+                {
+                    share(identical);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the key of the content of a file.
+     *
+     * @param file the file
+     * @return the key of the entry holding its content, or <tt>null</tt> if the content is
+     *         included only once
+     */
+    public Integer getKey(File file)
+    {
+        return keys.get(file);
+    }
+
+    /**
+     * Returns the digest of the content of a file, reading the file unless it was already hashed.
+     *
+     * @param file the file
+     * @return the hexadecimal SHA-1 digest of the content
+     * @throws IOException if the file cannot be read
+     */
+    public String getDigest(File file) throws IOException
+    {
+        String result = digests.get(file);
+        if (result == null)
+        {
+            MessageDigest digest;
+            try
+            {
+                digest = MessageDigest.getInstance("SHA-1");
+            }
+            catch (NoSuchAlgorithmException exception)
+            {
+                throw new IllegalStateException(exception);
+            }
+            InputStream in = new FileInputStream(file);
+            try
+            {
+                int read;
+                while ((read = in.read(buffer)) != -1)
+                {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+            result = new BigInteger(1, digest.digest()).toString(16);
+            digests.put(file, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a file for each shared content.
+     *
+     * @return the files, indexed by key
+     */
+    public List<File> getContents()
+    {
+        return contents;
+    }
+
+    /**
+     * Returns the number of bytes not stored thanks to shared contents.
+     *
+     * @return the sum of the lengths of the redundant inclusions
+     */
+    public long getSavedBytes()
+    {
+        long saved = 0;
+        for (Map.Entry<File, Integer> entry : occurrences.entrySet())
+        {
+            if (keys.containsKey(entry.getKey()))
+            {
+                saved += entry.getValue() * entry.getKey().length();
+            }
+        }
+        for (File content : contents)
+        {
+            saved -= content.length();
+        }
+        return saved;
+    }
+
+    private void share(List<File> identical)
+    {
+        Integer key = contents.size();
+        contents.add(identical.get(0));
+        for (File file : identical)
+        {
+            keys.put(file, key);
+        }
+    }
+}
@@ -22,10 +22,15 @@
 
 package com.izforge.izpack.compiler.stream;
 
+import com.izforge.izpack.merge.jar.RawEntryWriter;
+import com.izforge.izpack.util.IoHelper;
+
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 //import java.util.zip.ZipException;
@@ -46,14 +51,22 @@ import java.util.jar.Manifest;
  * java.util.jar.JarOutputStream. Therefore we create an own class
  * which supports it. Really the hole work will be delegated to the
  * ZipOutputStream from the apache team which solves the problem.
+ * <p/>
+ * When it writes to a file, already deflated entries of other jars can be
+ * copied without inflating and deflating them again, see {@link #writeRawEntry}.
  *
  * @author Klaus Bartz
  */
-public class JarOutputStream extends org.apache.tools.zip.ZipOutputStream
+public class JarOutputStream extends org.apache.tools.zip.ZipOutputStream implements RawEntryWriter
 {
     private static final int JAR_MAGIC = 0xCAFE;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_LENGTH = 30;
     private boolean firstEntry = true;
     private boolean preventClose = false;
+    private int method = DEFLATED;
+    private File file;
+    private RandomAccessFile headerFile;
 
     /**
      * Creates a new <code>JarOutputStream</code> with no manifest.
@@ -83,6 +96,7 @@ public class JarOutputStream extends org.apache.tools.zip.ZipOutputStream
     public JarOutputStream(File fout, Manifest man) throws IOException
     {
         super(fout);
+        file = fout;
         if (man == null)
         {
             throw new NullPointerException("man");
@@ -105,6 +119,7 @@ public class JarOutputStream extends org.apache.tools.zip.ZipOutputStream
     public JarOutputStream(File arg0) throws IOException
     {
         super(arg0);
+        file = arg0;
     }
 
     /**
@@ -145,6 +160,77 @@ public class JarOutputStream extends org.apache.tools.zip.ZipOutputStream
         super.putNextEntry(ze);
     }
 
+    public void setMethod(int method)
+    {
+        super.setMethod(method);
+        this.method = method;
+    }
+
+    /**
+     * Returns true if the stream writes to a file opened for random access and
+     * entries are deflated by default.
+     */
+    public boolean isRawWriteSupported()
+    {
+        return file != null && isSeekable() && method == DEFLATED;
+    }
+
+    /**
+     * Writes an entry whose data is already deflated, for instance an entry of
+     * another jar file. The data is written as the one of a stored entry; then the
+     * local header of the entry is rewritten in the file and the entry is changed
+     * for the central directory, so that it describes the deflated entry.
+     *
+     * @param entry          the entry to write. Its name and time are used
+     * @param compressedData the deflated data of the entry
+     * @param compressedSize the length of the deflated data
+     * @param crc            the CRC-32 of the uncompressed data
+     * @param size           the size of the uncompressed data
+     * @throws IOException if an I/O error has occurred
+     */
+    public void writeRawEntry(org.apache.tools.zip.ZipEntry entry, InputStream compressedData, long compressedSize,
+                              long crc, long size) throws IOException
+    {
+        if (!isRawWriteSupported())
+        {
+            throw new IOException("Deflated data can only be copied to a file");
+        }
+        if (headerFile == null)
+        {
+            headerFile = new RandomAccessFile(file, "rw");
+        }
+        // the apache stream writes directly to the file: the entry starts at its end
+        long headerOffset = headerFile.length();
+        entry.setMethod(STORED);
+        entry.setSize(compressedSize);
+        putNextEntry(entry);
+        if (IoHelper.copyStream(compressedData, this) != compressedSize)
+        {
+            throw new IOException("Unexpected length of deflated data for " + entry.getName());
+        }
+        closeEntry();
+
+        byte[] header = new byte[LOCAL_HEADER_LENGTH];
+        headerFile.seek(headerOffset);
+        headerFile.readFully(header);
+        if (get32(header, 0) != LOCAL_HEADER_SIGNATURE || get16(header, 8) != STORED)
+        {
+            throw new IOException("Cannot find the local header of " + entry.getName());
+        }
+        set16(header, 4, 20);           // version needed to extract
+        set16(header, 8, DEFLATED);     // compression method
+        set32(header, 14, crc);
+        set32(header, 18, compressedSize);
+        set32(header, 22, size);
+        headerFile.seek(headerOffset);
+        headerFile.write(header);
+
+        entry.setMethod(DEFLATED);
+        entry.setCrc(crc);
+        entry.setSize(size);
+        entry.setCompressedSize(compressedSize);
+    }
+
     /**
      * @return Returns the preventClose.
      */
@@ -182,7 +268,18 @@ public class JarOutputStream extends org.apache.tools.zip.ZipOutputStream
     {
         if (!isPreventClose())
         {
-            super.close();
+            try
+            {
+                super.close();
+            }
+            finally
+            {
+                if (headerFile != null)
+                {
+                    headerFile.close();
+                    headerFile = null;
+                }
+            }
         }
     }
 
@@ -238,6 +335,16 @@ public class JarOutputStream extends org.apache.tools.zip.ZipOutputStream
         return (b[off] & 0xff) | ((b[off + 1] & 0xff) << 8);
     }
 
+    /*
+     * Fetches 32-bit value from byte array at specified offset.
+     * The bytes are assumed to be in Intel (little-endian) byte order.
+     */
+
+    private static long get32(byte[] b, int off)
+    {
+        return get16(b, off) | ((long) get16(b, off + 2) << 16);
+    }
+
     /*
      * Sets 16-bit value at specified offset. The bytes are assumed to
      * be in Intel (little-endian) byte order.
@@ -249,4 +356,15 @@ public class JarOutputStream extends org.apache.tools.zip.ZipOutputStream
         b[off + 1] = (byte) (value >> 8);
     }
 
+    /*
+     * Sets 32-bit value at specified offset. The bytes are assumed to
+     * be in Intel (little-endian) byte order.
+     */
+
+    private static void set32(byte[] b, int off, long value)
+    {
+        set16(b, off, (int) value);
+        set16(b, off + 2, (int) (value >> 16));
+    }
+
 }
@@ -61,4 +61,35 @@ public class CliAnalyzerTest
         assertThat(data.getOutput(), Is.is("graou.jar"));
     }
 
+    @Test
+    public void packThreadsShouldBeParsed() throws Exception
+    {
+        CompilerData data = analyzer.parseArgs(new String[]{"myInstall.xml", "-t 4"});
+        assertThat(data.getPackThreads(), Is.is(4));
+        assertThat(data.getScanThreads(), Is.is(1));
+    }
+
+    @Test
+    public void scanThreadsShouldBeParsed() throws Exception
+    {
+        CompilerData data = analyzer.parseArgs(new String[]{"myInstall.xml", "-scanthreads", "4"});
+        assertThat(data.getScanThreads(), Is.is(4));
+        assertThat(data.getPackThreads(), Is.is(1));
+    }
+
+    @Test
+    public void packCacheShouldBeParsed() throws Exception
+    {
+        CompilerData data = analyzer.parseArgs(new String[]{"myInstall.xml", "-cache", "target/izpack-cache"});
+        assertThat(data.getPackCacheDir(), Is.is("target/izpack-cache"));
+    }
+
+    @Test
+    public void comprWindowShouldBeParsed() throws Exception
+    {
+        CompilerData data = analyzer.parseArgs(new String[]{"myInstall.xml", "-c xz", "-w 65536"});
+        assertThat(data.getComprFormat(), Is.is("xz"));
+        assertThat(data.getComprWindow(), Is.is(65536));
+    }
+
 }
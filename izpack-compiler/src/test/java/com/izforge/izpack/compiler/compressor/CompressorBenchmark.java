@@ -0,0 +1,185 @@
+package com.izforge.izpack.compiler.compressor;
+
+import com.izforge.izpack.compiler.packager.impl.PackSegment;
+import com.izforge.izpack.merge.MergeManager;
+import org.mockito.Mockito;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares the pack compressors on a corpus: compression ratio, encoding and decoding speed.
+ * The packs are encoded the way the packager does, decoded the way the installer does.
+ * <p/>
+ * This is not a unit test. Run it with the corpus directory and optionally the number of
+ * encoding threads as arguments.
+ */
+public class CompressorBenchmark
+{
+    private static final double MB = 1024 * 1024;
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 1)
+        {
+            System.err.println("Usage: CompressorBenchmark <corpus directory> [threads]");
+            System.exit(1);
+        }
+        int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        MergeManager mergeManager = Mockito.mock(MergeManager.class);
+        PackCompressor[] compressors = {new DefaultPackCompressor(null),
+                new BZip2PackCompressor(null, mergeManager), new XZPackCompressor(null, mergeManager)};
+
+        List<File> files = new ArrayList<File>();
+        listFiles(new File(args[0]), files);
+        long length = 0;
+        for (File file : files)
+        {
+            length += file.length();
+        }
+        System.out.println("Corpus: " + files.size() + " files, " + format(length / MB) + " MB, "
+                + threads + " encoding threads");
+        System.out.println("format     ratio   encode MB/s   decode MB/s");
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            for (PackCompressor compressor : compressors)
+            {
+                run(compressor, files, length, executor);
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    private static void run(PackCompressor compressor, List<File> files, long length, ExecutorService executor)
+            throws Exception
+    {
+        PackSegment segment = new PackSegment("corpus", compressor, -1);
+        OutputStream raw = segment.openRawStream();
+        for (File file : files)
+        {
+            copy(new FileInputStream(file), raw);
+        }
+        raw.close();
+
+        long start = System.nanoTime();
+        List<Future<Object>> blocks = new ArrayList<Future<Object>>();
+        for (Callable<Object> block : segment.createBlocks())
+        {
+            blocks.add(executor.submit(block));
+        }
+        for (Future<Object> block : blocks)
+        {
+            block.get();
+        }
+        segment.finish();
+        double encodeTime = (System.nanoTime() - start) / 1e9;
+
+        File compressed = File.createTempFile("izpack-benchmark", ".pack");
+        try
+        {
+            OutputStream out = new FileOutputStream(compressed);
+            segment.writeTo(out);
+            out.close();
+
+            start = System.nanoTime();
+            long decoded = copy(openDecoder(compressor, compressed), null);
+            double decodeTime = (System.nanoTime() - start) / 1e9;
+            if (decoded != length)
+            {
+                throw new IOException("Decoded " + decoded + " bytes instead of " + length);
+            }
+
+            System.out.println(pad(compressor.getCompressionFormatSymbols()[0], 10)
+                    + pad(format((double) segment.getCompressedSize() / length), 8)
+                    + pad(format(length / MB / encodeTime), 14) + format(length / MB / decodeTime));
+        }
+        finally
+        {
+            segment.delete();
+            compressed.delete();
+        }
+    }
+
+    private static InputStream openDecoder(PackCompressor compressor, File file) throws Exception
+    {
+        String decoderName = compressor.useStandardCompression() ? PackSegment.DECODER_CLASS_NAME
+                : compressor.getDecoderMapperName();
+        Constructor<?> constructor = Class.forName(decoderName).getDeclaredConstructor(InputStream.class);
+        return (InputStream) constructor.newInstance(new BufferedInputStream(new FileInputStream(file)));
+    }
+
+    private static long copy(InputStream in, OutputStream out) throws IOException
+    {
+        byte[] buffer = new byte[64 * 1024];
+        long count = 0;
+        try
+        {
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                if (out != null)
+                {
+                    out.write(buffer, 0, read);
+                }
+                count += read;
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return count;
+    }
+
+    private static void listFiles(File dir, List<File> files)
+    {
+        File[] children = dir.listFiles();
+        if (children == null)
+        {
+            return;
+        }
+        for (File child : children)
+        {
+            if (child.isDirectory())
+            {
+                listFiles(child, files);
+            }
+            else
+            {
+                files.add(child);
+            }
+        }
+    }
+
+    private static String format(double value)
+    {
+        return String.format("%.2f", value);
+    }
+
+    private static String pad(String value, int width)
+    {
+        StringBuilder result = new StringBuilder(value);
+        while (result.length() < width)
+        {
+            result.append(' ');
+        }
+        return result.append(' ').toString();
+    }
+}
@@ -0,0 +1,139 @@
+package com.izforge.izpack.compiler.packager.impl;
+
+import com.izforge.izpack.compiler.compressor.DefaultPackCompressor;
+import com.izforge.izpack.compiler.compressor.XZPackCompressor;
+import com.izforge.izpack.merge.MergeManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsNull.nullValue;
+
+public class PackCacheTest
+{
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        dir = File.createTempFile("izpack-cache", "");
+        dir.delete();
+    }
+
+    @After
+    public void tearDown()
+    {
+        File[] files = dir.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void storedPackIsReusedAndUnusedPacksArePruned() throws Exception
+    {
+        PackCache cache = new PackCache(dir);
+        String fingerprint = fingerprint("pack content");
+        assertThat(cache.get(fingerprint), nullValue());
+
+        File stored = cache.store(fingerprint, createSegment());
+        assertThat(stored.isFile(), is(true));
+
+        PackCache nextBuild = new PackCache(dir);
+        assertThat(nextBuild.get(fingerprint), is(stored));
+        nextBuild.prune();
+        assertThat(stored.isFile(), is(true));
+
+        new PackCache(dir).prune();
+        assertThat(stored.exists(), is(false));
+    }
+
+    @Test
+    public void fingerprintDependsOnSettingsAndContent() throws IOException
+    {
+        assertThat(fingerprint("pack content"), is(fingerprint("pack content")));
+        assertThat(fingerprint("pack content"), not(fingerprint("other content")));
+
+        PackCache.Fingerprint otherSettings = new PackCache.Fingerprint("1:xz:9");
+        otherSettings.write("pack content".getBytes("UTF-8"));
+        assertThat(otherSettings.getValue(), not(fingerprint("pack content")));
+    }
+
+    @Test
+    public void fingerprintDependsOnContentWithSameLengthAndTime() throws IOException
+    {
+        dir.mkdirs();
+        File file = new File(dir, "file.txt");
+        writeFile(file, "version 1");
+        long lastModified = file.lastModified();
+        String before = stamp(file);
+
+        // the content changes but not the length and modification time, as with touch -r
+        writeFile(file, "version 2");
+        file.setLastModified(lastModified);
+        assertThat(file.lastModified(), is(lastModified));
+        assertThat(stamp(file), not(before));
+    }
+
+    @Test
+    public void encoderSettingsDependOnDictionarySize()
+    {
+        XZPackCompressor compressor = new XZPackCompressor(null, Mockito.mock(MergeManager.class));
+        compressor.setCompressionLevel(6);
+        String defaultSettings = compressor.getEncoderSettings();
+        compressor.setDictionarySize(1024 * 1024);
+        assertThat(compressor.getEncoderSettings(), not(defaultSettings));
+    }
+
+    private String fingerprint(String content) throws IOException
+    {
+        PackCache.Fingerprint fingerprint = new PackCache.Fingerprint("1:default:-1");
+        fingerprint.write(content.getBytes("UTF-8"));
+        return fingerprint.getValue();
+    }
+
+    private String stamp(File file) throws IOException
+    {
+        PackCache.Fingerprint fingerprint = new PackCache.Fingerprint("1:default:-1");
+        PackStreamWriter writer = new PackStreamWriter(fingerprint);
+        writer.writeContentStamp(file, new SharedContentIndex().getDigest(file));
+        writer.flush();
+        return fingerprint.getValue();
+    }
+
+    private void writeFile(File file, String content) throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+    }
+
+    private PackSegment createSegment() throws Exception
+    {
+        PackSegment segment = new PackSegment("core", new DefaultPackCompressor(null), -1);
+        OutputStream raw = segment.openRawStream();
+        raw.write("pack content".getBytes("UTF-8"));
+        raw.close();
+        for (Callable<Object> block : segment.createBlocks())
+        {
+            block.call();
+        }
+        segment.finish();
+        return segment;
+    }
+}
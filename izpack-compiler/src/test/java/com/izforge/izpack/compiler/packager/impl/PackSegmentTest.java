@@ -0,0 +1,167 @@
+/*
+ * IzPack - Copyright 2001-2010 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import com.izforge.izpack.compiler.compressor.DefaultPackCompressor;
+import com.izforge.izpack.compiler.compressor.PackCompressor;
+import com.izforge.izpack.compiler.compressor.RawPackCompressor;
+import com.izforge.izpack.compiler.compressor.XZPackCompressor;
+import com.izforge.izpack.merge.MergeManager;
+import com.izforge.izpack.util.file.FileUtils;
+import junit.framework.TestCase;
+import org.mockito.Mockito;
+import org.tukaani.xz.XZInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.InflaterInputStream;
+
+public class PackSegmentTest extends TestCase
+{
+
+    public void testCompressedSegmentInflatesToRawContent() throws Exception
+    {
+        byte[] data = createData();
+        PackSegment segment = createSegment(new DefaultPackCompressor(null), data);
+
+        List<Callable<Object>> blocks = segment.createBlocks();
+        assertEquals(1, blocks.size());
+        compress(segment, blocks);
+        assertEquals("core", segment.getPackId());
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        segment.writeTo(compressed);
+        byte[] bytes = compressed.toByteArray();
+        assertEquals(segment.getCompressedSize(), bytes.length);
+        assertTrue(bytes.length < data.length);
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        assertEquals(segment.getCrc(), crc.getValue());
+
+        InputStream in = new InflaterInputStream(new ByteArrayInputStream(bytes));
+        ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1)
+        {
+            inflated.write(buffer, 0, read);
+        }
+        assertTrue(Arrays.equals(data, inflated.toByteArray()));
+    }
+
+    public void testBlocksAreConcatenated() throws Exception
+    {
+        byte[] data = createData();
+        RawPackCompressor compressor = new RawPackCompressor(null)
+        {
+            public long getBlockSize()
+            {
+                return 30000;
+            }
+        };
+        PackSegment segment = createSegment(compressor, data);
+
+        List<Callable<Object>> blocks = segment.createBlocks();
+        assertEquals(4, blocks.size());
+        compress(segment, blocks);
+
+        ByteArrayOutputStream stored = new ByteArrayOutputStream();
+        segment.writeTo(stored);
+        assertEquals(data.length, segment.getCompressedSize());
+        assertTrue(Arrays.equals(data, stored.toByteArray()));
+    }
+
+    public void testExistingContentIsEncodedForThePackDecoder() throws Exception
+    {
+        // shared contents are encoded like the packs and decoded with the pack decoder
+        byte[] data = createData();
+        File content = FileUtils.createTempFile("izpack-shared", ".raw");
+        OutputStream raw = new FileOutputStream(content);
+        raw.write(data);
+        raw.close();
+        XZPackCompressor compressor = new XZPackCompressor(null, Mockito.mock(MergeManager.class));
+        PackSegment segment = new PackSegment("shared-0", content, compressor, -1);
+
+        compress(segment, segment.createBlocks());
+        // the content is not a temporary copy
+        assertTrue(content.exists());
+        content.delete();
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        segment.writeTo(compressed);
+        assertEquals(segment.getCompressedSize(), compressed.size());
+        assertTrue(compressed.size() < data.length);
+
+        InputStream in = new XZInputStream(new ByteArrayInputStream(compressed.toByteArray()));
+        assertTrue(Arrays.equals(data, read(in)));
+    }
+
+    private byte[] read(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1)
+        {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] createData()
+    {
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++)
+        {
+            data[i] = (byte) (i % 17);
+        }
+        return data;
+    }
+
+    private PackSegment createSegment(PackCompressor compressor, byte[] data) throws IOException
+    {
+        PackSegment segment = new PackSegment("core", compressor, -1);
+        OutputStream raw = segment.openRawStream();
+        raw.write(data);
+        raw.close();
+        return segment;
+    }
+
+    private void compress(PackSegment segment, List<Callable<Object>> blocks) throws Exception
+    {
+        // blocks are compressed in reverse order to check they do not depend on each other
+        for (int i = blocks.size() - 1; i >= 0; i--)
+        {
+            blocks.get(i).call();
+        }
+        segment.finish();
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * IzPack - Copyright 2001-2010 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import com.izforge.izpack.api.data.Blockable;
+import com.izforge.izpack.api.data.OverrideType;
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.installer.unpacker.BinaryPackStreamReader;
+import com.izforge.izpack.installer.unpacker.PackStreamReader;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Writes packs with the {@link PackStreamWriter} and reads them back with the installer reader.
+ */
+public class PackStreamWriterTest extends TestCase
+{
+    private byte[] stream;
+
+    private long offset;
+
+    protected void setUp() throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PackStreamWriter writer = new PackStreamWriter(bytes);
+        writer.writeHeader(2);
+
+        PackFile file = new PackFile("$INSTALL_PATH/lib/a.txt", "lib/a.txt", null, OverrideType.OVERRIDE_TRUE,
+                null, Blockable.BLOCKABLE_NONE, null, 5, 1000, false);
+        writer.writeFile(file, true);
+        offset = writer.getPosition();
+        writer.writeData(new ByteArrayInputStream("hello".getBytes()), 5);
+
+        PackFile reference = new PackFile("$INSTALL_PATH/lib/b.txt", null, null, OverrideType.OVERRIDE_UPDATE,
+                null, null, null, 5, 2000, false);
+        reference.setPreviousPackFileRef("core", offset);
+        reference.setCondition("haveLib");
+        writer.writeFile(reference, false);
+
+        ObjectOutputStream objOut = writer.getMetadataStream();
+        objOut.writeInt(42);
+        objOut.flush();
+        writer.flush();
+        stream = bytes.toByteArray();
+    }
+
+    public void testReadFiles() throws Exception
+    {
+        PackStreamReader reader = PackStreamReader.open(new ByteArrayInputStream(stream));
+        assertTrue(reader instanceof BinaryPackStreamReader);
+        assertEquals(2, reader.readFileCount());
+
+        PackFile file = reader.readPackFile();
+        assertEquals("$INSTALL_PATH/lib/a.txt", file.getTargetPath());
+        assertEquals("lib/a.txt", file.getRelativeSourcePath());
+        assertEquals(OverrideType.OVERRIDE_TRUE, file.override());
+        assertEquals(1000, file.lastModified());
+        assertFalse(file.isBackReference());
+        assertEquals("hello", read(reader.getFileData(file), 5));
+
+        PackFile reference = reader.readPackFile();
+        assertEquals("$INSTALL_PATH/lib/b.txt", reference.getTargetPath());
+        assertEquals("core", reference.previousPackId);
+        assertEquals(offset, reference.offsetInPreviousPack);
+        assertEquals("haveLib", reference.getCondition());
+
+        assertEquals(42, reader.getMetadataStream().readInt());
+    }
+
+    public void testSeekBackReference() throws Exception
+    {
+        PackStreamReader reader = PackStreamReader.open(new ByteArrayInputStream(stream));
+        reader.readFileCount();
+        reader.readPackFile();
+        PackFile reference = reader.readPackFile();
+
+        PackStreamReader previous = PackStreamReader.open(new ByteArrayInputStream(stream));
+        assertEquals("hello", read(previous.seekFileData(reference), 5));
+    }
+
+    public void testCorruptedContentIsReported() throws Exception
+    {
+        stream[(int) offset + 1] ^= 1;
+        PackStreamReader reader = PackStreamReader.open(new ByteArrayInputStream(stream));
+        reader.readFileCount();
+        PackFile file = reader.readPackFile();
+        try
+        {
+            read(reader.getFileData(file), 5);
+            fail("Corrupted content not detected");
+        }
+        catch (IOException expected)
+        {
+            assertTrue(expected.getMessage().indexOf("lib/a.txt") != -1);
+        }
+    }
+
+    public void testSharedDataKey() throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PackStreamWriter writer = new PackStreamWriter(bytes);
+        writer.writeHeader(1);
+        PackFile shared = new PackFile("$INSTALL_PATH/lib/c.txt", null, null, OverrideType.OVERRIDE_TRUE,
+                null, null, null, 1024, 3000, false);
+        shared.setSharedData(true);
+        writer.writeFile(shared, true);
+        writer.writeDataKey(7);
+        writer.flush();
+
+        PackStreamReader reader = PackStreamReader.open(new ByteArrayInputStream(bytes.toByteArray()));
+        reader.readFileCount();
+        PackFile file = reader.readPackFile();
+        assertTrue(file.isSharedData());
+        assertEquals(1024, file.length());
+        assertEquals(7, new DataInputStream(reader.getFileData(file)).readInt());
+    }
+
+    public void testExecutableFlag() throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PackStreamWriter writer = new PackStreamWriter(bytes);
+        writer.writeHeader(2);
+        PackFile script = new PackFile("$INSTALL_PATH/bin/run.sh", null, null, OverrideType.OVERRIDE_TRUE,
+                null, null, null, 0, 4000, false);
+        script.setExecutable(true);
+        writer.writeFile(script, false);
+        writer.writeFile(new PackFile("$INSTALL_PATH/bin/readme.txt", null, null, OverrideType.OVERRIDE_TRUE,
+                null, null, null, 0, 4000, false), false);
+        writer.flush();
+
+        PackStreamReader reader = PackStreamReader.open(new ByteArrayInputStream(bytes.toByteArray()));
+        reader.readFileCount();
+        assertTrue(reader.readPackFile().isExecutable());
+        assertFalse(reader.readPackFile().isExecutable());
+    }
+
+    private static String read(InputStream in, int length) throws IOException
+    {
+        byte[] buffer = new byte[length];
+        new DataInputStream(in).readFully(buffer);
+        return new String(buffer);
+    }
+}
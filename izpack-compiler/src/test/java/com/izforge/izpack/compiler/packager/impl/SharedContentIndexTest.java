@@ -0,0 +1,103 @@
+package com.izforge.izpack.compiler.packager.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+public class SharedContentIndexTest
+{
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        dir = File.createTempFile("izpack-shared", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown()
+    {
+        for (File file : dir.listFiles())
+        {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void identicalContentsShareAKey() throws IOException
+    {
+        File a = createFile("a.jar", "library");
+        File b = createFile("b.jar", "library");
+        File c = createFile("c.jar", "LIBRARY");
+        File d = createFile("d.jar", "libraries");
+
+        SharedContentIndex index = new SharedContentIndex();
+        index.add(a);
+        index.add(b);
+        index.add(c);
+        index.add(d);
+        index.build();
+
+        assertThat(index.getKey(a), is(0));
+        assertThat(index.getKey(b), is(0));
+        // same length, but a unique content: kept in its pack
+        assertThat(index.getKey(c), nullValue());
+        assertThat(index.getKey(d), nullValue());
+        assertThat(index.getContents().size(), is(1));
+        assertThat(index.getSavedBytes(), is(7L));
+        assertThat(index.getDigest(a), is(index.getDigest(b)));
+    }
+
+    @Test
+    public void uniqueContentsOfTheSameLengthAreNotShared() throws IOException
+    {
+        SharedContentIndex index = new SharedContentIndex();
+        for (int i = 0; i < 10; i++)
+        {
+            index.add(createFile("file" + i + ".txt", "content" + i));
+        }
+        index.build();
+
+        assertThat(index.getContents().isEmpty(), is(true));
+        assertThat(index.getSavedBytes(), is(0L));
+    }
+
+    @Test
+    public void fileIncludedTwiceIsShared() throws IOException
+    {
+        File a = createFile("a.txt", "readme");
+        File b = createFile("b.txt", "other");
+
+        SharedContentIndex index = new SharedContentIndex();
+        index.add(a);
+        index.add(b);
+        index.add(a);
+        index.build();
+
+        assertThat(index.getKey(a), is(0));
+        assertThat(index.getKey(b), nullValue());
+        assertThat(index.getContents(), is(Arrays.asList(a)));
+        assertThat(index.getSavedBytes(), is(a.length()));
+    }
+
+    private File createFile(String name, String content) throws IOException
+    {
+        File file = new File(dir, name);
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+        return file;
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * IzPack - Copyright 2001-2008 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.stream;
+
+import com.izforge.izpack.merge.jar.RawZipFile;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+public class JarOutputStreamTest extends TestCase
+{
+    private static final String[] NAMES = {"dir/", "dir/text.txt", "dir/stored.bin", "empty.txt"};
+
+    public void testRawCopy() throws IOException
+    {
+        File source = createSource();
+        File target = File.createTempFile("target", ".jar");
+        try
+        {
+            JarOutputStream out = new JarOutputStream(target);
+            assertTrue(out.isRawWriteSupported());
+            copy(source, out);
+            out.closeAlways();
+            checkTarget(source, target);
+        }
+        finally
+        {
+            source.delete();
+            target.delete();
+        }
+    }
+
+    public void testCopyToStream() throws IOException
+    {
+        File source = createSource();
+        File target = File.createTempFile("target", ".jar");
+        try
+        {
+            JarOutputStream out = new JarOutputStream(new FileOutputStream(target));
+            assertFalse(out.isRawWriteSupported());
+            copy(source, out);
+            out.closeAlways();
+            checkTarget(source, target);
+        }
+        finally
+        {
+            source.delete();
+            target.delete();
+        }
+    }
+
+    public void testLocalHeaderNotMatchingTheEntryIsInflated() throws IOException
+    {
+        File source = createSource();
+        File target = File.createTempFile("target", ".jar");
+        try
+        {
+            // the local header no longer has the name in the central directory
+            renameLocalHeader(source, NAMES[1], NAMES[1].toUpperCase());
+            RawZipFile zipFile = new RawZipFile(source);
+            try
+            {
+                RawZipFile.Entry entry = zipFile.getEntries().get(1);
+                assertEquals(NAMES[1], entry.getName());
+                assertTrue(entry.isRawCopyable());
+                try
+                {
+                    zipFile.getRawInputStream(entry);
+                    fail("Expected the local header not to match");
+                }
+                catch (IOException expected)
+                {
+                    // expected
+                }
+            }
+            finally
+            {
+                zipFile.close();
+            }
+
+            JarOutputStream out = new JarOutputStream(target);
+            assertTrue(out.isRawWriteSupported());
+            copy(source, out);
+            out.closeAlways();
+            checkTarget(source, target);
+        }
+        finally
+        {
+            source.delete();
+            target.delete();
+        }
+    }
+
+    private void copy(File source, JarOutputStream out) throws IOException
+    {
+        org.apache.tools.zip.ZipEntry first = new org.apache.tools.zip.ZipEntry("first.txt");
+        out.putNextEntry(first);
+        out.write("first entry".getBytes("UTF-8"));
+        out.closeEntry();
+
+        RawZipFile zipFile = new RawZipFile(source);
+        try
+        {
+            for (RawZipFile.Entry entry : zipFile.getEntries())
+            {
+                zipFile.copyEntry(entry, out, "copy/" + entry.getName());
+            }
+        }
+        finally
+        {
+            zipFile.close();
+        }
+
+        org.apache.tools.zip.ZipEntry last = new org.apache.tools.zip.ZipEntry("last.txt");
+        out.putNextEntry(last);
+        out.write("last entry".getBytes("UTF-8"));
+        out.closeEntry();
+    }
+
+    /**
+     * Reads the target with a zip file, which uses the central directory, and with a zip input stream,
+     * which uses the local headers and checks the CRC and sizes.
+     */
+    private void checkTarget(File source, File target) throws IOException
+    {
+        ZipFile sourceZip = new ZipFile(source);
+        ZipFile targetZip = new ZipFile(target);
+        try
+        {
+            assertEquals(NAMES.length + 2, targetZip.size());
+            for (String name : NAMES)
+            {
+                ZipEntry entry = targetZip.getEntry("copy/" + name);
+                assertNotNull(entry);
+                assertEquals(sourceZip.getEntry(name).getTime(), entry.getTime());
+                assertTrue(Arrays.equals(read(sourceZip.getInputStream(sourceZip.getEntry(name))),
+                                         read(targetZip.getInputStream(entry))));
+            }
+            assertEquals("last entry", new String(read(targetZip.getInputStream(targetZip.getEntry("last.txt"))), "UTF-8"));
+        }
+        finally
+        {
+            sourceZip.close();
+            targetZip.close();
+        }
+
+        ZipInputStream in = new ZipInputStream(new FileInputStream(target));
+        try
+        {
+            int count = 0;
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null)
+            {
+                byte[] data = read(in);
+                if (entry.getName().equals("copy/dir/text.txt"))
+                {
+                    assertEquals(text(), new String(data, "UTF-8"));
+                }
+                count++;
+            }
+            assertEquals(NAMES.length + 2, count);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Replaces the name in the first local header having it, leaving the central directory as it is.
+     */
+    private void renameLocalHeader(File file, String name, String newName) throws IOException
+    {
+        InputStream in = new FileInputStream(file);
+        byte[] data;
+        try
+        {
+            data = read(in);
+        }
+        finally
+        {
+            in.close();
+        }
+        byte[] bytes = name.getBytes("UTF-8");
+        byte[] newBytes = newName.getBytes("UTF-8");
+        for (int i = 0; i <= data.length - bytes.length; i++)
+        {
+            if (Arrays.equals(bytes, Arrays.copyOfRange(data, i, i + bytes.length)))
+            {
+                System.arraycopy(newBytes, 0, data, i, newBytes.length);
+                FileOutputStream out = new FileOutputStream(file);
+                try
+                {
+                    out.write(data);
+                }
+                finally
+                {
+                    out.close();
+                }
+                return;
+            }
+        }
+        fail("Name not found: " + name);
+    }
+
+    private File createSource() throws IOException
+    {
+        File file = File.createTempFile("source", ".jar");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        out.putNextEntry(new ZipEntry(NAMES[0]));
+        out.closeEntry();
+        out.putNextEntry(new ZipEntry(NAMES[1]));
+        out.write(text().getBytes("UTF-8"));
+        out.closeEntry();
+
+        byte[] stored = new byte[1000];
+        java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+        crc.update(stored);
+        ZipEntry entry = new ZipEntry(NAMES[2]);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(stored.length);
+        entry.setCrc(crc.getValue());
+        out.putNextEntry(entry);
+        out.write(stored);
+        out.closeEntry();
+
+        out.putNextEntry(new ZipEntry(NAMES[3]));
+        out.closeEntry();
+        out.close();
+        return file;
+    }
+
+    private String text()
+    {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+        {
+            text.append("line ").append(i).append('\n');
+        }
+        return text.toString();
+    }
+
+    private byte[] read(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) != -1)
+        {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+}
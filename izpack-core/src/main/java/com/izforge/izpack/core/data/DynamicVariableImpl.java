@@ -26,7 +26,17 @@ package com.izforge.izpack.core.data;
 import com.izforge.izpack.api.data.DynamicVariable;
 import com.izforge.izpack.api.data.Value;
 import com.izforge.izpack.api.regex.RegularExpressionFilter;
+import com.izforge.izpack.api.rules.Condition;
+import com.izforge.izpack.api.rules.RulesEngine;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
+import com.izforge.izpack.core.substitutor.SubstitutionTemplate;
+import com.izforge.izpack.core.variable.ValueImpl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 public class DynamicVariableImpl implements DynamicVariable
 {
@@ -47,6 +57,13 @@ public class DynamicVariableImpl implements DynamicVariable
 
     private transient String currentValue;
 
+    /**
+     * The inputs of the last resolution of the value, see {@link #getInputs(RulesEngine, VariableSubstitutor...)}.
+     */
+    private transient List<Object> resolvedInputs;
+
+    private transient String resolvedValue;
+
     public void validate() throws Exception
     {
         if (name == null)
@@ -68,6 +85,11 @@ public class DynamicVariableImpl implements DynamicVariable
     }
 
     public String evaluate(VariableSubstitutor... substitutors) throws Exception
+    {
+        return evaluate(null, substitutors);
+    }
+
+    public String evaluate(RulesEngine rules, VariableSubstitutor... substitutors) throws Exception
     {
         String newValue = this.currentValue;
 
@@ -83,7 +105,23 @@ public class DynamicVariableImpl implements DynamicVariable
 
         try
         {
-            newValue = value.resolve(regexp, substitutors);
+            List<Object> inputs = getInputs(rules, substitutors);
+            if (inputs != null && inputs.equals(this.resolvedInputs))
+            {
+                newValue = this.resolvedValue;
+            }
+            else
+            {
+                newValue = value.resolve(regexp, substitutors);
+                if (Thread.currentThread().isInterrupted())
+                {
+                    // timed out or cancelled: the value is not the result of these inputs
+                    this.resolvedInputs = null;
+                    return newValue;
+                }
+                this.resolvedInputs = inputs;
+                this.resolvedValue = newValue;
+            }
             if (this.checkonce)
             {
                 this.currentValue = newValue;
@@ -112,6 +150,112 @@ public class DynamicVariableImpl implements DynamicVariable
         return newValue;
     }
 
+    public Set<String> getVariableReferences()
+    {
+        List<String> expressions = getExpressions();
+        if (expressions == null)
+        {
+            return null;
+        }
+        Set<String> references = new LinkedHashSet<String>();
+        for (String expression : expressions)
+        {
+            if (expression != null)
+            {
+                SubstitutionTemplate template = SubstitutionTemplate.get(expression, '$', false);
+                for (int i = 0; i < template.size(); i++)
+                {
+                    if (template.getKind(i) == SubstitutionTemplate.VARIABLE)
+                    {
+                        references.add(template.getText(i));
+                    }
+                }
+            }
+        }
+        return references;
+    }
+
+    /**
+     * Returns the strings the value and the regular expression are resolved from.
+     *
+     * @return the strings, or <tt>null</tt> if they are unknown
+     */
+    private List<String> getExpressions()
+    {
+        if (!(value instanceof ValueImpl))
+        {
+            return null;
+        }
+        List<String> valueExpressions = ((ValueImpl) value).getExpressions();
+        if (valueExpressions == null)
+        {
+            return null;
+        }
+        List<String> expressions = new ArrayList<String>(valueExpressions);
+        if (regexp != null)
+        {
+            expressions.add(regexp.getRegexp());
+            expressions.add(regexp.getSelect());
+            expressions.add(regexp.getReplace());
+        }
+        return expressions;
+    }
+
+    /**
+     * Returns the inputs the value is resolved from: its strings once substituted, the values of
+     * the variables its condition depends on, and the modification time and length of the files
+     * it reads. The value is not resolved again as long as they do not change.
+     *
+     * @param rules the rules engine the condition is looked up in, may be <tt>null</tt>
+     * @return the inputs, or <tt>null</tt> if the value has to be resolved each time
+     */
+    private List<Object> getInputs(RulesEngine rules, VariableSubstitutor... substitutors)
+    {
+        List<String> expressions = getExpressions();
+        if (expressions == null)
+        {
+            return null;
+        }
+        List<Object> inputs = new ArrayList<Object>();
+        for (String expression : expressions)
+        {
+            inputs.add(substitute(expression, substitutors));
+        }
+        if ((conditionid != null) && (conditionid.length() > 0))
+        {
+            Condition condition = (rules != null) ? rules.getCondition(conditionid) : null;
+            Set<String> dependencies = (condition != null) ? condition.getVariableDependencies() : null;
+            if (dependencies == null)
+            {
+                return null;
+            }
+            for (String dependency : dependencies)
+            {
+                inputs.add(substitute("${" + dependency + "}", substitutors));
+            }
+        }
+        for (String expression : ((ValueImpl) value).getFileExpressions())
+        {
+            String path = substitute(expression, substitutors);
+            if (path != null)
+            {
+                File file = new File(path);
+                inputs.add(file.lastModified());
+                inputs.add(file.length());
+            }
+        }
+        return inputs;
+    }
+
+    private static String substitute(String expression, VariableSubstitutor... substitutors)
+    {
+        for (VariableSubstitutor substitutor : substitutors)
+        {
+            expression = substitutor.substitute(expression);
+        }
+        return expression;
+    }
+
     /**
      * @return the name
      */
@@ -20,15 +20,26 @@ package com.izforge.izpack.core.io;
 
 import com.izforge.izpack.util.Debug;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.zip.GZIPInputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
 
 /**
  * An inputstream which transparently spans over multiple volumes. The amount of volumes has to be
  * specified
+ * <p/>
+ * Each volume is read as a gzip stream, possibly made of several members, through a buffered channel.
+ * The members are read one after the other, as <code>GZIPInputStream</code> only continues across
+ * members since Java 7.
  *
  * @author Dennis Reil, <Dennis.Reil@reddot.de>
  */
@@ -37,6 +48,8 @@ public class FileSpanningInputStream extends InputStream
 
     private static final int EOF = -1;
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     protected FileInputStream fileinputstream;
 
     protected String volumename;
@@ -49,14 +62,13 @@ public class FileSpanningInputStream extends InputStream
 
     protected long filepointer;
 
-    protected GZIPInputStream zippedinputstream;
+    protected InputStream zippedinputstream;
 
     protected byte[] magicnumber;
 
     public FileSpanningInputStream(File volume, int volumestotal) throws IOException
     {
-        fileinputstream = new FileInputStream(volume);
-        zippedinputstream = new GZIPInputStream(fileinputstream);
+        openVolume(volume);
         currentvolumeindex = 0;
         volumename = volume.getAbsolutePath();
         this.volumestotal = volumestotal;
@@ -76,6 +88,26 @@ public class FileSpanningInputStream extends InputStream
         this(new File(volumename), volumestotal);
     }
 
+    /**
+     * Opens the streams to a volume.
+     *
+     * @param volume the volume
+     * @throws IOException if the volume cannot be opened
+     */
+    private void openVolume(File volume) throws IOException
+    {
+        fileinputstream = new FileInputStream(volume);
+        try
+        {
+            zippedinputstream = new GZIPMembersInputStream(new ChannelInputStream(fileinputstream.getChannel()));
+        }
+        catch (IOException e)
+        {
+            fileinputstream.close();
+            throw e;
+        }
+    }
+
     /**
      * checks if the MagicNumber of this stream is valid. The stream has to be opened right before.
      *
@@ -148,8 +180,7 @@ public class FileSpanningInputStream extends InputStream
         }
         Debug.trace("next volume found.");
         // try to open new stream to next volume
-        fileinputstream = new FileInputStream(nextvolumefile);
-        zippedinputstream = new GZIPInputStream(fileinputstream);
+        openVolume(nextvolumefile);
         // check magic number
         if (!this.isMagicNumberValid())
         {
@@ -370,4 +401,275 @@ public class FileSpanningInputStream extends InputStream
         return filepointer;
     }
 
+    /**
+     * A buffered stream over a file channel.
+     */
+    private static class ChannelInputStream extends InputStream
+    {
+        private final FileChannel channel;
+
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        ChannelInputStream(FileChannel channel)
+        {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        public int read() throws IOException
+        {
+            if (!buffer.hasRemaining() && !fill())
+            {
+                return EOF;
+            }
+            return buffer.get() & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+            if (!buffer.hasRemaining())
+            {
+                if (len >= BUFFER_SIZE)
+                {
+                    // large reads bypass the buffer
+                    return channel.read(ByteBuffer.wrap(b, off, len));
+                }
+                if (!fill())
+                {
+                    return EOF;
+                }
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        public int available() throws IOException
+        {
+            return (int) Math.min(Integer.MAX_VALUE, buffer.remaining() + channel.size() - channel.position());
+        }
+
+        public void close() throws IOException
+        {
+            channel.close();
+        }
+
+        private boolean fill() throws IOException
+        {
+            buffer.clear();
+            int count = channel.read(buffer);
+            buffer.flip();
+            return count > 0;
+        }
+    }
+
+    /**
+     * A stream inflating all the gzip members of a volume, one after the other.
+     */
+    private static class GZIPMembersInputStream extends InputStream
+    {
+        private static final int GZIP_MAGIC = 0x8b1f;
+
+        private static final int FHCRC = 2;
+
+        private static final int FEXTRA = 4;
+
+        private static final int FNAME = 8;
+
+        private static final int FCOMMENT = 16;
+
+        private final PushbackInputStream in;
+
+        private final Inflater inflater = new Inflater(true);
+
+        private final CRC32 crc = new CRC32();
+
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        private int length;
+
+        private boolean eos;
+
+        GZIPMembersInputStream(InputStream in) throws IOException
+        {
+            this.in = new PushbackInputStream(in, BUFFER_SIZE);
+            try
+            {
+                if (!readHeader())
+                {
+                    throw new EOFException("No gzip member");
+                }
+            }
+            catch (IOException e)
+            {
+                inflater.end();
+                throw e;
+            }
+        }
+
+        public int read() throws IOException
+        {
+            byte[] b = new byte[1];
+            return (read(b, 0, 1) == EOF) ? EOF : b[0] & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+            while (!eos)
+            {
+                int count;
+                try
+                {
+                    count = inflater.inflate(b, off, len);
+                }
+                catch (DataFormatException e)
+                {
+                    String message = e.getMessage();
+                    throw new ZipException((message != null) ? message : "Invalid gzip data format");
+                }
+                if (count > 0)
+                {
+                    crc.update(b, off, count);
+                    return count;
+                }
+                if (inflater.finished())
+                {
+                    readTrailer();
+                    eos = !readHeader();
+                }
+                else if (inflater.needsDictionary())
+                {
+                    throw new ZipException("Invalid gzip data format");
+                }
+                else if (inflater.needsInput())
+                {
+                    length = in.read(buffer, 0, buffer.length);
+                    if (length == EOF)
+                    {
+                        throw new EOFException("Unexpected end of gzip member");
+                    }
+                    inflater.setInput(buffer, 0, length);
+                }
+            }
+            return EOF;
+        }
+
+        public int available() throws IOException
+        {
+            return eos ? 0 : 1;
+        }
+
+        public void close() throws IOException
+        {
+            inflater.end();
+            in.close();
+        }
+
+        /**
+         * Reads the header of the next member.
+         *
+         * @return false if the end of the volume has been reached
+         * @throws IOException if the header is invalid
+         */
+        private boolean readHeader() throws IOException
+        {
+            int first = in.read();
+            if (first == EOF)
+            {
+                return false;
+            }
+            in.unread(first);
+            if (readUShort() != GZIP_MAGIC)
+            {
+                throw new ZipException("Not in GZIP format");
+            }
+            if (readUByte() != 8)
+            {
+                throw new ZipException("Unsupported compression method");
+            }
+            int flags = readUByte();
+            skipBytes(6);
+            if ((flags & FEXTRA) != 0)
+            {
+                skipBytes(readUShort());
+            }
+            if ((flags & FNAME) != 0)
+            {
+                while (readUByte() != 0)
+                {
+                }
+            }
+            if ((flags & FCOMMENT) != 0)
+            {
+                while (readUByte() != 0)
+                {
+                }
+            }
+            if ((flags & FHCRC) != 0)
+            {
+                skipBytes(2);
+            }
+            inflater.reset();
+            crc.reset();
+            return true;
+        }
+
+        /**
+         * Gives back the input following the deflated data and checks the trailer of the member.
+         *
+         * @throws IOException if the trailer does not match the inflated data
+         */
+        private void readTrailer() throws IOException
+        {
+            int remaining = inflater.getRemaining();
+            if (remaining > 0)
+            {
+                in.unread(buffer, length - remaining, remaining);
+            }
+            long expectedCrc = readUInt();
+            long expectedSize = readUInt();
+            if (expectedCrc != crc.getValue() || expectedSize != (inflater.getBytesWritten() & 0xffffffffL))
+            {
+                throw new ZipException("Corrupt gzip trailer");
+            }
+        }
+
+        private long readUInt() throws IOException
+        {
+            long low = readUShort();
+            return ((long) readUShort() << 16) | low;
+        }
+
+        private int readUShort() throws IOException
+        {
+            int low = readUByte();
+            return (readUByte() << 8) | low;
+        }
+
+        private int readUByte() throws IOException
+        {
+            int b = in.read();
+            if (b == EOF)
+            {
+                throw new EOFException("Unexpected end of gzip member");
+            }
+            return b;
+        }
+
+        private void skipBytes(int count) throws IOException
+        {
+            for (int i = 0; i < count; i++)
+            {
+                readUByte();
+            }
+        }
+    }
 }
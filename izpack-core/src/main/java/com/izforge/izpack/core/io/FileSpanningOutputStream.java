@@ -20,17 +20,30 @@ package com.izforge.izpack.core.io;
 
 import com.izforge.izpack.util.Debug;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Date;
+import java.util.LinkedList;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.zip.GZIPOutputStream;
 
 /**
  * An outputstream which transparently spans over multiple volumes. The size of the volumes and an
  * additonal space for the first volume can be specified.
+ * <p/>
+ * The data is cut into segments which are compressed independently, each one into a gzip member, on
+ * one or more threads (see {@link #setThreads(int)}). The members are then written in order, a volume
+ * being started whenever the next member does not fit in the current one. Each volume starts with a
+ * member holding the magic number, and is read as a single gzip stream by {@link FileSpanningInputStream}.
  *
  * @author Dennis Reil, <Dennis.Reil@reddot.de>
  */
@@ -54,6 +67,9 @@ public class FileSpanningOutputStream extends OutputStream
 
     protected static final long FILE_NOT_AVAILABLE = -1;
 
+    // the maximum size of uncompressed segment
+    private static final int SEGMENT_SIZE = 1024 * 1024;
+
     // the maximum size of a volume
     protected long maxvolumesize = DEFAULT_VOLUME_SIZE;
 
@@ -75,11 +91,27 @@ public class FileSpanningOutputStream extends OutputStream
     // a normal file outputstream for writting to the current volume
     private FileOutputStream fileoutputstream;
 
-    private GZIPOutputStream zippedoutputstream;
+    // the number of bytes written to the current volume
+    private long currentvolumelength;
 
     // 
     private byte[] magicnumber;
 
+    // the magic number, compressed
+    private byte[] magicnumbermember;
+
+    // the segment being filled
+    private byte[] segment;
+
+    private int segmentlength;
+
+    // the segments being compressed, in order
+    private final LinkedList<Future<byte[]>> pendingsegments = new LinkedList<Future<byte[]>>();
+
+    private int threads = 1;
+
+    private ExecutorService executor;
+
     // the current position in the open file
     protected long filepointer;
 
@@ -124,7 +156,7 @@ public class FileSpanningOutputStream extends OutputStream
         this.createVolumeOutputStream(volume, maxvolumesize, currentvolume);
     }
 
-    private void generateMagicNumber()
+    private void generateMagicNumber() throws IOException
     {
         // only create a magic number, if not already done
         if (magicnumber == null)
@@ -142,6 +174,7 @@ public class FileSpanningOutputStream extends OutputStream
             {
                 Debug.trace(i + " - " + magicnumber[i]);
             }
+            magicnumbermember = compress(magicnumber, magicnumber.length);
         }
     }
 
@@ -158,7 +191,6 @@ public class FileSpanningOutputStream extends OutputStream
             throws IOException
     {
         fileoutputstream = new FileOutputStream(volume);
-        zippedoutputstream = new GZIPOutputStream(fileoutputstream, 256);
         currentfile = volume;
         this.currentvolumeindex = currentvolume;
         this.maxvolumesize = maxvolumesize;
@@ -174,11 +206,9 @@ public class FileSpanningOutputStream extends OutputStream
         {
             volumename = volabsolutePath;
         }
-        long oldfilepointer = filepointer;
         // write magic number into output stream
-        this.write(magicnumber);
-        // reset filepointer
-        filepointer = oldfilepointer;
+        fileoutputstream.write(magicnumbermember);
+        currentvolumelength = magicnumbermember.length;
     }
 
     /**
@@ -207,6 +237,17 @@ public class FileSpanningOutputStream extends OutputStream
         this(DEFAULT_VOLUME_NAME, DEFAULT_VOLUME_SIZE);
     }
 
+    /**
+     * Sets the number of threads compressing the segments. With one thread, the default, the segments
+     * are compressed by the writing thread.
+     *
+     * @param threads the number of threads
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = Math.max(1, threads);
+    }
+
     /**
      * Returns the size of the current volume
      *
@@ -218,28 +259,14 @@ public class FileSpanningOutputStream extends OutputStream
         {
             return FILE_NOT_AVAILABLE;
         }
-        try
-        {
-            flush();
-        }
-        catch (IOException e)
-        {
-            e.printStackTrace();
-        }
-        // create a new instance
-        currentfile = new File(currentfile.getAbsolutePath());
         if (currentvolumeindex == 0)
         {
             // this is the first volume, add the additional free space
-            // and add a reserve for overhead and not yet written data
-            return currentfile.length() + this.firstvolumefreespacesize
-                    + Math.round(0.001 * currentfile.length());
+            return currentvolumelength + this.firstvolumefreespacesize;
         }
         else
         {
-            // not the first volume, just return the actual length
-            // and add a reserve for overhead and not yet written data
-            return currentfile.length() + Math.round(0.001 * currentfile.length());
+            return currentvolumelength;
         }
     }
 
@@ -251,8 +278,8 @@ public class FileSpanningOutputStream extends OutputStream
     protected void createStreamToNextVolume() throws IOException
     {
         // close current stream
-        close();
-        totalbytesofpreviousvolumes = currentfile.length();
+        fileoutputstream.close();
+        totalbytesofpreviousvolumes += currentvolumelength;
         currentvolumeindex++;
         // get the name of the next volume
         String nextvolumename = volumename + "." + currentvolumeindex;
@@ -266,11 +293,19 @@ public class FileSpanningOutputStream extends OutputStream
      */
     public void close() throws IOException
     {
-        this.flush();
-        zippedoutputstream.close();
-        fileoutputstream.close();
-        // reset the filepointer
-        // filepointer = 0;
+        try
+        {
+            this.flush();
+        }
+        finally
+        {
+            if (executor != null)
+            {
+                executor.shutdownNow();
+                executor = null;
+            }
+            fileoutputstream.close();
+        }
     }
 
     /**
@@ -278,29 +313,24 @@ public class FileSpanningOutputStream extends OutputStream
      */
     public void write(byte[] b, int off, int len) throws IOException
     {
-        if (len > maxvolumesize)
+        while (len > 0)
         {
-            throw new IOException(
-                    "file can't be written. buffer length exceeded maxvolumesize (" + " > "
-                            + maxvolumesize + ")");
-        }
-        // get the current size of this file
-        long currentsize = getCurrentVolumeSize();
-        // calculate the available bytes
-        long available = maxvolumesize - currentsize;
-
-        if (available < len)
-        {
-            Debug.trace("Not enough space left on volume. available: " + available);
-            Debug.trace("current size is: " + currentsize);
-            // there's not enough space available
-            // create the next volume
-            this.createStreamToNextVolume();
+            if (segment == null)
+            {
+                segment = new byte[getSegmentSize()];
+            }
+            int count = Math.min(len, segment.length - segmentlength);
+            System.arraycopy(b, off, segment, segmentlength, count);
+            segmentlength += count;
+            off += count;
+            len -= count;
+            // increase filepointer by written bytes
+            filepointer += count;
+            if (segmentlength == segment.length)
+            {
+                writeSegment();
+            }
         }
-        // enough space available, just write to the outputstream
-        zippedoutputstream.write(b, off, len);
-        // increase filepointer by written bytes
-        filepointer += len;
     }
 
     /**
@@ -316,29 +346,34 @@ public class FileSpanningOutputStream extends OutputStream
      */
     public void write(int b) throws IOException
     {
-        long availablebytes = maxvolumesize - getCurrentVolumeSize();
-        if (availablebytes >= 1)
+        if (segment == null)
         {
-            zippedoutputstream.write(b);
-            // increase filepointer by written byte
-            filepointer++;
+            segment = new byte[getSegmentSize()];
         }
-        else
+        segment[segmentlength++] = (byte) b;
+        // increase filepointer by written byte
+        filepointer++;
+        if (segmentlength == segment.length)
         {
-            // create next volume
-            this.createStreamToNextVolume();
-            zippedoutputstream.write(b);
-            // increase filepointer by written byte
-            filepointer++;
+            writeSegment();
         }
     }
 
     /**
+     * Compresses the buffered data and writes all the compressed segments.
+     *
      * @see java.io.OutputStream#flush()
      */
     public void flush() throws IOException
     {
-        zippedoutputstream.flush();
+        if (segmentlength > 0)
+        {
+            writeSegment();
+        }
+        while (!pendingsegments.isEmpty())
+        {
+            writeMember(pendingsegments.removeFirst());
+        }
         fileoutputstream.flush();
     }
 
@@ -377,12 +412,118 @@ public class FileSpanningOutputStream extends OutputStream
     public long getCompressedFilepointer() throws IOException
     {
         this.flush();
-        // return filepointer;
-        return totalbytesofpreviousvolumes + currentfile.length();
+        return totalbytesofpreviousvolumes + currentvolumelength;
     }
 
     public long getFilepointer()
     {
         return filepointer;
     }
+
+    /**
+     * Returns the size of the segments, small enough for a compressed segment to fit in a volume.
+     */
+    private int getSegmentSize()
+    {
+        return (int) Math.max(1, Math.min(SEGMENT_SIZE, maxvolumesize / 4));
+    }
+
+    /**
+     * Hands the current segment over to be compressed, and writes the compressed segments which are
+     * ready, keeping at most two segments per thread in memory.
+     */
+    private void writeSegment() throws IOException
+    {
+        final byte[] data = segment;
+        final int length = segmentlength;
+        segment = null;
+        segmentlength = 0;
+        if (threads == 1)
+        {
+            writeMember(compress(data, length));
+            return;
+        }
+
+        if (executor == null)
+        {
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "IzPack volume compressor");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        pendingsegments.addLast(executor.submit(new Callable<byte[]>()
+        {
+            public byte[] call() throws IOException
+            {
+                return compress(data, length);
+            }
+        }));
+        while (pendingsegments.size() > 2 * threads
+                || (!pendingsegments.isEmpty() && pendingsegments.getFirst().isDone()))
+        {
+            writeMember(pendingsegments.removeFirst());
+        }
+    }
+
+    private void writeMember(Future<byte[]> member) throws IOException
+    {
+        try
+        {
+            writeMember(member.get());
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing " + currentfile);
+        }
+        catch (ExecutionException exception)
+        {
+            Throwable cause = exception.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.toString());
+        }
+    }
+
+    /**
+     * Writes a compressed segment, in the next volume if it does not fit in the current one.
+     */
+    private void writeMember(byte[] member) throws IOException
+    {
+        if (getCurrentVolumeSize() + member.length > maxvolumesize)
+        {
+            // the next volume has more space, unless this one holds nothing but the magic number
+            if (currentvolumelength > magicnumbermember.length || getCurrentVolumeSize() > currentvolumelength)
+            {
+                Debug.trace("Not enough space left on volume. current size is: " + getCurrentVolumeSize());
+                this.createStreamToNextVolume();
+            }
+            if (getCurrentVolumeSize() + member.length > maxvolumesize)
+            {
+                throw new IOException("file can't be written. compressed segment length exceeded maxvolumesize ("
+                        + member.length + " > " + maxvolumesize + ")");
+            }
+        }
+        fileoutputstream.write(member);
+        currentvolumelength += member.length;
+    }
+
+    /**
+     * Compresses data into a gzip member.
+     */
+    private static byte[] compress(byte[] data, int length) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(length / 2 + 64);
+        GZIPOutputStream out = new GZIPOutputStream(bytes, 8192);
+        out.write(data, 0, length);
+        out.close();
+        return bytes.toByteArray();
+    }
 }
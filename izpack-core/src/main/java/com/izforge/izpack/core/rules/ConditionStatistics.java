@@ -0,0 +1,111 @@
+/*
+ * IzPack - Copyright 2001-2010 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.rules;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the condition checks made by the rules engine, to find the conditions which slow
+ * down an installer.
+ */
+public class ConditionStatistics
+{
+    private final AtomicLong evaluations = new AtomicLong();
+
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    private final ConcurrentMap<String, AtomicLong> evaluationTimes = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * Returns the number of conditions which have been evaluated.
+     *
+     * @return the number of evaluations
+     */
+    public long getEvaluations()
+    {
+        return evaluations.get();
+    }
+
+    /**
+     * Returns the number of condition checks answered from the result cache.
+     *
+     * @return the number of cache hits
+     */
+    public long getCacheHits()
+    {
+        return cacheHits.get();
+    }
+
+    /**
+     * Returns the time spent evaluating each condition.
+     *
+     * @return the evaluation time in nanoseconds, by condition id or expression
+     */
+    public Map<String, Long> getEvaluationTimes()
+    {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : evaluationTimes.entrySet())
+        {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    /**
+     * Resets all counters.
+     */
+    public void reset()
+    {
+        evaluations.set(0);
+        cacheHits.set(0);
+        evaluationTimes.clear();
+    }
+
+    void addEvaluation(String id, long time)
+    {
+        evaluations.incrementAndGet();
+        AtomicLong total = evaluationTimes.get(id);
+        if (total == null)
+        {
+            AtomicLong created = new AtomicLong();
+            total = evaluationTimes.putIfAbsent(id, created);
+            if (total == null)
+            {
+                total = created;
+            }
+        }
+        total.addAndGet(time);
+    }
+
+    void addCacheHit()
+    {
+        cacheHits.incrementAndGet();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Conditions evaluated: " + getEvaluations() + ", cache hits: " + getCacheHits();
+    }
+}
@@ -43,6 +43,7 @@ import com.izforge.izpack.util.Debug;
 
 import java.io.OutputStream;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -63,6 +64,18 @@ public class RulesEngineImpl implements RulesEngine
 
     protected Map<String, Condition> conditionsmap = new HashMap<String, Condition>();
 
+    /**
+     * The conditions parsed from expressions, by expression.
+     */
+    private final Map<String, Condition> compiledconditions = new ConcurrentHashMap<String, Condition>();
+
+    /**
+     * The last results of the conditions depending on variables only.
+     */
+    private final Map<Condition, ConditionResult> results = new ConcurrentHashMap<Condition, ConditionResult>();
+
+    private final ConditionStatistics statistics = new ConditionStatistics();
+
     protected AutomatedInstallData installdata;
     private ClassPathCrawler classPathCrawler;
     private BindeableContainer container;
@@ -145,6 +158,7 @@ public class RulesEngineImpl implements RulesEngine
     public void readConditionMap(Map<String, Condition> rules)
     {
         conditionsmap = rules;
+        clearCaches();
         for (String key : conditionsmap.keySet())
         {
             Condition condition = conditionsmap.get(key);
@@ -236,6 +250,8 @@ public class RulesEngineImpl implements RulesEngine
                 }
             }
 
+            clearCaches();
+
             List<IXMLElement> panelconditionels = conditionsspec
                     .getChildrenNamed("panelcondition");
             for (IXMLElement panelel : panelconditionels)
@@ -282,6 +298,10 @@ public class RulesEngineImpl implements RulesEngine
     {
         Condition result = conditionsmap.get(id);
         if (result == null)
+        {
+            result = compiledconditions.get(id);
+        }
+        if (result == null)
         {
             if (id.startsWith("@"))
             {
@@ -291,10 +311,80 @@ public class RulesEngineImpl implements RulesEngine
             {
                 result = getConditionByExpr(new StringBuffer(id));
             }
+            if (result != null)
+            {
+                compiledconditions.put(id, result);
+            }
         }
         return result;
     }
 
+    /**
+     * Returns the counters of the condition checks.
+     *
+     * @return the statistics of this rules engine
+     */
+    public ConditionStatistics getStatistics()
+    {
+        return statistics;
+    }
+
+    /**
+     * Checks a condition. The result of a condition depending on variables only is reused until
+     * one of these variables changes.
+     *
+     * @param name      the condition id or expression, for the statistics
+     * @param condition the condition to check
+     * @return the result of the condition
+     */
+    protected boolean evaluate(String name, Condition condition)
+    {
+        ConditionResult result = getResult(condition);
+        String[] values = null;
+        if (result != null)
+        {
+            values = result.getValues(condition.getInstallData());
+            Boolean cached = result.get(values);
+            if (cached != null)
+            {
+                statistics.addCacheHit();
+                return cached;
+            }
+        }
+        long start = System.nanoTime();
+        boolean value = condition.isTrue();
+        statistics.addEvaluation((name != null) ? name : "UNKNOWN", System.nanoTime() - start);
+        if (result != null)
+        {
+            result.set(values, value);
+        }
+        return value;
+    }
+
+    private ConditionResult getResult(Condition condition)
+    {
+        if (condition.getInstallData() == null)
+        {
+            return null;
+        }
+        ConditionResult result = results.get(condition);
+        if (result == null)
+        {
+            result = new ConditionResult(condition.getVariableDependencies());
+            results.put(condition, result);
+        }
+        return (result.variables != null) ? result : null;
+    }
+
+    /**
+     * Forgets the compiled expressions and the cached results, after the conditions changed.
+     */
+    private void clearCaches()
+    {
+        compiledconditions.clear();
+        results.clear();
+    }
+
     /**
      * Parses the given complex expression into a condition.
      * Understands the boolean operations && (AND), || (OR)
@@ -471,7 +561,6 @@ public class RulesEngineImpl implements RulesEngine
     public boolean isConditionTrue(String id, Properties variables)
     {
         Condition cond = getCondition(id);
-        cond.setInstalldata(installdata);
         if (cond == null)
         {
             Debug.trace("Condition (" + id + ") not found.");
@@ -479,10 +568,11 @@ public class RulesEngineImpl implements RulesEngine
         }
         else
         {
+            cond.setInstalldata(installdata);
             Debug.trace("Checking condition");
             try
             {
-                return cond.isTrue();
+                return evaluate(id, cond);
             }
             catch (NullPointerException npe)
             {
@@ -502,7 +592,7 @@ public class RulesEngineImpl implements RulesEngine
         else
         {
             Debug.trace("Checking condition");
-            return cond.isTrue();
+            return evaluate(cond.getId(), cond);
         }
     }
 
@@ -512,7 +602,7 @@ public class RulesEngineImpl implements RulesEngine
         if (cond != null)
         {
             cond.setInstalldata(installdata);
-            return this.isConditionTrue(cond);
+            return evaluate(id, cond);
         }
         else
         {
@@ -526,7 +616,7 @@ public class RulesEngineImpl implements RulesEngine
         {
             cond.setInstalldata(installdata);
         }
-        return cond.isTrue();
+        return evaluate(cond.getId(), cond);
     }
 
     /**
@@ -546,10 +636,11 @@ public class RulesEngineImpl implements RulesEngine
             return true;
         }
         Debug.trace("there is a condition");
-        Condition condition = getCondition(this.panelconditions.get(panelid));
+        String conditionid = this.panelconditions.get(panelid);
+        Condition condition = getCondition(conditionid);
         if (condition != null)
         {
-            return condition.isTrue();
+            return evaluate(conditionid, condition);
         }
         return false;
     }
@@ -575,10 +666,11 @@ public class RulesEngineImpl implements RulesEngine
             return true;
         }
         Debug.trace("there is a condition");
-        Condition condition = getCondition(this.packconditions.get(packid));
+        String conditionid = this.packconditions.get(packid);
+        Condition condition = getCondition(conditionid);
         if (condition != null)
         {
-            return condition.isTrue();
+            return evaluate(conditionid, condition);
         }
         return false;
     }
@@ -619,6 +711,7 @@ public class RulesEngineImpl implements RulesEngine
             else
             {
                 conditionsmap.put(condition.getId(), condition);
+                clearCaches();
             }
         }
         else
@@ -656,4 +749,46 @@ public class RulesEngineImpl implements RulesEngine
         xml.setAttribute("type", condition.getClass().getCanonicalName());
         return xml;
     }
+
+    /**
+     * The last result of a condition, with the values of the variables it has been computed from.
+     */
+    private static class ConditionResult
+    {
+        private final String[] variables;
+
+        private String[] values;
+
+        private boolean value;
+
+        ConditionResult(Set<String> variables)
+        {
+            this.variables = (variables != null) ? variables.toArray(new String[variables.size()]) : null;
+        }
+
+        String[] getValues(AutomatedInstallData installdata)
+        {
+            String[] result = new String[variables.length];
+            for (int i = 0; i < variables.length; i++)
+            {
+                result[i] = installdata.getVariable(variables[i]);
+            }
+            return result;
+        }
+
+        synchronized Boolean get(String[] currentValues)
+        {
+            if (values != null && Arrays.equals(values, currentValues))
+            {
+                return value;
+            }
+            return null;
+        }
+
+        synchronized void set(String[] currentValues, boolean value)
+        {
+            this.values = currentValues;
+            this.value = value;
+        }
+    }
 }
@@ -95,6 +95,22 @@ public class AndCondition extends Condition
         return details.toString();
     }
 
+    @Override
+    public Set<String> getVariableDependencies()
+    {
+        Set<String> variables = new HashSet<String>();
+        for (Condition condition : nestedConditions)
+        {
+            Set<String> nested = condition.getVariableDependencies();
+            if (nested == null)
+            {
+                return null;
+            }
+            variables.addAll(nested);
+        }
+        return variables;
+    }
+
     @Override
     public void makeXMLData(IXMLElement conditionRoot)
     {
@@ -26,6 +26,8 @@ import com.izforge.izpack.api.data.AutomatedInstallData;
 import com.izforge.izpack.api.rules.Condition;
 import com.izforge.izpack.api.rules.RulesEngine;
 import com.izforge.izpack.util.Debug;
+import java.util.Collections;
+import java.util.Set;
 
 /**
  * @author Dennis Reil, <izpack@reil-online.de>
@@ -91,6 +93,19 @@ public class NotCondition extends Condition
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getVariableDependencies()
+    {
+        if (this.operand == null)
+        {
+            return Collections.emptySet();
+        }
+        return this.operand.getVariableDependencies();
+    }
+
     /**
      * {@inheritDoc}
      */
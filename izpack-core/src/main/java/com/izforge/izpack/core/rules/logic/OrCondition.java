@@ -28,6 +28,8 @@ import com.izforge.izpack.core.rules.RulesEngineImpl;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * @author Dennis Reil, <izpack@reil-online.de>
@@ -86,6 +88,22 @@ public class OrCondition extends Condition
         return details.toString();
     }
 
+    @Override
+    public Set<String> getVariableDependencies()
+    {
+        Set<String> variables = new HashSet<String>();
+        for (Condition condition : nestedConditions)
+        {
+            Set<String> nested = condition.getVariableDependencies();
+            if (nested == null)
+            {
+                return null;
+            }
+            variables.addAll(nested);
+        }
+        return variables;
+    }
+
     @Override
     public void makeXMLData(IXMLElement conditionRoot)
     {
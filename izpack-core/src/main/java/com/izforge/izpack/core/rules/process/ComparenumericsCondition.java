@@ -26,6 +26,8 @@ import com.izforge.izpack.api.adaptator.IXMLElement;
 import com.izforge.izpack.api.adaptator.impl.XMLElementImpl;
 import com.izforge.izpack.api.rules.Condition;
 import com.izforge.izpack.util.Debug;
+import java.util.Collections;
+import java.util.Set;
 
 /**
  * @author Dennis Reil, <izpack@reil-online.de>
@@ -177,6 +179,12 @@ public class ComparenumericsCondition extends Condition
     }
 
 
+    @Override
+    public Set<String> getVariableDependencies()
+    {
+        return (this.variablename != null) ? Collections.singleton(this.variablename) : null;
+    }
+
     @Override
     public void makeXMLData(IXMLElement conditionRoot)
     {
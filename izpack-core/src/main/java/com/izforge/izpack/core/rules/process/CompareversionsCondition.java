@@ -28,6 +28,7 @@ import com.izforge.izpack.api.adaptator.impl.XMLElementImpl;
 import com.izforge.izpack.api.rules.Condition;
 import com.izforge.izpack.core.substitutor.VariableSubstitutorBase;
 import com.izforge.izpack.core.substitutor.VariableSubstitutorImpl;
+import java.util.Set;
 
 public class CompareversionsCondition extends Condition
 {
@@ -165,6 +166,14 @@ public class CompareversionsCondition extends Condition
     }
 
 
+    @Override
+    public Set<String> getVariableDependencies()
+    {
+        Set<String> variables = VariableSubstitutorBase.getReferencedVariables(operand1);
+        variables.addAll(VariableSubstitutorBase.getReferencedVariables(operand2));
+        return variables;
+    }
+
     @Override
     public void makeXMLData(IXMLElement conditionRoot)
     {
@@ -33,6 +33,8 @@ import com.izforge.izpack.api.rules.Condition;
 import com.izforge.izpack.core.substitutor.VariableSubstitutorBase;
 import com.izforge.izpack.core.substitutor.VariableSubstitutorImpl;
 import com.izforge.izpack.util.Debug;
+import java.util.Collections;
+import java.util.Set;
 
 /**
  * This condition checks if a certain type is empty
@@ -154,6 +156,27 @@ public class EmptyCondition extends Condition
         this.content = content;
     }
 
+    /**
+     * Strings and variables can be cached, files and directories are checked every time.
+     */
+    @Override
+    public Set<String> getVariableDependencies()
+    {
+        switch (contentType)
+        {
+            case STRING:
+                return VariableSubstitutorBase.getReferencedVariables(this.content);
+            case VARIABLE:
+                if (this.content != null)
+                {
+                    return Collections.singleton(this.content);
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
     @Override
     public void makeXMLData(IXMLElement conditionRoot)
     {
@@ -33,6 +33,8 @@ import com.izforge.izpack.api.rules.Condition;
 import com.izforge.izpack.core.substitutor.VariableSubstitutorBase;
 import com.izforge.izpack.core.substitutor.VariableSubstitutorImpl;
 import com.izforge.izpack.util.Debug;
+import java.util.Collections;
+import java.util.Set;
 
 /**
  * This condition checks if a certain variable has a value. If it is not
@@ -137,6 +139,19 @@ public class ExistsCondition extends Condition
         this.content = content;
     }
 
+    /**
+     * Only the existence of a variable can be cached, files are checked every time.
+     */
+    @Override
+    public Set<String> getVariableDependencies()
+    {
+        if (contentType == ContentType.VARIABLE && this.content != null)
+        {
+            return Collections.singleton(this.content);
+        }
+        return null;
+    }
+
     @Override
     public void makeXMLData(IXMLElement conditionRoot)
     {
@@ -28,6 +28,9 @@ import com.izforge.izpack.util.Debug;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.Set;
 
 /**
  * A condition based on the value of a static java field or static java method.
@@ -183,6 +186,31 @@ public class JavaCondition extends Condition
         this.complete = true;
     }
 
+    /**
+     * A condition on a static final field, like the builtin operating system conditions, never
+     * changes. Other fields and methods are checked every time.
+     */
+    @Override
+    public Set<String> getVariableDependencies()
+    {
+        if (this.complete && this.fieldname != null && this.methodname == null)
+        {
+            try
+            {
+                int modifiers = Class.forName(this.classname).getField(this.fieldname).getModifiers();
+                if (Modifier.isStatic(modifiers) && Modifier.isFinal(modifiers))
+                {
+                    return Collections.emptySet();
+                }
+            }
+            catch (Exception e)
+            {
+                Debug.log("Can't access field " + this.fieldname + " of class " + this.classname);
+            }
+        }
+        return null;
+    }
+
     @Override
     public void makeXMLData(IXMLElement conditionRoot)
     {
@@ -24,6 +24,7 @@ package com.izforge.izpack.core.rules.process;
 import com.izforge.izpack.api.adaptator.IXMLElement;
 import com.izforge.izpack.api.rules.Condition;
 import com.izforge.izpack.api.rules.RulesEngine;
+import java.util.Set;
 
 /**
  * References an already defined condition
@@ -102,6 +103,19 @@ public class RefCondition extends Condition
         return details.toString();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getVariableDependencies()
+    {
+        if (this.referencedcondition == null && this.referencedConditionId != null)
+        {
+            this.referencedcondition = rules.getCondition(this.referencedConditionId);
+        }
+        return (this.referencedcondition != null) ? this.referencedcondition.getVariableDependencies() : null;
+    }
+
     /**
      * {@inheritDoc}
      */
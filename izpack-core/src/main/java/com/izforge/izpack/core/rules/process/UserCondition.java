@@ -25,6 +25,8 @@ import com.izforge.izpack.api.adaptator.IXMLElement;
 import com.izforge.izpack.api.adaptator.impl.XMLElementImpl;
 import com.izforge.izpack.api.rules.Condition;
 import com.izforge.izpack.util.Debug;
+import java.util.Collections;
+import java.util.Set;
 
 /**
  * Checks to see whether the user who is running the installer is the same as the user who should be
@@ -87,6 +89,15 @@ public class UserCondition extends Condition
         }
     }
 
+    /**
+     * The user running the installer does not change.
+     */
+    @Override
+    public Set<String> getVariableDependencies()
+    {
+        return Collections.emptySet();
+    }
+
     /**
      * {@inheritDoc}
      */
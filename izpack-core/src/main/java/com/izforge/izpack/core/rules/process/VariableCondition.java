@@ -26,6 +26,8 @@ import com.izforge.izpack.api.adaptator.impl.XMLElementImpl;
 import com.izforge.izpack.api.rules.Condition;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 import com.izforge.izpack.core.substitutor.VariableSubstitutorImpl;
+import com.izforge.izpack.core.substitutor.VariableSubstitutorBase;
+import java.util.Set;
 
 /**
  * @author Dennis Reil, <izpack@reil-online.de>
@@ -112,6 +114,18 @@ public class VariableCondition extends Condition
         return details.toString();
     }
 
+    @Override
+    public Set<String> getVariableDependencies()
+    {
+        if (this.variablename == null)
+        {
+            return null;
+        }
+        Set<String> variables = VariableSubstitutorBase.getReferencedVariables(this.value);
+        variables.add(this.variablename);
+        return variables;
+    }
+
     @Override
     public void makeXMLData(IXMLElement conditionRoot)
     {
@@ -0,0 +1,336 @@
+/*
+ * IzPack - Copyright 2001-2010 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.substitutor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A text split into literal segments and variable references, so that the variables can be
+ * substituted without parsing the text again. The references are recognized the way
+ * {@link VariableSubstitutorBase} always did: <code>$name</code> or <code>${name}</code>, with
+ * <code>${ENV[name]}</code> for environment variables, the start character depending on the
+ * substitution type.
+ * <p/>
+ * Templates of strings are cached, since the same strings (paths, messages) are substituted
+ * again and again.
+ */
+public class SubstitutionTemplate
+{
+    /**
+     * A segment copied as is.
+     */
+    public static final int LITERAL = 0;
+
+    /**
+     * A reference to a variable.
+     */
+    public static final int VARIABLE = 1;
+
+    /**
+     * A reference to an environment variable.
+     */
+    public static final int ENVIRONMENT = 2;
+
+    /**
+     * Maximum length of a variable reference in a text read in chunks. A longer reference is
+     * copied as is, so that an unterminated reference does not hold back the rest of the text.
+     */
+    public static final int MAX_REFERENCE_LENGTH = 4096;
+
+    /**
+     * Number of cached string templates.
+     */
+    private static final int CACHE_SIZE = 1024;
+
+    private static final Map<String, SubstitutionTemplate> cache = new LinkedHashMap<String, SubstitutionTemplate>(
+            CACHE_SIZE, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SubstitutionTemplate> eldest)
+        {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private final char variableStart;
+
+    private final boolean bracesRequired;
+
+    private final Segment[] segments;
+
+    private SubstitutionTemplate(char variableStart, boolean bracesRequired, List<Segment> segments)
+    {
+        this.variableStart = variableStart;
+        this.bracesRequired = bracesRequired;
+        this.segments = segments.toArray(new Segment[segments.size()]);
+    }
+
+    /**
+     * Returns the template of a string, compiling it if it is not cached.
+     *
+     * @param str            the string
+     * @param variableStart  the character starting a variable reference
+     * @param bracesRequired whether references must use braces
+     * @return the template of the string
+     */
+    public static SubstitutionTemplate get(String str, char variableStart, boolean bracesRequired)
+    {
+        SubstitutionTemplate template;
+        synchronized (cache)
+        {
+            template = cache.get(str);
+        }
+        if (template == null || template.variableStart != variableStart
+                || template.bracesRequired != bracesRequired)
+        {
+            template = compile(str, variableStart, bracesRequired);
+            synchronized (cache)
+            {
+                cache.put(str, template);
+            }
+        }
+        return template;
+    }
+
+    /**
+     * Compiles a whole string.
+     *
+     * @param str            the string
+     * @param variableStart  the character starting a variable reference
+     * @param bracesRequired whether references must use braces
+     * @return the template of the string
+     */
+    public static SubstitutionTemplate compile(CharSequence str, char variableStart, boolean bracesRequired)
+    {
+        List<Segment> segments = new ArrayList<Segment>();
+        parse(str, str.length(), true, variableStart, bracesRequired, segments);
+        return new SubstitutionTemplate(variableStart, bracesRequired, segments);
+    }
+
+    /**
+     * Compiles the beginning of a text read in chunks. A variable reference which may continue
+     * in the next chunk is not compiled, unless it is already longer than
+     * {@link #MAX_REFERENCE_LENGTH}: it is then copied as is.
+     *
+     * @param text           the text read so far
+     * @param eof            whether the text is complete
+     * @param variableStart  the character starting a variable reference
+     * @param bracesRequired whether references must use braces
+     * @param consumed       set to the number of characters compiled
+     * @return the template of the compiled characters
+     */
+    public static SubstitutionTemplate compile(CharSequence text, boolean eof, char variableStart,
+                                               boolean bracesRequired, int[] consumed)
+    {
+        List<Segment> segments = new ArrayList<Segment>();
+        consumed[0] = parse(text, text.length(), eof, variableStart, bracesRequired, segments);
+        return new SubstitutionTemplate(variableStart, bracesRequired, segments);
+    }
+
+    /**
+     * Returns the number of segments.
+     *
+     * @return the number of segments
+     */
+    public int size()
+    {
+        return segments.length;
+    }
+
+    /**
+     * Returns the kind of a segment.
+     *
+     * @param index the index of the segment
+     * @return {@link #LITERAL}, {@link #VARIABLE} or {@link #ENVIRONMENT}
+     */
+    public int getKind(int index)
+    {
+        return segments[index].kind;
+    }
+
+    /**
+     * Returns the text of a literal segment, or the name of a referenced variable.
+     *
+     * @param index the index of the segment
+     * @return the text or variable name
+     */
+    public String getText(int index)
+    {
+        return segments[index].text;
+    }
+
+    /**
+     * Appends a variable reference as it was written, to leave an undefined variable untouched.
+     *
+     * @param index the index of the segment
+     * @param out   the builder to append to
+     */
+    public void appendReference(int index, StringBuilder out)
+    {
+        out.append(variableStart);
+        Segment segment = segments[index];
+        if (segment.braces)
+        {
+            out.append('{').append(segment.text).append('}');
+        }
+        else
+        {
+            out.append(segment.text);
+        }
+    }
+
+    private static int parse(CharSequence text, int end, boolean eof, char variableStart, boolean bracesRequired,
+                             List<Segment> segments)
+    {
+        int literalStart = 0;
+        int index = 0;
+        while (index < end)
+        {
+            int start = indexOf(text, variableStart, index, end);
+            if (start == -1)
+            {
+                break;
+            }
+            int nameStart = start + 1;
+            if (nameStart == end)
+            {
+                if (!eof)
+                {
+                    addLiteral(text, literalStart, start, segments);
+                    return start;
+                }
+                break;
+            }
+            if (text.charAt(nameStart) == '{')
+            {
+                int close = indexOf(text, '}', nameStart + 1, end);
+                if (close == -1)
+                {
+                    if (eof)
+                    {
+                        break;
+                    }
+                    if (end - start < MAX_REFERENCE_LENGTH)
+                    {
+                        addLiteral(text, literalStart, start, segments);
+                        return start;
+                    }
+                    // too long to be a reference
+                    index = end;
+                    continue;
+                }
+                String name = text.subSequence(nameStart + 1, close).toString();
+                if (name.length() > 0)
+                {
+                    addLiteral(text, literalStart, start, segments);
+                    if (name.startsWith("ENV[") && name.lastIndexOf(']') == name.length() - 1)
+                    {
+                        segments.add(new Segment(ENVIRONMENT, name.substring(4, name.length() - 1), true));
+                    }
+                    else
+                    {
+                        segments.add(new Segment(VARIABLE, name, true));
+                    }
+                    literalStart = close + 1;
+                }
+                index = close + 1;
+            }
+            else if (bracesRequired)
+            {
+                index = nameStart;
+            }
+            else
+            {
+                int nameEnd = nameStart;
+                while (nameEnd < end && isNameChar(text.charAt(nameEnd), nameEnd > nameStart))
+                {
+                    nameEnd++;
+                }
+                if (nameEnd == end && !eof)
+                {
+                    if (end - start < MAX_REFERENCE_LENGTH)
+                    {
+                        addLiteral(text, literalStart, start, segments);
+                        return start;
+                    }
+                    // too long to be a reference
+                    index = end;
+                    continue;
+                }
+                if (nameEnd > nameStart)
+                {
+                    addLiteral(text, literalStart, start, segments);
+                    segments.add(new Segment(VARIABLE, text.subSequence(nameStart, nameEnd).toString(), false));
+                    literalStart = nameEnd;
+                }
+                index = nameEnd;
+            }
+        }
+        addLiteral(text, literalStart, end, segments);
+        return end;
+    }
+
+    private static void addLiteral(CharSequence text, int start, int end, List<Segment> segments)
+    {
+        if (end > start)
+        {
+            segments.add(new Segment(LITERAL, text.subSequence(start, end).toString(), false));
+        }
+    }
+
+    private static int indexOf(CharSequence text, char c, int from, int end)
+    {
+        for (int i = from; i < end; i++)
+        {
+            if (text.charAt(i) == c)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isNameChar(char c, boolean inName)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                || (inName && ((c >= '0' && c <= '9') || c == '_' || c == '.' || c == '-'));
+    }
+
+    private static class Segment
+    {
+        private final int kind;
+
+        private final String text;
+
+        private final boolean braces;
+
+        Segment(int kind, String text, boolean braces)
+        {
+            this.kind = kind;
+            this.text = text;
+            this.braces = braces;
+        }
+    }
+}
@@ -27,8 +27,14 @@ import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 import com.izforge.izpack.util.IoHelper;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -56,6 +62,11 @@ public abstract class VariableSubstitutorBase implements VariableSubstitutor
      */
     protected boolean bracesRequired = false;
 
+    /**
+     * Number of characters read at once when substituting a stream.
+     */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
     /**
      * A constant for file type. Plain file.
      */
@@ -117,6 +128,31 @@ public abstract class VariableSubstitutorBase implements VariableSubstitutor
 
     public abstract Value getValue(String name);
 
+    /**
+     * Returns the names of the variables referenced by the specified string, as they would be
+     * looked up by {@link #substitute(String)}. Environment variables are not returned.
+     *
+     * @param str the string to check for variables, may be <tt>null</tt>
+     * @return the names of the referenced variables
+     */
+    public static Set<String> getReferencedVariables(String str)
+    {
+        Set<String> names = new LinkedHashSet<String>();
+        if (str == null || str.indexOf('$') == -1)
+        {
+            return names;
+        }
+        SubstitutionTemplate template = SubstitutionTemplate.get(str, '$', false);
+        for (int i = 0; i < template.size(); i++)
+        {
+            if (template.getKind(i) == SubstitutionTemplate.VARIABLE)
+            {
+                names.add(template.getText(i));
+            }
+        }
+        return names;
+    }
+
     /**
      * Get whether this substitutor requires braces.
      */
@@ -161,24 +197,44 @@ public abstract class VariableSubstitutorBase implements VariableSubstitutor
         {
             return null;
         }
+        if (type == null)
+        {
+            type = SubstitutionType.getDefault();
+        }
 
-        // Create reader and write for the strings
-        StringReader reader = new StringReader(str);
-        StringWriter writer = new StringWriter();
+        // The ant syntax is parsed depending on the variable values
+        if (type == SubstitutionType.TYPE_ANT)
+        {
+            StringReader reader = new StringReader(str);
+            StringWriter writer = new StringWriter();
+            try
+            {
+                substituteCharacters(reader, writer, type);
+            }
+            catch (Exception e)
+            {
+                LOGGER.log(Level.SEVERE, "Error when substituting variables", e);
+                throw new Error(e);
+            }
+            return writer.getBuffer().toString();
+        }
 
-        // Substitute any variables
+        char variableStart = getVariableStart(type);
+        if (str.indexOf(variableStart) == -1)
+        {
+            return str;
+        }
+        StringBuilder result = new StringBuilder(str.length() + 64);
         try
         {
-            substitute(reader, writer, type);
+            render(SubstitutionTemplate.get(str, variableStart, bracesRequired), type, result);
         }
         catch (Exception e)
         {
             LOGGER.log(Level.SEVERE, "Error when substituting variables", e);
             throw new Error(e);
         }
-
-        // Return the resulting string
-        return writer.getBuffer().toString();
+        return result.toString();
     }
 
     /**
@@ -198,20 +254,7 @@ public abstract class VariableSubstitutorBase implements VariableSubstitutor
         // Check if file type specific default encoding known
         if (encoding == null)
         {
-            if (type == null)
-            {
-                type = SubstitutionType.getDefault();
-            }
-
-            switch (type)
-            {
-                case TYPE_JAVA_PROPERTIES:
-                    encoding = "ISO-8859-1";
-                    break;
-                case TYPE_XML:
-                    encoding = "UTF-8";
-                    break;
-            }
+            encoding = getDefaultEncoding(type);
         }
 
         // Create the reader and write
@@ -229,6 +272,32 @@ public abstract class VariableSubstitutorBase implements VariableSubstitutor
         return subs;
     }
 
+    /**
+     * Substitutes the variables found in the data read from a channel, typically the channel of a
+     * large file. Escapes special characters using file type specific escaping if necessary.
+     *
+     * @param in       the channel to read
+     * @param out      the channel to write
+     * @param type     the file type or null for plain
+     * @param encoding the character encoding or null for default
+     * @return the number of substitutions made
+     * @throws Exception if the data cannot be read or written
+     */
+    public int substitute(ReadableByteChannel in, WritableByteChannel out, SubstitutionType type, String encoding)
+            throws Exception
+    {
+        if (encoding == null)
+        {
+            encoding = getDefaultEncoding(type);
+        }
+        Charset charset = (encoding != null) ? Charset.forName(encoding) : Charset.defaultCharset();
+        Reader reader = Channels.newReader(in, charset.newDecoder(), BUFFER_SIZE);
+        Writer writer = Channels.newWriter(out, charset.newEncoder(), BUFFER_SIZE);
+        int subs = substitute(reader, writer, type);
+        writer.flush();
+        return subs;
+    }
+
     /**
      * Substitute method Variant that gets An Input Stream and returns A String
      *
@@ -294,7 +363,47 @@ public abstract class VariableSubstitutorBase implements VariableSubstitutor
         {
             type = SubstitutionType.getDefault();
         }
+        if (type == SubstitutionType.TYPE_ANT)
+        {
+            return substituteCharacters(reader, writer, type);
+        }
 
+        // Compile and render the text read so far, keeping a reference which may continue
+        // in the next chunk
+        char variableStart = getVariableStart(type);
+        char[] buffer = new char[BUFFER_SIZE];
+        StringBuilder text = new StringBuilder(BUFFER_SIZE);
+        StringBuilder result = new StringBuilder(BUFFER_SIZE);
+        int[] consumed = new int[1];
+        int subs = 0;
+        boolean eof = false;
+        while (!eof)
+        {
+            int read = reader.read(buffer);
+            if (read == -1)
+            {
+                eof = true;
+            }
+            else
+            {
+                text.append(buffer, 0, read);
+            }
+            SubstitutionTemplate template = SubstitutionTemplate.compile(text, eof, variableStart, bracesRequired,
+                    consumed);
+            result.setLength(0);
+            subs += render(template, type, result);
+            writer.write(result.toString());
+            text.delete(0, consumed[0]);
+        }
+        return subs;
+    }
+
+    /**
+     * Substitutes the variables character by character. Used for the ant syntax, where the end of
+     * a reference depends on whether the variable is defined.
+     */
+    private int substituteCharacters(Reader reader, Writer writer, SubstitutionType type) throws Exception
+    {
         // determine character which starts (and ends) a variable
         char variable_start = '$';
         char variable_end = '\0';
@@ -416,6 +525,86 @@ public abstract class VariableSubstitutorBase implements VariableSubstitutor
         }
     }
 
+    /**
+     * Appends a compiled text with its variables substituted.
+     *
+     * @param template the compiled text
+     * @param type     the escaping type
+     * @param result   the builder to append to
+     * @return the number of substitutions made
+     * @throws Exception if a variable value cannot be resolved
+     */
+    private int render(SubstitutionTemplate template, SubstitutionType type, StringBuilder result)
+            throws Exception
+    {
+        int subs = 0;
+        for (int i = 0; i < template.size(); i++)
+        {
+            switch (template.getKind(i))
+            {
+                case SubstitutionTemplate.LITERAL:
+                    result.append(template.getText(i));
+                    break;
+                case SubstitutionTemplate.ENVIRONMENT:
+                    String envvalue = IoHelper.getenv(template.getText(i));
+                    result.append(escapeSpecialChars((envvalue != null) ? envvalue : "", type));
+                    subs++;
+                    break;
+                default:
+                    Value val = getValue(template.getText(i));
+                    String varvalue = (val != null) ? val.resolve() : null;
+                    if (varvalue != null)
+                    {
+                        result.append(escapeSpecialChars(varvalue, type));
+                    }
+                    else
+                    {
+                        template.appendReference(i, result);
+                    }
+                    subs++;
+                    break;
+            }
+        }
+        return subs;
+    }
+
+    /**
+     * Returns the character which starts a variable reference.
+     */
+    private static char getVariableStart(SubstitutionType type)
+    {
+        switch (type)
+        {
+            case TYPE_SHELL:
+                return '%';
+            case TYPE_AT:
+            case TYPE_ANT:
+                return '@';
+            default:
+                return '$';
+        }
+    }
+
+    /**
+     * Returns the file type specific default encoding, or <tt>null</tt> for the platform encoding.
+     */
+    private static String getDefaultEncoding(SubstitutionType type)
+    {
+        if (type == null)
+        {
+            type = SubstitutionType.getDefault();
+        }
+        switch (type)
+        {
+            case TYPE_JAVA_PROPERTIES:
+                return "ISO-8859-1";
+            case TYPE_XML:
+                return "UTF-8";
+            default:
+                return null;
+        }
+    }
+
     /**
      * Returns the internal constant for the specified file type.
      *
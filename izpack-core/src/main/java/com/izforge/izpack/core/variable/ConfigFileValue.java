@@ -35,6 +35,8 @@ import javax.xml.xpath.*;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 public abstract class ConfigFileValue extends ValueImpl implements Serializable
 {
@@ -102,6 +104,16 @@ public abstract class ConfigFileValue extends ValueImpl implements Serializable
         }
     }
 
+    @Override
+    public List<String> getExpressions()
+    {
+        List<String> expressions = new ArrayList<String>();
+        expressions.add(section);
+        expressions.add(key);
+        expressions.addAll(getFileExpressions());
+        return expressions;
+    }
+
     protected String resolve(InputStream in) throws Exception
     {
         switch (type)
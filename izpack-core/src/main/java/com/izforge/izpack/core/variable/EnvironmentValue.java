@@ -25,6 +25,8 @@ import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 import com.izforge.izpack.util.IoHelper;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
 
 public class EnvironmentValue extends ValueImpl implements Serializable
 {
@@ -60,6 +62,12 @@ public class EnvironmentValue extends ValueImpl implements Serializable
         }
     }
 
+    @Override
+    public List<String> getExpressions()
+    {
+        return Arrays.asList(variable);
+    }
+
     @Override
     public String resolve()
     {
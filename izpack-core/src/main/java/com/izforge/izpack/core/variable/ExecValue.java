@@ -27,6 +27,9 @@ import com.izforge.izpack.util.FileExecutor;
 import com.izforge.izpack.util.OsVersion;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 
 public class ExecValue extends ValueImpl implements Serializable
@@ -97,6 +100,17 @@ public class ExecValue extends ValueImpl implements Serializable
         }
     }
 
+    /**
+     * The command is not executed again as long as its arguments and directory do not change.
+     */
+    @Override
+    public List<String> getExpressions()
+    {
+        List<String> expressions = new ArrayList<String>(Arrays.asList(cmd));
+        expressions.add(dir);
+        return expressions;
+    }
+
     @Override
     public String resolve()
     {
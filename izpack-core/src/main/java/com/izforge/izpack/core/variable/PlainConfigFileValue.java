@@ -25,6 +25,8 @@ import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 
 import java.io.FileInputStream;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
 
 public class PlainConfigFileValue extends ConfigFileValue implements Serializable
 {
@@ -61,6 +63,12 @@ public class PlainConfigFileValue extends ConfigFileValue implements Serializabl
         }
     }
 
+    @Override
+    public List<String> getFileExpressions()
+    {
+        return Arrays.asList(location);
+    }
+
     @Override
     public String resolve() throws Exception
     {
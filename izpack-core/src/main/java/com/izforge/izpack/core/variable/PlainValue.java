@@ -24,6 +24,8 @@ package com.izforge.izpack.core.variable;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
 
 
 public class PlainValue extends ValueImpl implements Serializable
@@ -60,6 +62,12 @@ public class PlainValue extends ValueImpl implements Serializable
         }
     }
 
+    @Override
+    public List<String> getExpressions()
+    {
+        return Arrays.asList(value);
+    }
+
     @Override
     public String resolve()
     {
@@ -90,6 +90,25 @@ public class RegistryValue extends ValueImpl implements Serializable
 
     @Override
     public String resolve() throws Exception
+    {
+        // the registry is not accessed concurrently
+        synchronized (RegistryValue.class)
+        {
+            return resolveRegistryValue();
+        }
+    }
+
+    @Override
+    public String resolve(VariableSubstitutor... substitutors) throws Exception
+    {
+        // the registry is not accessed concurrently
+        synchronized (RegistryValue.class)
+        {
+            return resolveRegistryValue(substitutors);
+        }
+    }
+
+    private String resolveRegistryValue() throws Exception
     {
         if (!OsVersion.IS_WINDOWS)
         {
@@ -118,8 +137,7 @@ public class RegistryValue extends ValueImpl implements Serializable
         return null;
     }
 
-    @Override
-    public String resolve(VariableSubstitutor... substitutors) throws Exception
+    private String resolveRegistryValue(VariableSubstitutor... substitutors) throws Exception
     {
         if (!OsVersion.IS_WINDOWS)
         {
@@ -28,6 +28,9 @@ import com.izforge.izpack.api.regex.RegularExpressionProcessor;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 import com.izforge.izpack.core.regex.RegularExpressionProcessorImpl;
 
+import java.util.Collections;
+import java.util.List;
+
 public abstract class ValueImpl implements Value
 {
     private AutomatedInstallData installData;
@@ -77,6 +80,28 @@ public abstract class ValueImpl implements Value
         return newValue;
     }
 
+    /**
+     * Returns the strings this value is resolved from, before substitution. As long as they give the
+     * same strings once substituted and the {@link #getFileExpressions() files} read are not modified,
+     * the value resolves to the same result.
+     *
+     * @return the strings, or <tt>null</tt> if the value has to be resolved each time
+     */
+    public List<String> getExpressions()
+    {
+        return null;
+    }
+
+    /**
+     * Returns the paths of the files this value reads, before substitution.
+     *
+     * @return the paths of the files
+     */
+    public List<String> getFileExpressions()
+    {
+        return Collections.emptyList();
+    }
+
     @Override
     public AutomatedInstallData getInstallData()
     {
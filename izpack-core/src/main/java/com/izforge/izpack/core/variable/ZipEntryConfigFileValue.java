@@ -3,6 +3,8 @@ package com.izforge.izpack.core.variable;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
@@ -55,6 +57,20 @@ public class ZipEntryConfigFileValue extends ConfigFileValue
         }
     }
 
+    @Override
+    public List<String> getExpressions()
+    {
+        List<String> expressions = super.getExpressions();
+        expressions.add(entryname);
+        return expressions;
+    }
+
+    @Override
+    public List<String> getFileExpressions()
+    {
+        return Arrays.asList(filename);
+    }
+
     @Override
     public String resolve() throws Exception
     {
@@ -11,6 +11,7 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -182,39 +183,53 @@ public class JarMerge extends AbstractMerge
         }
     }
 
+    /**
+     * Copies the matching entries of the jar. Deflated entries are copied without being inflated
+     * when the output stream supports it, see {@link RawZipFile#copyEntry}.
+     */
     public void merge(ZipOutputStream outJar)
     {
         Pattern pattern = Pattern.compile(regexp);
         List<String> mergeList = getMergeList(outJar);
-        ZipEntry zentry;
         try
         {
-            JarInputStream jarInputStream = new JarInputStream(new FileInputStream(new File(jarPath)));
-            while ((zentry = jarInputStream.getNextEntry()) != null)
+            RawZipFile zipFile = new RawZipFile(new File(jarPath));
+            try
             {
-                Matcher matcher = pattern.matcher(zentry.getName());
-                if (matcher.matches())
+                List<RawZipFile.Entry> entries = zipFile.getEntries();
+                for (int i = 0; i < entries.size(); i++)
                 {
-                    if (mergeList.contains(zentry.getName()))
+                    RawZipFile.Entry entry = entries.get(i);
+                    if (isManifest(entries, i))
                     {
                         continue;
                     }
-                    mergeList.add(zentry.getName());
-                    String matchFile = matcher.group(1);
-                    StringBuilder dest = new StringBuilder(destination);
-                    if (matchFile != null && matchFile.length() > 0)
+                    Matcher matcher = pattern.matcher(entry.getName());
+                    if (matcher.matches())
                     {
-                        if (dest.length() > 0 && dest.charAt(dest.length() - 1) != '/')
+                        if (mergeList.contains(entry.getName()))
                         {
-                            dest.append('/');
+                            continue;
                         }
-                        dest.append(matchFile);
+                        mergeList.add(entry.getName());
+                        String matchFile = matcher.group(1);
+                        StringBuilder dest = new StringBuilder(destination);
+                        if (matchFile != null && matchFile.length() > 0)
+                        {
+                            if (dest.length() > 0 && dest.charAt(dest.length() - 1) != '/')
+                            {
+                                dest.append('/');
+                            }
+                            dest.append(matchFile);
+                        }
+                        zipFile.copyEntry(entry, outJar, dest.toString().replaceAll("//", "/"));
                     }
-                    IoHelper.copyStreamToJar(jarInputStream, outJar, dest.toString().replaceAll("//", "/"), zentry.getTime());
                 }
-
             }
-            jarInputStream.close();
+            finally
+            {
+                zipFile.close();
+            }
         }
         catch (IOException e)
         {
@@ -222,6 +237,19 @@ public class JarMerge extends AbstractMerge
         }
     }
 
+    /**
+     * Tells if an entry is the manifest of the jar, which a {@link JarInputStream} does not return as
+     * an entry: the manifest is the first entry, or the second one after the META-INF directory.
+     */
+    private boolean isManifest(List<RawZipFile.Entry> entries, int index)
+    {
+        if (!JarFile.MANIFEST_NAME.equalsIgnoreCase(entries.get(index).getName()))
+        {
+            return false;
+        }
+        return index == 0 || (index == 1 && "META-INF/".equalsIgnoreCase(entries.get(0).getName()));
+    }
+
     @Override
     public String toString()
     {
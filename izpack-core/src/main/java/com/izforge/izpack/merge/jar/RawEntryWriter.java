@@ -0,0 +1,32 @@
+package com.izforge.izpack.merge.jar;
+
+import org.apache.tools.zip.ZipEntry;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Zip output stream able to write entries whose data is already deflated.
+ *
+ * @see RawZipFile#copyEntry(RawZipFile.Entry, org.apache.tools.zip.ZipOutputStream, String)
+ */
+public interface RawEntryWriter
+{
+    /**
+     * Returns <tt>true</tt> if deflated data can be written as it is to this stream.
+     */
+    boolean isRawWriteSupported();
+
+    /**
+     * Writes an entry whose data is already deflated.
+     *
+     * @param entry          the entry to write. Its name and time are used
+     * @param compressedData the deflated data of the entry
+     * @param compressedSize the length of the deflated data
+     * @param crc            the CRC-32 of the uncompressed data
+     * @param size           the size of the uncompressed data
+     * @throws IOException if the entry cannot be written
+     */
+    void writeRawEntry(ZipEntry entry, InputStream compressedData, long compressedSize, long crc, long size)
+            throws IOException;
+}
@@ -0,0 +1,395 @@
+package com.izforge.izpack.merge.jar;
+
+import com.izforge.izpack.util.IoHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Zip file giving access to the compressed data of its entries, so that they can be copied to
+ * another zip file without being inflated and deflated again.
+ * <p/>
+ * The entries are read from the central directory, in its order. The uncompressed data of the
+ * entries is read through a {@link ZipFile}.
+ */
+public class RawZipFile
+{
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private static final int LOCAL_HEADER_LENGTH = 30;
+
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+
+    private static final int END_LENGTH = 22;
+
+    private static final int ENCRYPTED_FLAG = 1;
+
+    private final ZipFile zipFile;
+
+    private final RandomAccessFile file;
+
+    private final List<Entry> entries;
+
+    /**
+     * Opens a zip file.
+     *
+     * @param file the zip file
+     * @throws IOException if the file cannot be read as a zip file
+     */
+    public RawZipFile(File file) throws IOException
+    {
+        this.zipFile = new ZipFile(file);
+        try
+        {
+            this.file = new RandomAccessFile(file, "r");
+        }
+        catch (IOException e)
+        {
+            zipFile.close();
+            throw e;
+        }
+        try
+        {
+            entries = readEntries();
+        }
+        catch (IOException e)
+        {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the entries of the zip file, in the order of its central directory.
+     */
+    public List<Entry> getEntries()
+    {
+        return entries;
+    }
+
+    /**
+     * Returns the uncompressed data of an entry.
+     */
+    public InputStream getInputStream(Entry entry) throws IOException
+    {
+        return zipFile.getInputStream(entry.getZipEntry());
+    }
+
+    /**
+     * Returns the compressed data of an entry, as stored in the zip file.
+     *
+     * @throws IOException if the entry cannot be {@link Entry#isRawCopyable() copied raw}, or if the local
+     *                     header at its offset is not the one of the entry
+     */
+    public InputStream getRawInputStream(Entry entry) throws IOException
+    {
+        if (!entry.isRawCopyable())
+        {
+            throw new IOException("Entry " + entry.getName() + " cannot be copied without inflating it");
+        }
+        long start = getDataOffset(entry);
+        if (start < 0)
+        {
+            throw new IOException("Bad local header for entry " + entry.getName());
+        }
+        return new RangeInputStream(start, entry.getCompressedSize());
+    }
+
+    /**
+     * Copies an entry to a zip output stream. Its compressed data is copied as it is if the entry is
+     * {@link Entry#isRawCopyable() raw copyable}, its local header has the name of the entry, and the stream
+     * is a {@link RawEntryWriter} supporting it; otherwise the entry is inflated and deflated again.
+     *
+     * @param entry the entry to copy
+     * @param out   the zip output stream
+     * @param name  the name of the entry in the output stream
+     * @throws IOException if the entry cannot be copied
+     */
+    public void copyEntry(Entry entry, org.apache.tools.zip.ZipOutputStream out, String name) throws IOException
+    {
+        long start = -1;
+        if (entry.isRawCopyable() && out instanceof RawEntryWriter && ((RawEntryWriter) out).isRawWriteSupported())
+        {
+            start = getDataOffset(entry);
+        }
+        if (start >= 0)
+        {
+            org.apache.tools.zip.ZipEntry newEntry = new org.apache.tools.zip.ZipEntry(name);
+            if (entry.getTime() != -1)
+            {
+                newEntry.setTime(entry.getTime());
+            }
+            InputStream in = new RangeInputStream(start, entry.getCompressedSize());
+            try
+            {
+                ((RawEntryWriter) out).writeRawEntry(newEntry, in, entry.getCompressedSize(), entry.getCrc(),
+                        entry.getSize());
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        else
+        {
+            InputStream in = getInputStream(entry);
+            try
+            {
+                IoHelper.copyStreamToJar(in, out, name, entry.getTime());
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+    }
+
+    public void close() throws IOException
+    {
+        try
+        {
+            file.close();
+        }
+        finally
+        {
+            zipFile.close();
+        }
+    }
+
+    /**
+     * Reads the local header of an entry, and checks that it has the name of the entry, so that the offset
+     * read from the central directory is known to be the one of the entry.
+     *
+     * @return the offset of the compressed data of the entry, or -1 if the local header is not the one of
+     *         the entry
+     */
+    private long getDataOffset(Entry entry) throws IOException
+    {
+        byte[] header = new byte[LOCAL_HEADER_LENGTH];
+        byte[] name;
+        synchronized (file)
+        {
+            if (entry.localHeaderOffset + LOCAL_HEADER_LENGTH > file.length())
+            {
+                return -1;
+            }
+            file.seek(entry.localHeaderOffset);
+            file.readFully(header);
+            name = new byte[getShort(header, 26)];
+            if (getInt(header, 0) != LOCAL_HEADER_SIGNATURE
+                    || entry.localHeaderOffset + LOCAL_HEADER_LENGTH + name.length > file.length())
+            {
+                return -1;
+            }
+            file.readFully(name);
+        }
+        if (!Arrays.equals(name, entry.getName().getBytes("UTF-8")))
+        {
+            return -1;
+        }
+        return entry.localHeaderOffset + LOCAL_HEADER_LENGTH + name.length + getShort(header, 28);
+    }
+
+    /**
+     * Reads the local header offsets and flags from the central directory, and pairs them with the
+     * entries of the {@link ZipFile}, which are in the same order.
+     * If the central directory cannot be read (zip64 archive, archive comment hiding the end record),
+     * no entry can be copied raw.
+     */
+    private List<Entry> readEntries() throws IOException
+    {
+        List<Entry> result = new ArrayList<Entry>(zipFile.size());
+        long[] offsets = readLocalHeaderOffsets();
+        Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+        int index = 0;
+        while (zipEntries.hasMoreElements())
+        {
+            ZipEntry zipEntry = zipEntries.nextElement();
+            long offset = (offsets != null && offsets.length == zipFile.size()) ? offsets[index] : -1;
+            result.add(new Entry(zipEntry, offset));
+            index++;
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * @return the local header offsets of the entries, -1 for the encrypted entries, or <tt>null</tt> if the
+     *         central directory cannot be read
+     */
+    private long[] readLocalHeaderOffsets() throws IOException
+    {
+        long length = file.length();
+        if (length < END_LENGTH)
+        {
+            return null;
+        }
+        int tailLength = (int) Math.min(length, END_LENGTH + 0xffff);
+        byte[] tail = new byte[tailLength];
+        file.seek(length - tailLength);
+        file.readFully(tail);
+        int end = -1;
+        for (int i = tailLength - END_LENGTH; i >= 0; i--)
+        {
+            if (getInt(tail, i) == END_SIGNATURE && i + END_LENGTH + getShort(tail, i + 20) == tailLength)
+            {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0)
+        {
+            return null;
+        }
+        int count = getShort(tail, end + 10);
+        long directoryLength = getInt(tail, end + 12) & 0xffffffffL;
+        long directoryOffset = getInt(tail, end + 16) & 0xffffffffL;
+        if (count == 0xffff || directoryOffset == 0xffffffffL || directoryOffset + directoryLength > length)
+        {
+            return null;
+        }
+
+        byte[] directory = new byte[(int) directoryLength];
+        file.seek(directoryOffset);
+        file.readFully(directory);
+        long[] offsets = new long[count];
+        int position = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (position + CENTRAL_HEADER_LENGTH > directory.length
+                    || getInt(directory, position) != CENTRAL_HEADER_SIGNATURE)
+            {
+                return null;
+            }
+            boolean encrypted = (getShort(directory, position + 8) & ENCRYPTED_FLAG) != 0;
+            long offset = getInt(directory, position + 42) & 0xffffffffL;
+            offsets[i] = (encrypted || offset == 0xffffffffL) ? -1 : offset;
+            position += CENTRAL_HEADER_LENGTH + getShort(directory, position + 28) + getShort(directory, position + 30)
+                    + getShort(directory, position + 32);
+        }
+        return offsets;
+    }
+
+    private static int getShort(byte[] buffer, int offset)
+    {
+        return (buffer[offset] & 0xff) | ((buffer[offset + 1] & 0xff) << 8);
+    }
+
+    private static int getInt(byte[] buffer, int offset)
+    {
+        return getShort(buffer, offset) | (getShort(buffer, offset + 2) << 16);
+    }
+
+    /**
+     * Entry of a {@link RawZipFile}.
+     */
+    public static class Entry
+    {
+        private final ZipEntry zipEntry;
+
+        private final long localHeaderOffset;
+
+        Entry(ZipEntry zipEntry, long localHeaderOffset)
+        {
+            this.zipEntry = zipEntry;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public ZipEntry getZipEntry()
+        {
+            return zipEntry;
+        }
+
+        public String getName()
+        {
+            return zipEntry.getName();
+        }
+
+        public long getTime()
+        {
+            return zipEntry.getTime();
+        }
+
+        public long getCrc()
+        {
+            return zipEntry.getCrc();
+        }
+
+        public long getSize()
+        {
+            return zipEntry.getSize();
+        }
+
+        public long getCompressedSize()
+        {
+            return zipEntry.getCompressedSize();
+        }
+
+        /**
+         * Returns <tt>true</tt> if the compressed data of this entry can be copied as it is into a zip
+         * file whose entries are deflated: the entry is deflated and not encrypted.
+         */
+        public boolean isRawCopyable()
+        {
+            return localHeaderOffset >= 0 && zipEntry.getMethod() == ZipEntry.DEFLATED && zipEntry.getCrc() != -1
+                    && zipEntry.getSize() >= 0 && zipEntry.getCompressedSize() >= 0;
+        }
+    }
+
+    /**
+     * Stream over a range of the zip file.
+     */
+    private class RangeInputStream extends InputStream
+    {
+        private long position;
+
+        private long remaining;
+
+        RangeInputStream(long position, long length)
+        {
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] buffer = new byte[1];
+            return (read(buffer, 0, 1) == -1) ? -1 : buffer[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException
+        {
+            if (remaining <= 0)
+            {
+                return -1;
+            }
+            int count = (int) Math.min(length, remaining);
+            synchronized (file)
+            {
+                file.seek(position);
+                count = file.read(buffer, offset, count);
+            }
+            if (count == -1)
+            {
+                throw new IOException("Unexpected end of zip file");
+            }
+            position += count;
+            remaining -= count;
+            return count;
+        }
+    }
+}
@@ -10,9 +10,17 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
 import java.net.JarURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Crawl and store a map of all files in classpath when we can't get package directly
@@ -24,14 +32,36 @@ public class ClassPathCrawler
 
     private MergeableResolver mergeableResolver;
 
-    private HashMap<String, Set<URL>> classPathContentCache;
+    private ClassPathIndex classPathIndex;
 
+    /**
+     * Files of the classpath by file name
+     */
+    private Map<String, List<File>> classPathFiles;
+
+    /**
+     * URLs of the files of the classpath by file name, converted from {@link #classPathFiles} when looked up
+     */
+    private final ConcurrentHashMap<String, Set<URL>> classPathContentCache = new ConcurrentHashMap<String, Set<URL>>();
+
+    private Set<URL> classPathUrls;
+
+    /**
+     * Index shared by the crawlers created without an index
+     */
+    private static final ClassPathIndex MEMORY_INDEX = new ClassPathIndex();
 
     private static final List<String> acceptedJar = Arrays.asList(".*event.*", ".*panel.*", ".*izpack.*");
 
     public ClassPathCrawler(MergeableResolver mergeableResolver)
+    {
+        this(mergeableResolver, MEMORY_INDEX);
+    }
+
+    public ClassPathCrawler(MergeableResolver mergeableResolver, ClassPathIndex classPathIndex)
     {
         this.mergeableResolver = mergeableResolver;
+        this.classPathIndex = classPathIndex;
     }
 
 
@@ -46,53 +76,156 @@ public class ClassPathCrawler
         return stringBuilder.toString();
     }
 
-    public void processClassPath()
+    /**
+     * Lists the files of the classpath. Each classpath element is listed on its own thread; the entries
+     * of jars come from the {@link ClassPathIndex}.
+     */
+    public synchronized void processClassPath()
     {
-        if (classPathContentCache != null)
+        if (classPathFiles != null)
+        {
+            return;
+        }
+        Map<String, List<File>> files = new HashMap<String, List<File>>();
+        Set<URL> urls = getClassPathUrl();
+        if (urls.isEmpty())
         {
+            classPathFiles = files;
             return;
         }
-        classPathContentCache = new HashMap<String, Set<URL>>();
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(Runtime.getRuntime().availableProcessors(), urls.size()), new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "IzPack - Classpath crawler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
         try
         {
-            Set<URL> urls = getClassPathUrl();
-            for (URL url : urls)
+            List<Future<List<File>>> results = new ArrayList<Future<List<File>>>();
+            for (final URL url : urls)
             {
-                Mergeable mergeable = mergeableResolver.getMergeableFromURL(url);
-                final List<File> files = mergeable.recursivelyListFiles(new FileFilter()
+                results.add(executor.submit(new Callable<List<File>>()
                 {
-                    public boolean accept(File pathname)
+                    public List<File> call() throws Exception
                     {
-                        return true;
+                        return listFiles(url);
                     }
-                });
-                if (files != null)
+                }));
+            }
+            for (Future<List<File>> result : results)
+            {
+                List<File> urlFiles = result.get();
+                if (urlFiles != null)
                 {
-                    for (File file : files)
+                    for (File file : urlFiles)
                     {
-                        getOrCreateList(classPathContentCache, file.getName()).add(file.toURI().toURL());
+                        getOrCreateList(files, file.getName()).add(file);
                     }
                 }
             }
         }
-        catch (Exception e)
+        catch (ExecutionException e)
         {
+            throw new MergeException(e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
             throw new MergeException(e);
         }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        classPathFiles = files;
+    }
+
+    /**
+     * Lists the files of a classpath element, as {@link Mergeable#recursivelyListFiles(FileFilter)} does.
+     */
+    private List<File> listFiles(URL url) throws IOException
+    {
+        String jarPath = ResolveUtils.processUrlToJarPath(url);
+        File jar = new File(jarPath);
+        if (jar.isFile())
+        {
+            List<String> entries = classPathIndex.getEntries(jar);
+            if (entries != null)
+            {
+                List<File> result = new ArrayList<File>(entries.size());
+                for (String entry : entries)
+                {
+                    result.add(new File(jarPath + "!" + entry));
+                }
+                return result;
+            }
+        }
+        Mergeable mergeable = mergeableResolver.getMergeableFromURL(url);
+        return mergeable.recursivelyListFiles(new FileFilter()
+        {
+            public boolean accept(File pathname)
+            {
+                return true;
+            }
+        });
     }
 
-    private Set<URL> getOrCreateList(HashMap<String, Set<URL>> classPathContentCache, String key)
+    private List<File> getOrCreateList(Map<String, List<File>> classPathFiles, String key)
     {
         String newKey = key;
         if (key.contains("jar!"))
         {
             newKey = key.substring(key.indexOf("!") + 1);
         }
-        if (!classPathContentCache.containsKey(newKey))
+        List<File> files = classPathFiles.get(newKey);
+        if (files == null)
+        {
+            files = new ArrayList<File>();
+            classPathFiles.put(newKey, files);
+        }
+        return files;
+    }
+
+    /**
+     * Returns the URLs of the files of the classpath with the given name.
+     *
+     * @param name the file name
+     * @return the URLs, or <tt>null</tt> if there is no such file
+     */
+    private Set<URL> getUrls(String name)
+    {
+        processClassPath();
+        Set<URL> urls = classPathContentCache.get(name);
+        if (urls == null)
         {
-            classPathContentCache.put(newKey, new HashSet<URL>());
+            List<File> files = classPathFiles.get(name);
+            if (files == null)
+            {
+                return null;
+            }
+            urls = new HashSet<URL>();
+            try
+            {
+                for (File file : files)
+                {
+                    urls.add(file.toURI().toURL());
+                }
+            }
+            catch (MalformedURLException e)
+            {
+                throw new MergeException(e);
+            }
+            Set<URL> previous = classPathContentCache.putIfAbsent(name, urls);
+            if (previous != null)
+            {
+                urls = previous;
+            }
         }
-        return classPathContentCache.get(newKey);
+        return urls;
     }
 
     public Class searchClassInClassPath(final String className)
@@ -112,8 +245,7 @@ public class ClassPathCrawler
         try
         {
             final String fileToSearch = className + ".class";
-            processClassPath();
-            Set<URL> urlList = classPathContentCache.get(fileToSearch);
+            Set<URL> urlList = getUrls(fileToSearch);
             if (urlList != null)
             {
                 String fullClassName = ClassResolver.processURLToClassName(urlList.iterator().next());
@@ -128,13 +260,15 @@ public class ClassPathCrawler
 
     public Set<URL> searchPackageInClassPath(final String packageName)
     {
-        processClassPath();
-        String formatPackageName = packageName.replaceAll("/", ".").replaceAll("\\.$", "");
+        String formatPackageName = packageName.replace('/', '.');
+        if (formatPackageName.endsWith("."))
+        {
+            formatPackageName = formatPackageName.substring(0, formatPackageName.length() - 1);
+        }
 
-        String[] parts = formatPackageName.replaceAll("/", ".").split("\\.");
-        if (parts.length == 1)
+        if (formatPackageName.indexOf('.') < 0)
         {
-            return classPathContentCache.get(formatPackageName);
+            return getUrls(formatPackageName);
         }
 
         return getUrlsForPackage(formatPackageName);
@@ -144,7 +278,7 @@ public class ClassPathCrawler
     public Set<URL> getUrlsForPackage(String packageName)
     {
         Set<URL> resultSet = new HashSet<URL>();
-        Set<URL> urls = classPathContentCache.get(ClassResolver.getLastPackagePart(packageName));
+        Set<URL> urls = getUrls(ClassResolver.getLastPackagePart(packageName));
         if (urls == null)
         {
             throw new IzPackException("The package " + packageName + " has not been found in the classpath and is required by the installer");
@@ -168,7 +302,19 @@ public class ClassPathCrawler
         return null;
     }
 
-    private Set<URL> getClassPathUrl()
+    /**
+     * Returns the classpath elements to crawl. They are computed once.
+     */
+    private synchronized Set<URL> getClassPathUrl()
+    {
+        if (classPathUrls == null)
+        {
+            classPathUrls = findClassPathUrl();
+        }
+        return classPathUrls;
+    }
+
+    private Set<URL> findClassPathUrl()
     {
         Set<URL> result = new HashSet<URL>();
         java.net.URLClassLoader loader = (URLClassLoader) Thread.currentThread().getContextClassLoader();
@@ -0,0 +1,286 @@
+package com.izforge.izpack.merge.resolve;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Index of the entry names of the jars found on the classpath.
+ * <p/>
+ * The entries of a jar are read once from its central directory and kept as long as the jar keeps
+ * the same modification time and length. If a directory is given, the index of each jar is also
+ * stored in a file of this directory, so that the next run does not have to open the jar at all.
+ * These files are checksummed: a truncated or corrupted index file is ignored and rewritten.
+ */
+public class ClassPathIndex
+{
+    /**
+     * System property giving the directory of the index files. An empty value disables them.
+     */
+    public static final String DIRECTORY_PROPERTY = "izpack.classpath.index";
+
+    private static final int MAGIC = 0x495a4349;
+
+    private static final int VERSION = 1;
+
+    private final File directory;
+
+    private final ConcurrentHashMap<String, JarEntries> jars = new ConcurrentHashMap<String, JarEntries>();
+
+    /**
+     * Creates an index kept in memory only.
+     */
+    public ClassPathIndex()
+    {
+        this(null);
+    }
+
+    /**
+     * Creates an index stored in the given directory.
+     *
+     * @param directory the directory of the index files, or <tt>null</tt> to keep the index in memory only
+     */
+    public ClassPathIndex(File directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the directory given by the {@link #DIRECTORY_PROPERTY} system property, by default
+     * <tt>.izpack/classpath-index</tt> in the user home.
+     *
+     * @return the directory, or <tt>null</tt> if index files are disabled
+     */
+    public static File getDefaultDirectory()
+    {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (directory == null)
+        {
+            return new File(System.getProperty("user.home"), ".izpack" + File.separator + "classpath-index");
+        }
+        return (directory.length() == 0) ? null : new File(directory);
+    }
+
+    /**
+     * Returns the names of the entries of a jar, in the order of its central directory.
+     * This method can be called concurrently.
+     *
+     * @param jar the jar file
+     * @return the entry names, or <tt>null</tt> if the file cannot be opened as a zip file
+     * @throws IOException if the jar cannot be read
+     */
+    public List<String> getEntries(File jar) throws IOException
+    {
+        String path = jar.getAbsolutePath();
+        long lastModified = jar.lastModified();
+        long length = jar.length();
+
+        JarEntries entries = jars.get(path);
+        if (entries == null || !entries.isValid(lastModified, length))
+        {
+            entries = read(path, lastModified, length);
+            if (entries == null)
+            {
+                entries = scan(jar, lastModified, length);
+                if (entries == null)
+                {
+                    return null;
+                }
+                write(path, entries);
+            }
+            jars.put(path, entries);
+        }
+        return entries.names;
+    }
+
+    private JarEntries scan(File jar, long lastModified, long length) throws IOException
+    {
+        ZipFile zipFile;
+        try
+        {
+            zipFile = new ZipFile(jar);
+        }
+        catch (IOException e)
+        {
+            // not a zip file
+            return null;
+        }
+        try
+        {
+            List<String> names = new ArrayList<String>(zipFile.size());
+            Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+            while (zipEntries.hasMoreElements())
+            {
+                names.add(zipEntries.nextElement().getName());
+            }
+            return new JarEntries(lastModified, length, names);
+        }
+        finally
+        {
+            zipFile.close();
+        }
+    }
+
+    private File getIndexFile(String path)
+    {
+        return new File(directory, new File(path).getName() + "-" + Integer.toHexString(path.hashCode()) + ".idx");
+    }
+
+    /**
+     * Reads the index file of a jar.
+     *
+     * @return the entries, or <tt>null</tt> if there is no valid index file for this version of the jar
+     */
+    private JarEntries read(String path, long lastModified, long length)
+    {
+        if (directory == null)
+        {
+            return null;
+        }
+        File file = getIndexFile(path);
+        if (!file.isFile() || file.length() < 8 || file.length() > Integer.MAX_VALUE)
+        {
+            return null;
+        }
+        try
+        {
+            byte[] content = new byte[(int) file.length()];
+            InputStream in = new FileInputStream(file);
+            try
+            {
+                new DataInputStream(in).readFully(content);
+            }
+            finally
+            {
+                in.close();
+            }
+
+            DataInputStream data = new DataInputStream(new ByteArrayInputStream(content));
+            data.skipBytes(content.length - 8);
+            CRC32 crc = new CRC32();
+            crc.update(content, 0, content.length - 8);
+            if (data.readLong() != crc.getValue())
+            {
+                return null;
+            }
+
+            data = new DataInputStream(new ByteArrayInputStream(content, 0, content.length - 8));
+            if (data.readInt() != MAGIC || data.readInt() != VERSION || !path.equals(data.readUTF())
+                    || data.readLong() != lastModified || data.readLong() != length)
+            {
+                return null;
+            }
+            int count = data.readInt();
+            List<String> names = new ArrayList<String>(count);
+            for (int i = 0; i < count; i++)
+            {
+                names.add(data.readUTF());
+            }
+            return new JarEntries(lastModified, length, names);
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the index file of a jar. The file is written under a temporary name and then renamed,
+     * so that concurrent builds never read a partially written file.
+     * The index files are only a cache: failures are ignored.
+     */
+    private void write(String path, JarEntries entries)
+    {
+        if (directory == null || (!directory.isDirectory() && !directory.mkdirs()))
+        {
+            return;
+        }
+        File file = getIndexFile(path);
+        File temp = null;
+        try
+        {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(content);
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeUTF(path);
+            data.writeLong(entries.lastModified);
+            data.writeLong(entries.length);
+            data.writeInt(entries.names.size());
+            for (String name : entries.names)
+            {
+                data.writeUTF(name);
+            }
+            data.flush();
+            CRC32 crc = new CRC32();
+            crc.update(content.toByteArray());
+            data.writeLong(crc.getValue());
+            data.flush();
+
+            temp = File.createTempFile(file.getName(), ".tmp", directory);
+            OutputStream out = new FileOutputStream(temp);
+            try
+            {
+                content.writeTo(out);
+            }
+            finally
+            {
+                out.close();
+            }
+            if (!temp.renameTo(file))
+            {
+                file.delete();
+                temp.renameTo(file);
+            }
+        }
+        catch (IOException ignored)
+        {
+        }
+        finally
+        {
+            if (temp != null && temp.exists())
+            {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Entry names of a version of a jar.
+     */
+    private static class JarEntries
+    {
+        private final long lastModified;
+
+        private final long length;
+
+        private final List<String> names;
+
+        JarEntries(long lastModified, long length, List<String> names)
+        {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.names = Collections.unmodifiableList(names);
+        }
+
+        boolean isValid(long lastModified, long length)
+        {
+            return this.lastModified == lastModified && this.length == length;
+        }
+    }
+}
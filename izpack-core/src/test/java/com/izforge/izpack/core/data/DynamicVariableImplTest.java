@@ -0,0 +1,281 @@
+package com.izforge.izpack.core.data;
+
+import com.izforge.izpack.api.adaptator.IXMLElement;
+import com.izforge.izpack.api.rules.Condition;
+import com.izforge.izpack.api.rules.RulesEngine;
+import com.izforge.izpack.api.substitutor.VariableSubstitutor;
+import com.izforge.izpack.core.substitutor.VariableSubstitutorImpl;
+import com.izforge.izpack.core.variable.ConfigFileValue;
+import com.izforge.izpack.core.variable.PlainConfigFileValue;
+import com.izforge.izpack.core.variable.ValueImpl;
+import org.hamcrest.core.Is;
+import org.hamcrest.core.IsNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Test for the incremental evaluation of dynamic variables
+ */
+public class DynamicVariableImplTest
+{
+    private Properties variables;
+
+    private VariableSubstitutor substitutor;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        variables = new Properties();
+        substitutor = new VariableSubstitutorImpl(variables);
+        file = File.createTempFile("config", ".properties");
+    }
+
+    @After
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Test
+    public void valueIsResolvedAgainWhenInputsChange() throws Exception
+    {
+        CountingValue value = new CountingValue("${prefix}-${suffix}");
+        DynamicVariableImpl dynvar = createVariable(value);
+        variables.setProperty("prefix", "a");
+        variables.setProperty("suffix", "b");
+
+        assertThat(dynvar.evaluate(substitutor), Is.is("a-b"));
+        assertThat(dynvar.evaluate(substitutor), Is.is("a-b"));
+        assertThat(value.resolutions, Is.is(1));
+
+        variables.setProperty("suffix", "c");
+        assertThat(dynvar.evaluate(substitutor), Is.is("a-c"));
+        assertThat(value.resolutions, Is.is(2));
+    }
+
+    @Test
+    public void fileIsReadAgainWhenModified() throws Exception
+    {
+        write("key=one\n");
+        variables.setProperty("config", file.getPath());
+        DynamicVariableImpl dynvar = createVariable(
+                new PlainConfigFileValue("${config}", ConfigFileValue.CONFIGFILE_TYPE_OPTIONS, null, "key"));
+
+        assertThat(dynvar.evaluate(substitutor), Is.is("one"));
+
+        // same length and modification time: the cached value is kept
+        long lastModified = file.lastModified();
+        write("key=two\n");
+        file.setLastModified(lastModified);
+        assertThat(dynvar.evaluate(substitutor), Is.is("one"));
+
+        file.setLastModified(lastModified + 2000);
+        assertThat(dynvar.evaluate(substitutor), Is.is("two"));
+    }
+
+    @Test
+    public void interruptedResolutionIsNotKept() throws Exception
+    {
+        CountingValue value = new CountingValue("${prefix}")
+        {
+            @Override
+            public String resolve(VariableSubstitutor... substitutors)
+            {
+                super.resolve(substitutors);
+                if (resolutions == 1)
+                {
+                    // as a timed out command does
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+                return "resolved";
+            }
+        };
+        DynamicVariableImpl dynvar = createVariable(value);
+        variables.setProperty("prefix", "a");
+
+        assertThat(dynvar.evaluate(substitutor), IsNull.nullValue());
+        assertThat(Thread.interrupted(), Is.is(true));
+        assertThat(dynvar.evaluate(substitutor), Is.is("resolved"));
+        assertThat(value.resolutions, Is.is(2));
+    }
+
+    @Test
+    public void valueIsResolvedAgainWhenConditionInputsChange() throws Exception
+    {
+        CountingValue value = new CountingValue("${prefix}");
+        DynamicVariableImpl dynvar = createVariable(value);
+        dynvar.setConditionid("condition");
+        RulesEngine rules = createRules(new TestCondition(Collections.singleton("mode")));
+        variables.setProperty("prefix", "a");
+        variables.setProperty("mode", "x");
+
+        assertThat(dynvar.evaluate(rules, substitutor), Is.is("a"));
+        assertThat(dynvar.evaluate(rules, substitutor), Is.is("a"));
+        assertThat(value.resolutions, Is.is(1));
+
+        variables.setProperty("mode", "y");
+        assertThat(dynvar.evaluate(rules, substitutor), Is.is("a"));
+        assertThat(value.resolutions, Is.is(2));
+    }
+
+    @Test
+    public void valueIsResolvedEachTimeWhenConditionInputsAreUnknown() throws Exception
+    {
+        CountingValue value = new CountingValue("${prefix}");
+        DynamicVariableImpl dynvar = createVariable(value);
+        dynvar.setConditionid("condition");
+        RulesEngine rules = createRules(new TestCondition(null));
+        variables.setProperty("prefix", "a");
+
+        dynvar.evaluate(rules, substitutor);
+        dynvar.evaluate(rules, substitutor);
+        assertThat(value.resolutions, Is.is(2));
+
+        // without rules the condition cannot be looked up
+        dynvar.evaluate(substitutor);
+        assertThat(value.resolutions, Is.is(3));
+    }
+
+    @Test
+    public void variableReferences() throws Exception
+    {
+        DynamicVariableImpl dynvar = createVariable(new CountingValue("$first/${second}/$$/third"));
+        assertThat(new ArrayList<String>(dynvar.getVariableReferences()), Is.is(Arrays.asList("first", "second")));
+    }
+
+    private DynamicVariableImpl createVariable(ValueImpl value)
+    {
+        DynamicVariableImpl dynvar = new DynamicVariableImpl();
+        dynvar.setName("variable");
+        dynvar.setValue(value);
+        return dynvar;
+    }
+
+    /**
+     * Returns a rules engine that only knows the given condition.
+     */
+    private RulesEngine createRules(final Condition condition)
+    {
+        InvocationHandler handler = new InvocationHandler()
+        {
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                if (method.getName().equals("getCondition") && condition.getId().equals(args[0]))
+                {
+                    return condition;
+                }
+                return null;
+            }
+        };
+        return (RulesEngine) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{RulesEngine.class},
+                                                    handler);
+    }
+
+    private void write(String text) throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(text.getBytes("ISO-8859-1"));
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static class CountingValue extends ValueImpl
+    {
+        private final String value;
+
+        int resolutions;
+
+        CountingValue(String value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        public void validate()
+        {
+        }
+
+        @Override
+        public String resolve()
+        {
+            return value;
+        }
+
+        @Override
+        public String resolve(VariableSubstitutor... substitutors)
+        {
+            resolutions++;
+            String result = value;
+            for (VariableSubstitutor substitutor : substitutors)
+            {
+                result = substitutor.substitute(result);
+            }
+            return result;
+        }
+
+        @Override
+        public List<String> getExpressions()
+        {
+            return Arrays.asList(value);
+        }
+    }
+
+    private static class TestCondition extends Condition
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Set<String> dependencies;
+
+        TestCondition(Set<String> dependencies)
+        {
+            this.dependencies = dependencies;
+            setId("condition");
+        }
+
+        @Override
+        public void readFromXML(IXMLElement xmlcondition)
+        {
+        }
+
+        @Override
+        public boolean isTrue()
+        {
+            return true;
+        }
+
+        @Override
+        public Set<String> getVariableDependencies()
+        {
+            return dependencies;
+        }
+
+        @Override
+        public void makeXMLData(IXMLElement conditionRoot)
+        {
+        }
+    }
+}
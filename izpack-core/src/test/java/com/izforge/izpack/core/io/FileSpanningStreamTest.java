@@ -0,0 +1,147 @@
+package com.izforge.izpack.core.io;
+
+import org.hamcrest.core.Is;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Test for the file spanning streams
+ */
+public class FileSpanningStreamTest
+{
+    private static final long VOLUME_SIZE = 100 * FileSpanningOutputStream.KB;
+
+    private File directory;
+
+    private File volume;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        directory = File.createTempFile("volumes", "");
+        directory.delete();
+        directory.mkdirs();
+        volume = new File(directory, "pack");
+    }
+
+    @After
+    public void tearDown()
+    {
+        File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void singleThread() throws IOException
+    {
+        checkRoundTrip(1);
+    }
+
+    @Test
+    public void severalThreads() throws IOException
+    {
+        checkRoundTrip(4);
+    }
+
+    @Test
+    public void firstVolumeFreeSpace() throws IOException
+    {
+        byte[] data = createData(50000);
+        FileSpanningOutputStream out = new FileSpanningOutputStream(volume, VOLUME_SIZE);
+        out.setFirstvolumefreespacesize(VOLUME_SIZE - 100);
+        out.write(data);
+        out.close();
+
+        assertThat(out.getVolumeCount(), Is.is(2));
+        assertThat(volume.length() <= 100, Is.is(true));
+        assertThat(Arrays.equals(read(out.getVolumeCount()), data), Is.is(true));
+    }
+
+    @Test
+    public void severalMembersInOneVolume() throws IOException
+    {
+        byte[] data = createData(3000000);
+        FileSpanningOutputStream out = new FileSpanningOutputStream(volume, 100 * FileSpanningOutputStream.MB);
+        out.write(data);
+        out.close();
+
+        assertThat(out.getVolumeCount(), Is.is(1));
+        assertThat(Arrays.equals(read(1), data), Is.is(true));
+    }
+
+    private void checkRoundTrip(int threads) throws IOException
+    {
+        byte[] data = createData(1000000);
+        FileSpanningOutputStream out = new FileSpanningOutputStream(volume, VOLUME_SIZE);
+        out.setThreads(threads);
+        // mix single byte and array writes
+        out.write(data[0]);
+        out.write(data, 1, 99999);
+        out.write(data, 100000, data.length - 100000);
+        assertThat(out.getFilepointer(), Is.is((long) data.length));
+        long compressed = out.getCompressedFilepointer();
+        out.close();
+
+        int volumes = out.getVolumeCount();
+        assertThat(volumes > 1, Is.is(true));
+        long total = 0;
+        for (int i = 0; i < volumes; i++)
+        {
+            File file = (i == 0) ? volume : new File(volume.getPath() + "." + i);
+            assertThat(file.length() <= VOLUME_SIZE, Is.is(true));
+            total += file.length();
+        }
+        assertThat(total, Is.is(compressed));
+        assertThat(Arrays.equals(read(volumes), data), Is.is(true));
+    }
+
+    private byte[] read(int volumes) throws IOException
+    {
+        FileSpanningInputStream in = new FileSpanningInputStream(volume, volumes);
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[10000];
+            int count;
+            while ((count = in.read(buffer)) != -1)
+            {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Creates data compressing to about a quarter of its size.
+     */
+    private byte[] createData(int length)
+    {
+        byte[] data = new byte[length];
+        Random random = new Random(0);
+        for (int i = 0; i < length; i++)
+        {
+            data[i] = (byte) ('a' + random.nextInt(16));
+        }
+        return data;
+    }
+}
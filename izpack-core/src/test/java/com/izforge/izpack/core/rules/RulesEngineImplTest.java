@@ -1,17 +1,22 @@
 package com.izforge.izpack.core.rules;
 
 
+import com.izforge.izpack.api.data.AutomatedInstallData;
 import com.izforge.izpack.api.rules.Condition;
 import com.izforge.izpack.api.rules.RulesEngine;
 import com.izforge.izpack.core.rules.logic.NotCondition;
 import com.izforge.izpack.core.rules.process.JavaCondition;
+import com.izforge.izpack.core.rules.process.VariableCondition;
+import com.izforge.izpack.installer.data.InstallData;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
 
 
 public class RulesEngineImplTest
@@ -360,6 +365,38 @@ public class RulesEngineImplTest
         condition = engine.getCondition("@true ^ true && true ^ true");
         assertEquals(true ^ true && true ^ true, condition.isTrue());
     }
-}
 
+    @Test
+    public void testComplexExpressionIsParsedOnce() throws Exception
+    {
+        assertSame(engine.getCondition("@true && !false"), engine.getCondition("@true && !false"));
+        assertSame(engine.getCondition("true+false"), engine.getCondition("true+false"));
+    }
 
+    @Test
+    public void testResultIsCachedUntilVariableChanges() throws Exception
+    {
+        AutomatedInstallData installData = new InstallData(new Properties(), null);
+        RulesEngineImpl rules = new RulesEngineImpl(installData, null, null);
+        VariableCondition condition = new VariableCondition();
+        condition.setId("isFull");
+        condition.setVariablename("installType");
+        condition.setValue("${fullType}");
+        rules.addCondition(condition);
+        installData.setVariable("installType", "full");
+        installData.setVariable("fullType", "full");
+
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals(true, rules.isConditionTrue("isFull"));
+        }
+        assertEquals(1, rules.getStatistics().getEvaluations());
+        assertEquals(9, rules.getStatistics().getCacheHits());
+
+        installData.setVariable("fullType", "complete");
+        assertEquals(false, rules.isConditionTrue("isFull"));
+        installData.setVariable("installType", "complete");
+        assertEquals(true, rules.isConditionTrue("@isFull && isFull"));
+        assertEquals(3, rules.getStatistics().getEvaluations());
+    }
+}
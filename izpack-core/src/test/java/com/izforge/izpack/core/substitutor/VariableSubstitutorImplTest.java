@@ -6,6 +6,11 @@ import org.hamcrest.core.Is;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
 import java.util.Properties;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -65,5 +70,51 @@ public class VariableSubstitutorImplTest
                 Is.is("onetwo"));
     }
 
+    @Test
+    public void shouldKeepUndefinedVariables() throws Exception
+    {
+        assertThat(
+                variableSubstitutor.substitute("${UNDEFINED}/$UNDEFINED/$/${MY_PROP", SubstitutionType.TYPE_PLAIN),
+                Is.is("${UNDEFINED}/$UNDEFINED/$/${MY_PROP"));
+    }
+
+    @Test
+    public void shouldSubstituteStreamLargerThanBuffer() throws Exception
+    {
+        StringBuilder text = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10000; i++)
+        {
+            text.append("${MY_PROP}-$MY_PROP2;");
+            expected.append("one-two;");
+        }
+        StringWriter writer = new StringWriter();
+        int subs = variableSubstitutor.substitute(new StringReader(text.toString()), writer,
+                SubstitutionType.TYPE_PLAIN);
+        assertThat(writer.toString(), Is.is(expected.toString()));
+        assertThat(subs, Is.is(20000));
+    }
 
+    @Test
+    public void shouldCopyUnterminatedReferenceOfStream() throws Exception
+    {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 1000000; i++)
+        {
+            name.append('x');
+        }
+        String text = "$MY_PROP ${" + name + " %{" + name + "}$MY_PROP2 $" + name;
+        StringWriter writer = new StringWriter();
+        variableSubstitutor.substitute(new StringReader(text), writer, SubstitutionType.TYPE_PLAIN);
+        assertThat(writer.toString(), Is.is("one ${" + name + " %{" + name + "}two $" + name));
+    }
+
+    @Test
+    public void shouldSubstituteChannel() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        variableSubstitutor.substitute(Channels.newChannel(new ByteArrayInputStream("<a>$MY_PROP</a>".getBytes("UTF-8"))),
+                Channels.newChannel(out), SubstitutionType.TYPE_XML, null);
+        assertThat(out.toString("UTF-8"), Is.is("<a>one</a>"));
+    }
 }
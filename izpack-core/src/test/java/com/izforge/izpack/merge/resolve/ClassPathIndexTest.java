@@ -0,0 +1,142 @@
+package com.izforge.izpack.merge.resolve;
+
+import org.hamcrest.core.Is;
+import org.hamcrest.core.IsNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Test for the classpath index
+ */
+public class ClassPathIndexTest
+{
+    private File directory;
+
+    private File jar;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        directory = File.createTempFile("classpath-index", "");
+        directory.delete();
+        directory.mkdirs();
+        jar = new File(directory, "test.jar");
+        writeJar(jar, "com/", "com/sora/", "com/sora/VimPanel.class");
+    }
+
+    @After
+    public void tearDown()
+    {
+        delete(directory);
+    }
+
+    @Test
+    public void entriesAreListed() throws Exception
+    {
+        List<String> entries = new ClassPathIndex().getEntries(jar);
+        assertThat(entries, Is.is(Arrays.asList("com/", "com/sora/", "com/sora/VimPanel.class")));
+    }
+
+    @Test
+    public void notAJar() throws Exception
+    {
+        File file = new File(directory, "file.txt");
+        new FileOutputStream(file).close();
+        assertThat(new ClassPathIndex().getEntries(file), IsNull.nullValue());
+    }
+
+    @Test
+    public void indexFileIsReused() throws Exception
+    {
+        File indexDirectory = new File(directory, "index");
+        new ClassPathIndex(indexDirectory).getEntries(jar);
+        assertThat(indexDirectory.listFiles().length, Is.is(1));
+
+        // replace the jar by an invalid file with the same length and modification time
+        long lastModified = jar.lastModified();
+        RandomAccessFile file = new RandomAccessFile(jar, "rw");
+        file.write(new byte[(int) jar.length()]);
+        file.close();
+        jar.setLastModified(lastModified);
+
+        List<String> entries = new ClassPathIndex(indexDirectory).getEntries(jar);
+        assertThat(entries, Is.is(Arrays.asList("com/", "com/sora/", "com/sora/VimPanel.class")));
+    }
+
+    @Test
+    public void corruptedIndexFileIsRewritten() throws Exception
+    {
+        File indexDirectory = new File(directory, "index");
+        new ClassPathIndex(indexDirectory).getEntries(jar);
+        File indexFile = indexDirectory.listFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(indexFile, "rw");
+        file.seek(indexFile.length() / 2);
+        file.write(0xff ^ file.readByte());
+        file.close();
+
+        List<String> entries = new ClassPathIndex(indexDirectory).getEntries(jar);
+        assertThat(entries, Is.is(Arrays.asList("com/", "com/sora/", "com/sora/VimPanel.class")));
+        assertThat(new ClassPathIndex(indexDirectory).getEntries(jar), Is.is(entries));
+    }
+
+    @Test
+    public void modifiedJarIsListedAgain() throws Exception
+    {
+        File indexDirectory = new File(directory, "index");
+        ClassPathIndex index = new ClassPathIndex(indexDirectory);
+        index.getEntries(jar);
+
+        writeJar(jar, "other/", "other/Panel.class", "other/Panel.properties");
+        jar.setLastModified(jar.lastModified() + 2000);
+
+        List<String> expected = Arrays.asList("other/", "other/Panel.class", "other/Panel.properties");
+        assertThat(index.getEntries(jar), Is.is(expected));
+        assertThat(new ClassPathIndex(indexDirectory).getEntries(jar), Is.is(expected));
+    }
+
+    private void writeJar(File file, String... entries) throws IOException
+    {
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try
+        {
+            for (String entry : entries)
+            {
+                out.putNextEntry(new ZipEntry(entry));
+                if (!entry.endsWith("/"))
+                {
+                    out.write(entry.getBytes("UTF-8"));
+                }
+                out.closeEntry();
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private void delete(File file)
+    {
+        File[] files = file.listFiles();
+        if (files != null)
+        {
+            for (File child : files)
+            {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -517,6 +517,11 @@ public class ConfigurationInstallerListener extends SimpleInstallerListener
                 task = new SingleIniFileTask();
                 readConfigFileTaskCommonAttributes(idata, el, (ConfigFileTask)task);
                 readSingleConfigurableTaskCommonAttributes(idata, el, (SingleConfigurableTask)task);
+                String streaming = getAttribute(el, "streaming");
+                if (streaming != null)
+                {
+                    ((SingleIniFileTask)task).setStreaming(Boolean.parseBoolean(streaming));
+                }
                 ((SingleConfigurableTask)task).readFromXML(el);
                 break;
 
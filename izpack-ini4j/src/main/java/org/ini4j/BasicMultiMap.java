@@ -15,6 +15,7 @@
  */
 package org.ini4j;
 
+import org.ini4j.spi.IndexedMap;
 import org.ini4j.spi.Warnings;
 
 import java.io.Serializable;
@@ -34,7 +35,7 @@ public class BasicMultiMap<K, V> implements MultiMap<K, V>, Serializable
 
     public BasicMultiMap()
     {
-        this(new LinkedHashMap<K, List<V>>());
+        this(Config.getGlobal().isIndexed() ? new IndexedMap<K, List<V>>() : new LinkedHashMap<K, List<V>>());
     }
 
     public BasicMultiMap(Map<K, List<V>> impl)
@@ -45,6 +45,7 @@ public class Config implements Cloneable, Serializable
     public static final String PROP_HEADER_COMMENT = "headerComment";
     public static final String PROP_EMPTY_LINES = "emptyLines";
     public static final String PROP_AUTO_NUMBERING = "autoNumbering";
+    public static final String PROP_INDEXED = "indexed";
     public static final boolean DEFAULT_EMPTY_OPTION = false;
     public static final boolean DEFAULT_EMPTY_SECTION = false;
     public static final boolean DEFAULT_GLOBAL_SECTION = false;
@@ -64,6 +65,7 @@ public class Config implements Cloneable, Serializable
     public static final boolean DEFAULT_HEADER_COMMENT = true;
     public static final boolean DEFAULT_EMPTY_LINES = false;
     public static final boolean DEFAULT_AUTO_NUMBERING = false;
+    public static final boolean DEFAULT_INDEXED = false;
     public static final char DEFAULT_PATH_SEPARATOR = '/';
     public static final String DEFAULT_LINE_SEPARATOR = getSystemProperty("line.separator", "\n");
     public static final Charset DEFAULT_FILE_ENCODING = Charset.forName("UTF-8");
@@ -91,6 +93,7 @@ public class Config implements Cloneable, Serializable
     private boolean _unnamedSection;
     private boolean _emptyLines;
     private boolean _autoNumbering;
+    private boolean _indexed;
 
     public Config()
     {
@@ -229,6 +232,11 @@ public class Config implements Cloneable, Serializable
         _autoNumbering = value;
     }
 
+    public void setIndexed(boolean value)
+    {
+        _indexed = value;
+    }
+
     public void setInclude(boolean value)
     {
         _include = value;
@@ -354,6 +362,11 @@ public class Config implements Cloneable, Serializable
         return _autoNumbering;
     }
 
+    public boolean isIndexed()
+    {
+        return _indexed;
+    }
+
     public void setTree(boolean value)
     {
         _tree = value;
@@ -400,6 +413,7 @@ public class Config implements Cloneable, Serializable
         _headerComment = getBoolean(PROP_HEADER_COMMENT, DEFAULT_HEADER_COMMENT);
         _emptyLines = getBoolean(PROP_EMPTY_LINES, DEFAULT_EMPTY_LINES);
         _autoNumbering = getBoolean(PROP_AUTO_NUMBERING, DEFAULT_AUTO_NUMBERING);
+        _indexed = getBoolean(PROP_INDEXED, DEFAULT_INDEXED);
     }
 
     private boolean getBoolean(String name, boolean defaultValue)
@@ -0,0 +1,550 @@
+/*
+ * IzPack - Copyright 2001-2010 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ini4j.spi;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map keeping the insertion order of its keys, like {@link java.util.LinkedHashMap}, with the
+ * entries stored in arrays in insertion order and an open addressing hash table of entry indexes.
+ * No object is allocated per entry, which matters for profiles with many thousands of sections
+ * or options.
+ * <p/>
+ * Removed entries leave a gap in the arrays until the table is rebuilt.
+ */
+public class IndexedMap<K, V> extends AbstractMap<K, V> implements Serializable
+{
+    private static final long serialVersionUID = -3551409562316235215L;
+    private static final int DEFAULT_CAPACITY = 8;
+    private static final int FREE = 0;
+    private static final int TOMBSTONE = -1;
+    private static final Object REMOVED = new Object();
+    private static final Object NULL_KEY = new Object();
+    private transient int _count;
+    private transient int[] _hashes;
+    private transient Object[] _keys;
+    private transient int _modCount;
+    private transient int _size;
+    private transient int[] _table;
+    private transient int _tombstones;
+    private transient Object[] _values;
+
+    public IndexedMap()
+    {
+        init(DEFAULT_CAPACITY);
+    }
+
+    public IndexedMap(Map<? extends K, ? extends V> map)
+    {
+        init(Math.max(DEFAULT_CAPACITY, map.size()));
+        putAll(map);
+    }
+
+    @Override public void clear()
+    {
+        init(DEFAULT_CAPACITY);
+        _modCount++;
+    }
+
+    @Override public boolean containsKey(Object key)
+    {
+        return indexOf(key) >= 0;
+    }
+
+    @Override public Set<Map.Entry<K, V>> entrySet()
+    {
+        return new EntrySet();
+    }
+
+    @SuppressWarnings(Warnings.UNCHECKED)
+    @Override public V get(Object key)
+    {
+        int index = indexOf(key);
+
+        return (index < 0) ? null : (V) _values[index];
+    }
+
+    @Override public boolean isEmpty()
+    {
+        return _size == 0;
+    }
+
+    @Override public Set<K> keySet()
+    {
+        return new KeySet();
+    }
+
+    @SuppressWarnings(Warnings.UNCHECKED)
+    @Override public V put(K key, V value)
+    {
+        Object k = maskNull(key);
+        int hash = hash(k);
+        int index = indexOf(k, hash);
+
+        if (index >= 0)
+        {
+            V ret = (V) _values[index];
+
+            _values[index] = value;
+
+            return ret;
+        }
+
+        if ((_count == _keys.length) || (((_count + _tombstones + 1) * 2) > _table.length))
+        {
+            rebuild(_size + 1);
+        }
+
+        index = _count++;
+        _keys[index] = k;
+        _values[index] = value;
+        _hashes[index] = hash;
+        insert(hash, index);
+        _size++;
+        _modCount++;
+
+        return null;
+    }
+
+    @SuppressWarnings(Warnings.UNCHECKED)
+    @Override public V remove(Object key)
+    {
+        int index = indexOf(key);
+
+        if (index < 0)
+        {
+            return null;
+        }
+
+        V ret = (V) _values[index];
+
+        removeAt(index);
+
+        return ret;
+    }
+
+    @Override public int size()
+    {
+        return _size;
+    }
+
+    private static int hash(Object key)
+    {
+        int h = key.hashCode();
+
+        return h ^ (h >>> 16);
+    }
+
+    private static Object maskNull(Object key)
+    {
+        return (key == null) ? NULL_KEY : key;
+    }
+
+    @SuppressWarnings(Warnings.UNCHECKED)
+    private static <K> K unmaskNull(Object key)
+    {
+        return (key == NULL_KEY) ? null : (K) key;
+    }
+
+    private int indexOf(Object key)
+    {
+        Object k = maskNull(key);
+
+        return indexOf(k, hash(k));
+    }
+
+    private int indexOf(Object key, int hash)
+    {
+        int mask = _table.length - 1;
+
+        for (int slot = hash & mask;; slot = (slot + 1) & mask)
+        {
+            int entry = _table[slot];
+
+            if (entry == FREE)
+            {
+                return -1;
+            }
+            else if (entry != TOMBSTONE)
+            {
+                int index = entry - 1;
+
+                if ((_hashes[index] == hash) && ((_keys[index] == key) || key.equals(_keys[index])))
+                {
+                    return index;
+                }
+            }
+        }
+    }
+
+    private void init(int capacity)
+    {
+        _keys = new Object[capacity];
+        _values = new Object[capacity];
+        _hashes = new int[capacity];
+        _table = new int[tableSize(capacity)];
+        _count = 0;
+        _size = 0;
+        _tombstones = 0;
+    }
+
+    private void insert(int hash, int index)
+    {
+        int mask = _table.length - 1;
+        int slot = hash & mask;
+
+        while (_table[slot] > 0)
+        {
+            slot = (slot + 1) & mask;
+        }
+
+        if (_table[slot] == TOMBSTONE)
+        {
+            _tombstones--;
+        }
+
+        _table[slot] = index + 1;
+    }
+
+    /**
+     * Compacts the entries and rebuilds the hash table for at least the given number of entries.
+     */
+    private void rebuild(int capacity)
+    {
+        int length = Math.max(_keys.length, DEFAULT_CAPACITY);
+
+        while ((length * 3 / 4) < capacity)
+        {
+            length *= 2;
+        }
+
+        Object[] keys = new Object[length];
+        Object[] values = new Object[length];
+        int[] hashes = new int[length];
+        int count = 0;
+
+        for (int i = 0; i < _count; i++)
+        {
+            if (_keys[i] != REMOVED)
+            {
+                keys[count] = _keys[i];
+                values[count] = _values[i];
+                hashes[count] = _hashes[i];
+                count++;
+            }
+        }
+
+        _keys = keys;
+        _values = values;
+        _hashes = hashes;
+        _count = count;
+        _table = new int[tableSize(length)];
+        _tombstones = 0;
+        for (int i = 0; i < count; i++)
+        {
+            insert(_hashes[i], i);
+        }
+    }
+
+    private void removeAt(int index)
+    {
+        int mask = _table.length - 1;
+        int slot = _hashes[index] & mask;
+
+        while (_table[slot] != (index + 1))
+        {
+            slot = (slot + 1) & mask;
+        }
+
+        _table[slot] = TOMBSTONE;
+        _tombstones++;
+        _keys[index] = REMOVED;
+        _values[index] = null;
+        _size--;
+        _modCount++;
+    }
+
+    private int tableSize(int capacity)
+    {
+        int size = DEFAULT_CAPACITY * 2;
+
+        while (size < (capacity * 2))
+        {
+            size *= 2;
+        }
+
+        return size;
+    }
+
+    private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException
+    {
+        input.defaultReadObject();
+        int size = input.readInt();
+
+        init(Math.max(DEFAULT_CAPACITY, size));
+        for (int i = 0; i < size; i++)
+        {
+            K key = unmaskNull(input.readObject());
+            @SuppressWarnings(Warnings.UNCHECKED)
+            V value = (V) input.readObject();
+
+            put(key, value);
+        }
+    }
+
+    private void writeObject(ObjectOutputStream output) throws IOException
+    {
+        output.defaultWriteObject();
+        output.writeInt(_size);
+        for (int i = 0; i < _count; i++)
+        {
+            if (_keys[i] != REMOVED)
+            {
+                output.writeObject(unmaskNull(_keys[i]));
+                output.writeObject(_values[i]);
+            }
+        }
+    }
+
+    private abstract class IndexIterator<T> implements Iterator<T>
+    {
+        private int _expectedModCount = _modCount;
+        private int _last = -1;
+        private int _next = advance(0);
+
+        @Override public boolean hasNext()
+        {
+            return _next < _count;
+        }
+
+        @Override public T next()
+        {
+            if (_modCount != _expectedModCount)
+            {
+                throw new ConcurrentModificationException();
+            }
+
+            if (_next >= _count)
+            {
+                throw new NoSuchElementException();
+            }
+
+            _last = _next;
+            _next = advance(_next + 1);
+
+            return get(_last);
+        }
+
+        @Override public void remove()
+        {
+            if (_last < 0)
+            {
+                throw new IllegalStateException();
+            }
+
+            if (_modCount != _expectedModCount)
+            {
+                throw new ConcurrentModificationException();
+            }
+
+            removeAt(_last);
+            _last = -1;
+            _expectedModCount = _modCount;
+        }
+
+        abstract T get(int index);
+
+        private int advance(int index)
+        {
+            int i = index;
+
+            while ((i < _count) && (_keys[i] == REMOVED))
+            {
+                i++;
+            }
+
+            return i;
+        }
+    }
+
+    private class EntrySet extends AbstractSet<Map.Entry<K, V>>
+    {
+        @Override public void clear()
+        {
+            IndexedMap.this.clear();
+        }
+
+        @Override public boolean contains(Object o)
+        {
+            if (!(o instanceof Map.Entry))
+            {
+                return false;
+            }
+
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            int index = indexOf(entry.getKey());
+
+            return (index >= 0) && ((_values[index] == null) ? (entry.getValue() == null) : _values[index].equals(entry.getValue()));
+        }
+
+        @Override public Iterator<Map.Entry<K, V>> iterator()
+        {
+            return new IndexIterator<Map.Entry<K, V>>()
+                {
+                    @Override Map.Entry<K, V> get(int index)
+                    {
+                        return new IndexEntry(index);
+                    }
+                };
+        }
+
+        @Override public boolean remove(Object o)
+        {
+            if (contains(o))
+            {
+                IndexedMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+
+                return true;
+            }
+
+            return false;
+        }
+
+        @Override public int size()
+        {
+            return _size;
+        }
+    }
+
+    private class IndexEntry implements Map.Entry<K, V>
+    {
+        private final int _index;
+        private final K _key;
+
+        IndexEntry(int index)
+        {
+            _index = index;
+            _key = unmaskNull(_keys[index]);
+        }
+
+        @Override public boolean equals(Object o)
+        {
+            if (!(o instanceof Map.Entry))
+            {
+                return false;
+            }
+
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+
+            return eq(_key, entry.getKey()) && eq(getValue(), entry.getValue());
+        }
+
+        @Override public K getKey()
+        {
+            return _key;
+        }
+
+        @SuppressWarnings(Warnings.UNCHECKED)
+        @Override public V getValue()
+        {
+            return (_keys[_index] == REMOVED) ? null : (V) _values[_index];
+        }
+
+        @Override public int hashCode()
+        {
+            V value = getValue();
+
+            return ((_key == null) ? 0 : _key.hashCode()) ^ ((value == null) ? 0 : value.hashCode());
+        }
+
+        @SuppressWarnings(Warnings.UNCHECKED)
+        @Override public V setValue(V value)
+        {
+            V ret = (V) _values[_index];
+
+            _values[_index] = value;
+
+            return ret;
+        }
+
+        @Override public String toString()
+        {
+            return _key + "=" + getValue();
+        }
+
+        private boolean eq(Object a, Object b)
+        {
+            return (a == null) ? (b == null) : a.equals(b);
+        }
+    }
+
+    private class KeySet extends AbstractSet<K>
+    {
+        @Override public void clear()
+        {
+            IndexedMap.this.clear();
+        }
+
+        @Override public boolean contains(Object o)
+        {
+            return containsKey(o);
+        }
+
+        @Override public Iterator<K> iterator()
+        {
+            return new IndexIterator<K>()
+                {
+                    @Override K get(int index)
+                    {
+                        return unmaskNull(_keys[index]);
+                    }
+                };
+        }
+
+        @Override public boolean remove(Object o)
+        {
+            int index = indexOf(o);
+
+            if (index >= 0)
+            {
+                removeAt(index);
+
+                return true;
+            }
+
+            return false;
+        }
+
+        @Override public int size()
+        {
+            return _size;
+        }
+    }
+}
@@ -0,0 +1,763 @@
+/*
+ * IzPack - Copyright 2001-2010 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ini4j.spi;
+
+import org.ini4j.Config;
+import org.ini4j.InvalidFileFormatException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Patches options of an INI file while copying it, without building the {@link org.ini4j.Ini}
+ * object graph. The memory used depends on the number of patched options, not on the size of
+ * the file.
+ * <p/>
+ * The options to patch are selected first; a first pass over the source ({@link #scan}) then
+ * reads their values and positions, the options are changed with {@link #put} and
+ * {@link #remove}, and a second pass ({@link #write}) copies the source to the target. Lines
+ * which are not changed are copied as they are, including comments, empty lines and line
+ * separators. The options behave as in an {@link org.ini4j.Ini} whose sections of the same name
+ * are merged: the last value of an option is read and replaced, and new options are written
+ * after the last option of their section. New sections are written at the end of the file.
+ * Include directives are copied, not followed.
+ */
+public class IniPatcher extends AbstractParser
+{
+    private static final String COMMENTS = ";#";
+    private static final String OPERATORS = ":=";
+    private static final char OPERATOR = '=';
+    private static final char SPACE = ' ';
+    private static final int BUFFER_SIZE = 8192;
+    private String _lineSeparator;
+    private boolean _scanned;
+    private final List<PatchedSection> _newSections = new ArrayList<PatchedSection>();
+    private final Map<String, PatchedSection> _sections = new HashMap<String, PatchedSection>();
+
+    public IniPatcher()
+    {
+        super(OPERATORS, COMMENTS);
+    }
+
+    public IniPatcher(Config config)
+    {
+        this();
+        setConfig(config);
+    }
+
+    /**
+     * Selects an option to patch. Options must be selected before the source is scanned.
+     *
+     * @param sectionName the section name
+     * @param optionName  the option name
+     */
+    public void select(String sectionName, String optionName)
+    {
+        if (_scanned)
+        {
+            throw new IllegalStateException("Options must be selected before scanning");
+        }
+
+        String sectionKey = sectionKey(sectionName);
+        PatchedSection section = _sections.get(sectionKey);
+
+        if (section == null)
+        {
+            section = new PatchedSection(sectionKey);
+            _sections.put(sectionKey, section);
+        }
+
+        String optionKey = optionKey(optionName);
+
+        if (!section.options.containsKey(optionKey))
+        {
+            section.options.put(optionKey, new PatchedOption(optionKey));
+        }
+    }
+
+    public void scan(InputStream input) throws IOException, InvalidFileFormatException
+    {
+        scan(new UnicodeInputStreamReader(input, getConfig().getFileEncoding()));
+    }
+
+    /**
+     * Reads the values and positions of the selected options.
+     *
+     * @param input the source
+     */
+    public void scan(Reader input) throws IOException, InvalidFileFormatException
+    {
+        parse(input, new RecordHandler()
+            {
+                @Override void section(String sectionName, long record, String raw)
+                {
+                    if (_lineSeparator == null)
+                    {
+                        _lineSeparator = getTerminator(raw);
+                    }
+
+                    PatchedSection section = _sections.get(sectionName);
+
+                    if (section != null)
+                    {
+                        section.exists = true;
+                        section.end = record;
+                    }
+                }
+
+                @Override void option(String sectionName, String optionName, String optionValue, long record, String raw)
+                {
+                    if (_lineSeparator == null)
+                    {
+                        _lineSeparator = getTerminator(raw);
+                    }
+
+                    PatchedSection section = _sections.get(sectionName);
+
+                    if (section != null)
+                    {
+                        section.exists = true;
+                        section.end = record;
+                        PatchedOption option = section.options.get(optionName);
+
+                        if (option != null)
+                        {
+                            option.record = record;
+                            option.value = optionValue;
+                            option.present = true;
+                        }
+                    }
+                }
+
+                @Override void other(String raw)
+                {
+                    if (_lineSeparator == null)
+                    {
+                        _lineSeparator = getTerminator(raw);
+                    }
+                }
+            });
+        if ((_lineSeparator == null) || (_lineSeparator.length() == 0))
+        {
+            _lineSeparator = getConfig().getLineSeparator();
+        }
+
+        _scanned = true;
+    }
+
+    /**
+     * Returns the current value of a selected option.
+     *
+     * @param sectionName the section name
+     * @param optionName  the option name
+     * @return the value, or <code>null</code> if the option does not exist
+     */
+    public String get(String sectionName, String optionName)
+    {
+        PatchedOption option = getOption(sectionName, optionName);
+
+        return option.present ? option.value : null;
+    }
+
+    /**
+     * Sets the value of a selected option, adding the option or its section if they do not exist.
+     *
+     * @param sectionName the section name
+     * @param optionName  the option name
+     * @param value       the value
+     */
+    public void put(String sectionName, String optionName, String value)
+    {
+        PatchedOption option = getOption(sectionName, optionName);
+        PatchedSection section = _sections.get(sectionKey(sectionName));
+
+        if (!option.present && (option.removed || (option.record < 0)))
+        {
+            section.added.remove(option);
+            section.added.add(option);
+        }
+
+        if (!section.exists && !section.created)
+        {
+            _newSections.add(section);
+        }
+
+        option.value = value;
+        option.present = true;
+        option.changed = true;
+        section.created = true;
+    }
+
+    /**
+     * Removes all values of a selected option.
+     *
+     * @param sectionName the section name
+     * @param optionName  the option name
+     */
+    public void remove(String sectionName, String optionName)
+    {
+        PatchedOption option = getOption(sectionName, optionName);
+
+        if (option.present)
+        {
+            option.present = false;
+            option.removed = true;
+            option.value = null;
+            _sections.get(sectionKey(sectionName)).added.remove(option);
+        }
+    }
+
+    public void write(InputStream input, OutputStream output) throws IOException, InvalidFileFormatException
+    {
+        Writer writer = new OutputStreamWriter(output, getConfig().getFileEncoding());
+
+        write(new UnicodeInputStreamReader(input, getConfig().getFileEncoding()), writer);
+        writer.flush();
+    }
+
+    /**
+     * Copies the source to the target, applying the changes to the selected options. The source
+     * must be the scanned one.
+     *
+     * @param input  the source
+     * @param output the target
+     */
+    public void write(Reader input, final Writer output) throws IOException, InvalidFileFormatException
+    {
+        if (!_scanned)
+        {
+            throw new IllegalStateException("The source must be scanned before writing");
+        }
+
+        final Output out = new Output(output);
+
+        if (getConfig().isGlobalSection())
+        {
+            PatchedSection global = _sections.get(getConfig().getGlobalSectionName());
+
+            if ((global != null) && !global.exists && global.created)
+            {
+                writeAdded(out, global);
+            }
+        }
+
+        parse(input, new RecordHandler()
+            {
+                @Override void section(String sectionName, long record, String raw) throws IOException
+                {
+                    out.write(raw);
+                    endRecord(sectionName, record);
+                }
+
+                @Override void option(String sectionName, String optionName, String optionValue, long record, String raw)
+                    throws IOException
+                {
+                    PatchedSection section = _sections.get(sectionName);
+                    PatchedOption option = (section == null) ? null : section.options.get(optionName);
+
+                    if (option == null)
+                    {
+                        out.write(raw);
+                    }
+                    else if (!option.removed)
+                    {
+                        out.write((option.changed && (record == option.record)) ? formatOption(raw, optionName, option.value) : raw);
+                    }
+
+                    endRecord(sectionName, record);
+                }
+
+                @Override void other(String raw) throws IOException
+                {
+                    out.write(raw);
+                }
+
+                private void endRecord(String sectionName, long record) throws IOException
+                {
+                    PatchedSection section = _sections.get(sectionName);
+
+                    if ((section != null) && (section.end == record))
+                    {
+                        writeAdded(out, section);
+                    }
+                }
+            });
+        for (PatchedSection section : _newSections)
+        {
+            if (!isGlobalSection(section.name))
+            {
+                if (out.isWritten())
+                {
+                    out.endLine(_lineSeparator);
+                    out.write(_lineSeparator);
+                }
+
+                out.write(IniParser.SECTION_BEGIN + escapeFilter(section.name) + IniParser.SECTION_END + _lineSeparator);
+                writeAdded(out, section);
+            }
+        }
+
+        output.flush();
+    }
+
+    String escapeFilter(String input)
+    {
+        return getConfig().isEscape() ? EscapeTool.getInstance().escape(input) : input;
+    }
+
+    private static String getTerminator(String raw)
+    {
+        int length = raw.length();
+
+        if (raw.endsWith("\r\n"))
+        {
+            return "\r\n";
+        }
+        else if ((length > 0) && ((raw.charAt(length - 1) == '\n') || (raw.charAt(length - 1) == '\r')))
+        {
+            return raw.substring(length - 1);
+        }
+
+        return null;
+    }
+
+    private String formatOption(String raw, String optionName, String value)
+    {
+        String terminator = getTerminator(raw);
+        int lineEnd = raw.length();
+
+        for (int i = 0; i < raw.length(); i++)
+        {
+            char c = raw.charAt(i);
+
+            if ((c == '\n') || (c == '\r'))
+            {
+                lineEnd = i;
+
+                break;
+            }
+        }
+
+        String line = raw.substring(0, lineEnd);
+        int idx = -1;
+
+        for (int i = 0; (i < line.length()) && (idx < 0); i++)
+        {
+            if (OPERATORS.indexOf(line.charAt(i)) >= 0)
+            {
+                idx = i;
+            }
+        }
+
+        StringBuilder buff = new StringBuilder();
+
+        if (idx < 0)
+        {
+            int start = 0;
+
+            while ((start < line.length()) && Character.isWhitespace(line.charAt(start)))
+            {
+                start++;
+            }
+
+            buff.append(line.substring(0, start));
+            appendOperator(buff, optionName);
+        }
+        else
+        {
+            int end = idx + 1;
+
+            while ((end < line.length()) && Character.isWhitespace(line.charAt(end)))
+            {
+                end++;
+            }
+
+            buff.append(line.substring(0, end));
+        }
+
+        buff.append(escapeFilter(value));
+        buff.append((terminator == null) ? "" : terminator);
+
+        return buff.toString();
+    }
+
+    private void appendOperator(StringBuilder buff, String optionName)
+    {
+        buff.append(escapeFilter(optionName));
+        if (getConfig().isStrictOperator())
+        {
+            buff.append(OPERATOR);
+        }
+        else
+        {
+            buff.append(SPACE).append(OPERATOR).append(SPACE);
+        }
+    }
+
+    private void writeAdded(Output out, PatchedSection section) throws IOException
+    {
+        if (!section.added.isEmpty())
+        {
+            out.endLine(_lineSeparator);
+        }
+
+        for (PatchedOption option : section.added)
+        {
+            StringBuilder buff = new StringBuilder();
+
+            appendOperator(buff, option.name);
+            buff.append(escapeFilter(option.value));
+            buff.append(_lineSeparator);
+            out.write(buff.toString());
+        }
+    }
+
+    private PatchedOption getOption(String sectionName, String optionName)
+    {
+        if (!_scanned)
+        {
+            throw new IllegalStateException("The source must be scanned first");
+        }
+
+        PatchedSection section = _sections.get(sectionKey(sectionName));
+        PatchedOption option = (section == null) ? null : section.options.get(optionKey(optionName));
+
+        if (option == null)
+        {
+            throw new IllegalArgumentException("Option not selected: [" + sectionName + "] " + optionName);
+        }
+
+        return option;
+    }
+
+    private boolean isGlobalSection(String sectionName)
+    {
+        return getConfig().isGlobalSection() && sectionName.equals(getConfig().getGlobalSectionName());
+    }
+
+    private String optionKey(String optionName)
+    {
+        return getConfig().isLowerCaseOption() ? optionName.toLowerCase(Locale.getDefault()) : optionName;
+    }
+
+    private void parse(Reader input, RecordHandler handler) throws IOException, InvalidFileFormatException
+    {
+        LineReader reader = new LineReader(input);
+        StringBuilder raw = new StringBuilder();
+        StringBuilder buff = new StringBuilder();
+        String sectionName = null;
+        long record = 0;
+        final String[] option = new String[2];
+        HandlerBase capture = new HandlerBase()
+            {
+                @Override public void handleEmptyLine()
+                {
+                    assert true;
+                }
+
+                @Override public void handleComment(String comment)
+                {
+                    assert true;
+                }
+
+                @Override public void handleOption(String optionName, String optionValue)
+                {
+                    option[0] = optionName;
+                    option[1] = optionValue;
+                }
+            };
+
+        for (String physical = reader.readLine(); physical != null; physical = reader.readLine())
+        {
+            raw.append(physical);
+            String line = physical.trim();
+
+            if ((line.length() == 0) || ((buff.length() == 0) && (COMMENTS.indexOf(line.charAt(0)) >= 0)))
+            {
+                if (buff.length() == 0)
+                {
+                    handler.other(raw.toString());
+                    raw.setLength(0);
+                    record++;
+                }
+
+                continue;
+            }
+
+            if (getConfig().isEscapeNewline() && ((countEndingEscapes(line) & 1) == 1))
+            {
+                buff.append(line.subSequence(0, line.length() - 1));
+
+                continue;
+            }
+
+            buff.append(line);
+            line = buff.toString();
+            buff.setLength(0);
+            if (getConfig().isInclude() && (line.length() > 2) && (line.charAt(0) == IniSource.INCLUDE_BEGIN)
+                  && (line.charAt(line.length() - 1) == IniSource.INCLUDE_END))
+            {
+                handler.other(raw.toString());
+            }
+            else if (line.charAt(0) == IniParser.SECTION_BEGIN)
+            {
+                sectionName = parseSectionName(line, reader.getLineNumber());
+                handler.section(sectionName, record, raw.toString());
+            }
+            else
+            {
+                if (sectionName == null)
+                {
+                    if (getConfig().isGlobalSection())
+                    {
+                        sectionName = getConfig().getGlobalSectionName();
+                    }
+                    else
+                    {
+                        parseError(line, reader.getLineNumber());
+                    }
+                }
+
+                parseOptionLine(line, capture, reader.getLineNumber());
+                handler.option(sectionName, option[0], option[1], record, raw.toString());
+            }
+
+            raw.setLength(0);
+            record++;
+        }
+
+        if (raw.length() != 0)
+        {
+            handler.other(raw.toString());
+        }
+    }
+
+    private String parseSectionName(String line, int lineNumber) throws InvalidFileFormatException
+    {
+        if (line.charAt(line.length() - 1) != IniParser.SECTION_END)
+        {
+            parseError(line, lineNumber);
+        }
+
+        String sectionName = unescapeFilter(line.substring(1, line.length() - 1).trim());
+
+        if ((sectionName.length() == 0) && !getConfig().isUnnamedSection())
+        {
+            parseError(line, lineNumber);
+        }
+
+        return sectionKey(sectionName);
+    }
+
+    private String sectionKey(String sectionName)
+    {
+        return getConfig().isLowerCaseSection() ? sectionName.toLowerCase(Locale.getDefault()) : sectionName;
+    }
+
+    private int countEndingEscapes(String line)
+    {
+        int escapeCount = 0;
+
+        for (int i = line.length() - 1; (i >= 0) && (line.charAt(i) == '\\'); i--)
+        {
+            escapeCount++;
+        }
+
+        return escapeCount;
+    }
+
+    private abstract static class RecordHandler
+    {
+        abstract void section(String sectionName, long record, String raw) throws IOException;
+
+        abstract void option(String sectionName, String optionName, String optionValue, long record, String raw)
+            throws IOException;
+
+        abstract void other(String raw) throws IOException;
+    }
+
+    private static class LineReader
+    {
+        private final char[] _buffer = new char[BUFFER_SIZE];
+        private final Reader _input;
+        private int _length;
+        private int _lineNumber;
+        private int _position;
+        private final StringBuilder _line = new StringBuilder();
+
+        LineReader(Reader input)
+        {
+            _input = input;
+        }
+
+        int getLineNumber()
+        {
+            return _lineNumber;
+        }
+
+        /**
+         * Reads a line including its terminator.
+         */
+        String readLine() throws IOException
+        {
+            _line.setLength(0);
+            while (true)
+            {
+                if ((_position == _length) && !fill())
+                {
+                    break;
+                }
+
+                int start = _position;
+
+                while (_position < _length)
+                {
+                    char c = _buffer[_position++];
+
+                    if (c == '\n')
+                    {
+                        _line.append(_buffer, start, _position - start);
+                        _lineNumber++;
+
+                        return _line.toString();
+                    }
+                    else if (c == '\r')
+                    {
+                        _line.append(_buffer, start, _position - start);
+                        if (((_position < _length) || fill()) && (_buffer[_position] == '\n'))
+                        {
+                            _line.append('\n');
+                            _position++;
+                        }
+
+                        _lineNumber++;
+
+                        return _line.toString();
+                    }
+                }
+
+                _line.append(_buffer, start, _position - start);
+            }
+
+            if (_line.length() == 0)
+            {
+                return null;
+            }
+
+            _lineNumber++;
+
+            return _line.toString();
+        }
+
+        private boolean fill() throws IOException
+        {
+            int count = _input.read(_buffer, 0, _buffer.length);
+
+            while (count == 0)
+            {
+                count = _input.read(_buffer, 0, _buffer.length);
+            }
+
+            _position = 0;
+            _length = Math.max(count, 0);
+
+            return count > 0;
+        }
+    }
+
+    private static class Output
+    {
+        private final Writer _output;
+        private boolean _terminated = true;
+        private boolean _written;
+
+        Output(Writer output)
+        {
+            _output = output;
+        }
+
+        boolean isWritten()
+        {
+            return _written;
+        }
+
+        /**
+         * Terminates the last line written, if the source did not.
+         */
+        void endLine(String lineSeparator) throws IOException
+        {
+            if (!_terminated)
+            {
+                write(lineSeparator);
+            }
+        }
+
+        void write(String text) throws IOException
+        {
+            if (text.length() != 0)
+            {
+                _output.write(text);
+                char last = text.charAt(text.length() - 1);
+
+                _terminated = (last == '\n') || (last == '\r');
+                _written = true;
+            }
+        }
+    }
+
+    private static class PatchedOption
+    {
+        private final String name;
+        private boolean changed;
+        private boolean present;
+        private long record = -1;
+        private boolean removed;
+        private String value;
+
+        PatchedOption(String name)
+        {
+            this.name = name;
+        }
+    }
+
+    private static class PatchedSection
+    {
+        private final List<PatchedOption> added = new ArrayList<PatchedOption>();
+        private boolean created;
+        private long end = -1;
+        private boolean exists;
+        private final String name;
+        private final Map<String, PatchedOption> options = new HashMap<String, PatchedOption>();
+
+        PatchedSection(String name)
+        {
+            this.name = name;
+        }
+    }
+}
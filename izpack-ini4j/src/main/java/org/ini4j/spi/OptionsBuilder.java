@@ -18,8 +18,11 @@ package org.ini4j.spi;
 import org.ini4j.Config;
 import org.ini4j.Options;
 
+import java.util.regex.Pattern;
+
 public class OptionsBuilder implements OptionsHandler
 {
+    private static final Pattern AUTO_NUMBERED = Pattern.compile("([^\\d]+\\.)+[\\d]+");
     private boolean _header;
     private String _lastComment;
     private Options _options;
@@ -74,11 +77,11 @@ public class OptionsBuilder implements OptionsHandler
     @Override public void handleOption(String name, String value)
     {
         String newName = name;
-        if (getConfig().isAutoNumbering() && name.matches("([^\\d]+\\.)+[\\d]+"))
+        if (getConfig().isAutoNumbering() && AUTO_NUMBERED.matcher(name).matches())
         {
-            String[] parts = name.split("\\.");
-            newName = name.substring(0, name.length() - parts[parts.length - 1].length() - 1) + ".";
-            int pos = Integer.parseInt(parts[parts.length - 1]);
+            int dot = name.lastIndexOf('.');
+            newName = name.substring(0, dot + 1);
+            int pos = Integer.parseInt(name.substring(dot + 1));
 
             // check whether key has been added before
             if (!_options.containsKey(newName))
@@ -0,0 +1,157 @@
+/*
+ * IzPack - Copyright 2001-2010 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ini4j;
+
+import java.io.StringReader;
+
+import java.util.Random;
+
+/**
+ * Measures loading, looking up, patching and removing options of large option files and profiles,
+ * with the default {@link java.util.LinkedHashMap} representation and with the indexed one
+ * ({@link Config#setIndexed(boolean)}).
+ * <p/>
+ * This is not a unit test. Run it optionally with the number of options as argument.
+ */
+public class MultiMapBenchmark
+{
+    private static final int LOOKUPS = 1000000;
+
+    public static void main(String[] args) throws Exception
+    {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+        String options = options(count);
+        String profile = profile(count);
+
+        System.out.println("                   load ms   lookup ms   patch ms   retained MB");
+        for (int run = 0; run < 3; run++)
+        {
+            for (boolean indexed : new boolean[] { false, true })
+            {
+                Config.getGlobal().setIndexed(indexed);
+                measureOptions(indexed, options, count);
+                measureProfile(indexed, profile, count);
+            }
+        }
+
+        Config.getGlobal().setIndexed(false);
+    }
+
+    private static void measureOptions(boolean indexed, String text, int count) throws Exception
+    {
+        long start = System.nanoTime();
+        Options options = new Options(new StringReader(text));
+        long load = (System.nanoTime() - start) / 1000000;
+        long memory = usedMemory();
+        Random random = new Random(0);
+
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++)
+        {
+            options.get("option" + random.nextInt(count));
+        }
+
+        long lookup = (System.nanoTime() - start) / 1000000;
+
+        start = System.nanoTime();
+        for (int i = 0; i < count; i += 2)
+        {
+            options.put("option" + i, "patched");
+            options.remove("option" + (i + 1));
+            options.add("added" + i, "value");
+        }
+
+        long patch = (System.nanoTime() - start) / 1000000;
+
+        print("options", indexed, load, lookup, patch, memory);
+    }
+
+    private static void measureProfile(boolean indexed, String text, int count) throws Exception
+    {
+        long start = System.nanoTime();
+        Ini ini = new Ini(new StringReader(text));
+        long load = (System.nanoTime() - start) / 1000000;
+        long memory = usedMemory();
+        Random random = new Random(0);
+        int sections = count / 10;
+
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++)
+        {
+            ini.get("section" + random.nextInt(sections), "option" + random.nextInt(10));
+        }
+
+        long lookup = (System.nanoTime() - start) / 1000000;
+
+        start = System.nanoTime();
+        for (int i = 0; i < sections; i += 2)
+        {
+            ini.put("section" + i, "option0", "patched");
+            ini.remove("section" + (i + 1), "option1");
+            ini.put("added" + i, "option", "value");
+        }
+
+        long patch = (System.nanoTime() - start) / 1000000;
+
+        print("profile", indexed, load, lookup, patch, memory);
+    }
+
+    private static void print(String name, boolean indexed, long load, long lookup, long patch, long memory)
+    {
+        System.out.println(String.format("%-8s %-8s %8d %11d %10d %13d", name, indexed ? "indexed" : "linked", load, lookup,
+                patch, memory / 1024 / 1024));
+    }
+
+    private static long usedMemory()
+    {
+        Runtime runtime = Runtime.getRuntime();
+
+        runtime.gc();
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static String options(int count)
+    {
+        StringBuilder buff = new StringBuilder();
+
+        for (int i = 0; i < count; i++)
+        {
+            buff.append("option").append(i).append(" = value").append(i).append('\n');
+        }
+
+        return buff.toString();
+    }
+
+    private static String profile(int count)
+    {
+        StringBuilder buff = new StringBuilder();
+
+        for (int i = 0; i < (count / 10); i++)
+        {
+            buff.append("[section").append(i).append("]\n");
+            for (int j = 0; j < 10; j++)
+            {
+                buff.append("option").append(j).append(" = value").append(j).append('\n');
+            }
+        }
+
+        return buff.toString();
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * IzPack - Copyright 2001-2010 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ini4j.spi;
+
+import org.ini4j.BasicMultiMap;
+import org.ini4j.Config;
+import org.ini4j.Ini4jCase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class IndexedMapTest extends Ini4jCase
+{
+    @Test public void testInsertionOrder()
+    {
+        Map<String, Integer> map = new IndexedMap<String, Integer>();
+
+        map.put("c", 1);
+        map.put("a", 2);
+        map.put("b", 3);
+        map.put("a", 4);
+        map.remove("c");
+        map.put("c", 5);
+        assertEquals("[a, b, c]", map.keySet().toString());
+        assertEquals("[4, 3, 5]", map.values().toString());
+        assertEquals(Integer.valueOf(4), map.get("a"));
+        assertNull(map.get("d"));
+    }
+
+    @Test public void testNullKey()
+    {
+        Map<String, Integer> map = new IndexedMap<String, Integer>();
+
+        assertFalse(map.containsKey(null));
+        map.put(null, 1);
+        assertTrue(map.containsKey(null));
+        assertEquals(Integer.valueOf(1), map.get(null));
+        assertEquals(Integer.valueOf(1), map.remove(null));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test public void testIteratorRemove()
+    {
+        Map<String, Integer> map = new IndexedMap<String, Integer>();
+
+        for (int i = 0; i < 10; i++)
+        {
+            map.put("k" + i, i);
+        }
+
+        for (Iterator<Map.Entry<String, Integer>> iter = map.entrySet().iterator(); iter.hasNext();)
+        {
+            Map.Entry<String, Integer> entry = iter.next();
+
+            if ((entry.getValue() % 2) == 0)
+            {
+                iter.remove();
+            }
+            else
+            {
+                entry.setValue(-entry.getValue());
+            }
+        }
+
+        assertEquals("{k1=-1, k3=-3, k5=-5, k7=-7, k9=-9}", map.toString());
+    }
+
+    @Test public void testSameAsLinkedHashMap()
+    {
+        Random random = new Random(0);
+        Map<String, Integer> expected = new LinkedHashMap<String, Integer>();
+        Map<String, Integer> actual = new IndexedMap<String, Integer>();
+
+        for (int i = 0; i < 100000; i++)
+        {
+            String key = "key" + random.nextInt(1000);
+
+            if (random.nextInt(3) == 0)
+            {
+                assertEquals(expected.remove(key), actual.remove(key));
+            }
+            else
+            {
+                assertEquals(expected.put(key, i), actual.put(key, i));
+            }
+        }
+
+        assertEquals(expected, actual);
+        assertEquals(new ArrayList<String>(expected.keySet()), new ArrayList<String>(actual.keySet()));
+    }
+
+    @Test public void testSerialize() throws Exception
+    {
+        Map<String, Integer> map = new IndexedMap<String, Integer>();
+
+        map.put("a", 1);
+        map.put("b", 2);
+        map.remove("a");
+        map.put("a", 3);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(buffer);
+
+        output.writeObject(map);
+        output.close();
+        Object copy = new ObjectInputStream(new ByteArrayInputStream(buffer.toByteArray())).readObject();
+
+        assertEquals(map, copy);
+        assertEquals("{b=2, a=3}", copy.toString());
+    }
+
+    @Test public void testIndexedConfig()
+    {
+        Config.getGlobal().setIndexed(true);
+        try
+        {
+            BasicMultiMap<String, String> map = new BasicMultiMap<String, String>();
+
+            map.add("option", "a");
+            map.add("option", "b");
+            map.add("other", "c");
+            List<String> values = map.getAll("option");
+
+            assertEquals("[a, b]", values.toString());
+            assertEquals("{option=[a, b], other=[c]}", map.toString());
+        }
+        finally
+        {
+            Config.getGlobal().setIndexed(false);
+        }
+    }
+}
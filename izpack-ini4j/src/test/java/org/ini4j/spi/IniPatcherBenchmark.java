@@ -0,0 +1,176 @@
+/*
+ * IzPack - Copyright 2001-2010 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ini4j.spi;
+
+import org.ini4j.Config;
+import org.ini4j.Ini;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Compares the time and the retained memory needed to set and remove a few options of a large
+ * INI file, by loading and storing an {@link Ini} and by streaming the file through an
+ * {@link IniPatcher}.
+ * <p/>
+ * This is not a unit test. Run it optionally with the size of the file in MB as argument
+ * (default: 100); the tree based patch needs a heap several times the size of the file.
+ */
+public class IniPatcherBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        int megabytes = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+        File source = File.createTempFile("izpack-ini", ".ini");
+        File target = File.createTempFile("izpack-ini", ".ini");
+
+        try
+        {
+            int sections = generate(source, megabytes * 1024L * 1024L);
+
+            System.out.println("file: " + (source.length() / 1024 / 1024) + " MB, " + sections + " sections");
+            for (int run = 0; run < 3; run++)
+            {
+                long start = System.nanoTime();
+
+                stream(source, target, sections);
+                long streamed = (System.nanoTime() - start) / 1000000;
+                long streamedMemory = usedMemory();
+
+                start = System.nanoTime();
+                long treeMemory = tree(source, target, sections);
+                long tree = (System.nanoTime() - start) / 1000000;
+
+                System.out.println(String.format("streaming: %6d ms %5d MB   tree: %6d ms %5d MB", streamed,
+                        streamedMemory / 1024 / 1024, tree, treeMemory / 1024 / 1024));
+            }
+        }
+        finally
+        {
+            source.delete();
+            target.delete();
+        }
+    }
+
+    private static void stream(File source, File target, int sections) throws IOException
+    {
+        IniPatcher patcher = new IniPatcher(Config.getGlobal());
+
+        patcher.select("section" + (sections / 2), "option1");
+        patcher.select("section" + (sections - 1), "option2");
+        patcher.select("added", "option");
+        InputStream in = new FileInputStream(source);
+
+        try
+        {
+            patcher.scan(in);
+        }
+        finally
+        {
+            in.close();
+        }
+
+        patcher.put("section" + (sections / 2), "option1", "patched");
+        patcher.remove("section" + (sections - 1), "option2");
+        patcher.put("added", "option", "value");
+        in = new FileInputStream(source);
+        OutputStream out = new FileOutputStream(target);
+
+        try
+        {
+            patcher.write(in, out);
+        }
+        finally
+        {
+            out.close();
+            in.close();
+        }
+    }
+
+    private static long tree(File source, File target, int sections) throws IOException
+    {
+        Ini ini = new Ini(source);
+
+        ini.put("section" + (sections / 2), "option1", "patched");
+        ini.remove("section" + (sections - 1), "option2");
+        ini.put("added", "option", "value");
+        long memory = usedMemory();
+
+        ini.store(target);
+
+        return memory;
+    }
+
+    private static long usedMemory()
+    {
+        Runtime runtime = Runtime.getRuntime();
+
+        runtime.gc();
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Writes sections of ten commented options.
+     *
+     * @return the number of sections
+     */
+    private static int generate(File file, long size) throws IOException
+    {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        int sections = 0;
+
+        try
+        {
+            long written = 0;
+
+            while (written < size)
+            {
+                StringBuilder section = new StringBuilder();
+
+                section.append("; section ").append(sections).append('\n');
+                section.append('[').append("section").append(sections).append("]\n");
+                for (int i = 0; i < 10; i++)
+                {
+                    section.append("# option ").append(i).append('\n');
+                    section.append("option").append(i).append(" = value").append(i).append('.').append(sections)
+                      .append('\n');
+                }
+
+                section.append('\n');
+                out.write(section.toString());
+                written += section.length();
+                sections++;
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+
+        return sections;
+    }
+}
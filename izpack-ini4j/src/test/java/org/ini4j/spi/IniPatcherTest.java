@@ -0,0 +1,190 @@
+/*
+ * IzPack - Copyright 2001-2010 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ini4j.spi;
+
+import org.ini4j.Config;
+import org.ini4j.Ini4jCase;
+import org.ini4j.InvalidFileFormatException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+public class IniPatcherTest extends Ini4jCase
+{
+    private static final String SOURCE =
+        "# header\r\n\r\n[server]\r\n; port comment\r\nport = 80\r\nhost:localhost\r\n\r\n[client]\r\nport = 1\r\nport = 2\r\n";
+
+    @Test public void testUnchanged() throws Exception
+    {
+        IniPatcher patcher = new IniPatcher(new Config());
+
+        patcher.select("server", "port");
+        assertEquals(SOURCE, patch(patcher, SOURCE));
+    }
+
+    @Test public void testPut() throws Exception
+    {
+        IniPatcher patcher = new IniPatcher(new Config());
+
+        patcher.select("server", "port");
+        patcher.select("server", "host");
+        patcher.scan(new StringReader(SOURCE));
+        assertEquals("80", patcher.get("server", "port"));
+        patcher.put("server", "port", "8080");
+        patcher.put("server", "host", "example.org");
+        assertEquals(SOURCE.replace("port = 80", "port = 8080").replace("host:localhost", "host:example.org"),
+            write(patcher, SOURCE));
+    }
+
+    @Test public void testPutLastValue() throws Exception
+    {
+        IniPatcher patcher = new IniPatcher(new Config());
+
+        patcher.select("client", "port");
+        patcher.scan(new StringReader(SOURCE));
+        assertEquals("2", patcher.get("client", "port"));
+        patcher.put("client", "port", "3");
+        assertEquals(SOURCE.replace("port = 2", "port = 3"), write(patcher, SOURCE));
+    }
+
+    @Test public void testAdd() throws Exception
+    {
+        IniPatcher patcher = new IniPatcher(new Config());
+
+        patcher.select("server", "timeout");
+        patcher.select("cache", "size");
+        patcher.scan(new StringReader(SOURCE));
+        assertNull(patcher.get("server", "timeout"));
+        patcher.put("server", "timeout", "10");
+        patcher.put("cache", "size", "5");
+        assertEquals(SOURCE.replace("host:localhost\r\n", "host:localhost\r\ntimeout = 10\r\n")
+            + "\r\n[cache]\r\nsize = 5\r\n", write(patcher, SOURCE));
+    }
+
+    @Test public void testRemove() throws Exception
+    {
+        IniPatcher patcher = new IniPatcher(new Config());
+
+        patcher.select("client", "port");
+        patcher.select("server", "missing");
+        patcher.scan(new StringReader(SOURCE));
+        patcher.remove("client", "port");
+        patcher.remove("server", "missing");
+        assertNull(patcher.get("client", "port"));
+        assertEquals(SOURCE.replace("port = 1\r\nport = 2\r\n", ""), write(patcher, SOURCE));
+    }
+
+    @Test public void testRemoveAndPut() throws Exception
+    {
+        IniPatcher patcher = new IniPatcher(new Config());
+
+        patcher.select("server", "port");
+        patcher.scan(new StringReader(SOURCE));
+        patcher.remove("server", "port");
+        patcher.put("server", "port", "81");
+        assertEquals(SOURCE.replace("port = 80\r\nhost:localhost\r\n", "host:localhost\r\nport = 81\r\n"),
+            write(patcher, SOURCE));
+    }
+
+    @Test public void testUnterminatedLastLine() throws Exception
+    {
+        IniPatcher patcher = new IniPatcher(new Config());
+
+        patcher.select("section", "b");
+        patcher.scan(new StringReader("[section]\na=1"));
+        patcher.put("section", "b", "2");
+        assertEquals("[section]\na=1\nb = 2\n", write(patcher, "[section]\na=1"));
+    }
+
+    @Test public void testEscapedValue() throws Exception
+    {
+        String source = "[section]\noption = first \\\n  second\n";
+        IniPatcher patcher = new IniPatcher(new Config());
+
+        patcher.select("section", "option");
+        patcher.scan(new StringReader(source));
+        assertEquals("first second", patcher.get("section", "option"));
+        patcher.put("section", "option", "a\tb");
+        assertEquals("[section]\noption = a\\tb\n", write(patcher, source));
+    }
+
+    @Test public void testEmpty() throws Exception
+    {
+        IniPatcher patcher = new IniPatcher(new Config());
+
+        patcher.select("section", "option");
+        patcher.scan(new StringReader(""));
+        patcher.put("section", "option", "value");
+        assertEquals("[section]" + Config.DEFAULT_LINE_SEPARATOR + "option = value" + Config.DEFAULT_LINE_SEPARATOR,
+            write(patcher, ""));
+    }
+
+    @Test public void testBadSource() throws Exception
+    {
+        IniPatcher patcher = new IniPatcher(new Config());
+
+        try
+        {
+            patcher.scan(new StringReader("option=value\n"));
+            missing(InvalidFileFormatException.class);
+        }
+        catch (InvalidFileFormatException x)
+        {
+            assert true;
+        }
+    }
+
+    @Test public void testNotSelected() throws Exception
+    {
+        IniPatcher patcher = new IniPatcher(new Config());
+
+        patcher.scan(new StringReader(SOURCE));
+        try
+        {
+            patcher.put("server", "port", "81");
+            fail("Missing exception: " + IllegalArgumentException.class.getName());
+        }
+        catch (IllegalArgumentException x)
+        {
+            assert true;
+        }
+    }
+
+    private String patch(IniPatcher patcher, String source) throws Exception
+    {
+        patcher.scan(new StringReader(source));
+
+        return write(patcher, source);
+    }
+
+    private String write(IniPatcher patcher, String source) throws Exception
+    {
+        StringWriter output = new StringWriter();
+
+        patcher.write(new StringReader(source), output);
+
+        return output.toString();
+    }
+}
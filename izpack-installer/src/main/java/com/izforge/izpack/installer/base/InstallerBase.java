@@ -25,14 +25,28 @@ import com.izforge.izpack.api.data.AutomatedInstallData;
 import com.izforge.izpack.api.data.DynamicVariable;
 import com.izforge.izpack.api.data.ResourceManager;
 import com.izforge.izpack.api.installer.InstallerRequirementDisplay;
+import com.izforge.izpack.api.rules.Condition;
 import com.izforge.izpack.api.rules.RulesEngine;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 import com.izforge.izpack.core.substitutor.DynamicVariableSubstitutor;
 import com.izforge.izpack.util.Debug;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
 
 /**
@@ -47,6 +61,16 @@ public abstract class InstallerBase implements InstallerRequirementDisplay
 
     private static final Logger LOGGER = Logger.getLogger(InstallerBase.class.getName());
 
+    /**
+     * The variable giving the number of threads evaluating the dynamic variables.
+     */
+    public static final String DYNAMIC_VARIABLES_THREADS_VARIABLE = "DynamicVariables.threads";
+
+    /**
+     * The variable giving the maximum time the evaluation of a dynamic variable may take, in seconds.
+     */
+    public static final String DYNAMIC_VARIABLES_TIMEOUT_VARIABLE = "DynamicVariables.timeout";
+
     protected ResourceManager resourceManager;
 
     /**
@@ -62,7 +86,13 @@ public abstract class InstallerBase implements InstallerRequirementDisplay
     public abstract void showMissingRequirementMessage(String message);
 
     /**
-     * Refreshes Dynamic Variables.
+     * Refreshes Dynamic Variables. A variable is refreshed after the dynamic variables it references,
+     * and its value is only resolved again if its inputs changed (see {@link DynamicVariable#evaluate}).
+     * <p/>
+     * If the {@link #DYNAMIC_VARIABLES_THREADS_VARIABLE} or {@link #DYNAMIC_VARIABLES_TIMEOUT_VARIABLE}
+     * variable is set, the variables are refreshed level by level: the variables of a level only reference
+     * variables of the previous levels, and are evaluated concurrently. Their conditions are checked before,
+     * and their values are set afterwards, in declaration order.
      */
     public static void refreshDynamicVariables(AutomatedInstallData installdata,
                                                VariableSubstitutor... substitutors) throws Exception
@@ -73,35 +103,390 @@ public abstract class InstallerBase implements InstallerRequirementDisplay
         LOGGER.info("refreshing dynamic variables");
         if (dynamicvariables != null)
         {
-            for (String dynvarname : dynamicvariables.keySet())
+            int threads = getIntVariable(installdata, DYNAMIC_VARIABLES_THREADS_VARIABLE, 1);
+            int timeout = getIntVariable(installdata, DYNAMIC_VARIABLES_TIMEOUT_VARIABLE, 0);
+            if (threads > 1 || timeout > 0)
+            {
+                refreshDynamicVariables(installdata, dynamicvariables, threads, timeout, substitutors);
+                return;
+            }
+            for (String dynvarname : getRefreshOrder(dynamicvariables, rules))
             {
                 LOGGER.info("Dynamic variable: " + dynvarname);
                 for (DynamicVariable dynvar : dynamicvariables.get(dynvarname))
                 {
-                    boolean refresh = true;
-                    String conditionid = dynvar.getConditionid();
-                    if ((conditionid != null) && (conditionid.length() > 0))
+                    if (isConditionTrue(dynvar, rules))
+                    {
+                        setDynamicVariable(installdata, dynvar, dynvar.evaluate(rules, substitutors));
+                    }
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Refreshes the dynamic variables concurrently, level by level.
+     */
+    private static void refreshDynamicVariables(AutomatedInstallData installdata,
+                                                Map<String, List<DynamicVariable>> dynamicvariables,
+                                                int threads, int timeout, VariableSubstitutor... substitutors)
+            throws Exception
+    {
+        RulesEngine rules = installdata.getRules();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "IzPack dynamic variable");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try
+        {
+            for (List<String> level : getRefreshLevels(dynamicvariables, rules))
+            {
+                List<DynamicVariableEvaluation> evaluations = new ArrayList<DynamicVariableEvaluation>();
+                for (String dynvarname : level)
+                {
+                    LOGGER.info("Dynamic variable: " + dynvarname);
+                    List<DynamicVariable> dynvars = new ArrayList<DynamicVariable>();
+                    for (DynamicVariable dynvar : dynamicvariables.get(dynvarname))
+                    {
+                        if (isConditionTrue(dynvar, rules))
+                        {
+                            dynvars.add(dynvar);
+                        }
+                    }
+                    if (!dynvars.isEmpty())
+                    {
+                        DynamicVariableEvaluation evaluation = new DynamicVariableEvaluation(dynvars, rules,
+                                                                                             substitutors);
+                        evaluation.submit(executor);
+                        evaluations.add(evaluation);
+                    }
+                }
+
+                Exception failure = null;
+                List<DynamicVariableEvaluation> evaluated = new ArrayList<DynamicVariableEvaluation>();
+                for (DynamicVariableEvaluation evaluation : evaluations)
+                {
+                    try
                     {
-                        if ((rules != null) && !rules.isConditionTrue(conditionid))
+                        if (evaluation.await(timeout * 1000L))
                         {
-                            LOGGER.info("skipped refreshing dynamic variable due to unmet condition " + conditionid);
-                            refresh = false;
+                            evaluated.add(evaluation);
+                        }
+                        else
+                        {
+                            LOGGER.warning("dynamic variable " + evaluation.dynvars.get(0).getName()
+                                    + " unchanged: evaluation timed out after " + timeout + " s");
                         }
                     }
-                    if (refresh)
+                    catch (Exception exception)
+                    {
+                        // the variables declared before are still set
+                        failure = exception;
+                        break;
+                    }
+                }
+
+                synchronized (installdata.getVariables())
+                {
+                    for (DynamicVariableEvaluation evaluation : evaluated)
                     {
-                        String newValue = dynvar.evaluate(substitutors);
-                        if (newValue != null) {
-                            LOGGER.info("dynamic variable " + dynvar.getName() + ": " + newValue);
-                            installdata.getVariables().setProperty(dynvar.getName(), newValue);
-                        } else {
-                            LOGGER.info("dynamic variable " + dynvar.getName() + " unchanged: " + dynvar.getValue());
+                        for (int i = 0; i < evaluation.dynvars.size(); i++)
+                        {
+                            setDynamicVariable(installdata, evaluation.dynvars.get(i), evaluation.values.get(i));
                         }
                     }
                 }
+                if (failure != null)
+                {
+                    throw failure;
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private static boolean isConditionTrue(DynamicVariable dynvar, RulesEngine rules)
+    {
+        String conditionid = dynvar.getConditionid();
+        if ((conditionid != null) && (conditionid.length() > 0))
+        {
+            if ((rules != null) && !rules.isConditionTrue(conditionid))
+            {
+                LOGGER.info("skipped refreshing dynamic variable due to unmet condition " + conditionid);
+                return false;
             }
         }
+        return true;
+    }
+
+    private static void setDynamicVariable(AutomatedInstallData installdata, DynamicVariable dynvar,
+                                           String newValue)
+    {
+        if (newValue != null) {
+            LOGGER.info("dynamic variable " + dynvar.getName() + ": " + newValue);
+            installdata.getVariables().setProperty(dynvar.getName(), newValue);
+        } else {
+            LOGGER.info("dynamic variable " + dynvar.getName() + " unchanged: " + dynvar.getValue());
+        }
+    }
 
+    /**
+     * Returns the value of an integer variable.
+     *
+     * @return the value, or the default value if the variable is not set or invalid
+     */
+    private static int getIntVariable(AutomatedInstallData installdata, String variable, int defaultValue)
+    {
+        String value = installdata.getVariable(variable);
+        if (value != null)
+        {
+            try
+            {
+                return Math.max(0, Integer.parseInt(value.trim()));
+            }
+            catch (NumberFormatException exception)
+            {
+                Debug.log("Invalid " + variable + " value: " + value);
+            }
+        }
+        return defaultValue;
     }
 
+    /**
+     * Returns the names of the dynamic variables in the order they have to be refreshed: a variable
+     * comes after the dynamic variables it or its conditions reference, and otherwise in declaration
+     * order. The variables of a reference cycle are kept in declaration order.
+     *
+     * @param dynamicvariables the dynamic variables by name
+     * @param rules            the rules the conditions are looked up in, may be <tt>null</tt>
+     * @return the names of the variables
+     */
+    static List<String> getRefreshOrder(Map<String, List<DynamicVariable>> dynamicvariables, RulesEngine rules)
+    {
+        Map<String, Set<String>> dependencies = getDependencies(dynamicvariables, rules);
+        List<String> order = new ArrayList<String>(dependencies.size());
+        Set<String> ordered = new HashSet<String>();
+        while (!dependencies.isEmpty())
+        {
+            String next = null;
+            for (Map.Entry<String, Set<String>> entry : dependencies.entrySet())
+            {
+                if (ordered.containsAll(entry.getValue()))
+                {
+                    next = entry.getKey();
+                    break;
+                }
+            }
+            if (next == null)
+            {
+                // reference cycle
+                next = dependencies.keySet().iterator().next();
+            }
+            dependencies.remove(next);
+            order.add(next);
+            ordered.add(next);
+        }
+        return order;
+    }
+
+    /**
+     * Returns the names of the dynamic variables by refresh level: the variables of a level only
+     * reference variables of the previous levels. The variables of a level are in declaration order.
+     * In a reference cycle, the references to the variables following in the refresh order are ignored.
+     *
+     * @param dynamicvariables the dynamic variables by name
+     * @param rules            the rules the conditions are looked up in, may be <tt>null</tt>
+     * @return the names of the variables of each level
+     */
+    static List<List<String>> getRefreshLevels(Map<String, List<DynamicVariable>> dynamicvariables,
+                                               RulesEngine rules)
+    {
+        Map<String, Set<String>> dependencies = getDependencies(dynamicvariables, rules);
+        Map<String, Integer> levels = new HashMap<String, Integer>();
+        int count = 0;
+        for (String name : getRefreshOrder(dynamicvariables, rules))
+        {
+            int level = 0;
+            for (String dependency : dependencies.get(name))
+            {
+                Integer dependencyLevel = levels.get(dependency);
+                if (dependencyLevel != null)
+                {
+                    level = Math.max(level, dependencyLevel + 1);
+                }
+            }
+            levels.put(name, level);
+            count = Math.max(count, level + 1);
+        }
+
+        List<List<String>> result = new ArrayList<List<String>>(count);
+        for (int i = 0; i < count; i++)
+        {
+            result.add(new ArrayList<String>());
+        }
+        for (String name : dynamicvariables.keySet())
+        {
+            result.get(levels.get(name)).add(name);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the dynamic variables referenced by each dynamic variable and its conditions, in
+     * declaration order. A variable whose condition does not tell the variables it depends on is
+     * refreshed after the variables declared before it.
+     */
+    private static Map<String, Set<String>> getDependencies(Map<String, List<DynamicVariable>> dynamicvariables,
+                                                            RulesEngine rules)
+    {
+        Map<String, Set<String>> dependencies = new LinkedHashMap<String, Set<String>>();
+        for (Map.Entry<String, List<DynamicVariable>> entry : dynamicvariables.entrySet())
+        {
+            Set<String> names = new HashSet<String>();
+            for (DynamicVariable dynvar : entry.getValue())
+            {
+                Set<String> references = dynvar.getVariableReferences();
+                if (references != null)
+                {
+                    names.addAll(references);
+                }
+                String conditionid = dynvar.getConditionid();
+                if ((rules != null) && (conditionid != null) && (conditionid.length() > 0))
+                {
+                    Condition condition = rules.getCondition(conditionid);
+                    Set<String> conditionReferences = (condition != null) ? condition.getVariableDependencies() : null;
+                    if (conditionReferences != null)
+                    {
+                        names.addAll(conditionReferences);
+                    }
+                    else
+                    {
+                        names.addAll(dependencies.keySet());
+                    }
+                }
+            }
+            names.retainAll(dynamicvariables.keySet());
+            names.remove(entry.getKey());
+            dependencies.put(entry.getKey(), names);
+        }
+        return dependencies;
+    }
+
+    /**
+     * Evaluation of the definitions of a dynamic variable whose conditions are true.
+     */
+    private static class DynamicVariableEvaluation implements Callable<Object>
+    {
+        private final List<DynamicVariable> dynvars;
+
+        private final RulesEngine rules;
+
+        private final VariableSubstitutor[] substitutors;
+
+        private final List<String> values = new ArrayList<String>();
+
+        private Future<Object> future;
+
+        /**
+         * The time the evaluation was submitted at.
+         */
+        private long submitted;
+
+        /**
+         * The time the evaluation started at, 0 if it did not start yet.
+         */
+        private volatile long started;
+
+        DynamicVariableEvaluation(List<DynamicVariable> dynvars, RulesEngine rules,
+                                  VariableSubstitutor[] substitutors)
+        {
+            this.dynvars = dynvars;
+            this.rules = rules;
+            this.substitutors = substitutors;
+        }
+
+        /**
+         * Submits the evaluation.
+         *
+         * @param executor the executor running the evaluation
+         */
+        void submit(ExecutorService executor)
+        {
+            submitted = System.currentTimeMillis();
+            future = executor.submit(this);
+        }
+
+        public Object call() throws Exception
+        {
+            started = System.currentTimeMillis();
+            for (DynamicVariable dynvar : dynvars)
+            {
+                values.add(dynvar.evaluate(rules, substitutors));
+            }
+            return null;
+        }
+
+        /**
+         * Waits for the evaluation to complete. The timeout runs from the start of the evaluation,
+         * or from its submission as long as it did not start: a timed out evaluation ignoring its
+         * cancellation keeps its worker busy, and the evaluations queued behind it may never start.
+         *
+         * @param timeout the maximum time the evaluation may run, in milliseconds, 0 for no timeout
+         * @return <tt>true</tt> if the evaluation completed, <tt>false</tt> if it timed out and was cancelled
+         * @throws Exception if the evaluation failed
+         */
+        boolean await(long timeout) throws Exception
+        {
+            try
+            {
+                if (timeout <= 0)
+                {
+                    future.get();
+                    return true;
+                }
+                while (true)
+                {
+                    long start = started;
+                    long wait = ((start != 0) ? start : submitted) + timeout - System.currentTimeMillis();
+                    if (wait <= 0)
+                    {
+                        if (future.cancel(true))
+                        {
+                            return false;
+                        }
+                        // completed in the meantime
+                        future.get();
+                        return true;
+                    }
+                    try
+                    {
+                        future.get(wait, TimeUnit.MILLISECONDS);
+                        return true;
+                    }
+                    catch (TimeoutException exception)
+                    {
+                        // check again, the evaluation may have started in the meantime
+                    }
+                }
+            }
+            catch (ExecutionException exception)
+            {
+                Throwable cause = exception.getCause();
+                if (cause instanceof Exception)
+                {
+                    throw (Exception) cause;
+                }
+                throw (Error) cause;
+            }
+        }
+    }
 }
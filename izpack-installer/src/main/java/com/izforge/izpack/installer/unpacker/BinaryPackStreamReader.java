@@ -0,0 +1,357 @@
+/*
+ * IzPack - Copyright 2001-2010 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import com.izforge.izpack.api.data.Blockable;
+import com.izforge.izpack.api.data.OverrideType;
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.api.data.binding.OsModel;
+import com.izforge.izpack.data.PackStreamFormat;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Reads packs written in the binary pack stream format described by {@link PackStreamFormat}.
+ * The content of every file is checked against the CRC32 stored after it, so corrupted data is
+ * reported for the file it belongs to.
+ */
+public class BinaryPackStreamReader extends PackStreamReader
+{
+    private static final OverrideType[] OVERRIDE_TYPES = OverrideType.values();
+
+    private static final Blockable[] BLOCKABLES = Blockable.values();
+
+    private final CountingInputStream counter;
+
+    private final DataInputStream in;
+
+    private final int fileCount;
+
+    private final List<String> strings = new ArrayList<String>();
+
+    /**
+     * The content of the file read last, or <tt>null</tt> if it has no content.
+     */
+    private EntryInputStream entry;
+
+    /**
+     * Creates a reader on a pack stream.
+     *
+     * @param in the pack stream
+     * @throws IOException if the stream header cannot be read or has an unsupported version
+     */
+    public BinaryPackStreamReader(InputStream in) throws IOException
+    {
+        this.counter = new CountingInputStream(in);
+        this.in = new DataInputStream(counter);
+        if (this.in.readInt() != PackStreamFormat.MAGIC)
+        {
+            throw new IOException("Not a pack stream");
+        }
+        int version = this.in.readInt();
+        if (version > PackStreamFormat.VERSION)
+        {
+            throw new IOException("Unsupported pack stream version " + version);
+        }
+        fileCount = this.in.readInt();
+    }
+
+    public int readFileCount()
+    {
+        return fileCount;
+    }
+
+    @SuppressWarnings("unchecked")
+    public PackFile readPackFile() throws IOException, ClassNotFoundException
+    {
+        finishEntry();
+
+        int flags = in.readInt();
+        String parent = readSharedString();
+        String name = in.readUTF();
+        String target = (parent == null) ? name : parent + "/" + name;
+        String relativePath = readString();
+        long length = in.readLong();
+        long mtime = in.readLong();
+        int override = in.readByte();
+        int blockable = in.readByte();
+        String overrideRenameTo = readString();
+        String condition = readSharedString();
+        String previousPackId = null;
+        long offsetInPreviousPack = -1;
+        if ((flags & PackStreamFormat.FLAG_BACK_REFERENCE) != 0)
+        {
+            previousPackId = readSharedString();
+            offsetInPreviousPack = in.readLong();
+        }
+        List<OsModel> osConstraints = null;
+        Map<?, ?> additionals = null;
+        if ((flags & PackStreamFormat.FLAG_EXTRA) != 0)
+        {
+            byte[] extra = new byte[in.readInt()];
+            in.readFully(extra);
+            ObjectInputStream objIn = new ObjectInputStream(new ByteArrayInputStream(extra));
+            Object[] values = (Object[]) objIn.readObject();
+            osConstraints = (List<OsModel>) values[0];
+            additionals = (Map<?, ?>) values[1];
+        }
+
+        PackFile packFile = new PackFile(target, relativePath, osConstraints,
+                override == 0 ? null : OVERRIDE_TYPES[override - 1], overrideRenameTo,
+                blockable == 0 ? null : BLOCKABLES[blockable - 1], additionals, length, mtime,
+                (flags & PackStreamFormat.FLAG_DIRECTORY) != 0);
+        packFile.setCondition(condition);
+        packFile.setPack200Jar((flags & PackStreamFormat.FLAG_PACK200) != 0);
+        packFile.setSharedData((flags & PackStreamFormat.FLAG_SHARED) != 0);
+        packFile.setExecutable((flags & PackStreamFormat.FLAG_EXECUTABLE) != 0);
+        if (previousPackId != null)
+        {
+            packFile.setPreviousPackFileRef(previousPackId, offsetInPreviousPack);
+        }
+
+        if ((flags & PackStreamFormat.FLAG_DATA) != 0)
+        {
+            entry = new EntryInputStream(packFile);
+        }
+        return packFile;
+    }
+
+    public InputStream getFileData(PackFile packFile) throws IOException
+    {
+        if (entry == null)
+        {
+            throw new IOException("No content stored for " + packFile.getTargetPath());
+        }
+        return entry;
+    }
+
+    public void skipFileData(PackFile packFile) throws IOException
+    {
+        finishEntry();
+    }
+
+    public InputStream seekFileData(PackFile packFile) throws IOException
+    {
+        skipFully(counter, packFile.offsetInPreviousPack - counter.getPosition());
+        entry = new EntryInputStream(packFile);
+        return entry;
+    }
+
+    public ObjectInputStream getMetadataStream() throws IOException
+    {
+        finishEntry();
+        return new ObjectInputStream(in);
+    }
+
+    public void close() throws IOException
+    {
+        in.close();
+    }
+
+    /**
+     * Skips the remaining content of the current file and its checksum.
+     *
+     * @throws IOException for any I/O error
+     */
+    private void finishEntry() throws IOException
+    {
+        if (entry != null)
+        {
+            entry.finish();
+            entry = null;
+        }
+    }
+
+    private String readString() throws IOException
+    {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private String readSharedString() throws IOException
+    {
+        int index = in.readInt();
+        if (index == PackStreamFormat.NULL_STRING)
+        {
+            return null;
+        }
+        if (index == strings.size())
+        {
+            strings.add(in.readUTF());
+        }
+        else if (index > strings.size())
+        {
+            throw new IOException("Invalid string reference in pack stream");
+        }
+        return strings.get(index);
+    }
+
+    /**
+     * The content of a file, verified against its checksum once it has been read completely.
+     */
+    private class EntryInputStream extends InputStream
+    {
+        private final PackFile packFile;
+
+        private final CRC32 crc = new CRC32();
+
+        private long remaining;
+
+        private boolean complete = true;
+
+        private boolean finished;
+
+        EntryInputStream(PackFile packFile)
+        {
+            this.packFile = packFile;
+            this.remaining = getDataLength(packFile);
+        }
+
+        public int read() throws IOException
+        {
+            byte[] b = new byte[1];
+            return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xff);
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (finished || remaining == 0)
+            {
+                verify();
+                return -1;
+            }
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read == -1)
+            {
+                throw new IOException("Unexpected end of stream (installer corrupted?)");
+            }
+            crc.update(b, off, read);
+            remaining -= read;
+            if (remaining == 0)
+            {
+                verify();
+            }
+            return read;
+        }
+
+        public long skip(long n) throws IOException
+        {
+            long count = Math.min(n, remaining);
+            skipFully(in, count);
+            remaining -= count;
+            complete = false;
+            return count;
+        }
+
+        public void close() throws IOException
+        {
+            finish();
+        }
+
+        /**
+         * Skips the remaining content and reads the checksum.
+         *
+         * @throws IOException for any I/O error or if the checksum does not match
+         */
+        void finish() throws IOException
+        {
+            if (remaining > 0)
+            {
+                skipFully(in, remaining);
+                remaining = 0;
+                complete = false;
+            }
+            verify();
+        }
+
+        private void verify() throws IOException
+        {
+            if (finished)
+            {
+                return;
+            }
+            finished = true;
+            int expected = in.readInt();
+            if (complete && expected != (int) crc.getValue())
+            {
+                throw new IOException("Corrupted data in pack (checksum mismatch) for file "
+                        + packFile.getTargetPath());
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes read from the pack stream, to position back references.
+     */
+    private static class CountingInputStream extends FilterInputStream
+    {
+        private long position;
+
+        CountingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        public int read() throws IOException
+        {
+            int b = super.read();
+            if (b != -1)
+            {
+                position++;
+            }
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int read = super.read(b, off, len);
+            if (read > 0)
+            {
+                position += read;
+            }
+            return read;
+        }
+
+        public long skip(long n) throws IOException
+        {
+            long skipped = super.skip(n);
+            position += skipped;
+            return skipped;
+        }
+
+        public boolean markSupported()
+        {
+            return false;
+        }
+
+        long getPosition()
+        {
+            return position;
+        }
+    }
+}
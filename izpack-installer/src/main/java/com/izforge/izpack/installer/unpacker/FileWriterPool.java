@@ -0,0 +1,262 @@
+/*
+ * IzPack - Copyright 2001-2010 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.util.OsVersion;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Writes the files of the packs on a pool of threads while the unpacker keeps decoding the pack
+ * stream. The content of a file is read into memory by the decoding thread, then created, written
+ * and time stamped by a writer thread.
+ * <p/>
+ * The number of pending files and of buffered bytes is bounded: once a bound is reached, the
+ * decoding thread waits for the oldest file to be written. Completions are always run on the
+ * decoding thread, in the order the files have been submitted. Hence installer listeners still see
+ * <code>AFTER_FILE</code> events in pack order and never concurrently, and <code>AFTER_FILE</code>
+ * of a file always follows its <code>BEFORE_FILE</code>. However, <code>BEFORE_FILE</code> events
+ * of the next files may be sent before the <code>AFTER_FILE</code> event of a file.
+ */
+public class FileWriterPool
+{
+    /**
+     * Name of the variable holding the number of writer threads. Files are written by the
+     * unpacking thread if it is not set or lower than 2.
+     */
+    public static final String THREADS_VARIABLE = "Unpacker.writerThreads";
+
+    /**
+     * Files larger than this are written by the unpacking thread.
+     */
+    public static final long MAX_BUFFERED_FILE_SIZE = 1024 * 1024;
+
+    private static final long MAX_PENDING_BYTES = 32 * 1024 * 1024;
+
+    private static final int PENDING_FILES_PER_THREAD = 64;
+
+    /**
+     * Called on the decoding thread once a file has been written.
+     */
+    public interface Completion
+    {
+        void fileWritten(File file, PackFile packFile) throws Exception;
+    }
+
+    private final ExecutorService executor;
+
+    private final int maxPendingFiles;
+
+    private final LinkedList<PendingFile> pending = new LinkedList<PendingFile>();
+
+    private final Set<File> pendingTargets = new HashSet<File>();
+
+    private long pendingBytes;
+
+    /**
+     * Creates a pool.
+     *
+     * @param threads the number of writer threads
+     */
+    public FileWriterPool(int threads)
+    {
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "IzPack file writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        maxPendingFiles = threads * PENDING_FILES_PER_THREAD;
+    }
+
+    /**
+     * Determines if a file can be written by the pool.
+     *
+     * @param packFile the file
+     * @return <tt>true</tt> if the file is small enough to be buffered and needs no unpacking
+     */
+    public boolean accepts(PackFile packFile)
+    {
+        return !packFile.isPack200Jar() && packFile.length() <= MAX_BUFFERED_FILE_SIZE;
+    }
+
+    /**
+     * Waits until a pending file is written, so that the target can be checked or replaced.
+     *
+     * @param file the target file
+     * @throws Exception if a file cannot be written or a completion fails
+     */
+    public void awaitTarget(File file) throws Exception
+    {
+        if (pendingTargets.contains(file))
+        {
+            flush();
+        }
+    }
+
+    /**
+     * Reads the content of a file and submits it to be written.
+     *
+     * @param file       the target file
+     * @param packFile   the file description
+     * @param in         the stream to read the content from
+     * @param completion called once the file has been written
+     * @throws Exception if the content cannot be read, or a pending file cannot be written
+     */
+    public void write(File file, PackFile packFile, InputStream in, Completion completion) throws Exception
+    {
+        awaitTarget(file);
+
+        byte[] content = new byte[(int) packFile.length()];
+        new DataInputStream(in).readFully(content);
+
+        Future<?> future = executor.submit(new WriteTask(file, packFile, content));
+        pending.add(new PendingFile(file, packFile, content.length, future, completion));
+        pendingTargets.add(file);
+        pendingBytes += content.length;
+
+        while (!pending.isEmpty() && (pending.size() > maxPendingFiles || pendingBytes > MAX_PENDING_BYTES
+                || pending.getFirst().future.isDone()))
+        {
+            completeFirst();
+        }
+    }
+
+    /**
+     * Waits for all pending files to be written, running their completions.
+     *
+     * @throws Exception if a file cannot be written or a completion fails
+     */
+    public void flush() throws Exception
+    {
+        while (!pending.isEmpty())
+        {
+            completeFirst();
+        }
+    }
+
+    /**
+     * Stops the writer threads. Pending files are not waited for.
+     */
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    private void completeFirst() throws Exception
+    {
+        PendingFile file = pending.removeFirst();
+        pendingTargets.remove(file.file);
+        pendingBytes -= file.length;
+        try
+        {
+            file.future.get();
+        }
+        catch (ExecutionException exception)
+        {
+            throw new IOException("Could not write " + file.file + ": " + exception.getCause().getMessage(),
+                    exception.getCause());
+        }
+        file.completion.fileWritten(file.file, file.packFile);
+    }
+
+    /**
+     * A file submitted to the pool.
+     */
+    private static class PendingFile
+    {
+        private final File file;
+
+        private final PackFile packFile;
+
+        private final long length;
+
+        private final Future<?> future;
+
+        private final Completion completion;
+
+        PendingFile(File file, PackFile packFile, long length, Future<?> future, Completion completion)
+        {
+            this.file = file;
+            this.packFile = packFile;
+            this.length = length;
+            this.future = future;
+            this.completion = completion;
+        }
+    }
+
+    /**
+     * Creates a file with its content and modification time.
+     */
+    private static class WriteTask implements Callable<Object>
+    {
+        private final File file;
+
+        private final PackFile packFile;
+
+        private final byte[] content;
+
+        WriteTask(File file, PackFile packFile, byte[] content)
+        {
+            this.file = file;
+            this.packFile = packFile;
+            this.content = content;
+        }
+
+        public Object call() throws IOException
+        {
+            FileOutputStream out = new FileOutputStream(file);
+            try
+            {
+                out.write(content);
+            }
+            finally
+            {
+                out.close();
+            }
+            if (packFile.lastModified() >= 0)
+            {
+                file.setLastModified(packFile.lastModified());
+            }
+            if (packFile.isExecutable() && OsVersion.IS_UNIX)
+            {
+                file.setExecutable(true, false);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * IzPack - Copyright 2001-2010 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.data.PackStreamFormat;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+
+/**
+ * Reads the files of a pack stream. The binary format written by the compiler is read by
+ * {@link BinaryPackStreamReader}; packs made of serialized objects are read by
+ * {@link SerializedPackStreamReader}.
+ */
+public abstract class PackStreamReader
+{
+    /**
+     * Buffer size used on top of the pack streams.
+     */
+    protected static final int BUFFER_SIZE = 32 * 1024;
+
+    /**
+     * Opens a reader on a pack stream, detecting its format.
+     *
+     * @param in the pack stream
+     * @return a reader positioned before the first file header
+     * @throws IOException if the stream header cannot be read
+     */
+    public static PackStreamReader open(InputStream in) throws IOException
+    {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        buffered.mark(4);
+        int magic;
+        try
+        {
+            magic = new DataInputStream(buffered).readInt();
+        }
+        finally
+        {
+            buffered.reset();
+        }
+        if (magic == PackStreamFormat.MAGIC)
+        {
+            return new BinaryPackStreamReader(buffered);
+        }
+        return new SerializedPackStreamReader(buffered);
+    }
+
+    /**
+     * Reads the number of files of the pack. Must be called before reading the first file header,
+     * but not before {@link #seekFileData(PackFile)}.
+     *
+     * @return the number of file headers in the stream
+     * @throws IOException for any I/O error
+     */
+    public abstract int readFileCount() throws IOException;
+
+    /**
+     * Reads the next file header. The content of the previous file is skipped if it has not been
+     * read.
+     *
+     * @return the file description
+     * @throws IOException            for any I/O error
+     * @throws ClassNotFoundException if a serialized object cannot be read
+     */
+    public abstract PackFile readPackFile() throws IOException, ClassNotFoundException;
+
+    /**
+     * Returns the content of the file read last. The stream must not be closed.
+     *
+     * @param packFile the file read last
+     * @return a stream returning the content of the file
+     * @throws IOException for any I/O error
+     */
+    public abstract InputStream getFileData(PackFile packFile) throws IOException;
+
+    /**
+     * Skips the content of the file read last.
+     *
+     * @param packFile the file read last
+     * @throws IOException for any I/O error
+     */
+    public abstract void skipFileData(PackFile packFile) throws IOException;
+
+    /**
+     * Positions this reader on the content a back reference refers to. This reader must have been
+     * opened on the pack the back reference points to, and no file header must have been read.
+     *
+     * @param packFile the back reference
+     * @return a stream returning the content of the referenced file
+     * @throws IOException for any I/O error
+     */
+    public abstract InputStream seekFileData(PackFile packFile) throws IOException;
+
+    /**
+     * Returns the stream of the parsable, executable and update check descriptions following the
+     * file headers.
+     *
+     * @return the object stream following the files
+     * @throws IOException for any I/O error
+     */
+    public abstract ObjectInputStream getMetadataStream() throws IOException;
+
+    /**
+     * Closes the pack stream.
+     *
+     * @throws IOException for any I/O error
+     */
+    public abstract void close() throws IOException;
+
+    /**
+     * Returns the length of the content stored for a file.
+     *
+     * @param packFile the file
+     * @return 4 for a pack200 jar or a shared file (the key of the entry holding the content),
+     *         the length of the file otherwise
+     */
+    protected static long getDataLength(PackFile packFile)
+    {
+        return (packFile.isPack200Jar() || packFile.isSharedData()) ? 4 : packFile.length();
+    }
+
+    /**
+     * Skips exactly the given number of bytes.
+     *
+     * @param in    the stream
+     * @param count the number of bytes to skip
+     * @throws IOException if the end of the stream is reached
+     */
+    protected static void skipFully(InputStream in, long count) throws IOException
+    {
+        while (count > 0)
+        {
+            long skipped = in.skip(count);
+            if (skipped <= 0)
+            {
+                if (in.read() == -1)
+                {
+                    throw new EOFException("Unexpected end of stream (installer corrupted?)");
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+}
@@ -21,15 +21,36 @@
 
 package com.izforge.izpack.installer.unpacker;
 
+import com.izforge.izpack.api.substitutor.SubstitutionType;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 import com.izforge.izpack.data.ParsableFile;
+import com.izforge.izpack.util.Debug;
 import com.izforge.izpack.util.OsConstraintHelper;
+import com.izforge.izpack.util.OsVersion;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * The script parser classe.
+ * <p/>
+ * A file is only rewritten if it contains the character starting a variable reference. Files
+ * may be parsed by several threads. Files up to {@link #MAP_THRESHOLD} are read into memory;
+ * larger files are read through a memory mapping, or streamed on Windows where a mapped file
+ * could not be replaced.
  *
  * @author Julien Ponge
  * @author Johannes Lehtinen
@@ -37,6 +58,21 @@ import java.util.Collection;
 public class ScriptParser
 {
     /**
+     * Name of the variable holding the number of parsing threads. Files are parsed by the
+     * unpacking thread if it is not set or lower than 2.
+     */
+    public static final String THREADS_VARIABLE = "ScriptParser.threads";
+
+    /**
+     * Files larger than this are memory mapped or streamed.
+     */
+    public static final long MAP_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Size of the chunks a streamed file is scanned in.
+     */
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
     /**
      * The files to parse.
      */
@@ -47,6 +83,16 @@ public class ScriptParser
      */
     private VariableSubstitutor vs;
 
+    /**
+     * The number of parsing threads.
+     */
+    private int threads;
+
+    /**
+     * Whether files larger than {@link #MAP_THRESHOLD} are mapped instead of streamed.
+     */
+    private boolean mapLargeFiles = !OsVersion.IS_WINDOWS;
+
     /**
      * Constructs a new parser. The parsable files specified must have pretranslated paths
      * (variables expanded and file separator characters converted if necessary).
@@ -55,9 +101,35 @@ public class ScriptParser
      * @param vs    the variable substitutor to use
      */
     public ScriptParser(Collection<ParsableFile> files, VariableSubstitutor vs)
+    {
+        this(files, vs, 1);
+    }
+
+    /**
+     * Constructs a new parser parsing the files on several threads. The parsable files specified
+     * must have pretranslated paths (variables expanded and file separator characters converted
+     * if necessary).
+     *
+     * @param files   the parsable files to process
+     * @param vs      the variable substitutor to use
+     * @param threads the number of parsing threads
+     */
+    public ScriptParser(Collection<ParsableFile> files, VariableSubstitutor vs, int threads)
     {
         this.files = files;
         this.vs = vs;
+        this.threads = threads;
+    }
+
+    /**
+     * Sets whether files larger than {@link #MAP_THRESHOLD} are mapped instead of streamed.
+     * Used by tests to stream files on any platform.
+     *
+     * @param mapLargeFiles <tt>false</tt> to stream large files
+     */
+    void setMapLargeFiles(boolean mapLargeFiles)
+    {
+        this.mapLargeFiles = mapLargeFiles;
     }
 
     /**
@@ -67,43 +139,280 @@ public class ScriptParser
      */
     public void parseFiles() throws Exception
     {
-        // Parses the files
+        List<ParsableFile> parsables = new ArrayList<ParsableFile>();
         for (ParsableFile pfile : files)
         {
-            // Create a temporary file for the parsed data
-            // (Use the same directory so that renaming works later)
+            // check whether the OS matches
+            if (OsConstraintHelper.oneMatchesCurrentSystem(pfile.osConstraints))
+            {
+                parsables.add(pfile);
+            }
+        }
 
-            // If interrupt is desired, return immediately.
-            if (Unpacker.isInterruptDesired())
+        if (threads < 2 || parsables.size() < 2)
+        {
+            for (ParsableFile pfile : parsables)
             {
-                return;
+                // If interrupt is desired, return immediately.
+                if (Unpacker.isInterruptDesired())
+                {
+                    return;
+                }
+                parseFile(pfile);
             }
+            return;
+        }
 
-            // check whether the OS matches
-            if (!OsConstraintHelper.oneMatchesCurrentSystem(pfile.osConstraints))
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, parsables.size()),
+                new ThreadFactory()
+                {
+                    public Thread newThread(Runnable runnable)
+                    {
+                        Thread thread = new Thread(runnable, "IzPack script parser");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        try
+        {
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for (final ParsableFile pfile : parsables)
             {
-                continue;
+                results.add(executor.submit(new Callable<Object>()
+                {
+                    public Object call() throws Exception
+                    {
+                        if (!Unpacker.isInterruptDesired())
+                        {
+                            parseFile(pfile);
+                        }
+                        return null;
+                    }
+                }));
             }
+            for (Future<Object> result : results)
+            {
+                try
+                {
+                    result.get();
+                }
+                catch (ExecutionException exception)
+                {
+                    Throwable cause = exception.getCause();
+                    if (cause instanceof Exception)
+                    {
+                        throw (Exception) cause;
+                    }
+                    throw exception;
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
 
-            File file = new File(pfile.path);
-            File parsedFile = File.createTempFile("izpp", null, file.getParentFile());
+    /**
+     * Parses a file, unless it contains no variable reference.
+     *
+     * @param pfile the file to parse
+     * @throws Exception if the file cannot be parsed
+     */
+    private void parseFile(ParsableFile pfile) throws Exception
+    {
+        File file = new File(pfile.path);
+        SubstitutionType type = (pfile.type != null) ? pfile.type : SubstitutionType.getDefault();
+        FileInputStream inFile = new FileInputStream(file);
+        ReadableByteChannel in;
+        try
+        {
+            FileChannel channel = inFile.getChannel();
+            long size = channel.size();
+            Byte marker = getMarker(type, pfile.encoding);
+            if (size <= MAP_THRESHOLD || (mapLargeFiles && size <= Integer.MAX_VALUE))
+            {
+                ByteBuffer data = read(channel, (int) size);
+                if (marker != null && !contains(data, marker))
+                {
+                    return;
+                }
+                in = new ByteBufferChannel(data);
+            }
+            else
+            {
+                // scanned in chunks and streamed, the file is never held in memory
+                if (marker != null && !contains(channel, marker))
+                {
+                    return;
+                }
+                channel.position(0);
+                in = channel;
+            }
 
-            // Parses the file
-            // (Use buffering because substitutor processes byte at a time)
-            FileInputStream inFile = new FileInputStream(file);
-            BufferedInputStream in = new BufferedInputStream(inFile, 5120);
+            // Create a temporary file for the parsed data
+            // (Use the same directory so that renaming works later)
+            File parsedFile = File.createTempFile("izpp", null, file.getParentFile());
             FileOutputStream outFile = new FileOutputStream(parsedFile);
-            BufferedOutputStream out = new BufferedOutputStream(outFile, 5120);
-            vs.substitute(in, out, pfile.type, pfile.encoding);
-            in.close();
-            out.close();
+            try
+            {
+                vs.substitute(in, outFile.getChannel(), type, pfile.encoding);
+            }
+            finally
+            {
+                outFile.close();
+            }
+            inFile.close();
 
-            // Replace the original file with the parsed one
+            // Replace the original file with the parsed one, keeping its execute permission
+            boolean executable = OsVersion.IS_UNIX && file.canExecute();
             file.delete();
             if (!parsedFile.renameTo(file))
             {
                 throw new IOException("Could not rename file " + parsedFile + " to " + file);
             }
+            if (executable && !file.setExecutable(true, false))
+            {
+                Debug.log("Could not make " + file + " executable");
+            }
+        }
+        finally
+        {
+            inFile.close();
+        }
+    }
+
+    /**
+     * Reads a file into memory. Files larger than {@link #MAP_THRESHOLD} are mapped.
+     */
+    private static ByteBuffer read(FileChannel channel, int size) throws IOException
+    {
+        if (size > MAP_THRESHOLD)
+        {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        ByteBuffer data = ByteBuffer.allocate(size);
+        while (data.hasRemaining())
+        {
+            if (channel.read(data) == -1)
+            {
+                break;
+            }
+        }
+        data.flip();
+        return data;
+    }
+
+    /**
+     * Returns the byte starting a variable reference in the file encoding, or <tt>null</tt> if
+     * the encoding does not encode it as a single ASCII byte.
+     */
+    private static Byte getMarker(SubstitutionType type, String encoding)
+    {
+        char marker;
+        switch (type)
+        {
+            case TYPE_SHELL:
+                marker = '%';
+                break;
+            case TYPE_AT:
+            case TYPE_ANT:
+                marker = '@';
+                break;
+            default:
+                marker = '$';
+        }
+        if (encoding == null)
+        {
+            switch (type)
+            {
+                case TYPE_JAVA_PROPERTIES:
+                    encoding = "ISO-8859-1";
+                    break;
+                case TYPE_XML:
+                    encoding = "UTF-8";
+                    break;
+            }
+        }
+        try
+        {
+            Charset charset = (encoding != null) ? Charset.forName(encoding) : Charset.defaultCharset();
+            ByteBuffer encoded = charset.newEncoder().encode(CharBuffer.wrap(new char[]{marker}));
+            if (encoded.remaining() == 1 && encoded.get(0) == (byte) marker)
+            {
+                return (byte) marker;
+            }
+        }
+        catch (Exception exception)
+        {
+            // parse the file, the substitutor reports unsupported encodings
+        }
+        return null;
+    }
+
+    private static boolean contains(ByteBuffer data, byte marker)
+    {
+        for (int i = data.position(); i < data.limit(); i++)
+        {
+            if (data.get(i) == marker)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(FileChannel channel, byte marker) throws IOException
+    {
+        ByteBuffer chunk = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        while (channel.read(chunk) != -1)
+        {
+            chunk.flip();
+            if (contains(chunk, marker))
+            {
+                return true;
+            }
+            chunk.clear();
+        }
+        return false;
+    }
+
+    /**
+     * Reads a buffer as a channel.
+     */
+    private static class ByteBufferChannel implements ReadableByteChannel
+    {
+        private final ByteBuffer data;
+
+        private boolean open = true;
+
+        ByteBufferChannel(ByteBuffer data)
+        {
+            this.data = data;
+        }
+
+        public int read(ByteBuffer dst)
+        {
+            if (!data.hasRemaining())
+            {
+                return -1;
+            }
+            int count = Math.min(dst.remaining(), data.remaining());
+            ByteBuffer slice = data.slice();
+            slice.limit(count);
+            dst.put(slice);
+            data.position(data.position() + count);
+            return count;
+        }
+
+        public boolean isOpen()
+        {
+            return open;
+        }
+
+        public void close()
+        {
+            open = false;
         }
     }
 }
@@ -0,0 +1,87 @@
+/*
+ * IzPack - Copyright 2001-2010 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import com.izforge.izpack.api.data.PackFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+
+/**
+ * Reads packs written as a sequence of serialized objects, the format used by former versions of
+ * the compiler.
+ */
+public class SerializedPackStreamReader extends PackStreamReader
+{
+    private final InputStream in;
+
+    private ObjectInputStream objIn;
+
+    /**
+     * Creates a reader on a pack stream.
+     *
+     * @param in the pack stream
+     * @throws IOException if the stream header cannot be read
+     */
+    public SerializedPackStreamReader(InputStream in) throws IOException
+    {
+        this.in = in;
+        this.objIn = new ObjectInputStream(in);
+    }
+
+    public int readFileCount() throws IOException
+    {
+        return objIn.readInt();
+    }
+
+    public PackFile readPackFile() throws IOException, ClassNotFoundException
+    {
+        return (PackFile) objIn.readObject();
+    }
+
+    public InputStream getFileData(PackFile packFile)
+    {
+        return objIn;
+    }
+
+    public void skipFileData(PackFile packFile) throws IOException
+    {
+        skipFully(objIn, getDataLength(packFile));
+    }
+
+    public InputStream seekFileData(PackFile packFile) throws IOException
+    {
+        // skip on underlaying stream (for some reason not possible on ObjectStream)
+        // but the stream header is already read (== 4 bytes)
+        skipFully(in, packFile.offsetInPreviousPack - 4);
+        return objIn;
+    }
+
+    public ObjectInputStream getMetadataStream()
+    {
+        return objIn;
+    }
+
+    public void close() throws IOException
+    {
+        objIn.close();
+    }
+}
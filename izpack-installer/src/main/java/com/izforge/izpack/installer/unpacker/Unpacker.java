@@ -75,12 +75,14 @@ public class Unpacker extends UnpackerBase
     public void run()
     {
         addToInstances();
+        FileWriterPool writerPool = null;
         try
         {
             //
             // Initialisations
             FileOutputStream out;
             FileQueue fq = null;
+            writerPool = createWriterPool();
             ArrayList<ParsableFile> parsables = new ArrayList<ParsableFile>();
             ArrayList<ExecutableFile> executables = new ArrayList<ExecutableFile>();
             ArrayList<UpdateCheck> updatechecks = new ArrayList<UpdateCheck>();
@@ -88,7 +90,7 @@ public class Unpacker extends UnpackerBase
             int npacks = packs.size();
             handler.startAction("Unpacking", npacks);
             // Custom action listener stuff --- load listeners ----
-            List<InstallerListener> customActions = idata.getInstallerListener();
+            final List<InstallerListener> customActions = idata.getInstallerListener();
             // Custom action listener stuff --- beforePacks ----
             informListeners(customActions, InstallerListener.BEFORE_PACKS, idata, npacks, handler);
             packs = idata.getSelectedPacks();
@@ -121,10 +123,10 @@ public class Unpacker extends UnpackerBase
                 // Custom action listener stuff --- beforePack ----
                 informListeners(customActions, InstallerListener.BEFORE_PACK, packs.get(i),
                         npacks, handler);
-                ObjectInputStream objIn = new ObjectInputStream(getPackAsStream(p.id, p.uninstall));
+                PackStreamReader packReader = PackStreamReader.open(getPackAsStream(p.id, p.uninstall));
 
                 // We unpack the files
-                int nfiles = objIn.readInt();
+                int nfiles = packReader.readFileCount();
 
                 // We get the internationalized name of the pack
                 final Pack pack = (packs.get(i));
@@ -149,7 +151,7 @@ public class Unpacker extends UnpackerBase
                 for (int j = 0; j < nfiles; j++)
                 {
                     // We read the header
-                    PackFile pf = (PackFile) objIn.readObject();
+                    PackFile pf = packReader.readPackFile();
                     // TODO: reaction if condition can not be checked
                     if (pf.hasCondition() && (rules != null))
                     {
@@ -158,7 +160,7 @@ public class Unpacker extends UnpackerBase
                             if (!pf.isBackReference())
                             {
                                 // skip, condition is not fulfilled
-                                objIn.skip(pf.length());
+                                packReader.skipFileData(pf);
                             }
                             continue;
                         }
@@ -188,7 +190,17 @@ public class Unpacker extends UnpackerBase
                         informListeners(customActions, InstallerListener.BEFORE_FILE, pathFile, pf,
                                 null);
 
-                        handler.progress(j, path);
+                        // files written by the pool report their progress once written
+                        boolean writeAsync = writerPool != null && !pack.loose && writerPool.accepts(pf)
+                                && !blockableForCurrentOs(pf);
+                        if (writerPool != null)
+                        {
+                            writerPool.awaitTarget(pathFile);
+                        }
+                        if (!writeAsync)
+                        {
+                            handler.progress(j, path);
+                        }
 
                         // if this file exists and should not be overwritten,
                         // check
@@ -199,14 +211,7 @@ public class Unpacker extends UnpackerBase
                             {
                                 if (!pf.isBackReference() && !(packs.get(i)).loose)
                                 {
-                                    if (pf.isPack200Jar())
-                                    {
-                                        objIn.skip(Integer.SIZE / 8);
-                                    }
-                                    else
-                                    {
-                                        objIn.skip(pf.length());
-                                    }
+                                    packReader.skipFileData(pf);
                                 }
                                 continue;
                             }
@@ -216,18 +221,12 @@ public class Unpacker extends UnpackerBase
                         handleOverrideRename(pf, pathFile);
 
                         // We copy the file
-                        InputStream pis = objIn;
+                        InputStream pis;
+                        PackStreamReader previousPackReader = null;
                         if (pf.isBackReference())
                         {
-                            InputStream is = getPackAsStream(pf.previousPackId, pack.uninstall);
-                            pis = new ObjectInputStream(is);
-                            // must wrap for blockdata use by objectstream
-                            // (otherwise strange result)
-                            // skip on underlaying stream (for some reason not
-                            // possible on ObjectStream)
-                            is.skip(pf.offsetInPreviousPack - 4);
-                            // but the stream header is now already read (== 4
-                            // bytes)
+                            previousPackReader = PackStreamReader.open(getPackAsStream(pf.previousPackId, pack.uninstall));
+                            pis = previousPackReader.seekFileData(pf);
                         }
                         else if ((packs.get(i)).loose)
                         {
@@ -265,6 +264,47 @@ public class Unpacker extends UnpackerBase
                                 continue;
                             }
                         }
+                        else
+                        {
+                            pis = packReader.getFileData(pf);
+                        }
+                        boolean closeInput = previousPackReader == null && pack.loose;
+                        if (pf.isSharedData())
+                        {
+                            // the content is stored once in its own entry, read it from there
+                            int key = new DataInputStream(pis).readInt();
+                            pis = decodePackStream(resourceManager.getInputStream("/packs/shared-" + key));
+                            closeInput = true;
+                        }
+
+                        if (writeAsync)
+                        {
+                            if (performInterrupted())
+                            { // Interrupt was initiated; perform it.
+                                closePackFileInput(pis, closeInput, previousPackReader);
+                                writerPool.flush();
+                                return;
+                            }
+                            final int fileNumber = j;
+                            final String filePath = path;
+                            writerPool.write(pathFile, pf, pis, new FileWriterPool.Completion()
+                            {
+                                public void fileWritten(File file, PackFile packFile) throws Exception
+                                {
+                                    handler.progress(fileNumber, filePath);
+                                    // Custom action listener stuff --- afterFile ----
+                                    informListeners(customActions, InstallerListener.AFTER_FILE, file, packFile,
+                                            null);
+                                }
+                            });
+                            closePackFileInput(pis, closeInput, previousPackReader);
+                            continue;
+                        }
+                        if (writerPool != null)
+                        {
+                            // keep the order of the completions of the files written before
+                            writerPool.flush();
+                        }
 
                         File tmpFile = null;
                         if (blockableForCurrentOs(pf))
@@ -282,7 +322,7 @@ public class Unpacker extends UnpackerBase
 
                         if (pf.isPack200Jar())
                         {
-                            int key = objIn.readInt();
+                            int key = new DataInputStream(pis).readInt();
                             InputStream pack200Input = resourceManager.getInputStream("/packs/pack200-" + key);
                             Pack200.Unpacker unpacker = getPack200Unpacker();
                             java.util.jar.JarOutputStream jarOut = new java.util.jar.JarOutputStream(out);
@@ -298,10 +338,7 @@ public class Unpacker extends UnpackerBase
                                 if (performInterrupted())
                                 { // Interrupt was initiated; perform it.
                                     out.close();
-                                    if (pis != objIn)
-                                    {
-                                        pis.close();
-                                    }
+                                    closePackFileInput(pis, closeInput, previousPackReader);
                                     return;
                                 }
                                 bytesCopied = writeBuffer(pf, buffer, out, pis, bytesCopied);
@@ -309,12 +346,10 @@ public class Unpacker extends UnpackerBase
                             out.close();
                         }
 
-                        if (pis != objIn)
-                        {
-                            pis.close();
-                        }
+                        closePackFileInput(pis, closeInput, previousPackReader);
 
                         handleTimeStamp( pf, pathFile, tmpFile);
+                        handlePermissions(pf, pathFile, tmpFile);
 
                         fq = handleBlockable(pf, pathFile, tmpFile, fq, customActions);
                     }
@@ -322,12 +357,18 @@ public class Unpacker extends UnpackerBase
                     {
                         if (!pf.isBackReference())
                         {
-                            objIn.skip(pf.length());
+                            packReader.skipFileData(pf);
                         }
                     }
                 }
 
+                if (writerPool != null)
+                {
+                    writerPool.flush();
+                }
+
                 // Load information about parsable files
+                ObjectInputStream objIn = packReader.getMetadataStream();
                 int numParsables = objIn.readInt();
                 for (int k = 0; k < numParsables; k++)
                 {
@@ -359,7 +400,7 @@ public class Unpacker extends UnpackerBase
                     updatechecks.add(updateCheck);
                 }
 
-                objIn.close();
+                packReader.close();
 
                 if (performInterrupted())
                 { // Interrupt was initiated; perform it.
@@ -380,7 +421,8 @@ public class Unpacker extends UnpackerBase
             }
 
             // We use the scripts parser
-            ScriptParser parser = new ScriptParser(parsables, variableSubstitutor);
+            ScriptParser parser = new ScriptParser(parsables, variableSubstitutor,
+                    getThreads(ScriptParser.THREADS_VARIABLE));
             parser.parseFiles();
             if (performInterrupted())
             { // Interrupt was initiated; perform it.
@@ -444,10 +486,48 @@ public class Unpacker extends UnpackerBase
         }
         finally
         {
+            if (writerPool != null)
+            {
+                writerPool.shutdown();
+            }
             removeFromInstances();
         }
     }
 
+    /**
+     * Creates the pool writing the files if more than one writer thread is configured with the
+     * {@link FileWriterPool#THREADS_VARIABLE} variable.
+     *
+     * @return the pool, or <tt>null</tt> if files are written by the unpacking thread
+     */
+    private FileWriterPool createWriterPool()
+    {
+        int threads = getThreads(FileWriterPool.THREADS_VARIABLE);
+        return (threads > 1) ? new FileWriterPool(threads) : null;
+    }
+
+    /**
+     * Closes the stream a file has been copied from, unless it is the stream of the pack being
+     * unpacked.
+     *
+     * @param pis                the stream the file has been copied from
+     * @param closeInput         whether the stream has been opened for the file only
+     * @param previousPackReader the reader of the pack a back reference points to, or <tt>null</tt>
+     * @throws IOException for any I/O error
+     */
+    private void closePackFileInput(InputStream pis, boolean closeInput, PackStreamReader previousPackReader)
+            throws IOException
+    {
+        if (previousPackReader != null)
+        {
+            previousPackReader.close();
+        }
+        else if (closeInput)
+        {
+            pis.close();
+        }
+    }
+
     private Pack200.Unpacker getPack200Unpacker()
     {
         if (unpacker == null)
@@ -518,6 +598,19 @@ public class Unpacker extends UnpackerBase
                 throw new InstallerException(url.toString() + " not available", new FileNotFoundException(url.toString()));
             }
         }
+        return decodePackStream(in);
+    }
+
+    /**
+     * Decodes a stream with the pack decoder, if the packs are not stored with the standard
+     * compression. Packs and shared contents are encoded the same way.
+     *
+     * @param in the stream to decode, may be <tt>null</tt>
+     * @return the decoding stream, or the stream itself if there is no pack decoder
+     * @throws Exception if the decoder cannot be created
+     */
+    private InputStream decodePackStream(InputStream in) throws Exception
+    {
         if (in != null && idata.getInfo().getPackDecoderClassName() != null)
         {
             Class<Object> decoder = (Class<Object>) Class.forName(idata.getInfo().getPackDecoderClassName());
@@ -31,8 +31,18 @@ import java.io.ObjectOutputStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.TreeSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import com.izforge.izpack.api.data.AutomatedInstallData;
 import com.izforge.izpack.api.data.Blockable;
@@ -121,6 +131,16 @@ public abstract class UnpackerBase implements IUnpacker, IDiscardInterruptable
 
     public static final String INTERRUPTED = "interruppted";
 
+    /**
+     * The variable giving the number of threads scanning and deleting the files of the update checks
+     */
+    public static final String UPDATE_CHECK_THREADS_VARIABLE = "UpdateCheck.threads";
+
+    /**
+     * The maximum number of undeleted files listed in the update check warning
+     */
+    private static final int MAX_REPORTED_FILES = 20;
+
     protected RulesEngine rules;
 
     protected ResourceManager resourceManager;
@@ -468,12 +488,23 @@ public abstract class UnpackerBase implements IUnpacker, IDiscardInterruptable
 
     public abstract void run();
 
-    protected void performUpdateChecks(ArrayList<UpdateCheck> updatechecks)
+    /**
+     * Deletes the files and directories matched by the update checks which were not installed.
+     * Files are deleted directory by directory, on {@link #UPDATE_CHECK_THREADS_VARIABLE} threads;
+     * directories are only deleted if they are empty. Files and empty directories which cannot be
+     * deleted are reported to the handler.
+     *
+     * @param updatechecks the update checks
+     * @return the files and empty directories which could not be deleted
+     */
+    protected List<File> performUpdateChecks(ArrayList<UpdateCheck> updatechecks)
     {
+        List<File> undeleted = new ArrayList<File>();
         if (updatechecks != null && updatechecks.size() > 0)
         {
+            int threads = getThreads(UPDATE_CHECK_THREADS_VARIABLE);
             FileSet fileset = new FileSet();
-            ArrayList<File> files_to_delete = new ArrayList<File>();
+            Map<File, List<File>> files_to_delete = new LinkedHashMap<File, List<File>>();
             ArrayList<File> dirs_to_delete = new ArrayList<File>();
 
             try
@@ -498,12 +529,13 @@ public abstract class UnpackerBase implements IUnpacker, IDiscardInterruptable
                         }
                     }
                 }
+                fileset.setThreads(threads);
+                // the scanner is returned scanned
                 DirectoryScanner ds = fileset.getDirectoryScanner();
-                ds.scan();
                 String[] srcFiles = ds.getIncludedFiles();
                 String[] srcDirs = ds.getIncludedDirectories();
 
-                TreeSet<File> installed_files = new TreeSet<File>();
+                Set<String> installed_files = new HashSet<String>();
 
                 for (String fname : this.udata.getInstalledFilesList())
                 {
@@ -514,20 +546,23 @@ public abstract class UnpackerBase implements IUnpacker, IDiscardInterruptable
                         f = new File(this.absolute_installpath, fname);
                     }
 
-                    installed_files.add(f);
+                    installed_files.add(getPathKey(f));
                 }
                 for (String srcFile : srcFiles)
                 {
                     File newFile = new File(ds.getBasedir(), srcFile);
 
                     // skip files we just installed
-                    if (installed_files.contains(newFile))
+                    if (!installed_files.contains(getPathKey(newFile)))
                     {
-                        continue;
-                    }
-                    else
-                    {
-                        files_to_delete.add(newFile);
+                        File dir = newFile.getParentFile();
+                        List<File> files = files_to_delete.get(dir);
+                        if (files == null)
+                        {
+                            files = new ArrayList<File>();
+                            files_to_delete.put(dir, files);
+                        }
+                        files.add(newFile);
                     }
                 }
                 for (String srcDir : srcDirs)
@@ -535,11 +570,7 @@ public abstract class UnpackerBase implements IUnpacker, IDiscardInterruptable
                     File newDir = new File(ds.getBasedir(), srcDir);
 
                     // skip directories we just installed
-                    if (installed_files.contains(newDir))
-                    {
-                        continue;
-                    }
-                    else
+                    if (!installed_files.contains(getPathKey(newDir)))
                     {
                         dirs_to_delete.add(newDir);
                     }
@@ -550,16 +581,176 @@ public abstract class UnpackerBase implements IUnpacker, IDiscardInterruptable
                 this.handler.emitError("Error while performing update checks", e.getMessage());
             }
 
-            for (File f : files_to_delete)
-            {
-                f.delete();
-            }
+            undeleted.addAll(deleteFiles(files_to_delete, threads));
             for (File d : dirs_to_delete)
             {
                 // Only empty directories will be deleted
-                d.delete();
+                if (!d.delete() && d.isDirectory())
+                {
+                    String[] children = d.list();
+                    if (children != null && children.length == 0)
+                    {
+                        undeleted.add(d);
+                    }
+                }
+            }
+
+            if (!undeleted.isEmpty())
+            {
+                StringBuilder message = new StringBuilder("The following obsolete files could not be deleted:");
+                for (int i = 0; i < undeleted.size(); i++)
+                {
+                    Debug.log("Update check: could not delete " + undeleted.get(i));
+                    if (i < MAX_REPORTED_FILES)
+                    {
+                        message.append('\n').append(undeleted.get(i).getPath());
+                    }
+                }
+                if (undeleted.size() > MAX_REPORTED_FILES)
+                {
+                    message.append("\n... (").append(undeleted.size() - MAX_REPORTED_FILES).append(" more)");
+                }
+                this.handler.emitWarning("Update check", message.toString());
+            }
+        }
+        return undeleted;
+    }
+
+    /**
+     * Deletes files, directory by directory.
+     *
+     * @param files   the files to delete by directory
+     * @param threads the number of deleting threads
+     * @return the files which could not be deleted
+     */
+    private List<File> deleteFiles(Map<File, List<File>> files, int threads)
+    {
+        List<File> undeleted = new ArrayList<File>();
+        if (threads < 2 || files.size() < 2)
+        {
+            for (List<File> dirFiles : files.values())
+            {
+                deleteFiles(dirFiles, undeleted);
+            }
+            return undeleted;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, files.size()),
+                new ThreadFactory()
+                {
+                    public Thread newThread(Runnable runnable)
+                    {
+                        Thread thread = new Thread(runnable, "IzPack update check");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        try
+        {
+            List<List<File>> dirs = new ArrayList<List<File>>(files.values());
+            List<Future<List<File>>> results = new ArrayList<Future<List<File>>>();
+            for (final List<File> dirFiles : dirs)
+            {
+                results.add(executor.submit(new Callable<List<File>>()
+                {
+                    public List<File> call()
+                    {
+                        List<File> result = new ArrayList<File>();
+                        deleteFiles(dirFiles, result);
+                        return result;
+                    }
+                }));
+            }
+            boolean interrupted = false;
+            for (int i = 0; i < results.size(); i++)
+            {
+                if (!interrupted)
+                {
+                    try
+                    {
+                        undeleted.addAll(results.get(i).get());
+                        continue;
+                    }
+                    catch (InterruptedException exception)
+                    {
+                        Thread.currentThread().interrupt();
+                        interrupted = true;
+                    }
+                    catch (ExecutionException exception)
+                    {
+                        Debug.log(exception.getCause());
+                    }
+                }
+                // the deletion failed or was not waited for: report the files which are left
+                addExisting(dirs.get(i), undeleted);
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        return undeleted;
+    }
+
+    private static void addExisting(List<File> files, List<File> result)
+    {
+        for (File f : files)
+        {
+            if (f.exists())
+            {
+                result.add(f);
+            }
+        }
+    }
+
+    private static void deleteFiles(List<File> files, List<File> undeleted)
+    {
+        for (File f : files)
+        {
+            try
+            {
+                if (!f.delete() && f.exists())
+                {
+                    undeleted.add(f);
+                }
+            }
+            catch (SecurityException exception)
+            {
+                undeleted.add(f);
+            }
+        }
+    }
+
+    /**
+     * Returns the key of a file in a set of paths. Paths are compared as {@link File#compareTo}
+     * does: ignoring case on Windows.
+     */
+    private static String getPathKey(File file)
+    {
+        return OsVersion.IS_WINDOWS ? file.getPath().toLowerCase(Locale.ENGLISH) : file.getPath();
+    }
+
+    /**
+     * Returns a number of threads set by a variable.
+     *
+     * @param variable the name of the variable
+     * @return the number of threads, 1 if the variable is not set or invalid
+     */
+    protected int getThreads(String variable)
+    {
+        String threads = idata.getVariable(variable);
+        if (threads != null)
+        {
+            try
+            {
+                return Math.max(1, Integer.parseInt(threads.trim()));
+            }
+            catch (NumberFormatException exception)
+            {
+                Debug.log("Invalid " + variable + " value: " + threads);
             }
         }
+        return 1;
     }
 
     /**
@@ -796,6 +987,21 @@ public abstract class UnpackerBase implements IUnpacker, IDiscardInterruptable
         }
     }
 
+    /**
+     * Makes a file executable on Unix systems if its source file was executable.
+     */
+    protected void handlePermissions(PackFile pf, File file, File tmpFile)
+    {
+        if (pf.isExecutable() && OsVersion.IS_UNIX)
+        {
+            File target = (tmpFile != null) ? tmpFile : file;
+            if (!target.setExecutable(true, false))
+            {
+                Debug.log("Could not make " + target + " executable");
+            }
+        }
+    }
+
     protected FileQueue handleBlockable(PackFile pf, File file, File tmpFile, FileQueue fq,
             List<InstallerListener> customActions)
     throws Exception
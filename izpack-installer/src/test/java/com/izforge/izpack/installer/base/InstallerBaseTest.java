@@ -0,0 +1,201 @@
+package com.izforge.izpack.installer.base;
+
+import com.izforge.izpack.api.data.AutomatedInstallData;
+import com.izforge.izpack.api.data.DynamicVariable;
+import com.izforge.izpack.api.substitutor.VariableSubstitutor;
+import com.izforge.izpack.core.data.DynamicVariableImpl;
+import com.izforge.izpack.core.rules.RulesEngineImpl;
+import com.izforge.izpack.core.rules.process.VariableCondition;
+import com.izforge.izpack.core.substitutor.VariableSubstitutorImpl;
+import com.izforge.izpack.core.variable.PlainValue;
+import com.izforge.izpack.core.variable.ValueImpl;
+import com.izforge.izpack.installer.data.InstallData;
+import org.hamcrest.core.Is;
+import org.hamcrest.core.IsNull;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Test for the refresh of the dynamic variables
+ */
+public class InstallerBaseTest
+{
+    private AutomatedInstallData installData;
+
+    private Map<String, List<DynamicVariable>> dynamicvariables;
+
+    @Before
+    public void setUp()
+    {
+        installData = new InstallData(new Properties(), null);
+        dynamicvariables = new LinkedHashMap<String, List<DynamicVariable>>();
+        installData.setDynamicvariables(dynamicvariables);
+        add("d", new PlainValue("${b}${c}"));
+        add("a", new PlainValue("x"));
+        add("b", new PlainValue("${a}y"));
+        add("c", new PlainValue("z"));
+    }
+
+    @Test
+    public void refreshLevels()
+    {
+        List<List<String>> levels = InstallerBase.getRefreshLevels(dynamicvariables, null);
+        assertThat(levels, Is.is(levels("a c", "b", "d")));
+    }
+
+    @Test
+    public void conditionReferencesAreRefreshedBefore() throws Exception
+    {
+        addConditional("e", new PlainValue("w"), "b", "xy");
+        List<List<String>> levels = InstallerBase.getRefreshLevels(dynamicvariables, installData.getRules());
+        assertThat(levels, Is.is(levels("a c", "b", "d e")));
+
+        installData.setVariable(InstallerBase.DYNAMIC_VARIABLES_THREADS_VARIABLE, "4");
+        InstallerBase.refreshDynamicVariables(installData, getSubstitutor());
+        assertThat(installData.getVariable("e"), Is.is("w"));
+    }
+
+    @Test
+    public void refreshSequentially() throws Exception
+    {
+        InstallerBase.refreshDynamicVariables(installData, getSubstitutor());
+        assertThat(installData.getVariable("d"), Is.is("xyz"));
+    }
+
+    @Test
+    public void refreshConcurrently() throws Exception
+    {
+        installData.setVariable(InstallerBase.DYNAMIC_VARIABLES_THREADS_VARIABLE, "4");
+        InstallerBase.refreshDynamicVariables(installData, getSubstitutor());
+        assertThat(installData.getVariable("d"), Is.is("xyz"));
+    }
+
+    @Test
+    public void timedOutVariableIsUnchanged() throws Exception
+    {
+        add("slow", new SleepingValue());
+        installData.setVariable(InstallerBase.DYNAMIC_VARIABLES_TIMEOUT_VARIABLE, "1");
+        InstallerBase.refreshDynamicVariables(installData, getSubstitutor());
+        assertThat(installData.getVariable("slow"), IsNull.nullValue());
+        assertThat(installData.getVariable("d"), Is.is("xyz"));
+    }
+
+    @Test(timeout = 30000)
+    public void evaluationIgnoringCancellationDoesNotBlockTheOthers() throws Exception
+    {
+        // a single worker, kept busy by the evaluation ignoring its cancellation
+        dynamicvariables.clear();
+        add("stuck", new UninterruptibleValue());
+        add("a", new PlainValue("x"));
+        add("b", new PlainValue("${a}y"));
+        installData.setVariable(InstallerBase.DYNAMIC_VARIABLES_TIMEOUT_VARIABLE, "1");
+        InstallerBase.refreshDynamicVariables(installData, getSubstitutor());
+        assertThat(installData.getVariable("stuck"), IsNull.nullValue());
+        assertThat(installData.getVariable("b"), IsNull.nullValue());
+    }
+
+    /**
+     * Returns refresh levels, each given by the names of its variables separated by spaces.
+     */
+    private static List<List<String>> levels(String... levels)
+    {
+        List<List<String>> result = new ArrayList<List<String>>();
+        for (String level : levels)
+        {
+            result.add(Arrays.asList(level.split(" ")));
+        }
+        return result;
+    }
+
+    private VariableSubstitutor getSubstitutor()
+    {
+        return new VariableSubstitutorImpl(installData.getVariables());
+    }
+
+    private void add(String name, ValueImpl value)
+    {
+        DynamicVariableImpl dynvar = new DynamicVariableImpl();
+        dynvar.setName(name);
+        dynvar.setValue(value);
+        dynamicvariables.put(name, Arrays.<DynamicVariable>asList(dynvar));
+    }
+
+    private void addConditional(String name, ValueImpl value, String variable, String variableValue)
+    {
+        VariableCondition condition = new VariableCondition();
+        condition.setId(name + ".condition");
+        condition.setVariablename(variable);
+        condition.setValue(variableValue);
+        RulesEngineImpl rules = new RulesEngineImpl(installData, null, null);
+        rules.addCondition(condition);
+        installData.setRules(rules);
+
+        DynamicVariableImpl dynvar = new DynamicVariableImpl();
+        dynvar.setName(name);
+        dynvar.setValue(value);
+        dynvar.setConditionid(condition.getId());
+        dynamicvariables.put(name, Arrays.<DynamicVariable>asList(dynvar));
+    }
+
+    private static class SleepingValue extends ValueImpl
+    {
+        @Override
+        public void validate()
+        {
+        }
+
+        @Override
+        public String resolve() throws Exception
+        {
+            Thread.sleep(10000);
+            return "slow";
+        }
+
+        @Override
+        public String resolve(VariableSubstitutor... substitutors) throws Exception
+        {
+            return resolve();
+        }
+    }
+
+    private static class UninterruptibleValue extends ValueImpl
+    {
+        @Override
+        public void validate()
+        {
+        }
+
+        @Override
+        public String resolve()
+        {
+            long end = System.currentTimeMillis() + 5000;
+            while (System.currentTimeMillis() < end)
+            {
+                try
+                {
+                    Thread.sleep(100);
+                }
+                catch (InterruptedException ignore)
+                {
+                    // like blocking I/O, ignore the cancellation
+                }
+            }
+            return "stuck";
+        }
+
+        @Override
+        public String resolve(VariableSubstitutor... substitutors)
+        {
+            return resolve();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.izforge.izpack.installer.unpacker;
+
+import com.izforge.izpack.api.data.OverrideType;
+import com.izforge.izpack.api.data.PackFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class FileWriterPoolTest
+{
+    private File dir;
+
+    private FileWriterPool pool;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        dir = File.createTempFile("izpack-writer", "");
+        dir.delete();
+        dir.mkdirs();
+        pool = new FileWriterPool(4);
+    }
+
+    @After
+    public void tearDown()
+    {
+        pool.shutdown();
+        for (File file : dir.listFiles())
+        {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void filesAreWrittenAndCompletedInOrder() throws Exception
+    {
+        final List<String> completed = new ArrayList<String>();
+        FileWriterPool.Completion completion = new FileWriterPool.Completion()
+        {
+            public void fileWritten(File file, PackFile packFile) throws Exception
+            {
+                assertThat(file.exists(), is(true));
+                completed.add(file.getName());
+            }
+        };
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 500; i++)
+        {
+            String name = "file" + i + ".txt";
+            expected.add(name);
+            String content = "content of " + name;
+            pool.write(new File(dir, name), createPackFile(name, content.length()),
+                    new ByteArrayInputStream(content.getBytes("UTF-8")), completion);
+        }
+        pool.flush();
+
+        assertThat(completed, is(expected));
+        File last = new File(dir, "file499.txt");
+        assertThat(read(last), is("content of file499.txt"));
+        assertThat(last.lastModified(), is(1000000000000L));
+    }
+
+    @Test
+    public void largeFilesAreNotAccepted()
+    {
+        assertThat(pool.accepts(createPackFile("small", 10)), is(true));
+        assertThat(pool.accepts(createPackFile("large", FileWriterPool.MAX_BUFFERED_FILE_SIZE + 1)), is(false));
+    }
+
+    private PackFile createPackFile(String name, long length)
+    {
+        return new PackFile("$INSTALL_PATH/" + name, null, null, OverrideType.OVERRIDE_TRUE, null, null, null,
+                length, 1000000000000L, false);
+    }
+
+    private String read(File file) throws IOException
+    {
+        byte[] content = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try
+        {
+            in.read(content);
+        }
+        finally
+        {
+            in.close();
+        }
+        return new String(content, "UTF-8");
+    }
+}
@@ -0,0 +1,152 @@
+package com.izforge.izpack.installer.unpacker;
+
+import com.izforge.izpack.api.substitutor.SubstitutionType;
+import com.izforge.izpack.core.substitutor.VariableSubstitutorImpl;
+import com.izforge.izpack.data.ParsableFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class ScriptParserTest
+{
+    private File dir;
+
+    private VariableSubstitutorImpl substitutor;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        dir = File.createTempFile("izpack-parser", "");
+        dir.delete();
+        dir.mkdirs();
+        Properties variables = new Properties();
+        variables.setProperty("INSTALL_PATH", "/opt/app");
+        substitutor = new VariableSubstitutorImpl(variables);
+    }
+
+    @After
+    public void tearDown()
+    {
+        for (File file : dir.listFiles())
+        {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void filesAreParsedOnSeveralThreads() throws Exception
+    {
+        List<ParsableFile> parsables = new ArrayList<ParsableFile>();
+        for (int i = 0; i < 50; i++)
+        {
+            File file = write("script" + i + ".sh", "cd ${INSTALL_PATH}/bin " + i);
+            parsables.add(new ParsableFile(file.getPath(), SubstitutionType.TYPE_PLAIN, null, null));
+        }
+        new ScriptParser(parsables, substitutor, 4).parseFiles();
+
+        for (int i = 0; i < 50; i++)
+        {
+            assertThat(read(new File(dir, "script" + i + ".sh")), is("cd /opt/app/bin " + i));
+        }
+    }
+
+    @Test
+    public void filesWithoutVariablesAreNotRewritten() throws Exception
+    {
+        File file = write("plain.txt", "no variable here");
+        file.setLastModified(1000000000000L);
+        List<ParsableFile> parsables = new ArrayList<ParsableFile>();
+        parsables.add(new ParsableFile(file.getPath(), SubstitutionType.TYPE_SHELL, null, null));
+        new ScriptParser(parsables, substitutor).parseFiles();
+
+        assertThat(read(file), is("no variable here"));
+        assertThat(file.lastModified(), is(1000000000000L));
+    }
+
+    @Test
+    public void largeFilesAreParsed() throws Exception
+    {
+        StringBuilder content = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        while (content.length() <= ScriptParser.MAP_THRESHOLD)
+        {
+            content.append("path=$INSTALL_PATH\n");
+            expected.append("path=/opt/app\n");
+        }
+        File file = write("large.properties", content.toString());
+        List<ParsableFile> parsables = new ArrayList<ParsableFile>();
+        parsables.add(new ParsableFile(file.getPath(), SubstitutionType.TYPE_PLAIN, "UTF-8", null));
+        new ScriptParser(parsables, substitutor).parseFiles();
+
+        assertThat(read(file), is(expected.toString()));
+    }
+
+    @Test
+    public void largeFilesAreStreamed() throws Exception
+    {
+        StringBuilder content = new StringBuilder();
+        while (content.length() <= ScriptParser.MAP_THRESHOLD)
+        {
+            content.append("no variable here\n");
+        }
+        File plain = write("plain.properties", content.toString());
+        plain.setLastModified(1000000000000L);
+        // the only reference is after the first scanned chunks
+        File parsed = write("parsed.properties", content + "path=$INSTALL_PATH\n");
+        List<ParsableFile> parsables = new ArrayList<ParsableFile>();
+        parsables.add(new ParsableFile(plain.getPath(), SubstitutionType.TYPE_PLAIN, "UTF-8", null));
+        parsables.add(new ParsableFile(parsed.getPath(), SubstitutionType.TYPE_PLAIN, "UTF-8", null));
+        ScriptParser parser = new ScriptParser(parsables, substitutor);
+        parser.setMapLargeFiles(false);
+        parser.parseFiles();
+
+        assertThat(plain.lastModified(), is(1000000000000L));
+        assertThat(read(parsed), is(content + "path=/opt/app\n"));
+    }
+
+    private File write(String name, String content) throws IOException
+    {
+        File file = new File(dir, name);
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(content.getBytes("UTF-8"));
+        }
+        finally
+        {
+            out.close();
+        }
+        return file;
+    }
+
+    private String read(File file) throws IOException
+    {
+        byte[] content = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try
+        {
+            int offset = 0;
+            while (offset < content.length)
+            {
+                offset += in.read(content, offset, content.length - offset);
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return new String(content, "UTF-8");
+    }
+}
@@ -0,0 +1,164 @@
+package com.izforge.izpack.installer.unpacker;
+
+import com.izforge.izpack.api.handler.AbstractUIProgressHandler;
+import com.izforge.izpack.core.substitutor.VariableSubstitutorImpl;
+import com.izforge.izpack.data.UpdateCheck;
+import com.izforge.izpack.installer.data.InstallData;
+import com.izforge.izpack.installer.data.UninstallData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.Permission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.eq;
+
+/**
+ * Test of the deletion of the obsolete files matched by update checks
+ */
+public class UpdateCheckTest
+{
+    private File dir;
+
+    private InstallData installData;
+
+    private UninstallData uninstallData;
+
+    private AbstractUIProgressHandler handler;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        dir = File.createTempFile("izpack-update", "").getAbsoluteFile();
+        dir.delete();
+        dir.mkdirs();
+        installData = new InstallData(new Properties(), null);
+        installData.setInstallPath(dir.getPath());
+        uninstallData = new UninstallData();
+        handler = Mockito.mock(AbstractUIProgressHandler.class);
+    }
+
+    @After
+    public void tearDown()
+    {
+        System.setSecurityManager(null);
+        delete(dir);
+    }
+
+    @Test
+    public void obsoleteFilesAreDeletedOnSeveralThreads() throws Exception
+    {
+        installData.setVariable(UnpackerBase.UPDATE_CHECK_THREADS_VARIABLE, "4");
+        File installed = create("lib/app.jar");
+        File excluded = create("lib/keep.jar");
+        File obsolete = create("lib/old.jar");
+        final File locked = create("lib/locked.jar");
+        File installedDoc = create("doc/readme.txt");
+        File obsoleteDoc = create("doc/old/changes.txt");
+        File unmatched = create("conf/app.properties");
+        List<File> plugins = new ArrayList<File>();
+        for (int i = 0; i < 5; i++)
+        {
+            plugins.add(create("plugins/p" + i + "/plugin.jar"));
+        }
+        uninstallData.addFile(installed.getPath(), true);
+        uninstallData.addFile(installedDoc.getPath(), true);
+
+        // the locked file cannot be deleted, even when running as root
+        System.setSecurityManager(new SecurityManager()
+        {
+            @Override
+            public void checkPermission(Permission permission)
+            {
+            }
+
+            @Override
+            public void checkDelete(String file)
+            {
+                if (file.equals(locked.getPath()))
+                {
+                    throw new SecurityException("Locked " + file);
+                }
+            }
+        });
+        List<File> undeleted = performUpdateChecks(
+                Arrays.asList("lib/*.jar", "doc/**", "plugins/**"), Arrays.asList("lib/keep.jar"));
+        System.setSecurityManager(null);
+
+        assertThat(undeleted, is(Arrays.asList(locked)));
+        Mockito.verify(handler).emitWarning(eq("Update check"), contains(locked.getPath()));
+        assertThat(installed.exists(), is(true));
+        assertThat(excluded.exists(), is(true));
+        assertThat(installedDoc.exists(), is(true));
+        assertThat(unmatched.exists(), is(true));
+        assertThat(locked.exists(), is(true));
+        assertThat(obsolete.exists(), is(false));
+        assertThat(obsoleteDoc.exists(), is(false));
+        assertThat(obsoleteDoc.getParentFile().exists(), is(false));
+        for (File plugin : plugins)
+        {
+            assertThat(plugin.exists(), is(false));
+            assertThat(plugin.getParentFile().exists(), is(false));
+        }
+    }
+
+    @Test
+    public void nothingIsReportedWhenAllFilesAreDeleted() throws Exception
+    {
+        File obsolete = create("lib/old.jar");
+
+        List<File> undeleted = performUpdateChecks(Arrays.asList("lib/*.jar"), null);
+
+        assertThat(undeleted.isEmpty(), is(true));
+        assertThat(obsolete.exists(), is(false));
+        Mockito.verify(handler, Mockito.never()).emitWarning(Mockito.anyString(), Mockito.anyString());
+    }
+
+    private List<File> performUpdateChecks(List<String> includes, List<String> excludes)
+    {
+        UnpackerBase unpacker = new UnpackerBase(installData, null, null,
+                new VariableSubstitutorImpl(installData.getVariables()), uninstallData)
+        {
+            public void run()
+            {
+            }
+        };
+        unpacker.setHandler(handler);
+        unpacker.absolute_installpath = dir;
+        ArrayList<UpdateCheck> checks = new ArrayList<UpdateCheck>();
+        checks.add(new UpdateCheck(new ArrayList<String>(includes),
+                (excludes != null) ? new ArrayList<String>(excludes) : null));
+        return unpacker.performUpdateChecks(checks);
+    }
+
+    private File create(String path) throws IOException
+    {
+        File file = new File(dir, path);
+        file.getParentFile().mkdirs();
+        file.createNewFile();
+        return file;
+    }
+
+    private static void delete(File file)
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (File child : children)
+            {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,179 @@
+package com.izforge.izpack.util.xmlmerge;
+
+import com.izforge.izpack.util.xmlmerge.action.OrderedMergeAction;
+import com.izforge.izpack.util.xmlmerge.factory.StaticOperationFactory;
+import com.izforge.izpack.util.xmlmerge.mapper.IdentityMapper;
+import com.izforge.izpack.util.xmlmerge.matcher.IdAttributeMatcher;
+import com.izforge.izpack.util.xmlmerge.matcher.StandardMatchers;
+import org.hamcrest.core.Is;
+import org.jdom.Comment;
+import org.jdom.Element;
+import org.jdom.ProcessingInstruction;
+import org.jdom.Text;
+import org.jdom.output.XMLOutputter;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Test that {@link OrderedMergeAction} merges the same with the patch elements indexed by key as
+ * when comparing each pair of elements
+ */
+public class OrderedMergeActionTest
+{
+    private static final String[] NAMES = {"a", "A", "b"};
+
+    private static final String[] VALUES = {"x", "X", "y", "z"};
+
+    @Test
+    public void tagMatcher() throws Exception
+    {
+        checkSameMerge(StandardMatchers.TAG);
+    }
+
+    @Test
+    public void idAttributeMatcher() throws Exception
+    {
+        checkSameMerge(StandardMatchers.ID_ATTRIBUTE);
+    }
+
+    @Test
+    public void nameAttributeMatcher() throws Exception
+    {
+        checkSameMerge(StandardMatchers.NAME_ATTRIBUTE);
+    }
+
+    @Test
+    public void unsupportedContent() throws Exception
+    {
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++)
+        {
+            Element original = createElement(random, 2);
+            Element patch = createElement(random, 2);
+            patch.addContent(random.nextInt(patch.getContentSize() + 1), new ProcessingInstruction("pi", ""));
+            assertThat(merge(original, patch, StandardMatchers.ID_ATTRIBUTE, true),
+                       Is.is(merge(original, patch, StandardMatchers.ID_ATTRIBUTE, false)));
+        }
+    }
+
+    @Test
+    public void keyedMergeDoesNotComparePairs() throws Exception
+    {
+        final int[] comparisons = new int[1];
+        Matcher matcher = new IdAttributeMatcher()
+        {
+            @Override
+            public boolean matches(Element originalElement, Element patchElement)
+            {
+                comparisons[0]++;
+                return super.matches(originalElement, patchElement);
+            }
+        };
+        Element original = new Element("server");
+        Element patch = new Element("server");
+        for (int i = 0; i < 100; i++)
+        {
+            original.addContent(new Element("connector").setAttribute("id", "c" + i));
+            patch.addContent(new Element("connector").setAttribute("id", "c" + (i + 50)));
+        }
+
+        String keyed = merge(original, patch, matcher, true);
+        assertThat(comparisons[0], Is.is(0));
+        assertThat(merge(original, patch, matcher, false), Is.is(keyed));
+        assertThat(comparisons[0] > 0, Is.is(true));
+    }
+
+    /**
+     * Merges random documents, mixing element names, attributes and values differing by case,
+     * repeated elements, comments and text.
+     */
+    private void checkSameMerge(Matcher matcher) throws Exception
+    {
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++)
+        {
+            Element original = createElement(random, 3);
+            Element patch = createElement(random, 3);
+            String keyed = merge(original, patch, matcher, true);
+            assertThat(keyed, Is.is(merge(original, patch, matcher, false)));
+        }
+    }
+
+    private Element createElement(Random random, int depth)
+    {
+        Element element = new Element(NAMES[random.nextInt(NAMES.length)]);
+        if (random.nextInt(3) > 0)
+        {
+            element.setAttribute(random.nextBoolean() ? "id" : "ID", VALUES[random.nextInt(VALUES.length)]);
+        }
+        if (random.nextInt(3) == 0)
+        {
+            element.setAttribute(random.nextBoolean() ? "name" : "Name", VALUES[random.nextInt(VALUES.length)]);
+        }
+        if (random.nextInt(4) == 0)
+        {
+            element.setAttribute("other", VALUES[random.nextInt(VALUES.length)]);
+        }
+        if (depth > 1)
+        {
+            int count = random.nextInt(8);
+            for (int i = 0; i < count; i++)
+            {
+                switch (random.nextInt(6))
+                {
+                case 0:
+                    element.addContent(new Comment("c" + i));
+                    break;
+                case 1:
+                    element.addContent(new Text("t" + i));
+                    break;
+                default:
+                    element.addContent(createElement(random, depth - 1));
+                }
+            }
+        }
+        return element;
+    }
+
+    /**
+     * Merges copies of two elements, the merge moves their attributes.
+     *
+     * @param keyed true to let the action index the patch elements, false to let it compare each
+     *              pair of elements
+     * @return the merged element as text, or the message of the merge failure
+     */
+    private String merge(Element original, Element patch, final Matcher matcher, boolean keyed)
+    {
+        OrderedMergeAction action = new OrderedMergeAction();
+        action.setActionFactory(new StaticOperationFactory(action));
+        action.setMapperFactory(new StaticOperationFactory(new IdentityMapper()));
+        if (keyed)
+        {
+            action.setMatcherFactory(new StaticOperationFactory(matcher));
+        }
+        else
+        {
+            action.setMatcherFactory(new OperationFactory()
+            {
+                public Operation getOperation(Element originalElement, Element modifiedElement)
+                {
+                    return matcher;
+                }
+            });
+        }
+
+        Element merged = new Element("merged");
+        try
+        {
+            action.perform((Element) original.clone(), (Element) patch.clone(), merged);
+        }
+        catch (AbstractXmlMergeException e)
+        {
+            return e.getClass().getName() + ": " + e.getMessage();
+        }
+        return new XMLOutputter().outputString(merged);
+    }
+}
@@ -0,0 +1,55 @@
+package com.izforge.izpack.util.xmlmerge;
+
+import com.izforge.izpack.util.xmlmerge.action.OrderedMergeAction;
+import com.izforge.izpack.util.xmlmerge.factory.StaticOperationFactory;
+import com.izforge.izpack.util.xmlmerge.mapper.IdentityMapper;
+import com.izforge.izpack.util.xmlmerge.matcher.AttributeMatcher;
+import com.izforge.izpack.util.xmlmerge.matcher.StandardMatchers;
+import org.jdom.Element;
+
+/**
+ * Measures the merge time of growing documents by {@link OrderedMergeAction}, with a keyed
+ * matcher (patch elements indexed by key) and with a matcher comparing each pair of elements.
+ * With the keyed matcher, the time grows linearly with the number of elements.
+ * <p/>
+ * This is not a unit test. Run it optionally with the largest number of elements as argument.
+ */
+public class OrderedMergeBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        int max = (args.length > 0) ? Integer.parseInt(args[0]) : 16000;
+        System.out.println("elements   keyed ms   pairwise ms");
+        for (int count = 1000; count <= max; count *= 2)
+        {
+            long keyed = merge(count, StandardMatchers.ID_ATTRIBUTE);
+            long pairwise = merge(count, new AttributeMatcher());
+            System.out.println(String.format("%8d %10d %13d", count, keyed, pairwise));
+        }
+    }
+
+    /**
+     * Merges a document of elements with an id with a patch sharing half of the ids.
+     *
+     * @return the merge time in milliseconds
+     */
+    private static long merge(int count, Matcher matcher) throws AbstractXmlMergeException
+    {
+        Element original = new Element("server");
+        Element patch = new Element("server");
+        for (int i = 0; i < count; i++)
+        {
+            original.addContent(new Element("connector").setAttribute("id", "c" + i));
+            patch.addContent(new Element("connector").setAttribute("id", "c" + (i + count / 2)));
+        }
+
+        OrderedMergeAction action = new OrderedMergeAction();
+        action.setActionFactory(new StaticOperationFactory(action));
+        action.setMapperFactory(new StaticOperationFactory(new IdentityMapper()));
+        action.setMatcherFactory(new StaticOperationFactory(matcher));
+
+        long start = System.nanoTime();
+        action.perform(original, patch, new Element("merged"));
+        return (System.nanoTime() - start) / 1000000;
+    }
+}
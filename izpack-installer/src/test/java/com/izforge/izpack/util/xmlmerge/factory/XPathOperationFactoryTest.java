@@ -0,0 +1,143 @@
+package com.izforge.izpack.util.xmlmerge.factory;
+
+import com.izforge.izpack.util.xmlmerge.Operation;
+import org.hamcrest.core.Is;
+import org.hamcrest.core.IsNull;
+import org.jaxen.jdom.JDOMXPath;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Test that {@link XPathOperationFactory} matches elements as Jaxen does, whether the expressions
+ * are matched without Jaxen or not
+ */
+public class XPathOperationFactoryTest
+{
+    /**
+     * Expressions matched without Jaxen.
+     */
+    private static final String[] SIMPLE = {
+            "a", "b", "c", "A", "root", "*",
+            "a[@id]", "a[@id='1']", "a[@id=\"1\"]", "a[@id='2']", "*[@name]", "*[@name='x']",
+            "/root", "/a", "/*", "/root/a", "/root/*", "/root/a/b", "/root/*/b[@name='x']", "/*/a/c/a",
+            "/root/a[@name='y']", "/root/b/a",
+            "//a", "//b", "//*", "//b[@name]", "//b[@name='x']", "//*[@id]", "//a[@lang]"};
+
+    /**
+     * Expressions left to Jaxen.
+     */
+    private static final String[] OTHER = {
+            "a/b", "//c/a", "a[1]", "a[@id = '1']", "self::a", "../a", "a | b", "/", "//", "root/"};
+
+    private final Operation operation = new Operation()
+    {
+    };
+
+    @Test
+    public void simpleExpressionsAreParsed()
+    {
+        for (String expression : SIMPLE)
+        {
+            assertThat(expression, XPathOperationFactory.SimpleXPath.parse(expression), IsNull.notNullValue());
+        }
+        for (String expression : OTHER)
+        {
+            assertThat(expression, XPathOperationFactory.SimpleXPath.parse(expression), IsNull.nullValue());
+        }
+    }
+
+    @Test
+    public void elementsOfDocument() throws Exception
+    {
+        Element root = createTree();
+        new Document(root);
+        checkSameMatches(root, false);
+    }
+
+    @Test
+    public void elementsOfDetachedTree() throws Exception
+    {
+        // absolute expressions are always left to Jaxen without a document
+        checkSameMatches(createTree(), true);
+    }
+
+    /**
+     * Checks that each expression matches the same elements below the root, when evaluated
+     * by the factory and by Jaxen.
+     */
+    private void checkSameMatches(Element root, boolean relativeOnly) throws Exception
+    {
+        List<Element> elements = new ArrayList<Element>();
+        addElements(root, elements);
+
+        List<String> expressions = new ArrayList<String>();
+        Collections.addAll(expressions, SIMPLE);
+        Collections.addAll(expressions, OTHER);
+        // not valid XPath
+        expressions.remove("//");
+        expressions.remove("root/");
+        for (String expression : expressions)
+        {
+            if (relativeOnly && expression.startsWith("/"))
+            {
+                continue;
+            }
+            XPathOperationFactory factory = new XPathOperationFactory();
+            factory.setOperationMap(Collections.singletonMap(expression, operation));
+            JDOMXPath xPath = new JDOMXPath(expression);
+            for (Element element : elements)
+            {
+                if (element.getParent() == null)
+                {
+                    continue;
+                }
+                boolean expected = xPath.selectNodes(element.getParent()).contains(element);
+                // the compiled expression is used the second time
+                for (int i = 0; i < 2; i++)
+                {
+                    boolean matched = factory.getOperation(element, null) == operation;
+                    assertThat(expression + " on " + element, matched, Is.is(expected));
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates elements with the same names and attributes at several levels, with and without
+     * namespaces.
+     */
+    private Element createTree()
+    {
+        Element root = new Element("root");
+        Element a = new Element("a").setAttribute("id", "1");
+        a.addContent(new Element("b"));
+        a.addContent(new Element("b").setAttribute("name", "x"));
+        a.addContent(new Element("c").addContent(new Element("a").setAttribute("lang", "en")));
+        root.addContent(a);
+        root.addContent(new Element("a").setAttribute("name", "y"));
+        root.addContent(new Element("b").setAttribute("id", "2").setAttribute("name", "x")
+                                .addContent(new Element("a")));
+        root.addContent(new Element("a", Namespace.getNamespace("ns", "urn:test")));
+        root.addContent(new Element("a", "urn:default").setAttribute("id", "1"));
+        root.addContent(new Element("a").setAttribute("id", "1", Namespace.getNamespace("p", "urn:p")));
+        root.addContent(new Element("A"));
+        return root;
+    }
+
+    private void addElements(Element element, List<Element> elements)
+    {
+        elements.add(element);
+        for (Object child : element.getChildren())
+        {
+            addElements((Element) child, elements);
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.project.MavenProject;
 
+import java.io.File;
 import java.util.List;
 
 /**
@@ -74,6 +75,37 @@ public class IzPackNewMojo extends AbstractMojo
      */
     private int comprLevel;
 
+    /**
+     * Number of threads used to compress the packs. Packs are written sequentially by default (1)
+     *
+     * @parameter default-value="1"
+     */
+    private int packThreads;
+
+    /**
+     * Number of threads used to scan the directories of the filesets. Directories are scanned
+     * sequentially by default (1)
+     *
+     * @parameter default-value="1"
+     */
+    private int scanThreads;
+
+    /**
+     * Window (dictionary) size in kilobytes of the compression format, if supported (xz).
+     * The default size of the compression level is used by default (-1)
+     *
+     * @parameter default-value="-1"
+     */
+    private int comprWindow;
+
+    /**
+     * Directory of the cache of compressed packs. Packs which did not change since the last
+     * build are reused from the cache. Packs are always compressed if not set.
+     *
+     * @parameter
+     */
+    private File packCacheDirectory;
+
 
     public void execute() throws MojoExecutionException, MojoFailureException
     {
@@ -109,6 +141,14 @@ public class IzPackNewMojo extends AbstractMojo
             }
             info.setAppURL(project.getUrl());
         }
-        return new CompilerData(comprFormat, kind, installFile, null, baseDir, output, comprLevel, info);
+        CompilerData compilerData = new CompilerData(comprFormat, kind, installFile, null, baseDir, output, comprLevel, info);
+        compilerData.setPackThreads(packThreads);
+        compilerData.setScanThreads(scanThreads);
+        compilerData.setComprWindow(comprWindow);
+        if (packCacheDirectory != null)
+        {
+            compilerData.setPackCacheDir(packCacheDirectory.getAbsolutePath());
+        }
+        return compilerData;
     }
 }
@@ -35,10 +35,23 @@ import com.izforge.izpack.util.Debug;
 import com.izforge.izpack.util.FileExecutor;
 import com.izforge.izpack.util.OsConstraintHelper;
 
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This class does alle the work for compiling sources.
@@ -49,6 +62,11 @@ import java.util.*;
  * <li>collecting and creating all jobs
  * <li>doing the actual compilation
  * </ul>
+ * <p/>
+ * The <tt>javac</tt> compiler and the {@link #SYSTEM_COMPILER_NAME integrated Java compiler} are run
+ * in process through the <tt>javax.tools</tt> API when the JVM provides a Java compiler. Consecutive
+ * jobs marked as <tt>parallel</tt> are compiled at the same time, by at most {@link #THREADS_VARIABLE}
+ * threads.
  *
  * @author Tino Schwarze
  */
@@ -69,6 +87,22 @@ public class CompileWorker implements Runnable
 
     private static final String ECLIPSE_COMPILER_CLASS = "org.eclipse.jdt.internal.compiler.batch.Main";
 
+    /**
+     * Name of the compiler choice using the Java compiler of the running JVM.
+     */
+    private static final String SYSTEM_COMPILER_NAME = "Integrated Java Compiler";
+
+    /**
+     * Name of the compiler run in process when the JVM provides a Java compiler.
+     */
+    private static final String JAVAC_COMPILER_NAME = "javac";
+
+    /**
+     * Name of the variable holding the maximum number of parallel jobs compiled at the same time.
+     * Jobs are compiled one after the other if it is not set or lower than 2.
+     */
+    public static final String THREADS_VARIABLE = "CompilePanel.threads";
+
     private VariableSubstitutor vs;
 
     private IXMLElement spec;
@@ -102,7 +136,8 @@ public class CompileWorker implements Runnable
     public CompileWorker(AutomatedInstallData idata, CompileHandler handler, VariableSubstitutor variableSubstitutor) throws IOException
     {
         this.idata = idata;
-        this.handler = handler;
+        // the jobs may report from several threads
+        this.handler = new SynchronizedHandler(handler);
         this.vs = variableSubstitutor;
         if (!readSpec())
         {
@@ -340,6 +375,14 @@ public class CompileWorker implements Runnable
                             // ignore, just don't add it as a choice
                         }
                     }
+                    else if (value.equalsIgnoreCase(SYSTEM_COMPILER_NAME))
+                    {
+                        // only available when running on a JDK
+                        if (ToolProvider.getSystemJavaCompiler() != null)
+                        {
+                            choiceList.add(value);
+                        }
+                    }
                     else
                     {
                         try
@@ -395,36 +438,79 @@ public class CompileWorker implements Runnable
             args.add(tokenizer.nextToken());
         }
 
-        Iterator<CompilationJob> job_it = this.jobs.iterator();
-
         this.handler.startAction("Compilation", this.jobs.size());
 
+        SystemCompiler systemCompiler = SystemCompiler.create(this.compilerToUse, args);
+
         // check whether compiler is valid (but only if there are jobs)
-        if (job_it.hasNext())
+        if (systemCompiler == null && !this.jobs.isEmpty())
         {
             CompilationJob first_job = this.jobs.get(0);
 
             CompileResult check_result = first_job.checkCompiler(this.compilerToUse, args);
-            if (!check_result.isContinue())
+            // the integrated compiler is not a command: nothing can be compiled without it
+            if (!check_result.isContinue() || this.compilerToUse.equalsIgnoreCase(SYSTEM_COMPILER_NAME))
             {
                 return check_result;
             }
 
         }
 
-        int job_no = 0;
-
-        while (job_it.hasNext())
+        // the eclipse compiler redirects System.out and System.err
+        int threads = this.compilerToUse.equalsIgnoreCase(ECLIPSE_COMPILER_NAME) ? 1 : getThreads();
+        ExecutorService executor = null;
+        try
         {
-            CompilationJob job = job_it.next();
-
-            this.handler.nextStep(job.getName(), job.getSize(), job_no++);
+            int start = 0;
+            while (start < this.jobs.size())
+            {
+                int end = start + 1;
+                if (threads > 1 && this.jobs.get(start).parallel)
+                {
+                    while (end < this.jobs.size() && this.jobs.get(end).parallel)
+                    {
+                        end++;
+                    }
+                }
 
-            CompileResult job_result = job.perform(this.compilerToUse, args);
+                CompileResult job_result;
+                if (end - start == 1)
+                {
+                    job_result = compileJob(this.jobs.get(start), start, args, systemCompiler);
+                }
+                else
+                {
+                    if (executor == null)
+                    {
+                        executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+                        {
+                            public Thread newThread(Runnable runnable)
+                            {
+                                Thread thread = new Thread(runnable, "IzPack compilation job");
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+                    }
+                    job_result = compileConcurrently(start, end, args, systemCompiler, executor);
+                }
 
-            if (!job_result.isContinue())
+                if (!job_result.isContinue())
+                {
+                    return job_result;
+                }
+                start = end;
+            }
+        }
+        finally
+        {
+            if (executor != null)
             {
-                return job_result;
+                executor.shutdownNow();
+            }
+            if (systemCompiler != null)
+            {
+                systemCompiler.close();
             }
         }
 
@@ -432,6 +518,133 @@ public class CompileWorker implements Runnable
         return new CompileResult();
     }
 
+    /**
+     * Compiles jobs at the same time. Once a job has failed and the user did not choose to
+     * continue, the jobs not started yet are skipped; the running ones are completed.
+     * <p/>
+     * The progress of the jobs is reported from this thread, one job after the other in order.
+     *
+     * @param start          the index of the first job
+     * @param end            the index after the last job
+     * @param args           the compiler arguments
+     * @param systemCompiler the in process compiler, or <tt>null</tt> to use {@link #compilerToUse}
+     * @param executor       the executor compiling the jobs
+     * @return the result of the first job which failed, or a successful result
+     */
+    private CompileResult compileConcurrently(int start, int end, final ArrayList<String> args,
+                                              final SystemCompiler systemCompiler, ExecutorService executor)
+    {
+        final AtomicBoolean stopped = new AtomicBoolean();
+        List<Future<CompileResult>> results = new ArrayList<Future<CompileResult>>();
+        List<DeferredProgressHandler> progress = new ArrayList<DeferredProgressHandler>();
+        for (int i = start; i < end; i++)
+        {
+            final CompilationJob job = this.jobs.get(i);
+            DeferredProgressHandler job_progress = new DeferredProgressHandler(this.handler);
+            job.listener = job_progress;
+            progress.add(job_progress);
+            results.add(executor.submit(new Callable<CompileResult>()
+            {
+                public CompileResult call()
+                {
+                    if (stopped.get())
+                    {
+                        return null;
+                    }
+                    CompileResult result = performJob(job, args, systemCompiler);
+                    if (!result.isContinue())
+                    {
+                        stopped.set(true);
+                    }
+                    return result;
+                }
+            }));
+        }
+
+        CompileResult failure = null;
+        for (int i = 0; i < results.size(); i++)
+        {
+            try
+            {
+                CompilationJob job = this.jobs.get(start + i);
+                if (failure == null)
+                {
+                    this.handler.nextStep(job.getName(), job.getSize(), start + i);
+                }
+                CompileResult job_result = results.get(i).get();
+                if (failure == null && job_result != null)
+                {
+                    progress.get(i).report();
+                    if (!job_result.isContinue())
+                    {
+                        failure = job_result;
+                    }
+                }
+            }
+            catch (InterruptedException exception)
+            {
+                for (Future<CompileResult> other : results)
+                {
+                    other.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                return new CompileResult(exception);
+            }
+            catch (ExecutionException exception)
+            {
+                Throwable cause = exception.getCause();
+                if (cause instanceof RuntimeException)
+                {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error)
+                {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+        return (failure != null) ? failure : new CompileResult();
+    }
+
+    private CompileResult compileJob(CompilationJob job, int job_no, ArrayList<String> args,
+                                     SystemCompiler systemCompiler)
+    {
+        this.handler.nextStep(job.getName(), job.getSize(), job_no);
+        return performJob(job, args, systemCompiler);
+    }
+
+    private CompileResult performJob(CompilationJob job, ArrayList<String> args, SystemCompiler systemCompiler)
+    {
+        if (systemCompiler != null)
+        {
+            return job.perform(systemCompiler, args);
+        }
+        return job.perform(this.compilerToUse, args);
+    }
+
+    /**
+     * Returns the maximum number of parallel jobs compiled at the same time.
+     *
+     * @return the number of threads, 1 if the variable is not set or invalid
+     */
+    private int getThreads()
+    {
+        String threads = this.idata.getVariable(THREADS_VARIABLE);
+        if (threads != null)
+        {
+            try
+            {
+                return Math.max(1, Integer.parseInt(threads.trim()));
+            }
+            catch (NumberFormatException exception)
+            {
+                Debug.log("Invalid " + THREADS_VARIABLE + " value: " + threads);
+            }
+        }
+        return 1;
+    }
+
     private CompilationJob collectJobsRecursive(IXMLElement node, List<String> classpath)
             throws Exception
     {
@@ -514,7 +727,9 @@ public class CompileWorker implements Runnable
 
         if (files.size() > 0)
         {
-            return new CompilationJob(this.handler, this.idata, node.getAttribute("name"), files, ourclasspath);
+            boolean parallel = Boolean.parseBoolean(node.getAttribute("parallel", "false"));
+            return new CompilationJob(this.handler, this.idata, node.getAttribute("name"), files, ourclasspath,
+                    parallel);
         }
 
         return null;
@@ -618,6 +833,11 @@ public class CompileWorker implements Runnable
 
         private AutomatedInstallData idata;
 
+        /**
+         * Whether the job may be compiled at the same time as the neighbouring parallel jobs.
+         */
+        private boolean parallel;
+
         // XXX: figure that out (on runtime?)
         private static final int MAX_CMDLINE_SIZE = 4096;
 
@@ -629,9 +849,10 @@ public class CompileWorker implements Runnable
          * @param name      The name of the job.
          * @param files     The files to compile.
          * @param classpath The class path to use.
+         * @param parallel  Whether the job may be compiled at the same time as other jobs.
          */
         public CompilationJob(CompileHandler listener, AutomatedInstallData idata, String name,
-                              ArrayList<File> files, List<String> classpath)
+                              ArrayList<File> files, List<String> classpath, boolean parallel)
         {
             this.listener = listener;
             this.idata = idata;
@@ -639,6 +860,7 @@ public class CompileWorker implements Runnable
             this.name = name;
             this.files = files;
             this.classpath = classpath;
+            this.parallel = parallel;
         }
 
         /**
@@ -696,18 +918,7 @@ public class CompileWorker implements Runnable
             cmdline_len += compiler.length() + 1;
 
             // construct classpath argument for compiler
-            // - collect all classpaths
-            StringBuffer classpath_sb = new StringBuffer();
-            for (String cp : this.classpath)
-            {
-                if (classpath_sb.length() > 0)
-                {
-                    classpath_sb.append(File.pathSeparatorChar);
-                }
-                classpath_sb.append(new File(cp).getAbsolutePath());
-            }
-
-            String classpath_str = classpath_sb.toString();
+            String classpath_str = getClassPath();
 
             // - add classpath argument to command line
             if (classpath_str.length() > 0)
@@ -729,7 +940,7 @@ public class CompileWorker implements Runnable
             String output[] = new String[2];
 
             // used for displaying the progress bar
-            String jobfiles = "";
+            StringBuilder jobfiles = new StringBuilder();
             int fileno = 0;
             int last_fileno = 0;
 
@@ -745,7 +956,7 @@ public class CompileWorker implements Runnable
                 // chance to get something done if the command line is almost
                 // MAX_CMDLINE_SIZE or even above
                 fileno++;
-                jobfiles += file.getName() + " ";
+                jobfiles.append(file.getName()).append(' ');
                 args.add(fpath);
                 cmdline_len += fpath.length();
 
@@ -756,13 +967,13 @@ public class CompileWorker implements Runnable
 
                     // display useful progress bar (avoid showing 100% while
                     // still compiling a lot)
-                    this.listener.progress(last_fileno, jobfiles);
+                    this.listener.progress(last_fileno, jobfiles.toString());
                     last_fileno = fileno;
 
                     int retval = runCompiler(executor, output, args);
 
                     // update progress bar: compilation of fileno files done
-                    this.listener.progress(fileno, jobfiles);
+                    this.listener.progress(fileno, jobfiles.toString());
 
                     if (retval != 0)
                     {
@@ -816,20 +1027,20 @@ public class CompileWorker implements Runnable
                     }
 
                     cmdline_len = common_args_len;
-                    jobfiles = "";
+                    jobfiles.setLength(0);
                 }
 
             }
 
             if (cmdline_len > common_args_len)
             {
-                this.listener.progress(last_fileno, jobfiles);
+                this.listener.progress(last_fileno, jobfiles.toString());
 
                 int retval = runCompiler(executor, output, args);
 
                 if (!isEclipseCompiler)
                 {
-                    this.listener.progress(fileno, jobfiles);
+                    this.listener.progress(fileno, jobfiles.toString());
                 }
 
                 if (retval != 0)
@@ -883,6 +1094,72 @@ public class CompileWorker implements Runnable
             return new CompileResult();
         }
 
+        /**
+         * Perform this job with the Java compiler of the running JVM. All files are compiled at once.
+         *
+         * @param compiler  The compiler to use.
+         * @param arguments The compiler arguments to use.
+         * @return The result.
+         */
+        public CompileResult perform(SystemCompiler compiler, ArrayList<String> arguments)
+        {
+            Debug.trace("starting job " + this.name + " in process");
+
+            List<String> options = new ArrayList<String>(arguments);
+            String classpath_str = getClassPath();
+            if (classpath_str.length() > 0)
+            {
+                options.add("-classpath");
+                options.add(classpath_str);
+            }
+
+            this.listener.progress(0, getName());
+
+            String output[] = new String[2];
+            if (!compiler.compile(options, this.files, output, this.listener))
+            {
+                // report the command line javac would have been called with
+                List<String> cmdline = new ArrayList<String>(options);
+                cmdline.add(0, JAVAC_COMPILER_NAME);
+                for (File file : this.files)
+                {
+                    cmdline.add(file.getAbsolutePath());
+                }
+                CompileResult result = new CompileResult(this.langpack.getString("CompilePanel.error"), cmdline,
+                        output[0], output[1]);
+                this.listener.handleCompileError(result);
+                if (!result.isContinue())
+                {
+                    return result;
+                }
+            }
+
+            this.listener.progress(this.files.size(), getName());
+
+            Debug.trace("job " + this.name + " done (" + this.files.size() + " files compiled)");
+
+            return new CompileResult();
+        }
+
+        /**
+         * Returns the class path of this job.
+         *
+         * @return the absolute class path entries, separated by the path separator
+         */
+        private String getClassPath()
+        {
+            StringBuilder classpath_sb = new StringBuilder();
+            for (String cp : this.classpath)
+            {
+                if (classpath_sb.length() > 0)
+                {
+                    classpath_sb.append(File.pathSeparatorChar);
+                }
+                classpath_sb.append(new File(cp).getAbsolutePath());
+            }
+            return classpath_sb.toString();
+        }
+
         /**
          * Internal helper method.
          *
@@ -1042,6 +1319,18 @@ public class CompileWorker implements Runnable
                 return new CompileResult();
             }
 
+            // the integrated compiler is only checked here when it cannot be used, which always fails
+            if (compiler.equalsIgnoreCase(SYSTEM_COMPILER_NAME))
+            {
+                List<String> args = new ArrayList<String>(arguments);
+                args.add(0, compiler);
+                String message = (ToolProvider.getSystemJavaCompiler() == null)
+                        ? "CompilePanel.error.compilernotfound" : "CompilePanel.error.invalidarguments";
+                CompileResult result = new CompileResult(this.langpack.getString(message), args, "", "");
+                this.listener.handleCompileError(result);
+                return result;
+            }
+
             int retval = 0;
             FileExecutor executor = new FileExecutor();
             String[] output = new String[2];
@@ -1080,18 +1369,7 @@ public class CompileWorker implements Runnable
             args.add(0, compiler);
 
             // construct classpath argument for compiler
-            // - collect all classpaths
-            StringBuffer classpath_sb = new StringBuffer();
-            for (String cp : this.classpath)
-            {
-                if (classpath_sb.length() > 0)
-                {
-                    classpath_sb.append(File.pathSeparatorChar);
-                }
-                classpath_sb.append(new File(cp).getAbsolutePath());
-            }
-
-            String classpath_str = classpath_sb.toString();
+            String classpath_str = getClassPath();
 
             // - add classpath argument to command line
             if (classpath_str.length() > 0)
@@ -1119,6 +1397,342 @@ public class CompileWorker implements Runnable
 
     }
 
+    /**
+     * Compiles with the Java compiler of the running JVM.
+     * <p/>
+     * The file managers, which cache the opened class path archives, are kept for the following
+     * jobs. A file manager is used by one job at a time, so jobs compiled at the same time each get
+     * their own.
+     */
+    private static class SystemCompiler
+    {
+        private final JavaCompiler compiler;
+
+        private final List<StandardJavaFileManager> fileManagers = new ArrayList<StandardJavaFileManager>();
+
+        private final List<StandardJavaFileManager> idleFileManagers = new ArrayList<StandardJavaFileManager>();
+
+        private SystemCompiler(JavaCompiler compiler)
+        {
+            this.compiler = compiler;
+        }
+
+        /**
+         * Returns the in process compiler to use instead of a compiler.
+         *
+         * @param compiler  the compiler chosen
+         * @param arguments the compiler arguments
+         * @return the in process compiler, or <tt>null</tt> if the compiler is not <tt>javac</tt> or the
+         *         integrated compiler, if the JVM does not provide a compiler or if it does not support
+         *         all arguments
+         */
+        public static SystemCompiler create(String compiler, List<String> arguments)
+        {
+            if (!compiler.equalsIgnoreCase(SYSTEM_COMPILER_NAME) && !compiler.equals(JAVAC_COMPILER_NAME))
+            {
+                return null;
+            }
+            JavaCompiler javaCompiler = ToolProvider.getSystemJavaCompiler();
+            if (javaCompiler == null)
+            {
+                Debug.trace("no Java compiler available in process");
+                return null;
+            }
+            SystemCompiler systemCompiler = new SystemCompiler(javaCompiler);
+            // options like -d are handled by the file manager
+            StandardJavaFileManager fileManager = systemCompiler.acquireFileManager();
+            try
+            {
+                for (int i = 0; i < arguments.size(); i++)
+                {
+                    int values = javaCompiler.isSupportedOption(arguments.get(i));
+                    if (values < 0)
+                    {
+                        values = fileManager.isSupportedOption(arguments.get(i));
+                    }
+                    if (values < 0)
+                    {
+                        Debug.trace("option " + arguments.get(i) + " not supported in process");
+                        systemCompiler.close();
+                        return null;
+                    }
+                    i += values;
+                }
+            }
+            finally
+            {
+                systemCompiler.releaseFileManager(fileManager);
+            }
+            return systemCompiler;
+        }
+
+        /**
+         * Compiles files. The errors are passed to the handler as they are reported, as messages of
+         * the first substep, which is the current one until the job is done.
+         *
+         * @param options  the compiler options
+         * @param files    the files to compile
+         * @param output   The output from the compiler ([0] = other output, [1] = diagnostics)
+         * @param listener the handler to report the diagnostics to
+         * @return true if the compilation succeeded
+         */
+        public boolean compile(List<String> options, List<File> files, String[] output, final CompileHandler listener)
+        {
+            final StringBuilder diagnostics = new StringBuilder();
+            StringWriter out = new StringWriter();
+            StandardJavaFileManager fileManager = acquireFileManager();
+            try
+            {
+                DiagnosticListener<JavaFileObject> diagnosticListener = new DiagnosticListener<JavaFileObject>()
+                {
+                    public void report(Diagnostic<? extends JavaFileObject> diagnostic)
+                    {
+                        String message = format(diagnostic);
+                        diagnostics.append(message).append('\n');
+                        Debug.trace(message);
+                        if (diagnostic.getKind() == Diagnostic.Kind.ERROR)
+                        {
+                            listener.progress(0, message);
+                        }
+                    }
+                };
+                Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles(files);
+                boolean success = compiler.getTask(out, fileManager, diagnosticListener, options, null, units).call();
+                output[0] = out.toString();
+                output[1] = diagnostics.toString();
+                return success;
+            }
+            catch (RuntimeException exception)
+            {
+                // invalid option or compiler failure
+                output[0] = out.toString();
+                output[1] = diagnostics.toString() + exception.toString();
+                return false;
+            }
+            finally
+            {
+                releaseFileManager(fileManager);
+            }
+        }
+
+        /**
+         * Closes the file managers.
+         */
+        public synchronized void close()
+        {
+            for (StandardJavaFileManager fileManager : fileManagers)
+            {
+                try
+                {
+                    fileManager.close();
+                }
+                catch (IOException exception)
+                {
+                    Debug.log("could not close file manager: " + exception.getMessage());
+                }
+            }
+            fileManagers.clear();
+            idleFileManagers.clear();
+        }
+
+        private synchronized StandardJavaFileManager acquireFileManager()
+        {
+            if (!idleFileManagers.isEmpty())
+            {
+                return idleFileManagers.remove(idleFileManagers.size() - 1);
+            }
+            StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+            fileManagers.add(fileManager);
+            return fileManager;
+        }
+
+        private synchronized void releaseFileManager(StandardJavaFileManager fileManager)
+        {
+            idleFileManagers.add(fileManager);
+        }
+
+        /**
+         * Formats a diagnostic like <tt>javac</tt> does.
+         */
+        private static String format(Diagnostic<? extends JavaFileObject> diagnostic)
+        {
+            StringBuilder message = new StringBuilder();
+            if (diagnostic.getSource() != null)
+            {
+                message.append(diagnostic.getSource().getName());
+                if (diagnostic.getLineNumber() != Diagnostic.NOPOS)
+                {
+                    message.append(':').append(diagnostic.getLineNumber());
+                }
+                message.append(": ");
+            }
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR)
+            {
+                message.append("error: ");
+            }
+            else if (diagnostic.getKind() == Diagnostic.Kind.WARNING
+                    || diagnostic.getKind() == Diagnostic.Kind.MANDATORY_WARNING)
+            {
+                message.append("warning: ");
+            }
+            message.append(diagnostic.getMessage(null));
+            return message.toString();
+        }
+    }
+
+    /**
+     * Handler passing the calls to another handler one at a time, as the jobs compiled at the same
+     * time report to the same handler.
+     */
+    private static class SynchronizedHandler implements CompileHandler
+    {
+        private final CompileHandler handler;
+
+        public SynchronizedHandler(CompileHandler handler)
+        {
+            this.handler = handler;
+        }
+
+        public void handleCompileError(CompileResult error)
+        {
+            synchronized (handler)
+            {
+                handler.handleCompileError(error);
+            }
+        }
+
+        public void startAction(String name, int no_of_steps)
+        {
+            synchronized (handler)
+            {
+                handler.startAction(name, no_of_steps);
+            }
+        }
+
+        public void stopAction()
+        {
+            synchronized (handler)
+            {
+                handler.stopAction();
+            }
+        }
+
+        public void nextStep(String step_name, int step_no, int no_of_substeps)
+        {
+            synchronized (handler)
+            {
+                handler.nextStep(step_name, step_no, no_of_substeps);
+            }
+        }
+
+        public void setSubStepNo(int no_of_substeps)
+        {
+            synchronized (handler)
+            {
+                handler.setSubStepNo(no_of_substeps);
+            }
+        }
+
+        public void progress(int substep_no, String message)
+        {
+            synchronized (handler)
+            {
+                handler.progress(substep_no, message);
+            }
+        }
+
+        public void emitNotification(String message)
+        {
+            synchronized (handler)
+            {
+                handler.emitNotification(message);
+            }
+        }
+
+        public boolean emitWarning(String title, String message)
+        {
+            synchronized (handler)
+            {
+                return handler.emitWarning(title, message);
+            }
+        }
+
+        public void emitError(String title, String message)
+        {
+            synchronized (handler)
+            {
+                handler.emitError(title, message);
+            }
+        }
+
+        public void emitErrorAndBlockNext(String title, String message)
+        {
+            synchronized (handler)
+            {
+                handler.emitErrorAndBlockNext(title, message);
+            }
+        }
+
+        public int askQuestion(String title, String question, int choices)
+        {
+            synchronized (handler)
+            {
+                return handler.askQuestion(title, question, choices);
+            }
+        }
+
+        public int askQuestion(String title, String question, int choices, int default_choice)
+        {
+            synchronized (handler)
+            {
+                return handler.askQuestion(title, question, choices, default_choice);
+            }
+        }
+    }
+
+    /**
+     * Handler of a job compiled at the same time as other jobs. The progress of the job is kept
+     * until it is reported, so that the jobs do not report their progress over each other; the
+     * other calls are passed at once.
+     */
+    private static class DeferredProgressHandler extends SynchronizedHandler
+    {
+        private final List<Integer> substeps = new ArrayList<Integer>();
+
+        private final List<String> messages = new ArrayList<String>();
+
+        public DeferredProgressHandler(CompileHandler handler)
+        {
+            super(handler);
+        }
+
+        @Override
+        public void nextStep(String step_name, int step_no, int no_of_substeps)
+        {
+            // the steps are reported by the coordinating thread
+        }
+
+        @Override
+        public synchronized void progress(int substep_no, String message)
+        {
+            substeps.add(substep_no);
+            messages.add(message);
+        }
+
+        /**
+         * Passes the progress kept so far to the handler.
+         */
+        public synchronized void report()
+        {
+            for (int i = 0; i < substeps.size(); i++)
+            {
+                super.progress(substeps.get(i), messages.get(i));
+            }
+            substeps.clear();
+            messages.clear();
+        }
+    }
+
     /**
      * This PrintStream is used to track the Eclipse compiler output.
      * <p/>
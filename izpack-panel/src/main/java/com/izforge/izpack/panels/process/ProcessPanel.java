@@ -215,7 +215,7 @@ public class ProcessPanel extends IzPanel implements AbstractUIProcessHandler
 
             public void run()
             {
-                outputPane.setCaretPosition(outputPane.getText().length());
+                outputPane.setCaretPosition(outputPane.getDocument().getLength());
             }
         });
     }
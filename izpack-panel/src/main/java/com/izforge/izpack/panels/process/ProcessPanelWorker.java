@@ -22,6 +22,16 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This class does alle the work for the process panel.
@@ -31,6 +41,10 @@ import java.util.*;
  * <li>parsing the process spec XML file
  * <li>performing the actions described therein
  * </ul>
+ * <p/>
+ * Consecutive jobs marked as <tt>parallel</tt> are run at the same time, by at most
+ * {@link #THREADS_VARIABLE} threads. The output of the processes is collected and passed to the
+ * handler in batches, every {@link #OUTPUT_INTERVAL} milliseconds.
  *
  * @author Tino Schwarze
  */
@@ -42,6 +56,42 @@ public class ProcessPanelWorker implements Runnable
      */
     private static final String SPEC_RESOURCE_NAME = "ProcessPanel.Spec.xml";
 
+    /**
+     * Name of the variable holding the maximum number of parallel jobs run at the same time. Jobs
+     * are run one after the other if it is not set or lower than 2.
+     */
+    public static final String THREADS_VARIABLE = "ProcessPanel.threads";
+
+    /**
+     * Interval in milliseconds at which the output of the processes is passed to the handler.
+     */
+    static final long OUTPUT_INTERVAL = 100;
+
+    /**
+     * Maximum number of output lines waiting to be passed to the handler. Processes writing more
+     * output are blocked until the next batch has been passed.
+     */
+    static final int MAX_PENDING_LINES = 10000;
+
+    /**
+     * Time in milliseconds given to the output monitors to read the end of the output of a
+     * process which has terminated.
+     */
+    private static final long MONITOR_TIMEOUT = 500;
+
+    /**
+     * Threads reading the output of the processes, shared by all workers.
+     */
+    private static final ExecutorService monitors = Executors.newCachedThreadPool(new ThreadFactory()
+    {
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "IzPack process output");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     private VariableSubstitutor vs;
 
     protected AbstractUIProcessHandler handler;
@@ -85,12 +135,22 @@ public class ProcessPanelWorker implements Runnable
         this.handler = handler;
     }
 
+    /**
+     * Returns the processing specification.
+     *
+     * @return the specification resource
+     */
+    InputStream getSpec()
+    {
+        return ResourceManager.getInstance().getInputStream(SPEC_RESOURCE_NAME);
+    }
+
     private boolean readSpec() throws IOException
     {
         InputStream input;
         try
         {
-            input = ResourceManager.getInstance().getInputStream(SPEC_RESOURCE_NAME);
+            input = getSpec();
         }
         catch (Exception e)
         {
@@ -213,7 +273,8 @@ public class ProcessPanelWorker implements Runnable
                 }
                 else
                 {
-                    this.jobs.add(new ProcessingJob(job_name, ef_list));
+                    boolean parallel = Boolean.parseBoolean(job_el.getAttribute("parallel", "false"));
+                    this.jobs.add(new ProcessingJob(job_name, ef_list, parallel));
                 }
             }
         }
@@ -299,18 +360,14 @@ public class ProcessPanelWorker implements Runnable
 
         this.handler.startProcessing(this.jobs.size());
 
-        for (ProcessPanelWorker.ProcessingJob processingJob : this.jobs)
+        OutputBuffer output = new OutputBuffer(this.handler);
+        try
         {
-            this.handler.startProcess(processingJob.name);
-
-            this.result = processingJob.run(this.handler, this.vs);
-
-            this.handler.finishProcess();
-
-            if (!this.result)
-            {
-                break;
-            }
+            this.result = runJobs(output);
+        }
+        finally
+        {
+            output.close();
         }
 
         boolean unlockNext = true;
@@ -344,6 +401,165 @@ public class ProcessPanelWorker implements Runnable
         }
     }
 
+    /**
+     * Runs the jobs in their order, the consecutive parallel jobs at the same time.
+     *
+     * @param output the buffer receiving the output of the jobs
+     * @return true if all jobs succeeded, false otherwise
+     */
+    private boolean runJobs(OutputBuffer output)
+    {
+        int threads = getThreads();
+        ExecutorService executor = null;
+        try
+        {
+            int start = 0;
+            while (start < this.jobs.size())
+            {
+                int end = start + 1;
+                if (threads > 1 && this.jobs.get(start).parallel)
+                {
+                    while (end < this.jobs.size() && this.jobs.get(end).parallel)
+                    {
+                        end++;
+                    }
+                }
+
+                boolean success;
+                if (end - start == 1)
+                {
+                    success = runJob(this.jobs.get(start), new JobHandler(this.handler, output, null));
+                }
+                else
+                {
+                    if (executor == null)
+                    {
+                        executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+                        {
+                            public Thread newThread(Runnable runnable)
+                            {
+                                Thread thread = new Thread(runnable, "IzPack processing job");
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+                    }
+                    success = runConcurrently(this.jobs.subList(start, end), executor, output);
+                }
+                if (!success)
+                {
+                    return false;
+                }
+                start = end;
+            }
+            return true;
+        }
+        finally
+        {
+            if (executor != null)
+            {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Runs jobs at the same time. Once a job has failed, the jobs not started yet are skipped; the
+     * running ones are completed.
+     *
+     * @param jobs     the jobs to run
+     * @param executor the executor running the jobs
+     * @param output   the buffer receiving the output of the jobs, prefixed by the job names
+     * @return true if all jobs succeeded, false otherwise
+     */
+    private boolean runConcurrently(List<ProcessingJob> jobs, ExecutorService executor, final OutputBuffer output)
+    {
+        final AtomicBoolean failed = new AtomicBoolean();
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (final ProcessingJob job : jobs)
+        {
+            results.add(executor.submit(new Callable<Boolean>()
+            {
+                public Boolean call()
+                {
+                    if (failed.get())
+                    {
+                        return false;
+                    }
+                    boolean success = runJob(job, new JobHandler(handler, output, job.name));
+                    if (!success)
+                    {
+                        failed.set(true);
+                    }
+                    return success;
+                }
+            }));
+        }
+
+        boolean success = true;
+        for (Future<Boolean> result : results)
+        {
+            try
+            {
+                success &= result.get();
+            }
+            catch (InterruptedException exception)
+            {
+                for (Future<Boolean> other : results)
+                {
+                    other.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                this.handler.emitError("process interrupted", exception.toString());
+                return false;
+            }
+            catch (ExecutionException exception)
+            {
+                Throwable cause = exception.getCause();
+                if (cause instanceof RuntimeException)
+                {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error)
+                {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+        return success;
+    }
+
+    private boolean runJob(ProcessingJob job, AbstractUIProcessHandler jobHandler)
+    {
+        jobHandler.startProcess(job.name);
+        boolean success = job.run(jobHandler, this.vs);
+        jobHandler.finishProcess();
+        return success;
+    }
+
+    /**
+     * Returns the maximum number of parallel jobs run at the same time.
+     *
+     * @return the number of threads, 1 if the variable is not set or invalid
+     */
+    private int getThreads()
+    {
+        String threads = idata.getVariable(THREADS_VARIABLE);
+        if (threads != null)
+        {
+            try
+            {
+                return Math.max(1, Integer.parseInt(threads.trim()));
+            }
+            catch (NumberFormatException exception)
+            {
+                Debug.log("Invalid " + THREADS_VARIABLE + " value: " + threads);
+            }
+        }
+        return 1;
+    }
+
     /**
      * Start the compilation in a separate thread.
      */
@@ -381,10 +597,16 @@ public class ProcessPanelWorker implements Runnable
 
         private List<ProcessPanelWorker.Processable> processables;
 
-        public ProcessingJob(String name, List<ProcessPanelWorker.Processable> processables)
+        /**
+         * Whether the job may be run at the same time as the neighbouring parallel jobs.
+         */
+        private boolean parallel;
+
+        public ProcessingJob(String name, List<ProcessPanelWorker.Processable> processables, boolean parallel)
         {
             this.name = name;
             this.processables = processables;
+            this.parallel = parallel;
         }
 
         public boolean run(AbstractUIProcessHandler handler, VariableSubstitutor vs)
@@ -480,19 +702,15 @@ public class ProcessPanelWorker implements Runnable
 
                 ProcessPanelWorker.ExecutableFile.OutputMonitor stdoutMon = new ProcessPanelWorker.ExecutableFile.OutputMonitor(this.handler, process.getInputStream(), false);
                 ProcessPanelWorker.ExecutableFile.OutputMonitor stderrMon = new ProcessPanelWorker.ExecutableFile.OutputMonitor(this.handler, process.getErrorStream(), true);
-                Thread stdoutThread = new Thread(stdoutMon);
-                Thread stderrThread = new Thread(stderrMon);
-                stdoutThread.setDaemon(true);
-                stderrThread.setDaemon(true);
-                stdoutThread.start();
-                stderrThread.start();
+                Future<?> stdoutResult = monitors.submit(stdoutMon);
+                Future<?> stderrResult = monitors.submit(stderrMon);
 
                 try
                 {
                     int exitStatus = process.waitFor();
 
-                    stopMonitor(stdoutMon, stdoutThread);
-                    stopMonitor(stderrMon, stderrThread);
+                    stopMonitor(stdoutMon, stdoutResult);
+                    stopMonitor(stderrMon, stderrResult);
 
                     if (exitStatus != 0)
                     {
@@ -507,6 +725,10 @@ public class ProcessPanelWorker implements Runnable
                 catch (InterruptedException ie)
                 {
                     process.destroy();
+                    stdoutMon.doStop();
+                    stderrMon.doStop();
+                    stdoutResult.cancel(true);
+                    stderrResult.cancel(true);
                     this.handler.emitError("process interrupted", ie.toString());
                     return false;
                 }
@@ -520,33 +742,30 @@ public class ProcessPanelWorker implements Runnable
             return true;
         }
 
-        private void stopMonitor(ProcessPanelWorker.ExecutableFile.OutputMonitor monitor, Thread thread)
+        /**
+         * Waits for a monitor to read the end of the output, then stops it.
+         */
+        private void stopMonitor(ProcessPanelWorker.ExecutableFile.OutputMonitor monitor, Future<?> result)
         {
-            // taken from com.izforge.izpack.util.FileExecutor
-            monitor.doStop();
-            long softTimeout = 500;
             try
             {
-                thread.join(softTimeout);
+                result.get(MONITOR_TIMEOUT, TimeUnit.MILLISECONDS);
+                return;
             }
-            catch (InterruptedException e)
+            catch (TimeoutException e)
             {
+                // the output is still open, e.g. by a child process
             }
-
-            if (!thread.isAlive())
+            catch (ExecutionException e)
             {
                 return;
             }
-
-            thread.interrupt();
-            long hardTimeout = 500;
-            try
-            {
-                thread.join(hardTimeout);
-            }
             catch (InterruptedException e)
             {
+                Thread.currentThread().interrupt();
             }
+            monitor.doStop();
+            result.cancel(true);
         }
 
         static public class OutputMonitor implements Runnable
@@ -558,7 +777,7 @@ public class ProcessPanelWorker implements Runnable
 
             private BufferedReader reader;
 
-            private Boolean stop = false;
+            private volatile boolean stop = false;
 
             public OutputMonitor(AbstractUIProcessHandler handler, InputStream is, boolean stderr)
             {
@@ -583,12 +802,9 @@ public class ProcessPanelWorker implements Runnable
                             logfile.println(line);
                         }
 
-                        synchronized (this.stop)
+                        if (stop)
                         {
-                            if (stop)
-                            {
-                                return;
-                            }
+                            return;
                         }
                     }
                 }
@@ -609,10 +825,7 @@ public class ProcessPanelWorker implements Runnable
 
             public void doStop()
             {
-                synchronized (this.stop)
-                {
-                    this.stop = true;
-                }
+                this.stop = true;
             }
 
         }
@@ -726,6 +939,266 @@ public class ProcessPanelWorker implements Runnable
         }
     }
 
+    /**
+     * Handler given to a job. The output of the job is passed to an {@link OutputBuffer}, and the
+     * other calls are passed to the handler of the worker, one at a time.
+     */
+    private static class JobHandler implements AbstractUIProcessHandler
+    {
+        private final AbstractUIProcessHandler handler;
+
+        private final OutputBuffer output;
+
+        private final String prefix;
+
+        /**
+         * @param handler the handler of the worker
+         * @param output  the buffer receiving the output of the job
+         * @param name    the name of the job prefixing its output, or <tt>null</tt>
+         */
+        public JobHandler(AbstractUIProcessHandler handler, OutputBuffer output, String name)
+        {
+            this.handler = handler;
+            this.output = output;
+            this.prefix = (name == null || name.length() == 0) ? "" : "[" + name + "] ";
+        }
+
+        public void logOutput(String message, boolean stderr)
+        {
+            output.add(prefix + message, stderr);
+        }
+
+        public void startProcessing(int no_of_processes)
+        {
+            synchronized (handler)
+            {
+                handler.startProcessing(no_of_processes);
+            }
+        }
+
+        public void startProcess(String name)
+        {
+            synchronized (handler)
+            {
+                handler.startProcess(name);
+            }
+        }
+
+        public void finishProcess()
+        {
+            synchronized (handler)
+            {
+                handler.finishProcess();
+            }
+        }
+
+        public void finishProcessing(boolean unlockPrev, boolean unlockNext)
+        {
+            synchronized (handler)
+            {
+                handler.finishProcessing(unlockPrev, unlockNext);
+            }
+        }
+
+        public void emitNotification(String message)
+        {
+            output.flush();
+            synchronized (handler)
+            {
+                handler.emitNotification(message);
+            }
+        }
+
+        public boolean emitWarning(String title, String message)
+        {
+            output.flush();
+            synchronized (handler)
+            {
+                return handler.emitWarning(title, message);
+            }
+        }
+
+        public void emitError(String title, String message)
+        {
+            output.flush();
+            synchronized (handler)
+            {
+                handler.emitError(title, message);
+            }
+        }
+
+        public void emitErrorAndBlockNext(String title, String message)
+        {
+            output.flush();
+            synchronized (handler)
+            {
+                handler.emitErrorAndBlockNext(title, message);
+            }
+        }
+
+        public int askQuestion(String title, String question, int choices)
+        {
+            output.flush();
+            synchronized (handler)
+            {
+                return handler.askQuestion(title, question, choices);
+            }
+        }
+
+        public int askQuestion(String title, String question, int choices, int default_choice)
+        {
+            output.flush();
+            synchronized (handler)
+            {
+                return handler.askQuestion(title, question, choices, default_choice);
+            }
+        }
+    }
+
+    /**
+     * Collects the output of the jobs and passes it to a handler every {@link #OUTPUT_INTERVAL}
+     * milliseconds, the consecutive lines of a same stream as a single message. At most
+     * {@link #MAX_PENDING_LINES} lines are kept; the threads adding more lines wait for the next
+     * batch to be passed.
+     */
+    static class OutputBuffer implements Runnable
+    {
+        private final AbstractUIProcessHandler handler;
+
+        private final ScheduledExecutorService scheduler;
+
+        /**
+         * The pending messages, and the stream of each message.
+         */
+        private List<StringBuilder> messages = new ArrayList<StringBuilder>();
+
+        private List<Boolean> streams = new ArrayList<Boolean>();
+
+        private int pendingLines;
+
+        private boolean closed;
+
+        public OutputBuffer(AbstractUIProcessHandler handler)
+        {
+            this.handler = handler;
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "IzPack process output");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            scheduler.scheduleWithFixedDelay(this, OUTPUT_INTERVAL, OUTPUT_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Adds a line of output, waiting for the pending lines to be passed if there are too many.
+         *
+         * @param line   the line
+         * @param stderr true if the line has been written to stderr
+         */
+        public void add(String line, boolean stderr)
+        {
+            if (!buffer(line, stderr))
+            {
+                // too late to be batched; the handler is locked before this buffer, as in flush()
+                synchronized (handler)
+                {
+                    handler.logOutput(line, stderr);
+                }
+            }
+        }
+
+        /**
+         * Adds a line to the pending output.
+         *
+         * @return false if the buffer is closed and the line has not been added
+         */
+        private synchronized boolean buffer(String line, boolean stderr)
+        {
+            while (pendingLines >= MAX_PENDING_LINES && !closed)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException exception)
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (closed)
+            {
+                return false;
+            }
+            int last = streams.size() - 1;
+            if (last >= 0 && streams.get(last) == stderr)
+            {
+                messages.get(last).append('\n').append(line);
+            }
+            else
+            {
+                messages.add(new StringBuilder(line));
+                streams.add(stderr);
+            }
+            pendingLines++;
+            return true;
+        }
+
+        public void run()
+        {
+            flush();
+        }
+
+        /**
+         * Passes the pending output to the handler.
+         */
+        public void flush()
+        {
+            // the handler lock keeps the batches in order
+            synchronized (handler)
+            {
+                List<StringBuilder> batch;
+                List<Boolean> batchStreams;
+                synchronized (this)
+                {
+                    if (messages.isEmpty())
+                    {
+                        return;
+                    }
+                    batch = messages;
+                    batchStreams = streams;
+                    messages = new ArrayList<StringBuilder>();
+                    streams = new ArrayList<Boolean>();
+                    pendingLines = 0;
+                    notifyAll();
+                }
+                for (int i = 0; i < batch.size(); i++)
+                {
+                    handler.logOutput(batch.get(i).toString(), batchStreams.get(i));
+                }
+            }
+        }
+
+        /**
+         * Passes the pending output to the handler and stops batching.
+         */
+        public void close()
+        {
+            scheduler.shutdownNow();
+            flush();
+            synchronized (this)
+            {
+                closed = true;
+                notifyAll();
+            }
+            flush();
+        }
+    }
+
     /*------------------------ ExecuteForPack PATCH -------------------------*/
     /*
      * Verifies if the job is required for any of the packs listed. The job is required for a pack
@@ -0,0 +1,278 @@
+package com.izforge.izpack.panels.compile;
+
+import com.izforge.izpack.api.data.AutomatedInstallData;
+import com.izforge.izpack.api.data.LocaleDatabase;
+import com.izforge.izpack.api.data.ResourceManager;
+import com.izforge.izpack.core.substitutor.VariableSubstitutorImpl;
+import com.izforge.izpack.installer.data.InstallData;
+import org.hamcrest.core.Is;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Test for the compilation with the integrated Java compiler
+ */
+public class CompileWorkerTest
+{
+    private File directory;
+
+    private File sources;
+
+    private AutomatedInstallData installData;
+
+    private String resourceBasePath;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        directory = File.createTempFile("compile", "");
+        directory.delete();
+        sources = new File(directory, "src");
+        write("a/A.java", "package a; public class A { public String get() { return \"a\"; } }");
+        write("b/B.java", "package b; public class B { public int get() { return 2; } }");
+        write("c/C.java", "package c; public class C { public class Inner { } }");
+
+        installData = new InstallData(new Properties(), null);
+        installData.setLangpack(new LocaleDatabase(new ByteArrayInputStream("<langpack/>".getBytes("UTF-8"))));
+        installData.setVariable("SOURCES", sources.getAbsolutePath());
+
+        ResourceManager resources = ResourceManager.getInstance();
+        resourceBasePath = resources.getResourceBasePath();
+        resources.setResourceBasePath("/com/izforge/izpack/panels/compile/");
+    }
+
+    @After
+    public void tearDown()
+    {
+        ResourceManager.getInstance().setResourceBasePath(resourceBasePath);
+        delete(directory);
+    }
+
+    @Test
+    public void compileInProcess() throws Exception
+    {
+        RecordingHandler handler = new RecordingHandler();
+        CompileResult result = compile(handler, 1, "sequential");
+
+        assertThat(result.isSuccess(), Is.is(true));
+        assertThat(handler.errors.isEmpty(), Is.is(true));
+        List<String> classes = new ArrayList<String>(getClasses(new File(directory, "sequential")).keySet());
+        assertThat(classes, Is.is(Arrays.asList("a/A.class", "b/B.class", "c/C$Inner.class", "c/C.class")));
+    }
+
+    @Test
+    public void errorIsReported() throws Exception
+    {
+        checkErrorIsReported(1);
+    }
+
+    @Test
+    public void errorOfParallelJobIsReported() throws Exception
+    {
+        checkErrorIsReported(3);
+    }
+
+    private void checkErrorIsReported(int threads) throws Exception
+    {
+        write("b/B.java", "package b; public class B { public int get() { return \"b\"; } }");
+        RecordingHandler handler = new RecordingHandler();
+        CompileResult result = compile(handler, threads, "classes");
+
+        assertThat(result.isContinue(), Is.is(false));
+        assertThat(handler.errors.size(), Is.is(1));
+        assertThat(handler.errors.get(0).getStderr().contains("B.java:1: error: "), Is.is(true));
+        boolean reported = false;
+        for (String message : handler.messages)
+        {
+            reported |= message.contains("B.java:1: error: ");
+        }
+        assertThat(reported, Is.is(true));
+    }
+
+    @Test
+    public void parallelJobsCompileTheSameClasses() throws Exception
+    {
+        RecordingHandler sequentialHandler = new RecordingHandler();
+        assertThat(compile(sequentialHandler, 1, "sequential").isSuccess(), Is.is(true));
+        RecordingHandler parallelHandler = new RecordingHandler();
+        assertThat(compile(parallelHandler, 3, "parallel").isSuccess(), Is.is(true));
+
+        Map<String, byte[]> sequential = getClasses(new File(directory, "sequential"));
+        Map<String, byte[]> parallel = getClasses(new File(directory, "parallel"));
+        assertThat(parallel.keySet(), Is.is(sequential.keySet()));
+        for (String name : sequential.keySet())
+        {
+            assertThat(Arrays.equals(parallel.get(name), sequential.get(name)), Is.is(true));
+        }
+
+        // the steps are reported in job order
+        assertThat(parallelHandler.steps, Is.is(Arrays.asList(0, 1, 2)));
+        assertThat(parallelHandler.steps, Is.is(sequentialHandler.steps));
+    }
+
+    private CompileResult compile(RecordingHandler handler, int threads, String output) throws IOException
+    {
+        File classes = new File(directory, output);
+        classes.mkdirs();
+        installData.setVariable(CompileWorker.THREADS_VARIABLE, Integer.toString(threads));
+        CompileWorker worker = new CompileWorker(installData, handler,
+                new VariableSubstitutorImpl(installData.getVariables()));
+        worker.setCompiler("Integrated Java Compiler");
+        worker.setCompilerArguments("-g:none -d " + classes.getAbsolutePath());
+        worker.run();
+        return worker.getResult();
+    }
+
+    private void write(String name, String source) throws IOException
+    {
+        File file = new File(sources, name);
+        file.getParentFile().mkdirs();
+        FileWriter writer = new FileWriter(file);
+        try
+        {
+            writer.write(source);
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * Returns the content of the class files below a directory by relative path.
+     */
+    private Map<String, byte[]> getClasses(File classes) throws IOException
+    {
+        Map<String, byte[]> result = new TreeMap<String, byte[]>();
+        List<File> files = new ArrayList<File>();
+        files.add(classes);
+        while (!files.isEmpty())
+        {
+            File file = files.remove(files.size() - 1);
+            File[] children = file.listFiles();
+            if (children != null)
+            {
+                files.addAll(Arrays.asList(children));
+            }
+            else
+            {
+                String name = file.getAbsolutePath().substring(classes.getAbsolutePath().length() + 1);
+                result.put(name.replace(File.separatorChar, '/'), read(file));
+            }
+        }
+        return result;
+    }
+
+    private byte[] read(File file) throws IOException
+    {
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1)
+            {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private void delete(File file)
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (File child : children)
+            {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static class RecordingHandler implements CompileHandler
+    {
+        private final List<Integer> steps = new ArrayList<Integer>();
+
+        private final List<String> messages = new ArrayList<String>();
+
+        private final List<CompileResult> errors = new ArrayList<CompileResult>();
+
+        public void handleCompileError(CompileResult error)
+        {
+            errors.add(error);
+        }
+
+        public void startAction(String name, int no_of_steps)
+        {
+        }
+
+        public void stopAction()
+        {
+        }
+
+        public void nextStep(String jobName, int max, int jobNo)
+        {
+            steps.add(jobNo);
+        }
+
+        public void setSubStepNo(int no_of_substeps)
+        {
+        }
+
+        public void progress(int substep_no, String message)
+        {
+            messages.add(message);
+        }
+
+        public void emitNotification(String message)
+        {
+        }
+
+        public boolean emitWarning(String title, String message)
+        {
+            return true;
+        }
+
+        public void emitError(String title, String message)
+        {
+        }
+
+        public void emitErrorAndBlockNext(String title, String message)
+        {
+        }
+
+        public int askQuestion(String title, String question, int choices)
+        {
+            return ANSWER_YES;
+        }
+
+        public int askQuestion(String title, String question, int choices, int default_choice)
+        {
+            return default_choice;
+        }
+    }
+}
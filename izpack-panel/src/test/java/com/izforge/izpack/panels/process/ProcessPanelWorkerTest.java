@@ -0,0 +1,364 @@
+package com.izforge.izpack.panels.process;
+
+import com.izforge.izpack.api.data.AutomatedInstallData;
+import com.izforge.izpack.api.handler.AbstractUIProcessHandler;
+import com.izforge.izpack.core.substitutor.VariableSubstitutorImpl;
+import com.izforge.izpack.installer.data.InstallData;
+import org.hamcrest.core.Is;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Test for the running of parallel jobs and the batching of the process output
+ */
+public class ProcessPanelWorkerTest
+{
+    /**
+     * The jobs of the spec, in their order: "first", the parallel jobs "a" to "d", "middle", and
+     * the parallel jobs "e" and "f".
+     */
+    private static final List<String> JOBS = Arrays.asList("first", "a", "b", "c", "d", "middle", "e", "f");
+
+    private static final AtomicInteger RUNS = new AtomicInteger();
+
+    @Test
+    public void jobsRunOneAfterTheOtherWithoutThreads() throws Exception
+    {
+        Run run = new Run(null, null, 0);
+        RecordingHandler handler = run(run, null);
+
+        assertThat(run.result, Is.is(true));
+        assertThat(run.maxRunning.get(), Is.is(1));
+        List<String> expected = new ArrayList<String>();
+        for (String job : JOBS)
+        {
+            expected.add("start " + job);
+            expected.add("end " + job);
+        }
+        assertThat(run.events, Is.is(expected));
+        assertThat(handler.getLines().contains("output of a"), Is.is(true));
+        assertThat(handler.errors.isEmpty(), Is.is(true));
+    }
+
+    @Test
+    public void consecutiveParallelJobsRunAtTheSameTime() throws Exception
+    {
+        // the four parallel jobs wait for each other, so they must all be running together
+        Run run = new Run(new CyclicBarrier(4), null, 0);
+        RecordingHandler handler = run(run, "4");
+
+        assertThat(run.result, Is.is(true));
+        assertThat(run.maxRunning.get(), Is.is(4));
+        assertThat(run.events.subList(0, 2), Is.is(Arrays.asList("start first", "end first")));
+        assertThat(new HashSet<String>(run.events.subList(2, 10)),
+                   Is.is(new HashSet<String>(Arrays.asList("start a", "start b", "start c", "start d",
+                                                           "end a", "end b", "end c", "end d"))));
+        assertThat(run.events.subList(10, 12), Is.is(Arrays.asList("start middle", "end middle")));
+        assertThat(new HashSet<String>(run.events.subList(12, 16)),
+                   Is.is(new HashSet<String>(Arrays.asList("start e", "start f", "end e", "end f"))));
+        assertThat(handler.errors.isEmpty(), Is.is(true));
+    }
+
+    @Test
+    public void parallelJobsAreLimitedToTheThreads() throws Exception
+    {
+        Run run = new Run(new CyclicBarrier(2), null, 0);
+        run(run, "2");
+
+        assertThat(run.result, Is.is(true));
+        assertThat(run.maxRunning.get(), Is.is(2));
+        assertThat(run.events.size(), Is.is(2 * JOBS.size()));
+    }
+
+    @Test
+    public void outputOfParallelJobsIsPrefixedByTheirNames() throws Exception
+    {
+        Run run = new Run(new CyclicBarrier(4), null, 0);
+        RecordingHandler handler = run(run, "4");
+
+        List<String> lines = handler.getLines();
+        for (String job : Arrays.asList("a", "b", "c", "d", "e", "f"))
+        {
+            assertThat(lines.contains("[" + job + "] output of " + job), Is.is(true));
+        }
+        assertThat(lines.contains("output of first"), Is.is(true));
+        assertThat(lines.contains("output of middle"), Is.is(true));
+        assertThat(lines.size(), Is.is(JOBS.size()));
+    }
+
+    @Test
+    public void jobsNotStartedAreSkippedAfterAFailure() throws Exception
+    {
+        // "a" fails while "b" is running; "b" completes, the jobs after them are not run
+        Run run = new Run(new CyclicBarrier(2), "a", 500);
+        run(run, "2");
+
+        assertThat(run.result, Is.is(false));
+        assertThat(run.events.subList(0, 2), Is.is(Arrays.asList("start first", "end first")));
+        assertThat(new HashSet<String>(run.events.subList(2, run.events.size())),
+                   Is.is(new HashSet<String>(Arrays.asList("start a", "start b", "end a", "end b"))));
+        assertThat(run.events.size(), Is.is(6));
+    }
+
+    /**
+     * Runs the spec.
+     *
+     * @param run     the run, defining how the jobs behave and recording what they did
+     * @param threads the value of the threads variable, or <tt>null</tt>
+     * @return the handler of the worker
+     */
+    private RecordingHandler run(Run run, String threads) throws IOException
+    {
+        String id = Integer.toString(RUNS.incrementAndGet());
+        Job.runs.put(id, run);
+        try
+        {
+            AutomatedInstallData installData = new InstallData(new Properties(), null);
+            installData.setVariable("RUN", id);
+            if (threads != null)
+            {
+                installData.setVariable(ProcessPanelWorker.THREADS_VARIABLE, threads);
+            }
+            ProcessPanelWorker worker = new ProcessPanelWorker(installData,
+                                                               new VariableSubstitutorImpl(installData.getVariables()),
+                                                               null)
+            {
+                @Override
+                InputStream getSpec()
+                {
+                    return ProcessPanelWorkerTest.class.getResourceAsStream("ProcessPanel.Spec.xml");
+                }
+            };
+            RecordingHandler handler = new RecordingHandler();
+            worker.setHandler(handler);
+            worker.run();
+            run.result = worker.getResult();
+            return handler;
+        }
+        finally
+        {
+            Job.runs.remove(id);
+        }
+    }
+    @Test
+    public void outputIsBatchedByStream()
+    {
+        RecordingHandler handler = new RecordingHandler();
+        ProcessPanelWorker.OutputBuffer output = new ProcessPanelWorker.OutputBuffer(handler);
+        output.add("a", false);
+        output.add("b", false);
+        output.add("c", true);
+        output.add("d", false);
+        output.close();
+
+        assertThat(handler.messages, Is.is(Arrays.asList("out:a\nb", "err:c", "out:d")));
+    }
+
+    @Test
+    public void outputAfterCloseIsPassedDirectly()
+    {
+        RecordingHandler handler = new RecordingHandler();
+        ProcessPanelWorker.OutputBuffer output = new ProcessPanelWorker.OutputBuffer(handler);
+        output.add("a", false);
+        output.close();
+        output.add("b", false);
+
+        assertThat(handler.messages, Is.is(Arrays.asList("out:a", "out:b")));
+    }
+
+    @Test
+    public void writersWaitForPendingOutput() throws InterruptedException
+    {
+        final RecordingHandler handler = new RecordingHandler();
+        final ProcessPanelWorker.OutputBuffer output = new ProcessPanelWorker.OutputBuffer(handler);
+        final int lines = 3 * ProcessPanelWorker.MAX_PENDING_LINES;
+        Thread writer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                for (int i = 0; i < lines; i++)
+                {
+                    output.add(Integer.toString(i), false);
+                }
+            }
+        };
+        writer.start();
+        writer.join(10000);
+        output.close();
+
+        assertThat(writer.isAlive(), Is.is(false));
+        assertThat(handler.messages.size() > 1, Is.is(true));
+        StringBuilder expected = new StringBuilder();
+        StringBuilder actual = new StringBuilder();
+        for (int i = 0; i < lines; i++)
+        {
+            expected.append(i).append('\n');
+        }
+        for (String message : handler.messages)
+        {
+            actual.append(message.substring("out:".length())).append('\n');
+        }
+        assertThat(actual.toString(), Is.is(expected.toString()));
+    }
+
+    /**
+     * How the jobs of a run behave, and what they did.
+     */
+    private static class Run
+    {
+        private final CyclicBarrier barrier;
+
+        private final String failing;
+
+        private final long delay;
+
+        private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+        private final AtomicInteger running = new AtomicInteger();
+
+        private final AtomicInteger maxRunning = new AtomicInteger();
+
+        private boolean result;
+
+        /**
+         * @param barrier the barrier the jobs "a" to "d" wait for, or <tt>null</tt>
+         * @param failing the name of the job failing, or <tt>null</tt>
+         * @param delay   the time in milliseconds the other jobs wait for after the barrier
+         */
+        public Run(CyclicBarrier barrier, String failing, long delay)
+        {
+            this.barrier = barrier;
+            this.failing = failing;
+            this.delay = delay;
+        }
+    }
+
+    /**
+     * Job of the spec, run as an <tt>executeclass</tt> with the id of the run and the job name as
+     * arguments.
+     */
+    public static class Job
+    {
+        private static final Map<String, Run> runs = new ConcurrentHashMap<String, Run>();
+
+        public boolean run(AbstractUIProcessHandler handler, String[] args) throws Exception
+        {
+            Run run = runs.get(args[0]);
+            String name = args[1];
+            run.events.add("start " + name);
+            int running = run.running.incrementAndGet();
+            int max;
+            while ((max = run.maxRunning.get()) < running && !run.maxRunning.compareAndSet(max, running))
+            {
+                // retry
+            }
+            try
+            {
+                handler.logOutput("output of " + name, false);
+                if (run.barrier != null && Arrays.asList("a", "b", "c", "d").contains(name))
+                {
+                    run.barrier.await(10, TimeUnit.SECONDS);
+                }
+                if (name.equals(run.failing))
+                {
+                    return false;
+                }
+                Thread.sleep(run.delay);
+                return true;
+            }
+            finally
+            {
+                run.running.decrementAndGet();
+                run.events.add("end " + name);
+            }
+        }
+    }
+
+    private static class RecordingHandler implements AbstractUIProcessHandler
+    {
+        private final List<String> messages = new ArrayList<String>();
+
+        private final List<String> errors = new ArrayList<String>();
+
+        public void logOutput(String message, boolean stderr)
+        {
+            messages.add((stderr ? "err:" : "out:") + message);
+        }
+
+        /**
+         * Returns the lines written to stdout.
+         */
+        public List<String> getLines()
+        {
+            List<String> lines = new ArrayList<String>();
+            for (String message : messages)
+            {
+                if (message.startsWith("out:"))
+                {
+                    lines.addAll(Arrays.asList(message.substring("out:".length()).split("\n")));
+                }
+            }
+            return lines;
+        }
+
+        public void startProcessing(int no_of_processes)
+        {
+        }
+
+        public void startProcess(String name)
+        {
+        }
+
+        public void finishProcess()
+        {
+        }
+
+        public void finishProcessing(boolean unlockPrev, boolean unlockNext)
+        {
+        }
+
+        public void emitNotification(String message)
+        {
+        }
+
+        public boolean emitWarning(String title, String message)
+        {
+            return true;
+        }
+
+        public void emitError(String title, String message)
+        {
+            errors.add(title + ": " + message);
+        }
+
+        public void emitErrorAndBlockNext(String title, String message)
+        {
+        }
+
+        public int askQuestion(String title, String question, int choices)
+        {
+            return ANSWER_YES;
+        }
+
+        public int askQuestion(String title, String question, int choices, int default_choice)
+        {
+            return default_choice;
+        }
+    }
+}
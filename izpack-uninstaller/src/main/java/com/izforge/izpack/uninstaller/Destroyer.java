@@ -30,9 +30,23 @@ import com.izforge.izpack.util.unix.ShellScript;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -48,6 +62,22 @@ public class Destroyer extends Thread
      */
     private boolean forceDestroy;
 
+    /**
+     * System property giving the number of threads deleting the files. The files are deleted by the destroyer
+     * thread if it is not set or lower than 2, or when file listeners are defined.
+     */
+    public static final String THREADS_PROPERTY = "izpack.uninstaller.threads";
+
+    /**
+     * The interval between two progress notifications during a concurrent deletion, in milliseconds.
+     */
+    private static final long PROGRESS_INTERVAL = 100;
+
+    /**
+     * The maximum number of undeleted files listed in the warning.
+     */
+    private static final int MAX_REPORTED_FILES = 20;
+
     /**
      * The installation path.
      */
@@ -98,18 +128,15 @@ public class Destroyer extends Thread
             handler.startAction("destroy", size);
 
             // We destroy the files
-            for (int i = 0; i < size; i++)
+            List<File> undeleted;
+            if (listeners[1].isEmpty())
             {
-                File file = files.get(i);
-                // Custem action listener stuff --- beforeDelete ----
-                informListeners(listeners[1], UninstallerListener.BEFORE_DELETE, file, handler);
-
-                file.delete();
-
-                // Custem action listener stuff --- afterDelete ----
-                informListeners(listeners[1], UninstallerListener.AFTER_DELETE, file, handler);
-
-                handler.progress(i, file.getAbsolutePath());
+                // no listener has to be informed of each file: the files may be deleted concurrently
+                undeleted = deleteFiles(files, getThreads());
+            }
+            else
+            {
+                undeleted = deleteFiles(files, listeners[1]);
             }
 
             // Custem action listener stuff --- afterDeletion ----
@@ -129,6 +156,7 @@ public class Destroyer extends Thread
             cleanup(new File(installPath));
 
             handler.stopAction();
+            reportUndeletedFiles(undeleted);
         }
         catch (Throwable err)
         {
@@ -142,6 +170,152 @@ public class Destroyer extends Thread
         }
     }
 
+    /**
+     * Deletes the files one by one, in the order of the list, informing the file listeners of each of them.
+     *
+     * @param files     the files to delete, children before their parents
+     * @param listeners the file listeners
+     * @return the files which could not be deleted
+     */
+    private List<File> deleteFiles(List<File> files, List<UninstallerListener> listeners)
+    {
+        List<File> undeleted = new ArrayList<File>();
+        for (int i = 0; i < files.size(); i++)
+        {
+            File file = files.get(i);
+            // Custem action listener stuff --- beforeDelete ----
+            informListeners(listeners, UninstallerListener.BEFORE_DELETE, file, handler);
+
+            if (!file.delete() && file.exists())
+            {
+                undeleted.add(file);
+            }
+
+            // Custem action listener stuff --- afterDelete ----
+            informListeners(listeners, UninstallerListener.AFTER_DELETE, file, handler);
+
+            handler.progress(i, file.getAbsolutePath());
+        }
+        return undeleted;
+    }
+
+    /**
+     * Deletes files concurrently. The files without children in the list are deleted in batches, one
+     * batch per directory; a file having children in the list (a directory) is deleted once all of them
+     * have been processed, by the thread processing the last one. The progress is reported periodically.
+     * If a worker fails, the rest of its batch is reported as undeleted.
+     *
+     * @param files   the files to delete
+     * @param threads the number of deleting threads
+     * @return the files which could not be deleted
+     * @throws InterruptedException if the thread is interrupted while waiting for the deletion
+     */
+    List<File> deleteFiles(List<File> files, int threads) throws InterruptedException
+    {
+        final ParallelDeletion deletion = new ParallelDeletion(files);
+        Collection<List<File>> batches = deletion.getLeafBatches();
+        if (threads < 2 || batches.size() < 2)
+        {
+            for (List<File> batch : batches)
+            {
+                deletion.delete(batch);
+                handler.progress(deletion.getProcessed(), deletion.getLastFile().getAbsolutePath());
+            }
+            return deletion.getUndeleted();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, batches.size()),
+                new ThreadFactory()
+                {
+                    public Thread newThread(Runnable runnable)
+                    {
+                        Thread thread = new Thread(runnable, "IzPack - Destroyer worker");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        try
+        {
+            for (final List<File> batch : batches)
+            {
+                executor.execute(new Runnable()
+                {
+                    public void run()
+                    {
+                        deletion.delete(batch);
+                    }
+                });
+            }
+            executor.shutdown();
+            // stop waiting once the workers are gone, even if a file was left unprocessed
+            while (!deletion.await(PROGRESS_INTERVAL) && !executor.isTerminated())
+            {
+                File last = deletion.getLastFile();
+                if (last != null)
+                {
+                    handler.progress(deletion.getProcessed(), last.getAbsolutePath());
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        return deletion.getUndeleted();
+    }
+
+    /**
+     * Returns the number of deleting threads, given by the {@link #THREADS_PROPERTY} system property,
+     * by default 1.
+     */
+    private int getThreads()
+    {
+        String threads = System.getProperty(THREADS_PROPERTY);
+        if (threads != null)
+        {
+            try
+            {
+                return Math.max(1, Integer.parseInt(threads.trim()));
+            }
+            catch (NumberFormatException exception)
+            {
+                Debug.log("Invalid " + THREADS_PROPERTY + " value: " + threads);
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Reports the files which could not be deleted and which are still there after the cleanup.
+     *
+     * @param files the files which could not be deleted
+     */
+    private void reportUndeletedFiles(List<File> files)
+    {
+        List<File> remaining = new ArrayList<File>();
+        for (File file : files)
+        {
+            if (file.exists())
+            {
+                Debug.log("Could not delete " + file);
+                remaining.add(file);
+            }
+        }
+        if (!remaining.isEmpty())
+        {
+            StringBuilder message = new StringBuilder("The following files could not be deleted:");
+            for (int i = 0; i < remaining.size() && i < MAX_REPORTED_FILES; i++)
+            {
+                message.append('\n').append(remaining.get(i).getAbsolutePath());
+            }
+            if (remaining.size() > MAX_REPORTED_FILES)
+            {
+                message.append("\n... (").append(remaining.size() - MAX_REPORTED_FILES).append(" more)");
+            }
+            handler.emitWarning("Uninstallation incomplete", message.toString());
+        }
+    }
+
     /**
      * Asks the JVM for the uninstaller deletion.
      *
@@ -376,4 +550,182 @@ public class Destroyer extends Thread
 
     // CUSTOM ACTION STUFF -------------- end -----------------
 
+    /**
+     * State of a concurrent deletion of files.
+     */
+    private static class ParallelDeletion
+    {
+        /**
+         * The nearest ancestor of each file which is in the list.
+         */
+        private final Map<File, File> parents = new HashMap<File, File>();
+
+        /**
+         * The number of children not processed yet of each file having children in the list.
+         */
+        private final Map<File, AtomicInteger> pendingChildren = new HashMap<File, AtomicInteger>();
+
+        private final Map<File, List<File>> leafBatches = new LinkedHashMap<File, List<File>>();
+
+        private final Queue<File> undeleted = new ConcurrentLinkedQueue<File>();
+
+        private final CountDownLatch remaining;
+
+        private final int count;
+
+        private volatile File lastFile;
+
+        ParallelDeletion(List<File> files)
+        {
+            Set<File> listed = new LinkedHashSet<File>(files);
+            count = listed.size();
+            remaining = new CountDownLatch(count);
+            for (File file : listed)
+            {
+                File parent = file.getParentFile();
+                while (parent != null && !listed.contains(parent))
+                {
+                    parent = parent.getParentFile();
+                }
+                if (parent != null)
+                {
+                    parents.put(file, parent);
+                    AtomicInteger pending = pendingChildren.get(parent);
+                    if (pending == null)
+                    {
+                        pending = new AtomicInteger();
+                        pendingChildren.put(parent, pending);
+                    }
+                    pending.incrementAndGet();
+                }
+            }
+            for (File file : listed)
+            {
+                if (!pendingChildren.containsKey(file))
+                {
+                    File directory = file.getParentFile();
+                    List<File> batch = leafBatches.get(directory);
+                    if (batch == null)
+                    {
+                        batch = new ArrayList<File>();
+                        leafBatches.put(directory, batch);
+                    }
+                    batch.add(file);
+                }
+            }
+        }
+
+        Collection<List<File>> getLeafBatches()
+        {
+            return leafBatches.values();
+        }
+
+        /**
+         * Deletes a batch of files, then the listed ancestors whose children have all been processed.
+         * If the deletion fails, the rest of the batch and the ancestors it completes are processed without
+         * being deleted, so that the deletion still completes.
+         */
+        void delete(List<File> batch)
+        {
+            File current = null;
+            int next = 0;
+            try
+            {
+                while (next < batch.size())
+                {
+                    current = batch.get(next++);
+                    while (current != null)
+                    {
+                        current = process(current, true);
+                    }
+                }
+            }
+            finally
+            {
+                if (current != null)
+                {
+                    // the failed file has been processed, but not its ancestors
+                    File file = release(current);
+                    while (file != null)
+                    {
+                        file = process(file, false);
+                    }
+                    while (next < batch.size())
+                    {
+                        file = batch.get(next++);
+                        while (file != null)
+                        {
+                            file = process(file, false);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Processes a file, recording it as undeleted unless it is deleted.
+         *
+         * @param file   the file
+         * @param delete <tt>true</tt> to delete the file
+         * @return the ancestor to process next, if this file was its last pending child
+         */
+        private File process(File file, boolean delete)
+        {
+            boolean deleted = false;
+            try
+            {
+                deleted = delete && (file.delete() || !file.exists());
+            }
+            catch (SecurityException exception)
+            {
+                Debug.log("Cannot delete " + file + ": " + exception);
+            }
+            finally
+            {
+                if (!deleted)
+                {
+                    undeleted.add(file);
+                }
+                lastFile = file;
+                remaining.countDown();
+            }
+            return release(file);
+        }
+
+        /**
+         * Returns the listed ancestor of a processed file, if the file was its last pending child.
+         */
+        private File release(File file)
+        {
+            File parent = parents.get(file);
+            return (parent != null && pendingChildren.get(parent).decrementAndGet() == 0) ? parent : null;
+        }
+
+        /**
+         * Waits for all the files to be processed.
+         *
+         * @param timeout the maximum time to wait, in milliseconds
+         * @return <tt>true</tt> if all the files have been processed
+         */
+        boolean await(long timeout) throws InterruptedException
+        {
+            return remaining.await(timeout, TimeUnit.MILLISECONDS);
+        }
+
+        int getProcessed()
+        {
+            return count - (int) remaining.getCount();
+        }
+
+        File getLastFile()
+        {
+            return lastFile;
+        }
+
+        List<File> getUndeleted()
+        {
+            return new ArrayList<File>(undeleted);
+        }
+    }
+
 }
@@ -2,6 +2,7 @@ package com.izforge.izpack.uninstaller;
 
 import com.izforge.izpack.api.handler.AbstractUIProgressHandler;
 import org.apache.commons.io.FileUtils;
+import org.hamcrest.core.Is;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.internal.matchers.IsCollectionContaining;
@@ -10,6 +11,8 @@ import org.mockito.Mockito;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 
@@ -38,6 +41,72 @@ public class DestroyerTest
                 files.get(1), files.get(2)));
     }
 
+    @Test
+    public void testDeleteFilesConcurrently() throws Exception
+    {
+        File root = temporaryFolder.newFolder("installation");
+        List<File> installed = new ArrayList<File>();
+        installed.add(root);
+        for (int i = 0; i < 10; i++)
+        {
+            File directory = new File(root, "dir" + i);
+            File subDirectory = new File(directory, "sub");
+            subDirectory.mkdirs();
+            installed.add(directory);
+            installed.add(subDirectory);
+            for (int j = 0; j < 20; j++)
+            {
+                File file = new File(subDirectory, "file" + j);
+                file.createNewFile();
+                installed.add(file);
+            }
+        }
+        File kept = new File(root, "dir0" + File.separator + "kept");
+        kept.createNewFile();
+
+        Destroyer destroyer = new Destroyer("", false, Mockito.mock(AbstractUIProgressHandler.class));
+        List<File> undeleted = destroyer.deleteFiles(installed, 4);
+
+        assertThat(undeleted, Is.is(Arrays.asList(new File(root, "dir0"), root)));
+        for (File file : installed.subList(2, installed.size()))
+        {
+            assertThat(file.exists(), Is.is(false));
+        }
+        assertThat(kept.exists(), Is.is(true));
+    }
+
+    @Test(timeout = 30000)
+    public void testFailingWorkerReportsRestOfBatch() throws Exception
+    {
+        File root = temporaryFolder.newFolder("installation");
+        File failing = new File(root, "failing");
+        List<File> installed = new ArrayList<File>();
+        installed.add(root);
+        for (String name : new String[]{"failing", "other"})
+        {
+            File directory = new File(root, name);
+            directory.mkdirs();
+            installed.add(directory);
+            for (int i = 0; i < 5; i++)
+            {
+                File file = new File(directory, "file" + i);
+                file.createNewFile();
+                installed.add((name.equals("failing") && i == 1) ? new UndeletableFile(file) : file);
+            }
+        }
+
+        Destroyer destroyer = new Destroyer("", false, Mockito.mock(AbstractUIProgressHandler.class));
+        List<File> undeleted = destroyer.deleteFiles(installed, 4);
+
+        assertThat(undeleted.size(), Is.is(6));
+        assertThat(undeleted, IsCollectionContaining.<File>hasItems(
+                new File(failing, "file1"), new File(failing, "file2"), new File(failing, "file3"),
+                new File(failing, "file4"), failing, root));
+        assertThat(new File(failing, "file0").exists(), Is.is(false));
+        assertThat(new File(failing, "file4").exists(), Is.is(true));
+        assertThat(new File(root, "other").exists(), Is.is(false));
+    }
+
     private ArrayList<File> createTestFiles() throws IOException
     {
         File temporaryFolder = this.temporaryFolder.newFolder("tempTestFolder");
@@ -55,4 +124,23 @@ public class DestroyerTest
         FileUtils.writeLines(logInstall, listFileToDelete);
         return listFileToDelete;
     }
+
+    /**
+     * A file whose deletion fails unexpectedly.
+     */
+    private static class UndeletableFile extends File
+    {
+        private static final long serialVersionUID = 1L;
+
+        UndeletableFile(File file)
+        {
+            super(file.getPath());
+        }
+
+        @Override
+        public boolean delete()
+        {
+            throw new IllegalStateException("Cannot delete " + getPath());
+        }
+    }
 }
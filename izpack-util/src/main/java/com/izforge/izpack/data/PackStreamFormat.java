@@ -0,0 +1,105 @@
+/*
+ * IzPack - Copyright 2001-2010 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.data;
+
+/**
+ * Constants of the binary pack stream format shared by the compiler and the installer.
+ * <p/>
+ * A pack stream starts with the {@link #MAGIC} number, the format {@link #VERSION} and the number
+ * of files. Every file is described by a fixed layout header:
+ * <pre>
+ * int     flags
+ * string  parent directory of the target path (shared)
+ * utf     name of the target file
+ * string  relative source path (inline, nullable)
+ * long    length
+ * long    last modification time
+ * byte    override type ordinal + 1, 0 for none
+ * byte    blockable ordinal + 1, 0 for none
+ * string  override rename expression (inline, nullable)
+ * string  condition (shared, nullable)
+ * [string previous pack id (shared), long offset]  if FLAG_BACK_REFERENCE
+ * [int length, bytes]                              if FLAG_EXTRA: serialized OS constraints and additionals
+ * </pre>
+ * If {@link #FLAG_DATA} is set, the header is followed by the file content (or the pack200 or
+ * shared entry key) and the CRC32 of that content. Shared strings are written once and referred to by index
+ * afterwards. The file headers are followed by the parsable, executable and update check
+ * descriptions written with an <code>ObjectOutputStream</code>.
+ * <p/>
+ * Packs not starting with the magic number are read as a sequence of serialized objects, the
+ * format used by former versions.
+ */
+public final class PackStreamFormat
+{
+    /**
+     * Magic number of a binary pack stream ("IZPK").
+     */
+    public static final int MAGIC = 0x495A504B;
+
+    /**
+     * Version of the binary pack stream format.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The file is a directory.
+     */
+    public static final int FLAG_DIRECTORY = 0x01;
+
+    /**
+     * The file content is stored in a previous pack.
+     */
+    public static final int FLAG_BACK_REFERENCE = 0x02;
+
+    /**
+     * The file is a jar stored as pack200 archive; its content is the key of the archive.
+     */
+    public static final int FLAG_PACK200 = 0x04;
+
+    /**
+     * The header is followed by the file content and its checksum.
+     */
+    public static final int FLAG_DATA = 0x08;
+
+    /**
+     * The header contains serialized OS constraints and additionals.
+     */
+    public static final int FLAG_EXTRA = 0x10;
+
+    /**
+     * The file content is stored in a separate entry shared with other packs; its content is the
+     * key of the entry.
+     */
+    public static final int FLAG_SHARED = 0x20;
+
+    /**
+     * The file is executable and gets the execute permission when installed on Unix.
+     */
+    public static final int FLAG_EXECUTABLE = 0x40;
+
+    /**
+     * Index written for a <tt>null</tt> string.
+     */
+    public static final int NULL_STRING = -1;
+
+    private PackStreamFormat()
+    {
+    }
+}
@@ -27,8 +27,13 @@ import com.izforge.izpack.data.ExecutableFile;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Executes a bunch of files. This class is intended to do a system dependent installation
@@ -42,6 +47,11 @@ public class FileExecutor
 {
     private static final String JAR_FILE_SUFFIX = ".jar";
 
+    /**
+     * The maximum number of files made executable by a single chmod command.
+     */
+    private static final int CHMOD_BATCH_SIZE = 100;
+
     private boolean stopThread(Thread t, MonitorInputStream monitorInputStream)
     {
         monitorInputStream.doStop();
@@ -227,8 +237,6 @@ public class FileExecutor
                 process = Runtime.getRuntime().exec(params);
             }
 
-            process = Runtime.getRuntime().exec(params);
-
             boolean isConsole = false;// TODO: impl from xml <execute
             // in_console=true ...>, but works already
             // if this flag is true
@@ -281,6 +289,8 @@ public class FileExecutor
             stopThread(errMonitorThread, errMonitor);
             output[0] = "";
             output[1] = e.getMessage() + "\n";
+            // let the caller know the command did not complete
+            Thread.currentThread().interrupt();
         }
         catch (IOException e)
         {
@@ -315,9 +325,24 @@ public class FileExecutor
     {
         int exitStatus = 0;
         String[] output = new String[2];
-        // String permissions = (System.getProperty("user.name").equals("root"))
-        // ? "a+x" : "u+x";
-        String permissions = "a+x";
+
+        // fix executable permission for unix systems, at once for the files already installed
+        boolean setPermissions = currentStage != ExecutableFile.UNINSTALL && OsVersion.IS_UNIX;
+        Set<File> executables = new HashSet<File>();
+        Map<File, Integer> permissionFailures = new HashMap<File, Integer>();
+        if (setPermissions)
+        {
+            for (ExecutableFile efile : this.files)
+            {
+                File file = new File(efile.path);
+                if (ExecutableFile.BIN == efile.type && OsConstraintHelper.oneMatchesCurrentSystem(efile.osList)
+                        && file.exists())
+                {
+                    executables.add(file);
+                }
+            }
+            permissionFailures.putAll(makeExecutable(new ArrayList<File>(executables)));
+        }
 
         // loop through all executables
         Iterator<ExecutableFile> efileIterator = this.files.iterator();
@@ -335,16 +360,19 @@ public class FileExecutor
                 continue;
             }
 
-            if (ExecutableFile.BIN == efile.type && currentStage != ExecutableFile.UNINSTALL && OsVersion.IS_UNIX)
+            if (ExecutableFile.BIN == efile.type && setPermissions)
             {
-                // fix executable permission for unix systems
-                Debug.trace("making file executable (setting executable flag)");
-                String[] params = {"/bin/chmod", permissions, file.toString()};
-                exitStatus = executeCommand(params, output);
-                if (exitStatus != 0)
+                if (!executables.contains(file))
                 {
-                    handler.emitWarning("file execution error", "Error executing \n" + params[0]
-                            + " " + params[1] + " " + params[2]);
+                    // the file was created by a previous executable
+                    Debug.trace("making file executable (setting executable flag)");
+                    permissionFailures.putAll(makeExecutable(Collections.singletonList(file)));
+                }
+                Integer status = permissionFailures.get(file);
+                if (status != null)
+                {
+                    exitStatus = status;
+                    handler.emitWarning("file execution error", "Error executing \n/bin/chmod a+x " + file);
                     continue;
                 }
             }
@@ -443,6 +471,66 @@ public class FileExecutor
         return exitStatus;
     }
 
+    /**
+     * Makes files executable by all users. The executable flags are set in process, and with chmod
+     * commands over many files at once where this is not possible.
+     *
+     * @param files the files
+     * @return the exit status of chmod for each file which could not be made executable
+     */
+    public Map<File, Integer> makeExecutable(List<File> files)
+    {
+        List<File> remaining = new ArrayList<File>();
+        for (File file : files)
+        {
+            if (!file.setExecutable(true, false))
+            {
+                remaining.add(file);
+            }
+        }
+        return chmod(remaining);
+    }
+
+    /**
+     * Makes files executable by all users with chmod commands over {@link #CHMOD_BATCH_SIZE} files
+     * at once. The files of a failed batch are retried one by one.
+     *
+     * @param files the files
+     * @return the exit status of chmod for each file which could not be made executable
+     */
+    Map<File, Integer> chmod(List<File> files)
+    {
+        Map<File, Integer> failures = new HashMap<File, Integer>();
+        String[] output = new String[2];
+        for (int start = 0; start < files.size(); start += CHMOD_BATCH_SIZE)
+        {
+            List<File> batch = files.subList(start, Math.min(files.size(), start + CHMOD_BATCH_SIZE));
+            String[] params = new String[batch.size() + 2];
+            params[0] = "/bin/chmod";
+            params[1] = "a+x";
+            for (int i = 0; i < batch.size(); i++)
+            {
+                params[i + 2] = batch.get(i).toString();
+            }
+            Debug.trace("making " + batch.size() + " files executable with chmod");
+            int exitStatus = executeCommand(params, output);
+            if (exitStatus != 0)
+            {
+                // find out which files failed
+                for (File file : batch)
+                {
+                    int status = (batch.size() == 1) ? exitStatus
+                            : executeCommand(new String[]{"/bin/chmod", "a+x", file.toString()}, output);
+                    if (status != 0)
+                    {
+                        failures.put(file, status);
+                    }
+                }
+            }
+        }
+        return failures;
+    }
+
     /**
      * Transform classpath as specified in targetFile attribute into
      * OS specific classpath. This method also resolves directories
@@ -26,6 +26,7 @@ import java.text.DecimalFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.regex.Pattern;
 
 import org.ini4j.BasicProfile;
 import org.ini4j.Config;
@@ -118,7 +119,12 @@ public abstract class SingleConfigurableTask implements ConfigurableTask
         Config.getGlobal().setHeaderComment(false);
         Config.getGlobal().setEmptyLines(true);
         Config.getGlobal().setAutoNumbering(true);
+        Config.getGlobal().setIndexed(true);
         checkAttributes();
+        if (streamConfigurable())
+        {
+            return;
+        }
         readConfigurable();
         readSourceConfigurable();
         patchConfigurable();
@@ -126,6 +132,27 @@ public abstract class SingleConfigurableTask implements ConfigurableTask
         writeConfigurable();
     }
 
+    /**
+     * Applies the nested entries while copying the configuration from its source to its target,
+     * without reading it into memory. Called instead of reading, patching and writing the
+     * configuration.
+     *
+     * @return <code>false</code> if the configuration has to be read into memory; the default
+     * @throws Exception if the configuration cannot be copied
+     */
+    protected boolean streamConfigurable() throws Exception
+    {
+        return false;
+    }
+
+    /**
+     * Returns the nested entries, in the order they are applied.
+     */
+    protected List<Entry> getEntries()
+    {
+        return entries;
+    }
+
     private String getValueFromOptionMap(OptionMap map, String key, int index)
     {
         return (String) (patchResolveVariables ?
@@ -133,111 +160,143 @@ public abstract class SingleConfigurableTask implements ConfigurableTask
                 : map.get(key, index));
     }
 
-    private void keepOptions(String key, String fromValue, String lookupValue, LookupType lookupType)
+    private static boolean matches(String value, String lookupValue, Pattern lookupPattern)
     {
-        int found = 0;
+        return (lookupPattern != null) ? lookupPattern.matcher(value).matches() : value.equals(lookupValue);
+    }
 
-        for (int i = 0; i < ((Options) configurable).length(key); i++)
+    private boolean isLookedUp(Options options, String key, int index, String lookupValue,
+            Pattern lookupPattern)
+    {
+        if (lookupValue == null)
         {
-            if (lookupValue != null)
+            return true;
+        }
+        String origValue = getValueFromOptionMap(options, key, index);
+        return origValue != null && matches(origValue, lookupValue, lookupPattern);
+    }
+
+    private void keepOptions(String key, String lookupValue, Pattern lookupPattern)
+    {
+        Options options = (Options) configurable;
+        Options fromOptions = (Options) fromConfigurable;
+
+        // The values to overwrite are looked up once. All of them get the same value, so they
+        // either all keep matching the lookup value after being overwritten, or none does.
+        List<Integer> positions = new ArrayList<Integer>();
+        for (int i = 0; i < options.length(key); i++)
+        {
+            if (isLookedUp(options, key, i, lookupValue, lookupPattern))
             {
-                String origValue = getValueFromOptionMap((OptionMap) configurable, key, i);
+                positions.add(i);
+            }
+        }
 
-                if (origValue != null)
+        String pending = null;
+        for (int i = 0; i < fromOptions.length(key); i++)
+        {
+            String fromValue = getValueFromOptionMap(fromOptions, key, i);
+            if (fromValue == null)
+            {
+                continue;
+            }
+            if (lookupValue != null)
+            {
+                boolean found = matches(fromValue, lookupValue, lookupPattern);
+                if (lookupPattern != null ? !found : found)
                 {
-                    switch (lookupType)
-                    {
-                        case REGEXP:
-                            if (origValue.matches(lookupValue))
-                            {
-                                // found in patch target and in patch using reqexp value lookup;
-                                // overwrite in each case at the original position
-                                Debug.log("Preserve option file entry \"" + key + "\"");
-                                ((Options) configurable).put(key, fromValue, i);
-                                found++;
-                            }
-                            break;
+                    continue;
+                }
+            }
 
-                        default:
-                            if (origValue.equals(lookupValue))
-                            {
-                                // found in patch target and in patch using plain value lookup;
-                                // overwrite in each case at the original position
-                                ((Options) configurable).put(key, fromValue, i);
-                                found++;
-                            }
-                            break;
-                    }
+            if (positions.isEmpty())
+            {
+                // nothing existing to patch found in patch target
+                // but force preserving of patch entry
+                Debug.log("Add option file entry for \"" + key + "\": " + fromValue);
+                options.add(key, fromValue);
+                int index = options.length(key) - 1;
+                if (isLookedUp(options, key, index, lookupValue, lookupPattern))
+                {
+                    positions.add(index);
                 }
             }
             else
             {
                 // found in patch target and in patch;
-                // not looked up by value - overwrite in each case at the original position
-                ((Options) configurable).put(key, fromValue, i);
-                found++;
+                // overwrite in each case at the original position
+                Debug.log("Patched " + positions.size() + " option file entries for key \"" + key
+                        + "\" found in original: " + fromValue);
+                pending = fromValue;
+                if (patchResolveVariables
+                        || (lookupValue != null && !matches(fromValue, lookupValue, lookupPattern)))
+                {
+                    for (int position : positions)
+                    {
+                        options.put(key, pending, position);
+                    }
+                    pending = null;
+                    if (!isLookedUp(options, key, positions.get(0), lookupValue, lookupPattern))
+                    {
+                        positions.clear();
+                    }
+                }
             }
         }
 
-        Debug.log("Patched " + found + " option file entries for key \"" + key + "\" found in original: " + fromValue);
-
-        if (found == 0)
+        if (pending != null)
         {
-            // nothing existing to patch found in patch target
-            // but force preserving of patch entry
-            Debug.log("Add option file entry for \"" + key + "\": " + fromValue);
-            ((Options) configurable).add(key, fromValue);
+            for (int position : positions)
+            {
+                options.put(key, pending, position);
+            }
         }
     }
 
-    private void deleteOptions(String key, String lookupValue, LookupType lookupType)
+    private void deleteOptions(String key, String lookupValue, Pattern lookupPattern)
     {
-        for (int i = 0; i < ((Options) configurable).length(key); i++)
+        Options options = (Options) configurable;
+        if (lookupValue == null)
         {
-            if (lookupValue == null)
+            if (options.containsKey(key))
             {
-                String origValue = getValueFromOptionMap((OptionMap) configurable, key, i);
-
-                if (origValue != null)
-                {
-                    switch (lookupType)
-                    {
-                        case REGEXP:
-                            if (origValue.matches(lookupValue))
-                            {
-                                Debug.log("Remove option key \"" + key + "\"");
-                                ((Options) configurable).remove(key, i);
-                                i--;
-                            }
-                            break;
+                Debug.log("Remove option key \"" + key + "\"");
+                options.remove(key);
+            }
+            return;
+        }
 
-                        default:
-                            if (origValue.equals(lookupValue))
-                            {
-                                Debug.log("Remove option key \"" + key + "\"");
-                                ((Options) configurable).remove(key, i);
-                                i--;
-                            }
-                            break;
-                    }
-                }
+        // Keep the values not looked up and replace all values at once
+        int length = options.length(key);
+        List<String> kept = new ArrayList<String>(length);
+        for (int i = 0; i < length; i++)
+        {
+            if (isLookedUp(options, key, i, lookupValue, lookupPattern))
+            {
+                Debug.log("Remove option key \"" + key + "\"");
             }
             else
             {
-                Debug.log("Remove option key \"" + key + "\"");
-                ((Options) configurable).remove(key);
-                i--;
+                kept.add(options.get(key, i));
             }
         }
+        if (kept.isEmpty())
+        {
+            options.remove(key);
+        }
+        else if (kept.size() < length)
+        {
+            options.putAll(key, kept);
+        }
     }
 
     private void deleteConfigurableEntry(String section, String key,
-            String lookupValue, LookupType lookupType)
+            String lookupValue, Pattern lookupPattern)
     throws Exception
     {
         if (configurable instanceof Options)
         {
-            deleteOptions(key, lookupValue, lookupType);
+            deleteOptions(key, lookupValue, lookupPattern);
         }
         else if (configurable instanceof Ini)
         {
@@ -255,43 +314,14 @@ public abstract class SingleConfigurableTask implements ConfigurableTask
     }
 
     private void keepConfigurableValue(String section, String key,
-            String lookupValue, LookupType lookupType)
+            String lookupValue, Pattern lookupPattern)
     throws Exception
     {
         if (fromConfigurable != null)
         {
             if (configurable instanceof Options)
             {
-                for (int i = 0; i < ((Options) fromConfigurable).length(key); i++)
-                {
-                    String fromValue = getValueFromOptionMap((OptionMap) fromConfigurable, key, i);
-                    if (fromValue != null)
-                    {
-                        if (lookupValue != null)
-                        {
-                            switch (lookupType)
-                            {
-                                case REGEXP:
-                                    if (fromValue.matches(lookupValue))
-                                    {
-                                        keepOptions(key, fromValue, lookupValue, lookupType);
-                                    }
-                                    break;
-
-                                default:
-                                    if (!fromValue.equals(lookupValue))
-                                    {
-                                        keepOptions(key, fromValue, lookupValue, lookupType);
-                                    }
-                                    break;
-                            }
-                        }
-                        else
-                        {
-                            keepOptions(key, fromValue, lookupValue, lookupType);
-                        }
-                    }
-                }
+                keepOptions(key, lookupValue, lookupPattern);
             }
             else if (configurable instanceof Ini)
             {
@@ -482,10 +512,10 @@ public abstract class SingleConfigurableTask implements ConfigurableTask
             switch (entry.getOperation())
             {
             case REMOVE:
-                deleteConfigurableEntry(entry.getSection(), entry.getKey(), entry.getValue(), entry.getLookupType());
+                deleteConfigurableEntry(entry.getSection(), entry.getKey(), entry.getValue(), entry.getLookupPattern());
                 break;
             case KEEP:
-                keepConfigurableValue(entry.getSection(), entry.getKey(), entry.getValue(), entry.getLookupType());
+                keepConfigurableValue(entry.getSection(), entry.getKey(), entry.getValue(), entry.getLookupPattern());
                 break;
             default:
                 entry.executeOn(configurable);
@@ -572,6 +602,8 @@ public abstract class SingleConfigurableTask implements ConfigurableTask
 
         private Unit unit = Unit.DAY;
 
+        private Pattern lookupPattern = null;
+
 
         public String getSection()
         {
@@ -605,6 +637,7 @@ public abstract class SingleConfigurableTask implements ConfigurableTask
         public void setValue(String value)
         {
             this.value = value;
+            this.lookupPattern = null;
         }
 
         /**
@@ -623,6 +656,11 @@ public abstract class SingleConfigurableTask implements ConfigurableTask
             return value;
         }
 
+        public boolean isResolveVariables()
+        {
+            return resolveVariables;
+        }
+
         public LookupType getLookupType()
         {
             return lookupType;
@@ -662,6 +700,20 @@ public abstract class SingleConfigurableTask implements ConfigurableTask
         public void setLookupType(LookupType lookupType)
         {
             this.lookupType = lookupType;
+            this.lookupPattern = null;
+        }
+
+        /**
+         * Returns the value compiled as regular expression if the lookup type is regexp, or
+         * <code>null</code>. The expression is compiled once for all looked up values.
+         */
+        public Pattern getLookupPattern()
+        {
+            if (lookupPattern == null && lookupType == LookupType.REGEXP && value != null)
+            {
+                lookupPattern = Pattern.compile(value);
+            }
+            return lookupPattern;
         }
 
         /**
@@ -708,7 +760,7 @@ public abstract class SingleConfigurableTask implements ConfigurableTask
             boolean contains = false;
             if (values != null)
             {
-                for (int i = 0; i < values.toArray().length; i++)
+                for (int i = 0; i < values.size(); i++)
                 {
                     String origValue = getValueFromOptions(configurable, i);
                     newValue = execute(origValue);
@@ -718,7 +770,7 @@ public abstract class SingleConfigurableTask implements ConfigurableTask
                         switch (lookupType)
                         {
                             case REGEXP:
-                                if (origValue.matches(value))
+                                if (getLookupPattern().matcher(origValue).matches())
                                 {
                                     Debug.log("Set option value for key \"" + key + "\": \""
                                             + newValue + "\"");
@@ -791,6 +843,20 @@ public abstract class SingleConfigurableTask implements ConfigurableTask
             return newValue;
         }
 
+        /**
+         * Computes the value to set from the current one, for configurations which are not read
+         * into memory.
+         *
+         * @param oldValue the current value read from the configuration file or <code>null</code>
+         * if the <code>key</code> was not contained in the configuration file.
+         * @return the new value
+         */
+        protected String executeOnValue(String oldValue) throws Exception
+        {
+            checkParameters();
+            return execute(oldValue);
+        }
+
         protected void executeOn(Configurable configurable) throws Exception
         {
             checkParameters();
@@ -21,16 +21,147 @@
 
 package com.izforge.izpack.util.config;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
+import org.ini4j.Config;
 import org.ini4j.Ini;
+import org.ini4j.spi.IniPatcher;
 
 import com.izforge.izpack.api.adaptator.IXMLElement;
 import com.izforge.izpack.util.Debug;
 
 public class SingleIniFileTask extends ConfigFileTask
 {
+    private boolean streaming = false;
+
+    /**
+     * Whether to apply the nested entries while copying the INI file instead of reading it into
+     * memory (default: false). Comments and the order of the lines are kept. Files are read into
+     * memory nevertheless if they are patched from an old file, if a header comment is set, or if
+     * an entry resolves variables.
+     *
+     * @param streaming - true to stream the INI file
+     */
+    public void setStreaming(boolean streaming)
+    {
+        this.streaming = streaming;
+    }
+
+    @Override
+    protected boolean streamConfigurable() throws Exception
+    {
+        if (!streaming || (oldFile != null && oldFile.exists()) || getComment() != null)
+        {
+            return false;
+        }
+        for (Entry entry : getEntries())
+        {
+            if (entry.isResolveVariables())
+            {
+                return false;
+            }
+        }
+        if (newFile != null && !newFile.exists())
+        {
+            throw new Exception("Reference file " + newFile.getAbsolutePath()
+                    + " for patch cannot be found");
+        }
+        if (!toFile.exists() && !createConfigurable)
+        {
+            Debug.log("INI file " + toFile.getAbsolutePath()
+                    + " did not exist and is not allowed to be created");
+            return true;
+        }
+
+        IniPatcher patcher = new IniPatcher(Config.getGlobal());
+        for (Entry entry : getEntries())
+        {
+            if (entry.getOperation() != Entry.Operation.KEEP)
+            {
+                patcher.select(entry.getSection(), entry.getKey());
+            }
+        }
+        try
+        {
+            InputStream in = openNewFile();
+            try
+            {
+                patcher.scan(in);
+            }
+            finally
+            {
+                in.close();
+            }
+
+            for (Entry entry : getEntries())
+            {
+                switch (entry.getOperation())
+                {
+                case REMOVE:
+                    patcher.remove(entry.getSection(), entry.getKey());
+                    break;
+                case KEEP:
+                    // there is no old file to keep values from
+                    break;
+                default:
+                    patcher.put(entry.getSection(), entry.getKey(),
+                            entry.executeOnValue(patcher.get(entry.getSection(), entry.getKey())));
+                }
+            }
+
+            File parent = toFile.getAbsoluteFile().getParentFile();
+            if (!parent.exists())
+            {
+                parent.mkdirs();
+            }
+            // Write to a temporary file first, the target may be the source
+            File tmpFile = File.createTempFile("izpack-ini", null, parent);
+            try
+            {
+                Debug.log("Streaming INI file to: " + toFile.getAbsolutePath());
+                in = openNewFile();
+                OutputStream out = new FileOutputStream(tmpFile);
+                try
+                {
+                    patcher.write(in, out);
+                }
+                finally
+                {
+                    out.close();
+                    in.close();
+                }
+                if (toFile.exists() && !toFile.delete())
+                {
+                    throw new IOException("Could not replace " + toFile);
+                }
+                if (!tmpFile.renameTo(toFile))
+                {
+                    throw new IOException("Could not rename file " + tmpFile + " to " + toFile);
+                }
+            }
+            finally
+            {
+                if (tmpFile.exists())
+                {
+                    tmpFile.delete();
+                }
+            }
+        }
+        catch (IOException ioe)
+        {
+            throw new Exception(ioe);
+        }
+
+        cleanupOldFile();
+        return true;
+    }
+
     @Override
     protected void readSourceConfigurable() throws Exception
     {
@@ -113,7 +244,25 @@ public class SingleIniFileTask extends ConfigFileTask
             throw new Exception(ioe);
         }
 
-        if (cleanup && oldFile.exists())
+        cleanupOldFile();
+    }
+
+    /**
+     * Opens the file to patch, or an empty stream if there is none.
+     */
+    private InputStream openNewFile() throws IOException
+    {
+        if (newFile == null)
+        {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        Debug.log("Reading INI file: " + newFile.getAbsolutePath());
+        return new FileInputStream(newFile);
+    }
+
+    private void cleanupOldFile()
+    {
+        if (cleanup && oldFile != null && oldFile.exists())
         {
             if (!oldFile.delete())
             {
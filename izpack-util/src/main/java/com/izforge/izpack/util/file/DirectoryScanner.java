@@ -20,12 +20,16 @@ package com.izforge.izpack.util.file;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import com.izforge.izpack.api.data.AutomatedInstallData;
 import com.izforge.izpack.util.file.types.Resource;
 import com.izforge.izpack.util.file.types.ResourceFactory;
 import com.izforge.izpack.util.file.types.selectors.FileSelector;
 import com.izforge.izpack.util.file.types.selectors.SelectorUtils;
+import com.izforge.izpack.util.file.types.selectors.TokenizedPattern;
 
 /**
  * Class for scanning a directory for files/directories which match certain
@@ -108,6 +112,9 @@ import com.izforge.izpack.util.file.types.selectors.SelectorUtils;
  * </pre>
  * This will scan a directory called test for .class files, but excludes all
  * files in all proper subdirectories of a directory called "modules"
+ * <p/>
+ * The patterns are tokenized once per scan. Large trees may be scanned by
+ * several threads, see {@link #setThreads(int)}.
  */
 public class DirectoryScanner
         implements FileScanner, /*SelectorScanner, */ResourceFactory
@@ -269,7 +276,7 @@ public class DirectoryScanner
     /**
      * Whether or not everything tested so far has been included.
      */
-    protected boolean everythingIncluded = true;
+    protected volatile boolean everythingIncluded = true;
 
     /**
      * Temporary table to speed up the various scanning methods.
@@ -279,57 +286,45 @@ public class DirectoryScanner
     /**
      * List of all scanned directories.
      */
-    private Set<String> scannedDirs = new HashSet<String>();
+    private Set<String> scannedDirs = Collections.synchronizedSet(new HashSet<String>());
 
     /**
-     * Set of all include patterns that are full file names and don't
-     * contain any wildcards.
-     * <p/>
-     * <p>If this instance is not case sensitive, the file names get
-     * turned to lower case.</p>
-     * <p/>
-     * <p>Gets lazily initialized on the first invocation of
-     * isIncluded or isExcluded and cleared at the end of the scan
-     * method (cleared in clearCaches, actually).</p>
+     * Files and directories which have been sorted into the included,
+     * excluded or deselected lists, to avoid searching the lists.
      */
-    private Set<String> includeNonPatterns = new HashSet<String>();
+    private Set<String> accountedFiles = Collections.synchronizedSet(new HashSet<String>());
+
+    private Set<String> accountedDirs = Collections.synchronizedSet(new HashSet<String>());
 
     /**
-     * Set of all include patterns that are full file names and don't
-     * contain any wildcards.
-     * <p/>
-     * <p>If this instance is not case sensitive, the file names get
-     * turned to lower case.</p>
+     * The tokenized in- and exclude patterns.
      * <p/>
      * <p>Gets lazily initialized on the first invocation of
      * isIncluded or isExcluded and cleared at the end of the scan
      * method (cleared in clearCaches, actually).</p>
      */
-    private Set<String> excludeNonPatterns = new HashSet<String>();
+    private volatile Patterns patterns;
 
     /**
-     * Array of all include patterns that contain wildcards.
-     * <p/>
-     * <p>Gets lazily initialized on the first invocation of
-     * isIncluded or isExcluded and cleared at the end of the scan
-     * method (cleared in clearCaches, actually).</p>
+     * Number of threads scanning the directories.
      */
-    private String[] includePatterns;
+    private int threads = 1;
 
     /**
-     * Array of all exclude patterns that contain wildcards.
-     * <p/>
-     * <p>Gets lazily initialized on the first invocation of
-     * isIncluded or isExcluded and cleared at the end of the scan
-     * method (cleared in clearCaches, actually).</p>
+     * Executor of the directory scans of the current scan, if it uses
+     * several threads.
+     */
+    private ExecutorService executor;
+
+    /**
+     * Number of directory scans submitted to the executor and not finished.
      */
-    private String[] excludePatterns;
+    private int pendingScans;
 
     /**
-     * Have the non-pattern sets and pattern arrays for in- and
-     * excludes been initialized?
+     * First exception thrown by a directory scan of the executor.
      */
-    private boolean areNonPatternSetsReady = false;
+    private Exception scanFailure;
 
     /**
      * Scanning flag.
@@ -738,6 +733,29 @@ public class DirectoryScanner
         return everythingIncluded;
     }
 
+    /**
+     * Set the number of threads scanning the directories. With more than
+     * one thread, subdirectories are scanned concurrently, and the selectors
+     * must be thread safe. The included files and directories are sorted
+     * anyway; the order of the other lists then varies from scan to scan.
+     *
+     * @param threads the number of threads, 1 by default.
+     */
+    public synchronized void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
+    /**
+     * Get the number of threads scanning the directories.
+     *
+     * @return the number of threads.
+     */
+    public synchronized int getThreads()
+    {
+        return threads;
+    }
+
     /**
      * Scan the base directory for files which match at least one include
      * pattern and don't match any exclude patterns. If there are selectors
@@ -806,6 +824,7 @@ public class DirectoryScanner
                 {
                     throw illegal;
                 }
+                startScanners();
                 if (isIncluded(""))
                 {
                     if (!isExcluded(""))
@@ -828,7 +847,15 @@ public class DirectoryScanner
                 {
                     dirsNotIncluded.addElement("");
                 }
-                checkIncludePatterns();
+                try
+                {
+                    checkIncludePatterns();
+                    awaitScanners();
+                }
+                finally
+                {
+                    stopScanners();
+                }
                 clearCaches();
                 includes = nullIncludes ? null : includes;
                 excludes = nullExcludes ? null : excludes;
@@ -860,7 +887,7 @@ public class DirectoryScanner
         if (newroots.containsKey(""))
         {
             // we are going to scan everything anyway
-            scandir(basedir, "", true);
+            descend(basedir, "", true);
         }
         else
         {
@@ -947,7 +974,7 @@ public class DirectoryScanner
                                             currentelement + File.separatorChar;
                                 }
                             }
-                            scandir(myfile, currentelement, true);
+                            descend(myfile, currentelement, true);
                         }
                     }
                     else
@@ -980,6 +1007,8 @@ public class DirectoryScanner
         dirsDeselected = new Vector<String>();
         everythingIncluded = (basedir != null);
         scannedDirs.clear();
+        accountedFiles.clear();
+        accountedDirs.clear();
     }
 
     /**
@@ -1031,21 +1060,30 @@ public class DirectoryScanner
                 String[] notIncl = new String[dirsNotIncluded.size()];
                 dirsNotIncluded.copyInto(notIncl);
 
-                for (String anExcl : excl)
+                startScanners();
+                try
                 {
-                    if (!couldHoldIncluded(anExcl))
+                    for (String anExcl : excl)
                     {
-                        scandir(new File(basedir, anExcl),
-                                anExcl + File.separator, false);
+                        if (!couldHoldIncluded(anExcl))
+                        {
+                            descend(new File(basedir, anExcl),
+                                    anExcl + File.separator, false);
+                        }
                     }
-                }
-                for (String aNotIncl : notIncl)
-                {
-                    if (!couldHoldIncluded(aNotIncl))
+                    for (String aNotIncl : notIncl)
                     {
-                        scandir(new File(basedir, aNotIncl),
-                                aNotIncl + File.separator, false);
+                        if (!couldHoldIncluded(aNotIncl))
+                        {
+                            descend(new File(basedir, aNotIncl),
+                                    aNotIncl + File.separator, false);
+                        }
                     }
+                    awaitScanners();
+                }
+                finally
+                {
+                    stopScanners();
                 }
                 clearCaches();
                 includes = nullIncludes ? null : includes;
@@ -1126,8 +1164,16 @@ public class DirectoryScanner
                     {
                         String name = vpath + newfile;
                         File file = new File(dir, newfile);
-                        (file.isDirectory()
-                                ? dirsExcluded : filesExcluded).addElement(name);
+                        if (file.isDirectory())
+                        {
+                            accountedDirs.add(name);
+                            dirsExcluded.addElement(name);
+                        }
+                        else
+                        {
+                            accountedFiles.add(name);
+                            filesExcluded.addElement(name);
+                        }
                     }
                     else
                     {
@@ -1162,12 +1208,12 @@ public class DirectoryScanner
                     dirsNotIncluded.addElement(name);
                     if (fast && couldHoldIncluded(name))
                     {
-                        scandir(file, name + File.separator, fast);
+                        descend(file, name + File.separator, fast);
                     }
                 }
                 if (!fast)
                 {
-                    scandir(file, name + File.separator, fast);
+                    descend(file, name + File.separator, fast);
                 }
             }
             else if (file.isFile())
@@ -1193,9 +1239,7 @@ public class DirectoryScanner
      */
     private void accountForIncludedFile(String name, File file) throws Exception
     {
-        if (filesIncluded.contains(name)
-                || filesExcluded.contains(name)
-                || filesDeselected.contains(name))
+        if (!accountedFiles.add(name))
         {
             return;
         }
@@ -1213,7 +1257,10 @@ public class DirectoryScanner
         {
             filesDeselected.addElement(name);
         }
-        everythingIncluded &= included;
+        if (!included)
+        {
+            everythingIncluded = false;
+        }
     }
 
     /**
@@ -1227,9 +1274,7 @@ public class DirectoryScanner
     private void accountForIncludedDir(String name, File file, boolean fast)
             throws Exception
     {
-        if (dirsIncluded.contains(name)
-                || dirsExcluded.contains(name)
-                || dirsDeselected.contains(name))
+        if (!accountedDirs.add(name))
         {
             return;
         }
@@ -1247,10 +1292,13 @@ public class DirectoryScanner
         {
             dirsDeselected.addElement(name);
         }
-        everythingIncluded &= included;
+        if (!included)
+        {
+            everythingIncluded = false;
+        }
         if (fast && couldHoldIncluded(name) && !contentsExcluded(name))
         {
-            scandir(file, name + File.separator, fast);
+            descend(file, name + File.separator, fast);
         }
     }
 
@@ -1264,22 +1312,7 @@ public class DirectoryScanner
      */
     protected boolean isIncluded(String name)
     {
-        ensureNonPatternSetsReady();
-
-        if (isCaseSensitive()
-                ? includeNonPatterns.contains(name)
-                : includeNonPatterns.contains(name.toUpperCase()))
-        {
-            return true;
-        }
-        for (String includePattern : includePatterns)
-        {
-            if (matchPath(includePattern, name, isCaseSensitive()))
-            {
-                return true;
-            }
-        }
-        return false;
+        return getPatterns().isIncluded(name);
     }
 
     /**
@@ -1292,59 +1325,7 @@ public class DirectoryScanner
      */
     protected boolean couldHoldIncluded(String name)
     {
-        for (String include : includes)
-        {
-            if (matchPatternStart(include, name, isCaseSensitive())
-                    && isMorePowerfulThanExcludes(name, include)
-                    && isDeeper(include, name))
-            {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    /**
-     * Verify that a pattern specifies files deeper
-     * than the level of the specified file.
-     *
-     * @param pattern the pattern to check.
-     * @param name    the name to check.
-     * @return whether the pattern is deeper than the name.
-     */
-    private boolean isDeeper(String pattern, String name)
-    {
-        Vector<?> p = SelectorUtils.tokenizePath(pattern);
-        Vector<?> n = SelectorUtils.tokenizePath(name);
-        return p.contains("**") || p.size() > n.size();
-    }
-
-    /**
-     * Find out whether one particular include pattern is more powerful
-     * than all the excludes.
-     * Note:  the power comparison is based on the length of the include pattern
-     * and of the exclude patterns without the wildcards.
-     * Ideally the comparison should be done based on the depth
-     * of the match; that is to say how many file separators have been matched
-     * before the first ** or the end of the pattern.
-     * <p/>
-     * IMPORTANT : this function should return false "with care".
-     *
-     * @param name           the relative path to test.
-     * @param includepattern one include pattern.
-     * @return true if there is no exclude pattern more powerful than this include pattern.
-     */
-    private boolean isMorePowerfulThanExcludes(String name, String includepattern)
-    {
-        String soughtexclude = name + File.separator + "**";
-        for (String exclude : excludes)
-        {
-            if (exclude.equals(soughtexclude))
-            {
-                return false;
-            }
-        }
-        return true;
+        return getPatterns().couldHoldIncluded(name);
     }
 
     /**
@@ -1355,16 +1336,7 @@ public class DirectoryScanner
      */
     private boolean contentsExcluded(String name)
     {
-        name = (name.endsWith(File.separator)) ? name : name + File.separator;
-        for (String e : excludes)
-        {
-            if (e.endsWith("**") && SelectorUtils.matchPath(
-                    e.substring(0, e.length() - 2), name, isCaseSensitive()))
-            {
-                return true;
-            }
-        }
-        return false;
+        return getPatterns().contentsExcluded(name);
     }
 
     /**
@@ -1377,22 +1349,7 @@ public class DirectoryScanner
      */
     protected boolean isExcluded(String name)
     {
-        ensureNonPatternSetsReady();
-
-        if (isCaseSensitive()
-                ? excludeNonPatterns.contains(name)
-                : excludeNonPatterns.contains(name.toUpperCase()))
-        {
-            return true;
-        }
-        for (String excludePattern : excludePatterns)
-        {
-            if (matchPath(excludePattern, name, isCaseSensitive()))
-            {
-                return true;
-            }
-        }
-        return false;
+        return getPatterns().isExcluded(name);
     }
 
     /**
@@ -1773,50 +1730,410 @@ public class DirectoryScanner
     private synchronized void clearCaches()
     {
         fileListMap.clear();
-        includeNonPatterns.clear();
-        excludeNonPatterns.clear();
-        includePatterns = null;
-        excludePatterns = null;
-        areNonPatternSetsReady = false;
+        patterns = null;
+    }
+
+    /**
+     * Return the tokenized in|exclude patterns, tokenizing them
+     * if necessary.
+     */
+    private Patterns getPatterns()
+    {
+        Patterns result = patterns;
+        if (result == null)
+        {
+            synchronized (this)
+            {
+                result = patterns;
+                if (result == null)
+                {
+                    result = new Patterns(includes, excludes, isCaseSensitive);
+                    patterns = result;
+                }
+            }
+        }
+        return result;
     }
 
     /**
-     * Ensure that the in|exclude &quot;patterns&quot;
-     * have been properly divided up.
+     * Prepare the scan of the directories by several threads, if more
+     * than one thread is configured.
      */
-    private synchronized void ensureNonPatternSetsReady()
+    private void startScanners()
     {
-        if (!areNonPatternSetsReady)
+        getPatterns();
+        if (threads > 1)
         {
+            pendingScans = 0;
+            scanFailure = null;
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "IzPack directory scanner");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * Scan a directory, on a thread of the executor if the scan uses
+     * several threads.
+     *
+     * @param dir   The directory to scan.
+     * @param vpath The path relative to the base directory.
+     * @param fast  Whether or not this call is part of a fast scan.
+     */
+    private void descend(final File dir, final String vpath, final boolean fast)
+            throws Exception
+    {
+        if (executor == null)
+        {
+            scandir(dir, vpath, fast);
+            return;
+        }
+        synchronized (scanLock)
+        {
+            if (scanFailure != null)
+            {
+                return;
+            }
+            pendingScans++;
+        }
+        executor.execute(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    scandir(dir, vpath, fast);
+                }
+                catch (Exception e)
+                {
+                    synchronized (scanLock)
+                    {
+                        if (scanFailure == null)
+                        {
+                            scanFailure = e;
+                        }
+                    }
+                }
+                finally
+                {
+                    synchronized (scanLock)
+                    {
+                        if (--pendingScans == 0)
+                        {
+                            scanLock.notifyAll();
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Wait until the directory scans submitted to the executor have
+     * finished.
+     *
+     * @throws Exception the first exception thrown by a directory scan.
+     */
+    private void awaitScanners() throws Exception
+    {
+        if (executor == null)
+        {
+            return;
+        }
+        synchronized (scanLock)
+        {
+            while (pendingScans > 0)
+            {
+                scanLock.wait();
+            }
+            if (scanFailure != null)
+            {
+                throw scanFailure;
+            }
+        }
+    }
+
+    /**
+     * Release the threads of the executor.
+     */
+    private void stopScanners()
+    {
+        if (executor != null)
+        {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * The in- and exclude patterns of a scan, tokenized once.
+     * <p/>
+     * <p>Patterns that are full file names without wildcards are looked
+     * up in sets, the other patterns are matched against the tokenized
+     * names. The patterns are immutable, so that several threads can
+     * match names against them.</p>
+     */
+    private static final class Patterns
+    {
+        private final boolean caseSensitive;
+
+        /**
+         * Include patterns that are full file names and don't contain
+         * any wildcards, upper case if the scan is not case sensitive.
+         */
+        private final Set<String> includeNonPatterns = new HashSet<String>();
+
+        /**
+         * Exclude patterns that are full file names and don't contain
+         * any wildcards, upper case if the scan is not case sensitive.
+         */
+        private final Set<String> excludeNonPatterns = new HashSet<String>();
+
+        /**
+         * Include patterns that contain wildcards.
+         */
+        private final PatternIndex includePatterns;
+
+        /**
+         * Exclude patterns that contain wildcards.
+         */
+        private final PatternIndex excludePatterns;
+
+        /**
+         * All include patterns, to find the directories which could
+         * hold included files.
+         */
+        private final PatternIndex includes;
+
+        /**
+         * All exclude patterns, as given.
+         */
+        private final Set<String> excludes;
+
+        /**
+         * Exclude patterns ending with "**", without the "**".
+         */
+        private final PatternIndex contentExcludes;
+
+        Patterns(String[] includes, String[] excludes, boolean caseSensitive)
+        {
+            this.caseSensitive = caseSensitive;
+            includes = (includes == null) ? new String[]{"**"} : includes;
+            excludes = (excludes == null) ? new String[0] : excludes;
             includePatterns = fillNonPatternSet(includeNonPatterns, includes);
             excludePatterns = fillNonPatternSet(excludeNonPatterns, excludes);
-            areNonPatternSetsReady = true;
+            this.includes = new PatternIndex(tokenize(Arrays.asList(includes)), caseSensitive);
+            this.excludes = new HashSet<String>(Arrays.asList(excludes));
+            List<String> contents = new ArrayList<String>();
+            for (String exclude : excludes)
+            {
+                if (exclude.endsWith("**"))
+                {
+                    contents.add(exclude.substring(0, exclude.length() - 2));
+                }
+            }
+            contentExcludes = new PatternIndex(tokenize(contents), caseSensitive);
+        }
+
+        boolean isIncluded(String name)
+        {
+            return matches(name, includeNonPatterns, includePatterns);
+        }
+
+        boolean isExcluded(String name)
+        {
+            return matches(name, excludeNonPatterns, excludePatterns);
+        }
+
+        boolean couldHoldIncluded(String name)
+        {
+            // no include pattern is more powerful than an exclude of
+            // the whole directory
+            if (excludes.contains(name + File.separator + "**"))
+            {
+                return false;
+            }
+            String[] tokens = SelectorUtils.tokenizePathAsArray(name);
+            for (TokenizedPattern include : includes.getCandidates(tokens))
+            {
+                if (include.matchStartOf(name, tokens, caseSensitive)
+                        && (include.containsAnyPath()
+                        || include.depth() > tokens.length))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean contentsExcluded(String name)
+        {
+            name = (name.endsWith(File.separator)) ? name : name + File.separator;
+            String[] tokens = SelectorUtils.tokenizePathAsArray(name);
+            for (TokenizedPattern exclude : contentExcludes.getCandidates(tokens))
+            {
+                if (exclude.matchPath(name, tokens, caseSensitive))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean matches(String name, Set<String> nonPatterns,
+                                PatternIndex patterns)
+        {
+            if (caseSensitive
+                    ? nonPatterns.contains(name)
+                    : nonPatterns.contains(name.toUpperCase()))
+            {
+                return true;
+            }
+            if (patterns.isEmpty())
+            {
+                return false;
+            }
+            String[] tokens = SelectorUtils.tokenizePathAsArray(name);
+            for (TokenizedPattern pattern : patterns.getCandidates(tokens))
+            {
+                if (pattern.matchPath(name, tokens, caseSensitive))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Add all patterns that are not real patterns (do not contain
+         * wildcards) to the set and returns the real patterns.
+         *
+         * @param set      Set to populate.
+         * @param patterns String[] of patterns.
+         */
+        private PatternIndex fillNonPatternSet(Set<String> set, String[] patterns)
+        {
+            List<String> al = new ArrayList<String>(patterns.length);
+            for (String pattern : patterns)
+            {
+                if (!SelectorUtils.hasWildcards(pattern))
+                {
+                    set.add(caseSensitive ? pattern : pattern.toUpperCase());
+                }
+                else
+                {
+                    al.add(pattern);
+                }
+            }
+            return new PatternIndex(tokenize(set.size() == 0 ? Arrays.asList(patterns) : al), caseSensitive);
+        }
+
+        private static TokenizedPattern[] tokenize(List<String> patterns)
+        {
+            TokenizedPattern[] result = new TokenizedPattern[patterns.size()];
+            for (int i = 0; i < result.length; i++)
+            {
+                result[i] = new TokenizedPattern(patterns.get(i));
+            }
+            return result;
         }
     }
 
     /**
-     * Add all patterns that are not real patterns (do not contain
-     * wildcards) to the set and returns the real patterns.
-     *
-     * @param set      Set to populate.
-     * @param patterns String[] of patterns.
+     * Patterns grouped by their first path element when it has no
+     * wildcards, so that a path is only matched against the patterns
+     * starting with its own first element and those starting with a
+     * wildcard.
      */
-    private String[] fillNonPatternSet(Set<String> set, String[] patterns)
+    private static final class PatternIndex
     {
-        ArrayList<String> al = new ArrayList<String>(patterns.length);
-        for (String pattern : patterns)
+        private final boolean caseSensitive;
+
+        private final TokenizedPattern[] patterns;
+
+        /**
+         * The patterns starting with a wildcard.
+         */
+        private final List<TokenizedPattern> unprefixed = new ArrayList<TokenizedPattern>();
+
+        /**
+         * The candidates for each literal first element, upper case if
+         * the scan is not case sensitive: the patterns starting with it
+         * and the unprefixed patterns, in their original order.
+         */
+        private final Map<String, List<TokenizedPattern>> prefixed = new HashMap<String, List<TokenizedPattern>>();
+
+        PatternIndex(TokenizedPattern[] patterns, boolean caseSensitive)
         {
-            if (!SelectorUtils.hasWildcards(pattern))
+            this.caseSensitive = caseSensitive;
+            this.patterns = patterns;
+            for (TokenizedPattern pattern : patterns)
             {
-                set.add(isCaseSensitive() ? pattern : pattern.toUpperCase());
+                String prefix = pattern.getLiteralPrefix();
+                if (prefix == null)
+                {
+                    // a wildcard pattern is a candidate for every prefix
+                    unprefixed.add(pattern);
+                    for (List<TokenizedPattern> list : prefixed.values())
+                    {
+                        list.add(pattern);
+                    }
+                    continue;
+                }
+                prefix = fold(prefix);
+                List<TokenizedPattern> list = prefixed.get(prefix);
+                if (list == null)
+                {
+                    list = new ArrayList<TokenizedPattern>(unprefixed);
+                    prefixed.put(prefix, list);
+                }
+                list.add(pattern);
             }
-            else
+        }
+
+        boolean isEmpty()
+        {
+            return patterns.length == 0;
+        }
+
+        /**
+         * Returns the patterns a path may match, or whose start it may
+         * match.
+         *
+         * @param tokens the path elements
+         */
+        List<TokenizedPattern> getCandidates(String[] tokens)
+        {
+            if (tokens.length == 0)
+            {
+                return Arrays.asList(patterns);
+            }
+            List<TokenizedPattern> candidates = prefixed.get(fold(tokens[0]));
+            return (candidates != null) ? candidates : unprefixed;
+        }
+
+        /**
+         * Folds a path element the way literal elements are compared.
+         */
+        private String fold(String element)
+        {
+            if (caseSensitive)
+            {
+                return element;
+            }
+            char[] chars = element.toCharArray();
+            for (int i = 0; i < chars.length; i++)
             {
-                al.add(pattern);
+                chars[i] = Character.toUpperCase(chars[i]);
             }
+            return new String(chars);
         }
-        return set.size() == 0 ? patterns
-                : al.toArray(new String[al.size()]);
     }
 
 }
@@ -43,6 +43,7 @@ public class FileSet extends DataType
     private boolean useDefaultExcludes = true;
     private boolean isCaseSensitive = true;
     private boolean followSymlinks = true;
+    private int threads = 1;
 
     /**
      * Construct a new <code>FileSet</code>.
@@ -181,6 +182,17 @@ public class FileSet extends DataType
         return followSymlinks;
     }
 
+    /**
+     * Sets the number of threads scanning the directory.
+     *
+     * @param threads the number of threads, 1 by default
+     * @see DirectoryScanner#setThreads(int)
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
     /**
      * Returns the directory scanner needed to access the files to process.
      *
@@ -204,6 +216,7 @@ public class FileSet extends DataType
         DirectoryScanner ds = new DirectoryScanner();
         setupDirectoryScanner(ds);
         ds.setFollowSymlinks(followSymlinks);
+        ds.setThreads(threads);
         ds.scan();
         return ds;
     }
@@ -93,56 +93,8 @@ public final class SelectorUtils
     public static boolean matchPatternStart(String pattern, String str,
                                             boolean isCaseSensitive)
     {
-        // When str starts with a File.separator, pattern has to start with a
-        // File.separator.
-        // When pattern starts with a File.separator, str has to start with a
-        // File.separator.
-        if (str.startsWith(File.separator)
-                != pattern.startsWith(File.separator))
-        {
-            return false;
-        }
-
-        String[] patDirs = tokenizePathAsArray(pattern);
-        String[] strDirs = tokenizePathAsArray(str);
-
-        int patIdxStart = 0;
-        int patIdxEnd = patDirs.length - 1;
-        int strIdxStart = 0;
-        int strIdxEnd = strDirs.length - 1;
-
-        // up to first '**'
-        while (patIdxStart <= patIdxEnd && strIdxStart <= strIdxEnd)
-        {
-            String patDir = patDirs[patIdxStart];
-            if (patDir.equals("**"))
-            {
-                break;
-            }
-            if (!match(patDir, strDirs[strIdxStart], isCaseSensitive))
-            {
-                return false;
-            }
-            patIdxStart++;
-            strIdxStart++;
-        }
-
-        if (strIdxStart > strIdxEnd)
-        {
-            // String is exhausted
-            return true;
-        }
-        else if (patIdxStart > patIdxEnd)
-        {
-            // String not exhausted, but pattern is. Failure.
-            return false;
-        }
-        else
-        {
-            // pattern now holds ** while string is not exhausted
-            // this will generate false positives but we can live with that.
-            return true;
-        }
+        return new TokenizedPattern(pattern).matchStartOf(str,
+                tokenizePathAsArray(str), isCaseSensitive);
     }
 
     /**
@@ -175,159 +127,7 @@ public final class SelectorUtils
     public static boolean matchPath(String pattern, String str,
                                     boolean isCaseSensitive)
     {
-        // When str starts with a File.separator, pattern has to start with a
-        // File.separator.
-        // When pattern starts with a File.separator, str has to start with a
-        // File.separator.
-        if (str.startsWith(File.separator)
-                != pattern.startsWith(File.separator))
-        {
-            return false;
-        }
-
-        String[] patDirs = tokenizePathAsArray(pattern);
-        String[] strDirs = tokenizePathAsArray(str);
-
-        int patIdxStart = 0;
-        int patIdxEnd = patDirs.length - 1;
-        int strIdxStart = 0;
-        int strIdxEnd = strDirs.length - 1;
-
-        // up to first '**'
-        while (patIdxStart <= patIdxEnd && strIdxStart <= strIdxEnd)
-        {
-            String patDir = patDirs[patIdxStart];
-            if (patDir.equals("**"))
-            {
-                break;
-            }
-            if (!match(patDir, strDirs[strIdxStart], isCaseSensitive))
-            {
-                patDirs = null;
-                strDirs = null;
-                return false;
-            }
-            patIdxStart++;
-            strIdxStart++;
-        }
-        if (strIdxStart > strIdxEnd)
-        {
-            // String is exhausted
-            for (int i = patIdxStart; i <= patIdxEnd; i++)
-            {
-                if (!patDirs[i].equals("**"))
-                {
-                    patDirs = null;
-                    strDirs = null;
-                    return false;
-                }
-            }
-            return true;
-        }
-        else
-        {
-            if (patIdxStart > patIdxEnd)
-            {
-                // String not exhausted, but pattern is. Failure.
-                patDirs = null;
-                strDirs = null;
-                return false;
-            }
-        }
-
-        // up to last '**'
-        while (patIdxStart <= patIdxEnd && strIdxStart <= strIdxEnd)
-        {
-            String patDir = patDirs[patIdxEnd];
-            if (patDir.equals("**"))
-            {
-                break;
-            }
-            if (!match(patDir, strDirs[strIdxEnd], isCaseSensitive))
-            {
-                patDirs = null;
-                strDirs = null;
-                return false;
-            }
-            patIdxEnd--;
-            strIdxEnd--;
-        }
-        if (strIdxStart > strIdxEnd)
-        {
-            // String is exhausted
-            for (int i = patIdxStart; i <= patIdxEnd; i++)
-            {
-                if (!patDirs[i].equals("**"))
-                {
-                    patDirs = null;
-                    strDirs = null;
-                    return false;
-                }
-            }
-            return true;
-        }
-
-        while (patIdxStart != patIdxEnd && strIdxStart <= strIdxEnd)
-        {
-            int patIdxTmp = -1;
-            for (int i = patIdxStart + 1; i <= patIdxEnd; i++)
-            {
-                if (patDirs[i].equals("**"))
-                {
-                    patIdxTmp = i;
-                    break;
-                }
-            }
-            if (patIdxTmp == patIdxStart + 1)
-            {
-                // '**/**' situation, so skip one
-                patIdxStart++;
-                continue;
-            }
-            // Find the pattern between padIdxStart & padIdxTmp in str between
-            // strIdxStart & strIdxEnd
-            int patLength = (patIdxTmp - patIdxStart - 1);
-            int strLength = (strIdxEnd - strIdxStart + 1);
-            int foundIdx = -1;
-            strLoop:
-            for (int i = 0; i <= strLength - patLength; i++)
-            {
-                for (int j = 0; j < patLength; j++)
-                {
-                    String subPat = patDirs[patIdxStart + j + 1];
-                    String subStr = strDirs[strIdxStart + i + j];
-                    if (!match(subPat, subStr, isCaseSensitive))
-                    {
-                        continue strLoop;
-                    }
-                }
-
-                foundIdx = strIdxStart + i;
-                break;
-            }
-
-            if (foundIdx == -1)
-            {
-                patDirs = null;
-                strDirs = null;
-                return false;
-            }
-
-            patIdxStart = patIdxTmp;
-            strIdxStart = foundIdx + patLength;
-        }
-
-        for (int i = patIdxStart; i <= patIdxEnd; i++)
-        {
-            if (!patDirs[i].equals("**"))
-            {
-                patDirs = null;
-                strDirs = null;
-                return false;
-            }
-        }
-
-        return true;
+        return new TokenizedPattern(pattern).matchPath(str, isCaseSensitive);
     }
 
     /**
@@ -582,8 +382,11 @@ public final class SelectorUtils
 
     /**
      * Same as {@link #tokenizePath tokenizePath} but hopefully faster.
+     *
+     * @param path Path to tokenize. Must not be <code>null</code>.
+     * @return the path elements of the path
      */
-    private static String[] tokenizePathAsArray(String path)
+    public static String[] tokenizePathAsArray(String path)
     {
         char sep = File.separatorChar;
         int start = 0;
@@ -0,0 +1,344 @@
+/*
+ * IzPack - Copyright 2001-2010 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.util.file.types.selectors;
+
+import java.io.File;
+
+/**
+ * A path pattern split into its path elements once, so that it can be matched against many paths
+ * without being parsed again. Elements without wildcards are compared as plain strings, and
+ * <code>*</code> elements match any name without being compared at all.
+ * <p/>
+ * The matching rules are those of {@link SelectorUtils#matchPath(String, String, boolean)} and
+ * {@link SelectorUtils#matchPatternStart(String, String, boolean)}.
+ */
+public class TokenizedPattern
+{
+    private static final int LITERAL = 0;
+
+    private static final int WILDCARD = 1;
+
+    private static final int ANY_NAME = 2;
+
+    private static final int ANY_PATH = 3;
+
+    private final String pattern;
+
+    private final String[] tokens;
+
+    private final int[] kinds;
+
+    private final boolean rooted;
+
+    private final boolean anyPath;
+
+    /**
+     * Tokenizes a pattern.
+     *
+     * @param pattern the pattern, using <code>File.separator</code> as path separator
+     */
+    public TokenizedPattern(String pattern)
+    {
+        this.pattern = pattern;
+        tokens = SelectorUtils.tokenizePathAsArray(pattern);
+        kinds = new int[tokens.length];
+        boolean containsAnyPath = false;
+        for (int i = 0; i < tokens.length; i++)
+        {
+            String token = tokens[i];
+            if (token.equals("**"))
+            {
+                kinds[i] = ANY_PATH;
+                containsAnyPath = true;
+            }
+            else if (token.equals("*"))
+            {
+                kinds[i] = ANY_NAME;
+            }
+            else if (SelectorUtils.hasWildcards(token))
+            {
+                kinds[i] = WILDCARD;
+            }
+            else
+            {
+                kinds[i] = LITERAL;
+            }
+        }
+        rooted = pattern.startsWith(File.separator);
+        anyPath = containsAnyPath;
+    }
+
+    /**
+     * Returns the pattern.
+     *
+     * @return the pattern
+     */
+    public String getPattern()
+    {
+        return pattern;
+    }
+
+    /**
+     * Returns the number of path elements of the pattern.
+     *
+     * @return the number of path elements
+     */
+    public int depth()
+    {
+        return tokens.length;
+    }
+
+    /**
+     * Returns the first path element of the pattern if it has no wildcards. A path can only match
+     * the pattern, or match its start, if its first element is this one.
+     *
+     * @return the first path element, or <code>null</code> if it has wildcards or the pattern is
+     *         empty
+     */
+    public String getLiteralPrefix()
+    {
+        return (tokens.length > 0 && kinds[0] == LITERAL) ? tokens[0] : null;
+    }
+
+    /**
+     * Tests whether the pattern contains a <code>**</code> element, and so may match paths of
+     * any depth.
+     *
+     * @return <code>true</code> if the pattern contains <code>**</code>
+     */
+    public boolean containsAnyPath()
+    {
+        return anyPath;
+    }
+
+    /**
+     * Tests whether a path matches the pattern.
+     *
+     * @param str             the path
+     * @param isCaseSensitive whether the matching is case sensitive
+     * @return <code>true</code> if the path matches the pattern
+     */
+    public boolean matchPath(String str, boolean isCaseSensitive)
+    {
+        return matchPath(str, SelectorUtils.tokenizePathAsArray(str), isCaseSensitive);
+    }
+
+    /**
+     * Tests whether a path matches the pattern.
+     *
+     * @param str             the path
+     * @param strDirs         the path elements of <code>str</code>, as returned by
+     *                        {@link SelectorUtils#tokenizePathAsArray(String)}
+     * @param isCaseSensitive whether the matching is case sensitive
+     * @return <code>true</code> if the path matches the pattern
+     */
+    public boolean matchPath(String str, String[] strDirs, boolean isCaseSensitive)
+    {
+        // When str starts with a File.separator, pattern has to start with a
+        // File.separator.
+        // When pattern starts with a File.separator, str has to start with a
+        // File.separator.
+        if (str.startsWith(File.separator) != rooted)
+        {
+            return false;
+        }
+
+        int patIdxStart = 0;
+        int patIdxEnd = tokens.length - 1;
+        int strIdxStart = 0;
+        int strIdxEnd = strDirs.length - 1;
+
+        // up to first '**'
+        while (patIdxStart <= patIdxEnd && strIdxStart <= strIdxEnd)
+        {
+            if (kinds[patIdxStart] == ANY_PATH)
+            {
+                break;
+            }
+            if (!matchToken(patIdxStart, strDirs[strIdxStart], isCaseSensitive))
+            {
+                return false;
+            }
+            patIdxStart++;
+            strIdxStart++;
+        }
+        if (strIdxStart > strIdxEnd)
+        {
+            // String is exhausted
+            return onlyAnyPath(patIdxStart, patIdxEnd);
+        }
+        if (patIdxStart > patIdxEnd)
+        {
+            // String not exhausted, but pattern is. Failure.
+            return false;
+        }
+
+        // up to last '**'
+        while (patIdxStart <= patIdxEnd && strIdxStart <= strIdxEnd)
+        {
+            if (kinds[patIdxEnd] == ANY_PATH)
+            {
+                break;
+            }
+            if (!matchToken(patIdxEnd, strDirs[strIdxEnd], isCaseSensitive))
+            {
+                return false;
+            }
+            patIdxEnd--;
+            strIdxEnd--;
+        }
+        if (strIdxStart > strIdxEnd)
+        {
+            // String is exhausted
+            return onlyAnyPath(patIdxStart, patIdxEnd);
+        }
+
+        while (patIdxStart != patIdxEnd && strIdxStart <= strIdxEnd)
+        {
+            int patIdxTmp = -1;
+            for (int i = patIdxStart + 1; i <= patIdxEnd; i++)
+            {
+                if (kinds[i] == ANY_PATH)
+                {
+                    patIdxTmp = i;
+                    break;
+                }
+            }
+            if (patIdxTmp == patIdxStart + 1)
+            {
+                // '**/**' situation, so skip one
+                patIdxStart++;
+                continue;
+            }
+            // Find the pattern between padIdxStart & padIdxTmp in str between
+            // strIdxStart & strIdxEnd
+            int patLength = (patIdxTmp - patIdxStart - 1);
+            int strLength = (strIdxEnd - strIdxStart + 1);
+            int foundIdx = -1;
+            strLoop:
+            for (int i = 0; i <= strLength - patLength; i++)
+            {
+                for (int j = 0; j < patLength; j++)
+                {
+                    if (!matchToken(patIdxStart + j + 1, strDirs[strIdxStart + i + j], isCaseSensitive))
+                    {
+                        continue strLoop;
+                    }
+                }
+
+                foundIdx = strIdxStart + i;
+                break;
+            }
+
+            if (foundIdx == -1)
+            {
+                return false;
+            }
+
+            patIdxStart = patIdxTmp;
+            strIdxStart = foundIdx + patLength;
+        }
+
+        return onlyAnyPath(patIdxStart, patIdxEnd);
+    }
+
+    /**
+     * Tests whether a path matches the start of the pattern up to the first <code>**</code>,
+     * that is whether a directory may contain paths matching the pattern. Like
+     * {@link SelectorUtils#matchPatternStart(String, String, boolean)}, this may give false
+     * positives.
+     *
+     * @param str             the path
+     * @param strDirs         the path elements of <code>str</code>, as returned by
+     *                        {@link SelectorUtils#tokenizePathAsArray(String)}
+     * @param isCaseSensitive whether the matching is case sensitive
+     * @return whether the path matches the start of the pattern
+     */
+    public boolean matchStartOf(String str, String[] strDirs, boolean isCaseSensitive)
+    {
+        if (str.startsWith(File.separator) != rooted)
+        {
+            return false;
+        }
+
+        int patIdxStart = 0;
+        int patIdxEnd = tokens.length - 1;
+        int strIdxStart = 0;
+        int strIdxEnd = strDirs.length - 1;
+
+        // up to first '**'
+        while (patIdxStart <= patIdxEnd && strIdxStart <= strIdxEnd)
+        {
+            if (kinds[patIdxStart] == ANY_PATH)
+            {
+                break;
+            }
+            if (!matchToken(patIdxStart, strDirs[strIdxStart], isCaseSensitive))
+            {
+                return false;
+            }
+            patIdxStart++;
+            strIdxStart++;
+        }
+
+        // either the string is exhausted, or the pattern is (failure) or
+        // now holds ** (false positives are fine)
+        return strIdxStart > strIdxEnd || patIdxStart <= patIdxEnd;
+    }
+
+    @Override
+    public String toString()
+    {
+        return pattern;
+    }
+
+    private boolean matchToken(int index, String str, boolean isCaseSensitive)
+    {
+        switch (kinds[index])
+        {
+            case ANY_NAME:
+                return true;
+            case LITERAL:
+                if (isCaseSensitive)
+                {
+                    return tokens[index].equals(str);
+                }
+                if (tokens[index].length() != str.length())
+                {
+                    return false;
+                }
+                return SelectorUtils.match(tokens[index], str, false);
+            default:
+                return SelectorUtils.match(tokens[index], str, isCaseSensitive);
+        }
+    }
+
+    private boolean onlyAnyPath(int start, int end)
+    {
+        for (int i = start; i <= end; i++)
+        {
+            if (kinds[i] != ANY_PATH)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * IzPack - Copyright 2001-2010 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Copyright 2009 Laurent Bovet, Alex Mathey
+ * Copyright 2010 Rene Krell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.util.xmlmerge;
+import org.jdom.Element;
+
+/**
+ * A matcher whose matching can be expressed by a key computed for each element, so that the
+ * elements of a patch can be indexed instead of being compared pair by pair.
+ */
+public interface KeyedMatcher extends Matcher
+{
+
+    /**
+     * The key of an element matching no element, not even another element with this key.
+     */
+    Object NO_MATCH = new Object();
+
+    /**
+     * Computes the key of an element. Two elements match if and only if their keys are equal,
+     * unless the key is {@link #NO_MATCH}.
+     *
+     * @param element The element
+     * @return The key of the element, or null if no key can be computed for this element, in which
+     * case the elements must be compared with {@link #matches(Element, Element)}
+     */
+    Object getKey(Element element);
+}
@@ -22,9 +22,12 @@
 
 package com.izforge.izpack.util.xmlmerge.action;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.jdom.Attribute;
 import org.jdom.Comment;
@@ -34,10 +37,15 @@ import org.jdom.Text;
 
 import com.izforge.izpack.util.*;
 import com.izforge.izpack.util.xmlmerge.*;
+import com.izforge.izpack.util.xmlmerge.factory.StaticOperationFactory;
+import com.izforge.izpack.util.xmlmerge.factory.XPathOperationFactory;
 
 /**
  * Merge implementation traversing parallelly both element contents. Works when contents are in the
  * same order in both elements.
+ * <p/>
+ * When all children are compared by the same {@link KeyedMatcher}, the children of the patch
+ * element are indexed by key, instead of being compared to each child of the original element.
  *
  * @author Laurent Bovet (LBO)
  * @author Alex Mathey (AMA)
@@ -99,6 +107,8 @@ public class OrderedMergeAction extends AbstractMergeAction
         int offsetTreated1 = 0;
         int offsetTreated2 = 0;
 
+        MatchIndex index = createIndex(list1, list2);
+
         for (Content content1 : list1)
         {
 
@@ -119,33 +129,9 @@ public class OrderedMergeAction extends AbstractMergeAction
                 Element e1 = (Element) content1;
 
                 // does e1 exist on list2 and has not yet been treated
-                int posInList2 = -1;
-                for (int j = offsetTreated2; j < list2.length; j++)
-                {
-
-                    Debug.log("List 2: " + list2[j]);
-
-                    if (list2[j] instanceof Element)
-                    {
-
-                        if (((Matcher) m_matcherFactory.getOperation(e1, (Element) list2[j]))
-                                .matches(e1, (Element) list2[j]))
-                        {
-                            Debug.log("Match found: " + e1 + " and " + list2[j]);
-                            posInList2 = j;
-                            break;
-                        }
-                    }
-                    else if (list2[j] instanceof Comment || list2[j] instanceof Text)
-                    {
-                        // skip
-                    }
-                    else
-                    {
-                        throw new DocumentException(list2[j].getDocument(), "Contents of type "
-                                + list2[j].getClass().getName() + " not supported");
-                    }
-                }
+                int posInList2 = (index != null)
+                        ? index.find(e1, list2, offsetTreated2)
+                        : findMatch(e1, list2, offsetTreated2);
 
                 // element found in second list, but there is some elements to
                 // be treated before in second list
@@ -215,6 +201,193 @@ public class OrderedMergeAction extends AbstractMergeAction
 
     }
 
+    /**
+     * Finds the first element of the patch contents matching an original element, comparing it to
+     * each patch element.
+     *
+     * @param e1 The original element
+     * @param list2 The patch contents
+     * @param offset The position of the first patch content not yet treated
+     * @return The position of the matching element, or -1
+     * @throws AbstractXmlMergeException If an error occurred during the matching
+     */
+    private int findMatch(Element e1, Content[] list2, int offset) throws AbstractXmlMergeException
+    {
+        for (int j = offset; j < list2.length; j++)
+        {
+
+            if (Debug.isLOG())
+            {
+                Debug.log("List 2: " + list2[j]);
+            }
+
+            if (list2[j] instanceof Element)
+            {
+
+                if (((Matcher) m_matcherFactory.getOperation(e1, (Element) list2[j]))
+                        .matches(e1, (Element) list2[j]))
+                {
+                    Debug.log("Match found: " + e1 + " and " + list2[j]);
+                    return j;
+                }
+            }
+            else if (list2[j] instanceof Comment || list2[j] instanceof Text)
+            {
+                // skip
+            }
+            else
+            {
+                throw new DocumentException(list2[j].getDocument(), "Contents of type "
+                        + list2[j].getClass().getName() + " not supported");
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Indexes the patch elements by key, if all elements are compared by the same
+     * {@link KeyedMatcher} and all keys can be computed. The matcher is only known to be the same
+     * for each pair of elements when the matcher factory chooses it from either element alone.
+     *
+     * @param list1 The original contents
+     * @param list2 The patch contents
+     * @return The index, or null if the elements must be compared pair by pair
+     * @throws AbstractXmlMergeException If an error occurred while getting the matchers
+     */
+    private MatchIndex createIndex(Content[] list1, Content[] list2) throws AbstractXmlMergeException
+    {
+        if (!(m_matcherFactory instanceof StaticOperationFactory)
+                && !(m_matcherFactory instanceof XPathOperationFactory))
+        {
+            return null;
+        }
+        KeyedMatcher matcher = null;
+        for (Content content : list1)
+        {
+            if (content instanceof Element)
+            {
+                Operation operation = m_matcherFactory.getOperation((Element) content, null);
+                if (!(operation instanceof KeyedMatcher) || (matcher != null && operation != matcher))
+                {
+                    return null;
+                }
+                matcher = (KeyedMatcher) operation;
+            }
+        }
+        if (matcher == null)
+        {
+            // nothing to match
+            return null;
+        }
+
+        MatchIndex index = new MatchIndex(matcher);
+        for (int j = 0; j < list2.length; j++)
+        {
+            if (list2[j] instanceof Element)
+            {
+                Element e2 = (Element) list2[j];
+                if (m_matcherFactory.getOperation(null, e2) != matcher)
+                {
+                    return null;
+                }
+                Object key = matcher.getKey(e2);
+                if (key == null)
+                {
+                    return null;
+                }
+                if (key != KeyedMatcher.NO_MATCH)
+                {
+                    index.addElement(key, j);
+                }
+            }
+            else if (!(list2[j] instanceof Comment || list2[j] instanceof Text))
+            {
+                index.addUnsupported(j);
+            }
+        }
+        for (Content content : list1)
+        {
+            if (content instanceof Element && matcher.getKey((Element) content) == null)
+            {
+                return null;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Positions of the patch elements by key. The positions of each key are consumed in order,
+     * as the patch contents are treated.
+     */
+    private static class MatchIndex
+    {
+        private final KeyedMatcher m_matcher;
+
+        private final Map<Object, ArrayDeque<Integer>> m_positions = new HashMap<Object, ArrayDeque<Integer>>();
+
+        private final ArrayDeque<Integer> m_unsupported = new ArrayDeque<Integer>();
+
+        MatchIndex(KeyedMatcher matcher)
+        {
+            m_matcher = matcher;
+        }
+
+        void addElement(Object key, int position)
+        {
+            ArrayDeque<Integer> positions = m_positions.get(key);
+            if (positions == null)
+            {
+                positions = new ArrayDeque<Integer>();
+                m_positions.put(key, positions);
+            }
+            positions.add(position);
+        }
+
+        void addUnsupported(int position)
+        {
+            m_unsupported.add(position);
+        }
+
+        /**
+         * Finds the first patch element matching an original element, like
+         * {@link OrderedMergeAction#findMatch(Element, Content[], int)}.
+         */
+        int find(Element e1, Content[] list2, int offset) throws AbstractXmlMergeException
+        {
+            int position = -1;
+            ArrayDeque<Integer> positions = m_positions.get(m_matcher.getKey(e1));
+            if (positions != null)
+            {
+                while (!positions.isEmpty() && positions.peek() < offset)
+                {
+                    positions.poll();
+                }
+                if (!positions.isEmpty())
+                {
+                    position = positions.peek();
+                }
+            }
+
+            // contents which the pairwise search would have reached
+            while (!m_unsupported.isEmpty() && m_unsupported.peek() < offset)
+            {
+                m_unsupported.poll();
+            }
+            if (!m_unsupported.isEmpty() && (position == -1 || m_unsupported.peek() < position))
+            {
+                Content content = list2[m_unsupported.peek()];
+                throw new DocumentException(content.getDocument(), "Contents of type "
+                        + content.getClass().getName() + " not supported");
+            }
+
+            if (position != -1)
+            {
+                Debug.log("Match found: " + e1 + " and " + list2[position]);
+            }
+            return position;
+        }
+    }
+
     /**
      * Applies the action which performs the merge between two source elements.
      *
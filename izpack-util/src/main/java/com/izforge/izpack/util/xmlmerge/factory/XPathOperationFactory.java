@@ -22,19 +22,30 @@
 
 package com.izforge.izpack.util.xmlmerge.factory;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 import org.jaxen.JaxenException;
 import org.jaxen.jdom.JDOMXPath;
+import org.jdom.Document;
 import org.jdom.Element;
+import org.jdom.Parent;
 
 import com.izforge.izpack.util.xmlmerge.*;
 
 /**
  * An operation factory that resolves operations given a map { xpath (as String), Operation }. The
  * order in the map is relevant if several XPath matches.
+ * <p/>
+ * The XPath expressions are compiled once. Simple expressions (an element name or <code>*</code>,
+ * optionally preceded by <code>/</code> steps or by <code>//</code>, with an optional
+ * <code>[@attribute]</code> or <code>[@attribute='value']</code> predicate) are matched without
+ * Jaxen.
  *
  * @author Laurent Bovet (LBO)
  * @author Alex Mathey (AMA)
@@ -52,6 +63,11 @@ public class XPathOperationFactory implements OperationFactory
      */
     Operation m_defaultOperation;
 
+    /**
+     * The compiled XPath expressions.
+     */
+    private final Map<String, CompiledXPath> m_compiled = new ConcurrentHashMap<String, CompiledXPath>();
+
     /**
      * Sets the factory's map containing configuration properties.
      *
@@ -78,11 +94,12 @@ public class XPathOperationFactory implements OperationFactory
     public Operation getOperation(Element originalElement, Element patchElement)
             throws AbstractXmlMergeException
     {
-        for (String xPath : m_map.keySet())
+        for (Map.Entry<String, Operation> entry : m_map.entrySet())
         {
+            String xPath = entry.getKey();
             if (matches(originalElement, xPath) || matches(patchElement, xPath))
             {
-                return m_map.get(xPath);
+                return entry.getValue();
             }
         }
         return m_defaultOperation;
@@ -103,16 +120,194 @@ public class XPathOperationFactory implements OperationFactory
 
         try
         {
-            JDOMXPath xPath = new JDOMXPath(xPathString);
+            CompiledXPath xPath = m_compiled.get(xPathString);
+            if (xPath == null)
+            {
+                xPath = new CompiledXPath(xPathString);
+                m_compiled.put(xPathString, xPath);
+            }
+            return xPath.matches(element);
+        }
+        catch (JaxenException e)
+        {
+            throw new MatchException(element, e);
+        }
+    }
 
-            boolean result = xPath.selectNodes(element.getParent()).contains(element);
+    /**
+     * An XPath expression, matched by Jaxen or by {@link SimpleXPath} if it is simple enough.
+     */
+    private static class CompiledXPath
+    {
+        private final String m_expression;
 
-            return result;
+        private final SimpleXPath m_simple;
 
+        private JDOMXPath m_xPath;
+
+        CompiledXPath(String expression) throws JaxenException
+        {
+            m_expression = expression;
+            m_simple = SimpleXPath.parse(expression);
+            if (m_simple == null)
+            {
+                m_xPath = new JDOMXPath(expression);
+            }
         }
-        catch (JaxenException e)
+
+        /**
+         * Detects whether the element is selected by the expression evaluated on its parent.
+         */
+        boolean matches(Element element) throws JaxenException
         {
-            throw new MatchException(element, e);
+            if (m_simple != null)
+            {
+                Boolean result = m_simple.matches(element);
+                if (result != null)
+                {
+                    return result;
+                }
+            }
+            synchronized (this)
+            {
+                if (m_xPath == null)
+                {
+                    m_xPath = new JDOMXPath(m_expression);
+                }
+                return m_xPath.selectNodes(element.getParent()).contains(element);
+            }
+        }
+    }
+
+    /**
+     * A location path made of element name tests with an optional attribute predicate, which can
+     * be matched by walking up from the element.
+     */
+    static class SimpleXPath
+    {
+        private static final String NAME = "[A-Za-z_][A-Za-z0-9_.\\-]*";
+
+        private static final Pattern STEP = Pattern.compile("(\\*|" + NAME + ")(?:\\[@(" + NAME
+                + ")(?:=(?:'([^']*)'|\"([^\"]*)\"))?\\])?");
+
+        /**
+         * The steps, from the element to the top.
+         */
+        private final Step[] m_steps;
+
+        /**
+         * Whether the path starts from the document, either with '/' or with '//'.
+         */
+        private final boolean m_absolute;
+
+        /**
+         * Whether the path starts with '//'.
+         */
+        private final boolean m_descendant;
+
+        private SimpleXPath(Step[] steps, boolean absolute, boolean descendant)
+        {
+            m_steps = steps;
+            m_absolute = absolute;
+            m_descendant = descendant;
+        }
+
+        /**
+         * Parses an expression.
+         *
+         * @param expression The XPath expression
+         * @return The parsed expression, or null if it is not simple
+         */
+        static SimpleXPath parse(String expression)
+        {
+            boolean descendant = expression.startsWith("//");
+            boolean absolute = expression.startsWith("/");
+            String path = expression.substring(descendant ? 2 : (absolute ? 1 : 0));
+            String[] parts = path.split("/", -1);
+            if ((!absolute || descendant) && parts.length != 1)
+            {
+                // relative paths with several steps never select a child of the context
+                return null;
+            }
+            List<Step> steps = new ArrayList<Step>();
+            for (int i = parts.length - 1; i >= 0; i--)
+            {
+                java.util.regex.Matcher matcher = STEP.matcher(parts[i]);
+                if (!matcher.matches())
+                {
+                    return null;
+                }
+                String value = (matcher.group(3) != null) ? matcher.group(3) : matcher.group(4);
+                steps.add(new Step(matcher.group(1), matcher.group(2), value));
+            }
+            return new SimpleXPath(steps.toArray(new Step[steps.size()]), absolute, descendant);
+        }
+
+        /**
+         * Detects whether the element is selected by the expression evaluated on its parent.
+         *
+         * @param element The element
+         * @return The result, or null if the element must be matched by Jaxen
+         */
+        Boolean matches(Element element)
+        {
+            Parent parent = element.getParent();
+            if (parent == null)
+            {
+                return null;
+            }
+            if (m_absolute && element.getDocument() == null)
+            {
+                return null;
+            }
+            if (m_descendant || !m_absolute)
+            {
+                return m_steps[0].matches(element);
+            }
+            Object node = element;
+            for (Step step : m_steps)
+            {
+                if (!(node instanceof Element) || !step.matches((Element) node))
+                {
+                    return false;
+                }
+                node = ((Element) node).getParent();
+            }
+            return node instanceof Document;
+        }
+    }
+
+    /**
+     * An element name test with an optional attribute predicate.
+     */
+    private static class Step
+    {
+        private final String m_name;
+
+        private final String m_attribute;
+
+        private final String m_value;
+
+        Step(String name, String attribute, String value)
+        {
+            m_name = name;
+            m_attribute = attribute;
+            m_value = value;
+        }
+
+        boolean matches(Element element)
+        {
+            if (!m_name.equals("*")
+                    && (!m_name.equals(element.getName()) || element.getNamespaceURI().length() > 0))
+            {
+                return false;
+            }
+            if (m_attribute == null)
+            {
+                return true;
+            }
+            String value = element.getAttributeValue(m_attribute);
+            return value != null && (m_value == null || m_value.equals(value));
         }
     }
 
@@ -22,10 +22,14 @@
 
 package com.izforge.izpack.util.xmlmerge.matcher;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.jdom.*;
 
+import com.izforge.izpack.util.xmlmerge.KeyedMatcher;
+
 /**
  * Elements match if their name and a certain attribute value are the same.
  */
@@ -81,4 +85,46 @@ public abstract class AbstractAttributeMatcher extends AbstractTagMatcher
         }
         return false;
     }
+
+    /**
+     * Computes the key of an element for the attribute given by {@link #getAttributeName()}: the
+     * element name, the number of attributes and the value of the attribute.
+     *
+     * @param element The element
+     * @return The key, {@link KeyedMatcher#NO_MATCH} if the element has no attribute of the given
+     * name, or null if all attributes are compared or if the element has several attributes of
+     * the given name
+     * @see com.izforge.izpack.util.xmlmerge.KeyedMatcher
+     */
+    public Object getKey(Element element)
+    {
+        String attributeName = getAttributeName();
+        if (attributeName == null)
+        {
+            return null;
+        }
+        List<Attribute> attributes = element.getAttributes();
+        if (attributes.size() == 0)
+        {
+            return Collections.singletonList(getTagKey(element));
+        }
+        Attribute keyAttribute = null;
+        for (Attribute attribute : attributes)
+        {
+            if (equalsString(attribute.getQualifiedName(), attributeName, ignoreCaseAttributeName()))
+            {
+                if (keyAttribute != null)
+                {
+                    return null;
+                }
+                keyAttribute = attribute;
+            }
+        }
+        if (keyAttribute == null)
+        {
+            return KeyedMatcher.NO_MATCH;
+        }
+        return Arrays.asList(getTagKey(element), String.valueOf(attributes.size()),
+                foldString(keyAttribute.getValue(), ignoreCaseAttributeValue()));
+    }
 }
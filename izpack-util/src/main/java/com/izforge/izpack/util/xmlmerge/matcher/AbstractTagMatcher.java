@@ -40,6 +40,41 @@ public abstract class AbstractTagMatcher implements Matcher
                 ignoreCaseElementName());
     }
 
+    /**
+     * Returns the key of the qualified name of an element, equal for the names matched by
+     * {@link #matches(Element, Element)}.
+     *
+     * @param element The element
+     * @return The key of the element name
+     */
+    protected String getTagKey(Element element)
+    {
+        return foldString(element.getQualifiedName(), ignoreCaseElementName());
+    }
+
+    /**
+     * Folds the case of a string, so that two strings are equal after folding if and only if they
+     * are equal according to {@link #equalsString(String, String, boolean)}.
+     *
+     * @param s The string
+     * @param ignoreCase Whether the case is ignored
+     * @return The folded string
+     */
+    protected static String foldString(String s, boolean ignoreCase)
+    {
+        if (!ignoreCase)
+        {
+            return s;
+        }
+        // same per character folding as String.equalsIgnoreCase()
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++)
+        {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
     protected static boolean equalsString(String s1, String s2, boolean ignoreCase)
     {
         if (ignoreCase)
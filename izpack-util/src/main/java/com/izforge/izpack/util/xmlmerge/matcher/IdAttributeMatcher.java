@@ -22,10 +22,12 @@
 
 package com.izforge.izpack.util.xmlmerge.matcher;
 
+import com.izforge.izpack.util.xmlmerge.KeyedMatcher;
+
 /**
  * Elements match if their name and 'id' attribute are the same.
  */
-public class IdAttributeMatcher extends AbstractAttributeMatcher
+public class IdAttributeMatcher extends AbstractAttributeMatcher implements KeyedMatcher
 {
 
     @Override
@@ -22,10 +22,12 @@
 
 package com.izforge.izpack.util.xmlmerge.matcher;
 
+import com.izforge.izpack.util.xmlmerge.KeyedMatcher;
+
 /**
  * Elements match if their name and 'name' attribute are the same.
  */
-public class NameAttributeMatcher extends AbstractAttributeMatcher
+public class NameAttributeMatcher extends AbstractAttributeMatcher implements KeyedMatcher
 {
     @Override
     protected final String getAttributeName()
@@ -22,14 +22,23 @@
 
 package com.izforge.izpack.util.xmlmerge.matcher;
 
+import org.jdom.Element;
+
+import com.izforge.izpack.util.xmlmerge.KeyedMatcher;
+
 /**
  * Compares the qualified name of elements.
  */
-public class TagMatcher extends AbstractTagMatcher
+public class TagMatcher extends AbstractTagMatcher implements KeyedMatcher
 {
     @Override
     protected boolean ignoreCaseElementName()
     {
         return true;
     }
+
+    public Object getKey(Element element)
+    {
+        return getTagKey(element);
+    }
 }
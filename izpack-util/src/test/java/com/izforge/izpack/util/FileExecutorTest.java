@@ -0,0 +1,90 @@
+package com.izforge.izpack.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Test for making files executable with batched chmod commands
+ */
+public class FileExecutorTest
+{
+    private File dir;
+
+    private List<File> files;
+
+    private File missing;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        assumeTrue(OsVersion.IS_UNIX);
+        dir = File.createTempFile("chmod", "");
+        dir.delete();
+        dir.mkdirs();
+        // more than one batch, the first one failing on the missing file
+        files = new ArrayList<File>();
+        for (int i = 0; i < 150; i++)
+        {
+            File file = new File(dir, "script" + i + ".sh");
+            file.createNewFile();
+            files.add(file);
+        }
+        missing = new File(dir, "missing.sh");
+        files.add(20, missing);
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (dir != null)
+        {
+            for (File file : dir.listFiles())
+            {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void failedBatchIsRetriedFileByFile()
+    {
+        for (File file : files)
+        {
+            assertFalse(file.canExecute());
+        }
+        Map<File, Integer> failures = new FileExecutor().chmod(files);
+
+        assertEquals(1, failures.size());
+        assertTrue(failures.get(missing) != 0);
+        for (File file : files)
+        {
+            assertEquals(file != missing, file.canExecute());
+        }
+    }
+
+    @Test
+    public void makeExecutableReportsMissingFile()
+    {
+        Map<File, Integer> failures = new FileExecutor().makeExecutable(files);
+
+        assertEquals(1, failures.size());
+        assertTrue(failures.containsKey(missing));
+        for (File file : files)
+        {
+            assertEquals(file != missing, file.canExecute());
+        }
+    }
+}
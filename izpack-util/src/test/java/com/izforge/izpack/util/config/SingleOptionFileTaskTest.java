@@ -0,0 +1,164 @@
+package com.izforge.izpack.util.config;
+
+import org.ini4j.Options;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.izforge.izpack.util.config.SingleConfigurableTask.Entry;
+import com.izforge.izpack.util.config.SingleConfigurableTask.Entry.LookupType;
+import com.izforge.izpack.util.config.SingleConfigurableTask.Entry.Operation;
+
+/**
+ * Test for keeping and deleting option values looked up by plain value or regular expression
+ */
+public class SingleOptionFileTaskTest
+{
+    private File newFile;
+
+    private File oldFile;
+
+    private File toFile;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        newFile = File.createTempFile("patch", ".properties");
+        oldFile = File.createTempFile("patchfrom", ".properties");
+        toFile = File.createTempFile("patched", ".properties");
+    }
+
+    @After
+    public void tearDown()
+    {
+        newFile.delete();
+        oldFile.delete();
+        toFile.delete();
+    }
+
+    @Test
+    public void deleteWithoutValueRemovesKey() throws Exception
+    {
+        write(newFile, "opt", "a", "b");
+        write(newFile, "other", "c");
+        Options result = execute(entry(Operation.REMOVE, "opt", null, LookupType.PLAIN));
+        assertFalse(result.containsKey("opt"));
+        assertValues(result, "other", "c");
+    }
+
+    @Test
+    public void deleteLooksUpPlainValue() throws Exception
+    {
+        write(newFile, "opt", "a", "b", "c", "b");
+        Options result = execute(entry(Operation.REMOVE, "opt", "b", LookupType.PLAIN));
+        assertValues(result, "opt", "a", "c");
+    }
+
+    @Test
+    public void deleteLooksUpRegexp() throws Exception
+    {
+        write(newFile, "opt", "a1", "b", "a2");
+        Options result = execute(entry(Operation.REMOVE, "opt", "a\\d", LookupType.REGEXP));
+        assertValues(result, "opt", "b");
+    }
+
+    @Test
+    public void deleteAllLookedUpValuesRemovesKey() throws Exception
+    {
+        write(newFile, "opt", "a1", "a2");
+        Options result = execute(entry(Operation.REMOVE, "opt", "a.*", LookupType.REGEXP));
+        assertFalse(result.containsKey("opt"));
+    }
+
+    @Test
+    public void keepWithoutValue() throws Exception
+    {
+        write(newFile, "opt", "new");
+        write(oldFile, "opt", "old");
+        Options result = execute(entry(Operation.KEEP, "opt", null, LookupType.PLAIN));
+        assertValues(result, "opt", "old");
+    }
+
+    @Test
+    public void keepLooksUpPlainValue() throws Exception
+    {
+        // plain lookup overwrites the looked up values with old values not equal to the lookup value
+        write(newFile, "opt", "x", "y", "x");
+        write(oldFile, "opt", "x", "z");
+        Options result = execute(entry(Operation.KEEP, "opt", "x", LookupType.PLAIN));
+        assertValues(result, "opt", "z", "y", "z");
+    }
+
+    @Test
+    public void keepLooksUpRegexp() throws Exception
+    {
+        // regexp lookup overwrites the matching values with old values matching, too
+        write(newFile, "opt", "v1", "w", "v2");
+        write(oldFile, "opt", "v9", "q");
+        Options result = execute(entry(Operation.KEEP, "opt", "v\\d", LookupType.REGEXP));
+        assertValues(result, "opt", "v9", "w", "v9");
+    }
+
+    @Test
+    public void keepAddsValueNotFound() throws Exception
+    {
+        write(newFile, "opt", "w");
+        write(oldFile, "opt", "v9", "q");
+        Options result = execute(entry(Operation.KEEP, "opt", "v\\d", LookupType.REGEXP));
+        assertValues(result, "opt", "w", "v9");
+    }
+
+    private Options execute(Entry entry) throws Exception
+    {
+        SingleOptionFileTask task = new SingleOptionFileTask();
+        task.setNewFile(newFile);
+        task.setOldFile(oldFile);
+        task.setToFile(toFile);
+        task.setPatchPreserveEntries(false);
+        task.setPatchPreserveValues(false);
+        task.getEntries().add(entry);
+        task.execute();
+        return new Options(toFile);
+    }
+
+    private static Entry entry(Operation operation, String key, String value, LookupType lookupType)
+    {
+        Entry entry = new Entry();
+        entry.setOperation(operation);
+        entry.setKey(key);
+        entry.setValue(value);
+        entry.setLookupType(lookupType);
+        return entry;
+    }
+
+    private static void write(File file, String key, String... values) throws IOException
+    {
+        FileWriter writer = new FileWriter(file, true);
+        try
+        {
+            for (String value : values)
+            {
+                writer.write(key + " = " + value + "\n");
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    private static void assertValues(Options options, String key, String... expected)
+    {
+        List<String> values = options.getAll(key);
+        assertEquals(Arrays.asList(expected), values);
+    }
+}
@@ -0,0 +1,136 @@
+package com.izforge.izpack.util.file;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for the scanning of directories with several threads
+ */
+public class DirectoryScannerTest
+{
+    private File basedir;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        basedir = File.createTempFile("scan", "");
+        basedir.delete();
+        for (int i = 0; i < 10; i++)
+        {
+            for (int j = 0; j < 5; j++)
+            {
+                create("d" + i + "/s" + j + "/F.java");
+                create("d" + i + "/s" + j + "/F.class");
+                create("d" + i + "/s" + j + "/skip/G.java");
+            }
+            create("d" + i + "/Readme.txt");
+        }
+        create("Top.java");
+        new File(basedir, "empty/sub").mkdirs();
+    }
+
+    @After
+    public void tearDown()
+    {
+        delete(basedir);
+    }
+
+    @Test
+    public void includedAndExcluded() throws Exception
+    {
+        DirectoryScanner scanner = scan(1, new String[]{"**/*.java", "d1/**"}, new String[]{"**/skip/**"}, true);
+        String[] included = scanner.getIncludedFiles();
+        assertTrue(Arrays.asList(included).contains(path("Top.java")));
+        assertTrue(Arrays.asList(included).contains(path("d1/Readme.txt")));
+        assertTrue(!Arrays.asList(included).contains(path("d2/Readme.txt")));
+        assertTrue(Arrays.asList(scanner.getExcludedFiles()).contains(path("d0/s0/skip/G.java")));
+        // 10 * 5 F.java, Top.java, 5 F.class and Readme.txt in d1
+        assertTrue(included.length == 50 + 1 + 5 + 1);
+    }
+
+    @Test
+    public void literalAndWildcardLeadingElements() throws Exception
+    {
+        DirectoryScanner scanner = scan(1, new String[]{"D1/S2/*.java", "d?/s3/F.class", "*.JAVA", "d4/**/G.java"},
+                                        new String[]{"d4/s0/**", "*/S3/F.CLASS"}, false);
+        assertArrayEquals(sort(new String[]{path("d1/s2/F.java"), path("d4/s1/skip/G.java"),
+                path("d4/s2/skip/G.java"), path("d4/s3/skip/G.java"), path("d4/s4/skip/G.java"), path("Top.java")}),
+                          sort(scanner.getIncludedFiles()));
+        assertTrue(Arrays.asList(scanner.getExcludedFiles()).contains(path("d4/s0/skip/G.java")));
+        assertTrue(Arrays.asList(scanner.getExcludedFiles()).contains(path("d7/s3/F.class")));
+    }
+
+    @Test
+    public void severalThreadsFindTheSamePaths() throws Exception
+    {
+        checkSameResults(new String[]{"**/*.java", "d1/**", "empty/**"}, new String[]{"**/skip/**", "d3/**"}, true);
+        checkSameResults(null, null, true);
+        checkSameResults(new String[]{"D?/**/*.JAVA"}, new String[]{"**/S1/**"}, false);
+    }
+
+    private void checkSameResults(String[] includes, String[] excludes, boolean caseSensitive) throws Exception
+    {
+        DirectoryScanner single = scan(1, includes, excludes, caseSensitive);
+        DirectoryScanner several = scan(4, includes, excludes, caseSensitive);
+
+        assertTrue(single.getIncludedFiles().length > 0);
+        assertArrayEquals(single.getIncludedFiles(), several.getIncludedFiles());
+        assertArrayEquals(single.getIncludedDirectories(), several.getIncludedDirectories());
+        assertArrayEquals(sort(single.getExcludedFiles()), sort(several.getExcludedFiles()));
+        assertArrayEquals(sort(single.getExcludedDirectories()), sort(several.getExcludedDirectories()));
+        assertArrayEquals(sort(single.getNotIncludedFiles()), sort(several.getNotIncludedFiles()));
+        assertArrayEquals(sort(single.getNotIncludedDirectories()), sort(several.getNotIncludedDirectories()));
+    }
+
+    private DirectoryScanner scan(int threads, String[] includes, String[] excludes, boolean caseSensitive)
+            throws Exception
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir(basedir);
+        scanner.setIncludes(includes);
+        scanner.setExcludes(excludes);
+        scanner.setCaseSensitive(caseSensitive);
+        scanner.setThreads(threads);
+        scanner.scan();
+        return scanner;
+    }
+
+    private static String[] sort(String[] paths)
+    {
+        Arrays.sort(paths);
+        return paths;
+    }
+
+    private static String path(String path)
+    {
+        return path.replace('/', File.separatorChar);
+    }
+
+    private void create(String name) throws IOException
+    {
+        File file = new File(basedir, name);
+        file.getParentFile().mkdirs();
+        file.createNewFile();
+    }
+
+    private void delete(File file)
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (File child : children)
+            {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
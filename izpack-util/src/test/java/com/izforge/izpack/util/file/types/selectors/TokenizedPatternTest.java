@@ -0,0 +1,146 @@
+package com.izforge.izpack.util.file.types.selectors;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test for the matching of tokenized patterns, directly and through SelectorUtils
+ */
+public class TokenizedPatternTest
+{
+    @Test
+    public void anyPath()
+    {
+        assertPath(true, "**/*.java", "a/b/C.java");
+        assertPath(true, "**/*.java", "C.java");
+        assertPath(false, "**/*.java", "a/C.class");
+        assertPath(true, "a/**", "a");
+        assertPath(true, "a/**", "a/b/c");
+        assertPath(false, "a/**", "b/a");
+        assertPath(true, "**/test/**", "test");
+        assertPath(true, "**/test/**", "x/test/y/z");
+        assertPath(false, "**/test/**", "x/tests/y");
+        assertPath(true, "a/**/b/**/c", "a/b/c");
+        assertPath(true, "a/**/b/**/c", "a/x/b/y/z/c");
+        assertPath(false, "a/**/b/**/c", "a/x/c");
+        assertPath(true, "**/**/a", "x/a");
+    }
+
+    @Test
+    public void anyName()
+    {
+        assertPath(true, "a/*/c", "a/b/c");
+        assertPath(false, "a/*/c", "a/c");
+        assertPath(false, "a/*/c", "a/b/d/c");
+        assertPath(true, "*.txt", "b.txt");
+        assertPath(false, "*.txt", "a/b.txt");
+        assertPath(true, "a/b*c*/d", "a/bxcy/d");
+        assertPath(false, "a/b*c*/d", "a/bxy/d");
+    }
+
+    @Test
+    public void anyCharacter()
+    {
+        assertPath(true, "a/?.txt", "a/x.txt");
+        assertPath(false, "a/?.txt", "a/xy.txt");
+        assertPath(false, "a/?.txt", "a/.txt");
+        assertPath(true, "??/*", "ab/c");
+    }
+
+    @Test
+    public void literalPrefix()
+    {
+        assertEquals("a", new TokenizedPattern(path("a/*/c")).getLiteralPrefix());
+        assertEquals("a", new TokenizedPattern(path("/a/b")).getLiteralPrefix());
+        assertEquals(null, new TokenizedPattern(path("**/a")).getLiteralPrefix());
+        assertEquals(null, new TokenizedPattern(path("?/a")).getLiteralPrefix());
+        assertEquals(null, new TokenizedPattern(path("")).getLiteralPrefix());
+    }
+
+    @Test
+    public void rooted()
+    {
+        assertPath(true, "/a/b", "/a/b");
+        assertPath(false, "/a/b", "a/b");
+        assertPath(false, "a/b", "/a/b");
+        assertPath(true, "/**/b", "/a/b");
+        assertPath(false, "/**/b", "a/b");
+    }
+
+    @Test
+    public void caseInsensitive()
+    {
+        assertPath(false, "A/*.JAVA", "a/b.java");
+        assertEquals(true, new TokenizedPattern(path("A/*.JAVA")).matchPath(path("a/b.java"), false));
+        assertEquals(true, SelectorUtils.matchPath(path("A/*.JAVA"), path("a/b.java"), false));
+        assertEquals(true, new TokenizedPattern(path("**/X?")).matchPath(path("a/xy"), false));
+        assertEquals(false, new TokenizedPattern(path("**/X?")).matchPath(path("a/xyz"), false));
+    }
+
+    @Test
+    public void startOf()
+    {
+        assertStart(true, "a/b/**/c", "a");
+        assertStart(true, "a/b/**/c", "a/b");
+        assertStart(true, "a/b/**/c", "a/b/x/y");
+        assertStart(false, "a/b/**/c", "x");
+        assertStart(false, "a/b/**/c", "a/x");
+        assertStart(true, "a/*/c", "a/b");
+        assertStart(true, "a/*/c", "a/b/c");
+        assertStart(false, "a/*/c", "a/b/c/d");
+        assertStart(true, "a/?/c", "a/b");
+        assertStart(false, "a/?/c", "a/bc");
+        assertStart(true, "**/c", "x/y");
+    }
+
+    @Test
+    public void startOfRooted()
+    {
+        assertStart(true, "/a/**", "/a");
+        assertStart(false, "/a/**", "a");
+        assertStart(false, "a/**", "/a");
+    }
+
+    @Test
+    public void startOfCaseInsensitive()
+    {
+        assertStart(false, "A/B/**", "a/b");
+        String str = path("a/b");
+        assertEquals(true, new TokenizedPattern(path("A/B/**")).matchStartOf(str,
+                SelectorUtils.tokenizePathAsArray(str), false));
+        assertEquals(true, SelectorUtils.matchPatternStart(path("A/B/**"), str, false));
+    }
+
+    /**
+     * Checks the case sensitive matching of a path.
+     */
+    private void assertPath(boolean expected, String pattern, String str)
+    {
+        String message = pattern + " matches " + str;
+        pattern = path(pattern);
+        str = path(str);
+        assertEquals(message, expected, new TokenizedPattern(pattern).matchPath(str, true));
+        assertEquals(message, expected, SelectorUtils.matchPath(pattern, str, true));
+    }
+
+    /**
+     * Checks the case sensitive matching of the start of a pattern.
+     */
+    private void assertStart(boolean expected, String pattern, String str)
+    {
+        String message = pattern + " starts with " + str;
+        pattern = path(pattern);
+        str = path(str);
+        assertEquals(message, expected, new TokenizedPattern(pattern).matchStartOf(str,
+                SelectorUtils.tokenizePathAsArray(str), true));
+        assertEquals(message, expected, SelectorUtils.matchPatternStart(pattern, str, true));
+    }
+
+    private static String path(String path)
+    {
+        return path.replace('/', File.separatorChar);
+    }
+}